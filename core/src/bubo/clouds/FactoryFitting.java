@@ -18,8 +18,16 @@
 
 package bubo.clouds;
 
+import bubo.clouds.detect.alg.ApproximateSurfaceNormals;
+import bubo.clouds.detect.alg.PointVectorNN;
+import bubo.clouds.detect.wrapper.ConfigSurfaceNormals;
 import bubo.clouds.fit.MatchCloudToCloud;
+import bubo.clouds.fit.algs.RobustKernel;
 import bubo.clouds.fit.c2c.MatchCloudToCloudIcp;
+import bubo.clouds.fit.c2c.MatchCloudToCloudIcpArraySe3;
+import bubo.clouds.fit.c2c.MatchCloudToCloudIcpPlaneSe3;
+import bubo.clouds.fit.c2c.MatchCloudToCloudIcpWindowSe3;
+import bubo.clouds.fit.c2c.MatchCloudToCloudPyramidSe3;
 import bubo.struct.StoppingCondition;
 import georegression.struct.point.Point2D_F64;
 import georegression.struct.point.Point3D_F64;
@@ -28,6 +36,10 @@ import georegression.struct.se.Se3_F64;
 import org.ddogleg.nn.FactoryNearestNeighbor;
 import org.ddogleg.nn.NearestNeighbor;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+
 /**
  * @author Peter Abeles
  */
@@ -58,4 +70,110 @@ public class FactoryFitting {
 		NearestNeighbor<Point3D_F64> nn = FactoryNearestNeighbor.kdtree();
 		return new MatchCloudToCloudIcp.SE3(nn,maxDistance*maxDistance,stop);
 	}
+
+	/**
+	 * 3D {@link georegression.struct.se.Se3_F64 rigid-body} {@link bubo.clouds.fit.algs.IterativeClosestPoint}
+	 * based {@link MatchCloudToCloud} where the closest points are found concurrently.  The found transform
+	 * is the same as the one found by {@link #cloudIcp3D(double, bubo.struct.StoppingCondition)} independent of
+	 * the number of threads.
+	 *
+	 * @param maxDistance Maximum Euclidean distance two points will be matched up.
+	 * @param stop Iteration stopping criteria
+	 * @param threadPool Thread pool used to search for the closest points.  If null it's done sequentially.
+	 * @param numThreads Number of workers the closest point search is split between.
+	 * @return ICP based cloud matching
+	 */
+	public static MatchCloudToCloud<Se3_F64,Point3D_F64> cloudIcp3D( double maxDistance, StoppingCondition stop,
+																	  ExecutorService threadPool, int numThreads )  {
+		NearestNeighbor<Point3D_F64> nn = FactoryNearestNeighbor.kdtree();
+		MatchCloudToCloudIcp.SE3 alg = new MatchCloudToCloudIcp.SE3(nn,maxDistance*maxDistance,stop);
+
+		if( threadPool != null ) {
+			alg.setThreadPool(threadPool, numThreads);
+		}
+		return alg;
+	}
+
+	/**
+	 * 3D {@link georegression.struct.se.Se3_F64 rigid-body} ICP based {@link MatchCloudToCloud} which stores
+	 * points internally in primitive arrays.  Produces the same results as
+	 * {@link #cloudIcp3D(double, bubo.struct.StoppingCondition)} but doesn't declare memory after the first call
+	 * and doesn't modify the source list.
+	 *
+	 * @see MatchCloudToCloudIcpArraySe3
+	 *
+	 * @param maxDistance Maximum Euclidean distance two points will be matched up.
+	 * @param stop Iteration stopping criteria
+	 * @return ICP based cloud matching
+	 */
+	public static MatchCloudToCloud<Se3_F64,Point3D_F64> cloudIcp3DArray( double maxDistance, StoppingCondition stop)  {
+		NearestNeighbor<Point3D_F64> nn = FactoryNearestNeighbor.kdtree();
+		return new MatchCloudToCloudIcpArraySe3(nn,maxDistance*maxDistance,stop);
+	}
+
+	/**
+	 * 3D {@link georegression.struct.se.Se3_F64 rigid-body} point-to-plane ICP based {@link MatchCloudToCloud}.
+	 * Surface normals are estimated for the destination cloud and the distance of source points from the
+	 * tangent plane of their matches is minimized.  Typically needs far fewer iterations than point-to-point ICP
+	 * on clouds sampled from smooth surfaces.
+	 *
+	 * @see MatchCloudToCloudIcpPlaneSe3
+	 *
+	 * @param maxDistance Maximum Euclidean distance two points will be matched up.
+	 * @param stop Iteration stopping criteria
+	 * @param configNormal Configuration for estimating the surface normals of the destination cloud
+	 * @param kernel Robust kernel used to reweight residuals.  {@link RobustKernel#NONE} for least-squares.
+	 * @param kernelThreshold Threshold of the robust kernel.  Units of distance.
+	 * @return ICP based cloud matching
+	 */
+	public static MatchCloudToCloud<Se3_F64,Point3D_F64> cloudIcp3DPlane( double maxDistance, StoppingCondition stop,
+																		   ConfigSurfaceNormals configNormal,
+																		   RobustKernel kernel , double kernelThreshold )  {
+		configNormal.checkConfig();
+		ApproximateSurfaceNormals surface = new ApproximateSurfaceNormals(
+				configNormal.numNeighbors, configNormal.maxDistanceNeighbor);
+		NearestNeighbor<PointVectorNN> nn = FactoryNearestNeighbor.kdtree();
+		return new MatchCloudToCloudIcpPlaneSe3(surface,nn,maxDistance*maxDistance,stop,kernel,kernelThreshold);
+	}
+
+	/**
+	 * Coarse-to-fine 3D {@link georegression.struct.se.Se3_F64 rigid-body} ICP.  Each level is down sampled using
+	 * a voxel grid and registered with {@link #cloudIcp3DArray}, starting from the estimate of the previous level.
+	 *
+	 * @see MatchCloudToCloudPyramidSe3
+	 *
+	 * @param voxelSizes Width of a voxel at each level, ordered from coarse to fine.  Zero for full resolution.
+	 * @param maxDistances Maximum Euclidean distance two points will be matched up at each level.
+	 * @param stop Iteration stopping criteria for each level
+	 * @param randSeed Seed for randomly selecting which point in a voxel is kept
+	 * @return ICP based cloud matching
+	 */
+	public static MatchCloudToCloud<Se3_F64,Point3D_F64> cloudIcp3DPyramid( double voxelSizes[], double maxDistances[],
+																			 StoppingCondition stop , long randSeed )  {
+		if( voxelSizes.length != maxDistances.length )
+			throw new IllegalArgumentException("voxelSizes and maxDistances must have the same length");
+
+		List<MatchCloudToCloud<Se3_F64,Point3D_F64>> levels = new ArrayList<MatchCloudToCloud<Se3_F64,Point3D_F64>>();
+		for (int i = 0; i < maxDistances.length; i++) {
+			levels.add(cloudIcp3DArray(maxDistances[i], stop));
+		}
+		return new MatchCloudToCloudPyramidSe3(voxelSizes,levels,randSeed);
+	}
+
+	/**
+	 * 3D {@link georegression.struct.se.Se3_F64 rigid-body} ICP where the destination is a sliding window of scans.
+	 * Scans are added incrementally with {@link MatchCloudToCloudIcpWindowSe3#addDestination} without rebuilding
+	 * the whole destination.
+	 *
+	 * @see MatchCloudToCloudIcpWindowSe3
+	 *
+	 * @param maxDistance Maximum Euclidean distance two points will be matched up.
+	 * @param windowSize Maximum number of scans in the destination.  If zero there is no limit.
+	 * @param stop Iteration stopping criteria
+	 * @return ICP based cloud matching
+	 */
+	public static MatchCloudToCloudIcpWindowSe3 cloudIcp3DWindow( double maxDistance, int windowSize,
+																  StoppingCondition stop )  {
+		return new MatchCloudToCloudIcpWindowSe3(maxDistance,windowSize,stop);
+	}
 }
@@ -18,16 +18,12 @@
 
 package bubo.clouds.filter;
 
-import bubo.construct.ConstructOctreeLeaf_I32;
-import bubo.construct.Octree_I32;
+import bubo.construct.ConstructLinearOctreeNumPoints_F64;
+import bubo.construct.LinearOctree_F64;
 import georegression.geometry.UtilPoint3D_F64;
 import georegression.struct.point.Point3D_F64;
-import georegression.struct.point.Point3D_I32;
-import georegression.struct.se.Se3_F64;
 import georegression.struct.shapes.Box3D_F64;
-import georegression.struct.shapes.Box3D_I32;
-import georegression.transform.se.SePointOps_F64;
-import org.ddogleg.struct.FastQueue;
+import org.ddogleg.struct.GrowQueue_I32;
 
 import java.util.ArrayList;
 import java.util.Collections;
@@ -35,8 +31,9 @@ import java.util.List;
 import java.util.Random;
 
 /**
- * TODO comment
- *
+ * Reduces the density of a point cloud so that it is approximately uniform.  Space is broken up into cubes
+ * of the desired width and if a cube contains more than the desired number of points then a random subset is
+ * selected.  Cubes are found using a {@link LinearOctree_F64} which is split down to its smallest nodes.
  *
  * @author Peter Abeles
  */
@@ -49,17 +46,16 @@ public class UniformDensityCloudOctree {
 	// size of the region
 	double desiredWidth;
 
-	ConstructOctreeLeaf_I32 octree = new ConstructOctreeLeaf_I32();
+	// all nodes are split until they are the smallest size or contain identical points
+	ConstructLinearOctreeNumPoints_F64 octree;
 
 	Box3D_F64 bounds = new Box3D_F64();
+	Box3D_F64 cube = new Box3D_F64();
 
-	Se3_F64 worldToOctree = new Se3_F64();
-	FastQueue<Point3D_I32> gridPoints = new FastQueue<Point3D_I32>(Point3D_I32.class,true);
+	GrowQueue_I32 leafs = new GrowQueue_I32();
 
 	List<Point3D_F64> shuffleList = new ArrayList<Point3D_F64>();
 
-	Point3D_F64 local = new Point3D_F64();
-
 	public UniformDensityCloudOctree(int desiredCount, double desiredWidth , long randSeed ) {
 		this.desiredCount = desiredCount;
 		this.desiredWidth = desiredWidth;
@@ -69,45 +65,53 @@ public class UniformDensityCloudOctree {
 	public void process( List<Point3D_F64> input , List<Point3D_F64> output ) {
 		UtilPoint3D_F64.boundingBox(input,bounds);
 
-		worldToOctree.getT().set( -bounds.p0.x , -bounds.p0.y , -bounds.p0.z );
 		int sizeX = (int)Math.ceil(bounds.getLengthX()/desiredWidth);
 		int sizeY = (int)Math.ceil(bounds.getLengthY()/desiredWidth);
 		int sizeZ = (int)Math.ceil(bounds.getLengthZ()/desiredWidth);
 
-		octree.initialize(new Box3D_I32(0,0,0,sizeX,sizeY,sizeZ));
-
-		gridPoints.reset();
-
-		for (int i = 0; i < input.size(); i++) {
-			Point3D_F64 p = input.get(i);
-			SePointOps_F64.transform(worldToOctree, p, local);
-			Point3D_I32 g = gridPoints.grow();
-			g.set((int)(local.x/desiredWidth),(int)(local.y/desiredWidth),(int)(local.z/desiredWidth));
-			octree.addPoint(g,p);
-		}
-
-		FastQueue<Octree_I32> nodes = octree.getAllNodes();
-
-		// Go through each node and only grab up to N points
-		for (int i = 0; i < nodes.size(); i++) {
-			Octree_I32 o = nodes.get(i);
-			if( o.isSmallest() ) {
-				int N = o.points.size();
-
-				if( N <= desiredCount ) {
-					for (int j = 0; j < o.points.size; j++) {
-						Point3D_F64 p = o.points.get(j).getUserData();
-						output.add(p);
-					}
-				} else {
-					shuffleList.clear();
-					for (int j = 0; j < N; j++) {
-						shuffleList.add((Point3D_F64)o.points.get(j).getUserData());
-					}
-					Collections.shuffle(shuffleList,rand);
-					for (int j = 0; j < desiredCount; j++) {
-						output.add(shuffleList.get(j));
-					}
+		// the octree's smallest nodes need to be the desired width.  If the cloud is too large for that
+		// then the smallest nodes will be larger
+		int size = Math.max(1,Math.max(sizeX,Math.max(sizeY,sizeZ)));
+		int depth = 1;
+		while( depth < LinearOctree_F64.MAX_DEPTH && (1 << depth) < size )
+			depth++;
+		double width = Math.max(desiredWidth,bounds.getLengthX()/(1 << depth));
+		width = Math.max(width,bounds.getLengthY()/(1 << depth));
+		width = Math.max(width,bounds.getLengthZ()/(1 << depth));
+
+		cube.p0.set(bounds.p0);
+		cube.p1.x = bounds.p0.x + width*(1 << depth);
+		cube.p1.y = bounds.p0.y + width*(1 << depth);
+		cube.p1.z = bounds.p0.z + width*(1 << depth);
+
+		if( octree == null || octree.getTree().maxDepth != depth )
+			octree = new ConstructLinearOctreeNumPoints_F64(0,depth);
+		octree.initialize(cube);
+		octree.addPoints(input);
+		octree.construct();
+
+		LinearOctree_F64 tree = octree.getTree();
+		leafs.reset();
+		tree.findLeafs(leafs);
+
+		// Go through each leaf and only grab up to N points
+		for (int i = 0; i < leafs.size; i++) {
+			int node = leafs.get(i);
+			int start = tree.getPointStart(node);
+			int N = tree.getPointCount(node);
+
+			if( N <= desiredCount ) {
+				for (int j = 0; j < N; j++) {
+					output.add(input.get(tree.getOriginalIndex(start+j)));
+				}
+			} else {
+				shuffleList.clear();
+				for (int j = 0; j < N; j++) {
+					shuffleList.add(input.get(tree.getOriginalIndex(start+j)));
+				}
+				Collections.shuffle(shuffleList,rand);
+				for (int j = 0; j < desiredCount; j++) {
+					output.add(shuffleList.get(j));
 				}
 			}
 		}
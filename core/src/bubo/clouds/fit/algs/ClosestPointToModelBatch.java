@@ -0,0 +1,43 @@
+/*
+ * Copyright (c) 2013-2014, Peter Abeles. All Rights Reserved.
+ *
+ * This file is part of Project BUBO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package bubo.clouds.fit.algs;
+
+import georegression.struct.GeoTuple;
+
+import java.util.List;
+
+/**
+ * Extension of {@link ClosestPointToModel} where the closest points to a set of points are all found at once.
+ * Allows implementations to process the points concurrently.
+ *
+ * @author Peter Abeles
+ */
+public interface ClosestPointToModelBatch<T extends GeoTuple> extends ClosestPointToModel<T> {
+
+	/**
+	 * Searches the model for the closest point to each point in the list.  Results must be the same as
+	 * calling {@link #findClosestPoint} on each point in order.
+	 *
+	 * @param targets The points whose closest point on the model is being searched for
+	 * @param matches (Output) Closest model point for each target, null if none was found.  Cleared then filled
+	 *                so that it has the same size as targets.
+	 */
+	public void findClosestPoints(List<T> targets, List<T> matches);
+}
@@ -57,6 +57,10 @@ public class IterativeClosestPoint<SE extends InvertibleTransform, P extends Geo
 	private double foundError;
 
 	private ClosestPointToModel<P> model;
+	// if not null then the model can find all the closest points at once
+	private ClosestPointToModelBatch<P> modelBatch;
+	// storage for the closest point to each point when the batch model is used
+	private List<P> batchMatches = new ArrayList<P>();
 	private MotionTransformPoint<SE, P> motion;
 
 	// transform from the original point location to their current one
@@ -87,10 +91,12 @@ public class IterativeClosestPoint<SE extends InvertibleTransform, P extends Geo
 	}
 
 	/**
-	 * The model that the input points is being fitted against.
+	 * The model that the input points is being fitted against.  If it implements {@link ClosestPointToModelBatch}
+	 * then the closest points are all found at once.
 	 */
 	public void setModel(ClosestPointToModel model) {
 		this.model = model;
+		this.modelBatch = model instanceof ClosestPointToModelBatch ? (ClosestPointToModelBatch) model : null;
 	}
 
 	/**
@@ -116,15 +122,26 @@ public class IterativeClosestPoint<SE extends InvertibleTransform, P extends Geo
 			// find correspondences
 			modelPts.clear();
 			dstPts.clear();
-			for (P p : points) {
-				P match = model.findClosestPoint(p);
-				if (match != null) {
-					modelPts.add(p);
-					dstPts.add(match);
+			if (modelBatch != null) {
+				modelBatch.findClosestPoints(points, batchMatches);
+				for (int i = 0; i < points.size(); i++) {
+					P match = batchMatches.get(i);
+					if (match != null) {
+						modelPts.add(points.get(i));
+						dstPts.add(match);
+					}
+				}
+			} else {
+				for (P p : points) {
+					P match = model.findClosestPoint(p);
+					if (match != null) {
+						modelPts.add(p);
+						dstPts.add(match);
+					}
 				}
 			}
 
-			totalMatched = points.size();
+			totalMatched = modelPts.size();
 
 			// from the optimal transform
 			if( !motion.process(modelPts, dstPts) ) {
@@ -144,8 +161,9 @@ public class IterativeClosestPoint<SE extends InvertibleTransform, P extends Geo
 				first = false;
 				foundModelToPoints.set(motion.getTransformSrcToDst());
 			} else {
-				// the returned transform is the result of the sequence of transforms.
-				foundModelToPoints = (SE) motion.getTransformSrcToDst().concat(foundModelToPoints, null);
+				// the returned transform is the result of the sequence of transforms.  The most recent
+				// motion is applied last
+				foundModelToPoints = (SE) foundModelToPoints.concat(motion.getTransformSrcToDst(), null);
 			}
 
 			// compute mean squared error
@@ -0,0 +1,66 @@
+/*
+ * Copyright (c) 2013-2014, Peter Abeles. All Rights Reserved.
+ *
+ * This file is part of Project BUBO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package bubo.clouds.fit.algs;
+
+/**
+ * Robust kernels used to weight residuals when iteratively reweighted least-squares is used to reduce the
+ * influence of outliers.  Each kernel is parametrized by a threshold which has the same units as the residual.
+ *
+ * @author Peter Abeles
+ */
+public enum RobustKernel {
+	/**
+	 * All residuals have the same weight.  Equivalent to ordinary least-squares.
+	 */
+	NONE,
+	/**
+	 * Huber kernel.  Quadratic for residuals with a magnitude less than the threshold and linear beyond.
+	 */
+	HUBER,
+	/**
+	 * Tukey's biweight kernel.  Residuals with a magnitude larger than the threshold have a weight of zero.
+	 */
+	TUKEY;
+
+	/**
+	 * Computes the weight of a residual
+	 *
+	 * @param residual The residual
+	 * @param threshold Kernel's threshold.  Must be more than zero.
+	 * @return weight from 0 to 1
+	 */
+	public double weight(double residual, double threshold) {
+		double a = Math.abs(residual);
+		switch (this) {
+			case HUBER:
+				return a <= threshold ? 1.0 : threshold / a;
+
+			case TUKEY:
+				if (a >= threshold)
+					return 0;
+				double u = residual / threshold;
+				double v = 1.0 - u * u;
+				return v * v;
+
+			default:
+				return 1.0;
+		}
+	}
+}
@@ -0,0 +1,338 @@
+/*
+ * Copyright (c) 2013-2014, Peter Abeles. All Rights Reserved.
+ *
+ * This file is part of Project BUBO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package bubo.clouds.fit.algs;
+
+import bubo.construct.PackedKeyHashMap_I32;
+import georegression.struct.point.Point3D_F64;
+import org.ddogleg.struct.GrowQueue_F64;
+import org.ddogleg.struct.GrowQueue_I32;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Stack;
+
+/**
+ * <p>
+ * Point cloud composed of a sliding window of scans which can be searched for the closest point.  Points are
+ * stored in a sparse grid of cubical cells which is indexed using a {@link PackedKeyHashMap_I32}.  Adding a scan only requires
+ * work proportional to the number of points in the scan and the oldest scan can be removed in time proportional
+ * to the number of cells it touched, making it suitable for a local map which is updated every frame.
+ * </p>
+ *
+ * <p>
+ * Searches are exact.  They examine all the cells which could contain a point within the maximum distance, so the
+ * cell width should be about the same as the maximum distance.  Cell coordinates wrap around after 2<sup>21</sup>
+ * cells along an axis, which only reduces efficiency.  Points are copied into the grid and the memory of removed
+ * scans and cells is recycled.
+ * </p>
+ *
+ * @author Peter Abeles
+ */
+public class SlidingWindowPointGrid3D implements ClosestPointToModel<Point3D_F64> {
+
+	// width of a cell
+	double cellWidth;
+	// maximum distance for ClosestPointToModel.  Euclidean squared
+	double maxDistanceSq;
+
+	// cells which contain points and a look up table from each cell's key to its index
+	List<Cell> cells = new ArrayList<Cell>();
+	PackedKeyHashMap_I32 table = new PackedKeyHashMap_I32(6);
+
+	// scans which are in the grid.  The oldest is first
+	ArrayDeque<Scan> scans = new ArrayDeque<Scan>();
+
+	// recycled data
+	Stack<Cell> unusedCells = new Stack<Cell>();
+	Stack<Scan> unusedScans = new Stack<Scan>();
+
+	// storage for the closest point
+	double closest[] = new double[3];
+	Point3D_F64 closestPoint = new Point3D_F64();
+
+	/**
+	 * Specifies the grid's configuration
+	 *
+	 * @param cellWidth Width of each cell.  Should be about the same as the maximum search distance.
+	 * @param maxDistance Maximum distance used by {@link #findClosestPoint(georegression.struct.point.Point3D_F64)}.
+	 */
+	public SlidingWindowPointGrid3D(double cellWidth, double maxDistance) {
+		if (cellWidth <= 0)
+			throw new IllegalArgumentException("cellWidth must be more than zero");
+		this.cellWidth = cellWidth;
+		this.maxDistanceSq = maxDistance * maxDistance;
+	}
+
+	/**
+	 * Removes all scans
+	 */
+	public void reset() {
+		while (!scans.isEmpty()) {
+			removeOldestScan();
+		}
+	}
+
+	/**
+	 * Adds a scan to the grid.  The scan will be the most recent one.
+	 *
+	 * @param points Points in the scan.  Copied.
+	 */
+	public void addScan(List<Point3D_F64> points) {
+		Scan scan = unusedScans.isEmpty() ? new Scan() : unusedScans.pop();
+		scan.reset();
+
+		for (int i = 0; i < points.size(); i++) {
+			Point3D_F64 p = points.get(i);
+			Cell cell = lookupCell(cell(p.x), cell(p.y), cell(p.z), true);
+
+			// keep track of which cells the scan has points inside of
+			if (cell.lastScan != scan) {
+				cell.lastScan = scan;
+				cell.lastScanIndex = scan.cells.size();
+				scan.cells.add(cell);
+				scan.counts.add(0);
+			}
+			scan.counts.data[cell.lastScanIndex]++;
+
+			cell.points.add(p.x);
+			cell.points.add(p.y);
+			cell.points.add(p.z);
+		}
+		scan.totalPoints = points.size();
+
+		scans.addLast(scan);
+	}
+
+	/**
+	 * Removes the oldest scan from the grid.  Does nothing if there are no scans.
+	 */
+	public void removeOldestScan() {
+		if (scans.isEmpty())
+			return;
+
+		Scan scan = scans.removeFirst();
+
+		// since scans are removed in the order they are added, the scan's points are at the start of each cell
+		for (int i = 0; i < scan.cells.size(); i++) {
+			Cell cell = scan.cells.get(i);
+			cell.removeFirst(scan.counts.data[i]);
+			if (cell.lastScan == scan)
+				cell.lastScan = null;
+
+			if (cell.size() == 0) {
+				removeCell(cell);
+			}
+		}
+
+		scan.reset();
+		unusedScans.push(scan);
+	}
+
+	/**
+	 * Searches for the closest point to the target
+	 *
+	 * @param x Target x-coordinate
+	 * @param y Target y-coordinate
+	 * @param z Target z-coordinate
+	 * @param maxDistanceSq Maximum distance the point can be from the target.  Euclidean squared.
+	 * @param output (Output) Location of the closest point
+	 * @return true if a point was found
+	 */
+	public boolean findClosest(double x, double y, double z, double maxDistanceSq, double[] output) {
+		int cx = cell(x);
+		int cy = cell(y);
+		int cz = cell(z);
+		int r = (int) Math.ceil(Math.sqrt(maxDistanceSq) / cellWidth);
+
+		boolean found = false;
+		double best = maxDistanceSq;
+
+		for (int i = -r; i <= r; i++) {
+			for (int j = -r; j <= r; j++) {
+				for (int k = -r; k <= r; k++) {
+					Cell cell = lookupCell(cx + i, cy + j, cz + k, false);
+					if (cell == null)
+						continue;
+
+					double[] d = cell.points.data;
+					for (int index = cell.start; index < cell.points.size; index += 3) {
+						double dx = d[index] - x;
+						double dy = d[index + 1] - y;
+						double dz = d[index + 2] - z;
+						double distance = dx * dx + dy * dy + dz * dz;
+						if (distance <= best) {
+							best = distance;
+							found = true;
+							output[0] = d[index];
+							output[1] = d[index + 1];
+							output[2] = d[index + 2];
+						}
+					}
+				}
+			}
+		}
+
+		return found;
+	}
+
+	/**
+	 * Returns the closest point within the maximum distance specified in the constructor.
+	 */
+	@Override
+	public Point3D_F64 findClosestPoint(Point3D_F64 target) {
+		if (!findClosest(target.x, target.y, target.z, maxDistanceSq, closest))
+			return null;
+
+		closestPoint.set(closest[0], closest[1], closest[2]);
+		return closestPoint;
+	}
+
+	/**
+	 * Number of scans inside the grid
+	 */
+	public int getNumberOfScans() {
+		return scans.size();
+	}
+
+	/**
+	 * Total number of points inside the grid
+	 */
+	public int getNumberOfPoints() {
+		int total = 0;
+		for (Scan s : scans) {
+			total += s.totalPoints;
+		}
+		return total;
+	}
+
+	/**
+	 * Number of cells which contain at least one point
+	 */
+	public int getNumberOfCells() {
+		return cells.size();
+	}
+
+	public double getCellWidth() {
+		return cellWidth;
+	}
+
+	private int cell(double value) {
+		return (int) Math.floor(value / cellWidth);
+	}
+
+	/**
+	 * Finds the cell at the specified coordinate
+	 *
+	 * @param create If true and the cell doesn't exist then it's created
+	 * @return The cell or null if it doesn't exist
+	 */
+	private Cell lookupCell(int x, int y, int z, boolean create) {
+		long key = PackedKeyHashMap_I32.key(x, y, z);
+		int index = table.get(key);
+		if (index >= 0)
+			return cells.get(index);
+
+		if (!create)
+			return null;
+
+		Cell cell = unusedCells.isEmpty() ? new Cell() : unusedCells.pop();
+		cell.key = key;
+		cell.index = cells.size();
+		cells.add(cell);
+		table.put(key, cell.index);
+		return cell;
+	}
+
+	/**
+	 * Removes the cell from the hash table.  The last cell is moved into its place in the list of cells.
+	 */
+	private void removeCell(Cell cell) {
+		table.remove(cell.key);
+
+		Cell last = cells.remove(cells.size() - 1);
+		if (last != cell) {
+			last.index = cell.index;
+			cells.set(last.index, last);
+			table.put(last.key, last.index);
+		}
+
+		cell.reset();
+		unusedCells.push(cell);
+	}
+
+	/**
+	 * Cubical region in space and the points inside of it
+	 */
+	protected static class Cell {
+		long key;
+		// index of the cell in the list of cells
+		int index;
+		// packed (x,y,z).  Points before start have been removed
+		GrowQueue_F64 points = new GrowQueue_F64();
+		int start;
+
+		// the most recent scan which added points to the cell and the cell's index in that scan
+		Scan lastScan;
+		int lastScanIndex;
+
+		public int size() {
+			return (points.size - start) / 3;
+		}
+
+		/**
+		 * Removes the first N points
+		 */
+		public void removeFirst(int N) {
+			start += N * 3;
+			if (start == points.size) {
+				points.reset();
+				start = 0;
+			} else if (start > points.size / 2) {
+				// shift the remaining points to the front of the array
+				int length = points.size - start;
+				System.arraycopy(points.data, start, points.data, 0, length);
+				points.size = length;
+				start = 0;
+			}
+		}
+
+		public void reset() {
+			points.reset();
+			start = 0;
+			lastScan = null;
+		}
+	}
+
+	/**
+	 * The cells a scan has points in and how many points are in each cell
+	 */
+	protected static class Scan {
+		List<Cell> cells = new ArrayList<Cell>();
+		GrowQueue_I32 counts = new GrowQueue_I32();
+		int totalPoints;
+
+		public void reset() {
+			cells.clear();
+			counts.reset();
+			totalPoints = 0;
+		}
+	}
+}
@@ -19,7 +19,7 @@
 package bubo.clouds.fit.c2c;
 
 import bubo.clouds.fit.MatchCloudToCloud;
-import bubo.clouds.fit.algs.ClosestPointToModel;
+import bubo.clouds.fit.algs.ClosestPointToModelBatch;
 import bubo.clouds.fit.algs.IterativeClosestPoint;
 import bubo.struct.StoppingCondition;
 import georegression.fitting.MotionTransformPoint;
@@ -33,18 +33,35 @@ import georegression.struct.se.Se2_F64;
 import georegression.struct.se.Se3_F64;
 import org.ddogleg.nn.NearestNeighbor;
 import org.ddogleg.nn.NnData;
+import org.ddogleg.nn.alg.AxisSplitRuleMax;
+import org.ddogleg.nn.alg.AxisSplitterMedian;
+import org.ddogleg.nn.alg.KdTree;
+import org.ddogleg.nn.alg.KdTreeConstructor;
+import org.ddogleg.nn.alg.KdTreeMemory;
+import org.ddogleg.nn.alg.KdTreeSearch1;
+import org.ddogleg.nn.alg.KdTreeSearch1Standard;
 import org.ddogleg.struct.FastQueue;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 /**
  * Abstract implementation of ICP for point cloud fitting using an
  * {@link georegression.struct.InvertibleTransform arbitrary transform}.
  *
+ * The closest point search can optionally be done concurrently by specifying a thread pool, see
+ * {@link #setThreadPool}.  The destination points are then put into a single kd-tree which is shared by all the
+ * workers, each of which has its own search.  Source points are split into contiguous blocks, so the found
+ * transform is independent of the number of threads.
+ *
  * @see bubo.clouds.fit.algs.IterativeClosestPoint
  *
  * @author Peter Abeles
  */
+@SuppressWarnings("unchecked")
 public abstract class MatchCloudToCloudIcp<SE extends InvertibleTransform, P extends GeoTuple_F64>
 		implements MatchCloudToCloud<SE, P>
 {
@@ -60,6 +77,8 @@ public abstract class MatchCloudToCloudIcp<SE extends InvertibleTransform, P ext
 
 	// the actual ICP algorithm
 	IterativeClosestPoint<SE,P> icp;
+	// finds the closest points for ICP
+	Model model = new Model();
 
 	// storage for source points
 	FastQueue<double[]> pointsDst;
@@ -70,6 +89,19 @@ public abstract class MatchCloudToCloudIcp<SE extends InvertibleTransform, P ext
 	// total number of matched points
 	int totalMatched;
 
+	// if not null then the closest point search is done concurrently
+	ExecutorService threadPool;
+	// finds the closest points in a block of source points
+	List<Worker> workers = new ArrayList<Worker>();
+	List<Future<?>> futures = new ArrayList<Future<?>>();
+
+	// kd-tree containing the destination points which is shared by the workers.  Only used with a thread pool
+	KdTreeMemory memory = new KdTreeMemory();
+	KdTreeConstructor<P> constructor;
+	KdTree tree;
+	// search used for individual points when there is a thread pool
+	KdTreeSearch1 search = new KdTreeSearch1Standard();
+
 	/**
 	 * Configures ICP
 	 *
@@ -85,8 +117,10 @@ public abstract class MatchCloudToCloudIcp<SE extends InvertibleTransform, P ext
 		this.maxDistanceSq = maxDistanceSq;
 		this.nn = nn;
 		this.dimen = dimen;
+		constructor = new KdTreeConstructor<P>(memory, dimen, new AxisSplitterMedian<P>(new AxisSplitRuleMax()));
+		search.setMaxDistance(maxDistanceSq);
 		icp = new IterativeClosestPoint<SE, P>(stop,motion);
-		icp.setModel(new Model());
+		icp.setModel(model);
 
 		pointsDst = new FastQueue<double[]>(double[].class,true ) {
 			@Override
@@ -111,8 +145,20 @@ public abstract class MatchCloudToCloudIcp<SE extends InvertibleTransform, P ext
 			assign(destination.get(i), pointsDst.grow());
 		}
 
-		nn.init(dimen);
-		nn.setPoints(pointsDst.toList(),destination);
+		List<double[]> list = pointsDst.toList();
+		if (threadPool == null) {
+			nn.init(dimen);
+			nn.setPoints(list, destination);
+		} else {
+			// one tree is built and searched by all the workers
+			if (tree != null)
+				memory.recycleGraph(tree);
+			tree = constructor.construct(list, destination);
+			search.setTree(tree);
+			for (int i = 0; i < workers.size(); i++) {
+				workers.get(i).search.setTree(tree);
+			}
+		}
 	}
 
 	@Override
@@ -125,7 +171,48 @@ public abstract class MatchCloudToCloudIcp<SE extends InvertibleTransform, P ext
 		return icp.getPointsToModel();
 	}
 
-	private class Model implements ClosestPointToModel<P> {
+	/**
+	 * Specifies the thread pool used to find the closest points concurrently.  The destination points are put
+	 * into a kd-tree which all the workers search, instead of the Nearest-Neighbor search passed to the
+	 * constructor.  Must be called before {@link #setDestination}.
+	 *
+	 * @param threadPool Thread pool.  If null then the search is done sequentially.
+	 * @param numThreads Number of workers the search is split between.  Ignored if threadPool is null.
+	 */
+	public void setThreadPool(ExecutorService threadPool, int numThreads) {
+		this.threadPool = threadPool;
+		workers.clear();
+		if (tree != null) {
+			memory.recycleGraph(tree);
+			tree = null;
+		}
+		if (threadPool != null) {
+			if (numThreads <= 0)
+				throw new IllegalArgumentException("numThreads must be more than zero");
+			for (int i = 0; i < numThreads; i++) {
+				workers.add(new Worker());
+			}
+		}
+	}
+
+	public ExecutorService getThreadPool() {
+		return threadPool;
+	}
+
+	private void waitForWorkers() {
+		for (int i = 0; i < futures.size(); i++) {
+			try {
+				futures.get(i).get();
+			} catch (InterruptedException e) {
+				throw new RuntimeException(e);
+			} catch (ExecutionException e) {
+				throw new RuntimeException(e.getCause());
+			}
+		}
+		futures.clear();
+	}
+
+	class Model implements ClosestPointToModelBatch<P> {
 
 		double srcPt[] = new double[3];
 
@@ -133,12 +220,84 @@ public abstract class MatchCloudToCloudIcp<SE extends InvertibleTransform, P ext
 		public P findClosestPoint(P target) {
 			assign(target, srcPt);
 
+			if (threadPool != null) {
+				if (tree == null)
+					throw new IllegalArgumentException("The destination must be set after the thread pool");
+				KdTree.Node found = search.findNeighbor(srcPt);
+				return found == null ? null : (P) found.data;
+			}
+
 			if( nn.findNearest(srcPt, maxDistanceSq, storageNN) ) {
 				return storageNN.data;
 			} else {
 				return null;
 			}
 		}
+
+		@Override
+		public void findClosestPoints(List<P> targets, List<P> matches) {
+			int N = targets.size();
+
+			matches.clear();
+			for (int i = 0; i < N; i++) {
+				matches.add(null);
+			}
+
+			if (threadPool == null) {
+				for (int i = 0; i < N; i++) {
+					matches.set(i, findClosestPoint(targets.get(i)));
+				}
+				return;
+			}
+			if (tree == null)
+				throw new IllegalArgumentException("The destination must be set after the thread pool");
+
+			// split the points into contiguous blocks.  Each worker writes to its own part of the output
+			int numWorkers = workers.size();
+			for (int i = 0; i < numWorkers; i++) {
+				Worker w = workers.get(i);
+				w.setSearch(targets, matches, (int) ((long) N * i / numWorkers), (int) ((long) N * (i + 1) / numWorkers));
+				futures.add(threadPool.submit(w));
+			}
+			waitForWorkers();
+		}
+	}
+
+	/**
+	 * Finds the closest points for a block of source points.  Has its own search of the shared kd-tree.
+	 */
+	private class Worker implements Runnable {
+		KdTreeSearch1 search = new KdTreeSearch1Standard();
+		double srcPt[] = new double[3];
+
+		// input for the search
+		List<P> targets;
+		List<P> matches;
+		int start, end;
+
+		private Worker() {
+			search.setMaxDistance(maxDistanceSq);
+		}
+
+		void setSearch(List<P> targets, List<P> matches, int start, int end) {
+			this.targets = targets;
+			this.matches = matches;
+			this.start = start;
+			this.end = end;
+		}
+
+		@Override
+		public void run() {
+			for (int i = start; i < end; i++) {
+				assign(targets.get(i), srcPt);
+				KdTree.Node found = search.findNeighbor(srcPt);
+				if (found != null) {
+					matches.set(i, (P) found.data);
+				}
+			}
+			targets = null;
+			matches = null;
+		}
 	}
 
 	@Override
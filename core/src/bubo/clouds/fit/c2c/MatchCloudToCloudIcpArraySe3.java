@@ -0,0 +1,371 @@
+/*
+ * Copyright (c) 2013-2014, Peter Abeles. All Rights Reserved.
+ *
+ * This file is part of Project BUBO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package bubo.clouds.fit.c2c;
+
+import bubo.clouds.fit.MatchCloudToCloud;
+import bubo.struct.StoppingCondition;
+import georegression.struct.point.Point3D_F64;
+import georegression.struct.se.Se3_F64;
+import org.ddogleg.nn.NearestNeighbor;
+import org.ddogleg.nn.NnData;
+import org.ddogleg.struct.FastQueue;
+import org.ddogleg.struct.GrowQueue_F64;
+import org.ejml.data.DMatrixRMaj;
+import org.ejml.dense.row.CommonOps_DDRM;
+import org.ejml.dense.row.SingularOps_DDRM;
+import org.ejml.dense.row.factory.DecompositionFactory_DDRM;
+import org.ejml.interfaces.decomposition.SingularValueDecomposition_F64;
+
+import java.util.List;
+
+/**
+ * <p>
+ * Implementation of 3D rigid body ICP which stores points in primitive arrays instead of lists of point objects.
+ * Source points and matched pairs are stored as separate x, y, and z arrays which are recycled between calls,
+ * the motion is estimated directly from the arrays using the same SVD approach as
+ * {@link georegression.fitting.se.MotionSe3PointSVD_F64}, and the transform is accumulated in place.  After the
+ * first call with a cloud of a similar size, no new memory is declared while processing.
+ * </p>
+ *
+ * <p>
+ * Produces the same results as {@link MatchCloudToCloudIcp.SE3} but the input source list is not modified since
+ * the points are copied internally.
+ * </p>
+ *
+ * @author Peter Abeles
+ */
+public class MatchCloudToCloudIcpArraySe3 implements MatchCloudToCloud<Se3_F64, Point3D_F64> {
+
+	// Nearest-neighbor algorithm
+	NearestNeighbor<Point3D_F64> nn;
+	// maximum distance apart two points can be.  Euclidean squared
+	double maxDistanceSq;
+	// storage for NN results
+	NnData<Point3D_F64> storageNN = new NnData<Point3D_F64>();
+	double query[] = new double[3];
+	double match[] = new double[3];
+
+	// stopping condition
+	StoppingCondition stop;
+
+	// storage for destination points
+	FastQueue<double[]> pointsDst = new FastQueue<double[]>(double[].class, true) {
+		@Override
+		protected double[] createInstance() {
+			return new double[3];
+		}
+	};
+
+	// source points in their current location
+	GrowQueue_F64 srcX = new GrowQueue_F64();
+	GrowQueue_F64 srcY = new GrowQueue_F64();
+	GrowQueue_F64 srcZ = new GrowQueue_F64();
+
+	// index of matched source points and the location of the point in the destination they were matched to
+	int matchedIndex[] = new int[0];
+	double matchedX[] = new double[0];
+	double matchedY[] = new double[0];
+	double matchedZ[] = new double[0];
+	// total number of matched points
+	int totalMatched;
+
+	// estimates the motion from matched pairs
+	SingularValueDecomposition_F64<DMatrixRMaj> svd = DecompositionFactory_DDRM.svd(3, 3, true, true, false);
+	DMatrixRMaj sigma = new DMatrixRMaj(3, 3);
+	DMatrixRMaj U = new DMatrixRMaj(3, 3);
+	DMatrixRMaj V = new DMatrixRMaj(3, 3);
+
+	// motion found in the most recent iteration
+	Se3_F64 motion = new Se3_F64();
+	// the transform from the original source location to the current one
+	Se3_F64 found = new Se3_F64();
+	Se3_F64 work = new Se3_F64();
+
+	// the mean squared error
+	double foundError;
+
+	/**
+	 * Configures ICP
+	 *
+	 * @param nn Nearest-Neighbor search
+	 * @param maxDistanceSq Maximum distance between two paired points. Euclidean squared
+	 * @param stop Stopping criteria for ICP iterations
+	 */
+	public MatchCloudToCloudIcpArraySe3(NearestNeighbor<Point3D_F64> nn, double maxDistanceSq, StoppingCondition stop) {
+		this(maxDistanceSq, stop);
+		this.nn = nn;
+	}
+
+	/**
+	 * Constructor for child classes which provide their own closest point search by overriding
+	 * {@link #setDestination} and {@link #findClosest}.
+	 */
+	protected MatchCloudToCloudIcpArraySe3(double maxDistanceSq, StoppingCondition stop) {
+		this.maxDistanceSq = maxDistanceSq;
+		this.stop = stop.copy();
+	}
+
+	@Override
+	public void setSource(List<Point3D_F64> source) {
+		int N = source.size();
+		srcX.resize(N);
+		srcY.resize(N);
+		srcZ.resize(N);
+		for (int i = 0; i < N; i++) {
+			Point3D_F64 p = source.get(i);
+			srcX.data[i] = p.x;
+			srcY.data[i] = p.y;
+			srcZ.data[i] = p.z;
+		}
+
+		if (matchedIndex.length < N) {
+			matchedIndex = new int[N];
+			matchedX = new double[N];
+			matchedY = new double[N];
+			matchedZ = new double[N];
+		}
+	}
+
+	@Override
+	public void setDestination(List<Point3D_F64> destination) {
+		pointsDst.reset();
+		for (int i = 0; i < destination.size(); i++) {
+			Point3D_F64 p = destination.get(i);
+			double[] d = pointsDst.grow();
+			d[0] = p.x;
+			d[1] = p.y;
+			d[2] = p.z;
+		}
+
+		nn.init(3);
+		nn.setPoints(pointsDst.toList(), destination);
+	}
+
+	@Override
+	public boolean compute() {
+		found.reset();
+		totalMatched = 0;
+		if (srcX.size == 0)
+			return false;
+
+		boolean first = true;
+		stop.reset();
+		while (true) {
+			findCorrespondences();
+
+			if (totalMatched < 3)
+				return false;
+
+			estimateMotion();
+			transformSource();
+
+			// sum up all the transforms up to this point
+			if (first) {
+				first = false;
+				found.set(motion);
+			} else {
+				found.concat(motion, work);
+				Se3_F64 tmp = found;
+				found = work;
+				work = tmp;
+			}
+
+			foundError = computeMeanSquaredError();
+
+			if (stop.isFinished(foundError))
+				break;
+		}
+
+		return true;
+	}
+
+	/**
+	 * Matches each source point to its closest point in the destination
+	 */
+	private void findCorrespondences() {
+		totalMatched = 0;
+		for (int i = 0; i < srcX.size; i++) {
+			query[0] = srcX.data[i];
+			query[1] = srcY.data[i];
+			query[2] = srcZ.data[i];
+
+			if (findClosest(query, match)) {
+				matchedIndex[totalMatched] = i;
+				matchedX[totalMatched] = match[0];
+				matchedY[totalMatched] = match[1];
+				matchedZ[totalMatched] = match[2];
+				totalMatched++;
+			}
+		}
+	}
+
+	/**
+	 * Searches for the closest destination point which is within the maximum distance
+	 *
+	 * @param query (Input) Location of the source point
+	 * @param match (Output) Location of the closest destination point
+	 * @return true if a destination point was found
+	 */
+	protected boolean findClosest(double[] query, double[] match) {
+		if (!nn.findNearest(query, maxDistanceSq, storageNN))
+			return false;
+
+		double[] d = storageNN.point;
+		match[0] = d[0];
+		match[1] = d[1];
+		match[2] = d[2];
+		return true;
+	}
+
+	/**
+	 * Finds the rigid body motion which minimizes the distance between matched points
+	 */
+	private void estimateMotion() {
+		final int N = totalMatched;
+
+		// find the mean of both sets of points
+		double meanSrcX = 0, meanSrcY = 0, meanSrcZ = 0;
+		double meanDstX = 0, meanDstY = 0, meanDstZ = 0;
+		for (int i = 0; i < N; i++) {
+			int index = matchedIndex[i];
+			meanSrcX += srcX.data[index];
+			meanSrcY += srcY.data[index];
+			meanSrcZ += srcZ.data[index];
+			meanDstX += matchedX[i];
+			meanDstY += matchedY[i];
+			meanDstZ += matchedZ[i];
+		}
+		meanSrcX /= N;
+		meanSrcY /= N;
+		meanSrcZ /= N;
+		meanDstX /= N;
+		meanDstY /= N;
+		meanDstZ /= N;
+
+		// compute the cross-covariance matrix of the two sets of points
+		double m11 = 0, m12 = 0, m13 = 0;
+		double m21 = 0, m22 = 0, m23 = 0;
+		double m31 = 0, m32 = 0, m33 = 0;
+		for (int i = 0; i < N; i++) {
+			int index = matchedIndex[i];
+			double dsx = srcX.data[index] - meanSrcX;
+			double dsy = srcY.data[index] - meanSrcY;
+			double dsz = srcZ.data[index] - meanSrcZ;
+			double ddx = matchedX[i] - meanDstX;
+			double ddy = matchedY[i] - meanDstY;
+			double ddz = matchedZ[i] - meanDstZ;
+
+			m11 += ddx * dsx;
+			m12 += ddx * dsy;
+			m13 += ddx * dsz;
+			m21 += ddy * dsx;
+			m22 += ddy * dsy;
+			m23 += ddy * dsz;
+			m31 += ddz * dsx;
+			m32 += ddz * dsy;
+			m33 += ddz * dsz;
+		}
+
+		sigma.data[0] = m11;
+		sigma.data[1] = m12;
+		sigma.data[2] = m13;
+		sigma.data[3] = m21;
+		sigma.data[4] = m22;
+		sigma.data[5] = m23;
+		sigma.data[6] = m31;
+		sigma.data[7] = m32;
+		sigma.data[8] = m33;
+
+		if (!svd.decompose(sigma))
+			throw new RuntimeException("SVD failed!?");
+
+		svd.getU(U, false);
+		svd.getV(V, false);
+		SingularOps_DDRM.descendingOrder(U, false, svd.getSingularValues(), 3, V, false);
+
+		// make sure it's a rotation matrix and not a reflection
+		if (CommonOps_DDRM.det(U) < 0 ^ CommonOps_DDRM.det(V) < 0) {
+			V.data[2] = -V.data[2];
+			V.data[5] = -V.data[5];
+			V.data[8] = -V.data[8];
+		}
+
+		DMatrixRMaj R = motion.getR();
+		CommonOps_DDRM.multTransB(U, V, R);
+
+		double[] r = R.data;
+		motion.T.x = meanDstX - (r[0] * meanSrcX + r[1] * meanSrcY + r[2] * meanSrcZ);
+		motion.T.y = meanDstY - (r[3] * meanSrcX + r[4] * meanSrcY + r[5] * meanSrcZ);
+		motion.T.z = meanDstZ - (r[6] * meanSrcX + r[7] * meanSrcY + r[8] * meanSrcZ);
+	}
+
+	/**
+	 * Applies the most recently found motion to all the source points
+	 */
+	private void transformSource() {
+		double[] r = motion.getR().data;
+		double tx = motion.T.x, ty = motion.T.y, tz = motion.T.z;
+
+		double[] x = srcX.data, y = srcY.data, z = srcZ.data;
+		for (int i = 0; i < srcX.size; i++) {
+			double px = x[i], py = y[i], pz = z[i];
+			x[i] = r[0] * px + r[1] * py + r[2] * pz + tx;
+			y[i] = r[3] * px + r[4] * py + r[5] * pz + ty;
+			z[i] = r[6] * px + r[7] * py + r[8] * pz + tz;
+		}
+	}
+
+	/**
+	 * Mean squared error between the transformed source points and the points they were matched to
+	 */
+	private double computeMeanSquaredError() {
+		double error = 0;
+		for (int i = 0; i < totalMatched; i++) {
+			int index = matchedIndex[i];
+			double dx = srcX.data[index] - matchedX[i];
+			double dy = srcY.data[index] - matchedY[i];
+			double dz = srcZ.data[index] - matchedZ[i];
+			error += dx * dx + dy * dy + dz * dz;
+		}
+		return error / totalMatched;
+	}
+
+	/**
+	 * Mean square error between the matched points after the optimal transformation has been found
+	 */
+	public double getFoundError() {
+		return foundError;
+	}
+
+	@Override
+	public Se3_F64 getSourceToDestination() {
+		return found;
+	}
+
+	@Override
+	public boolean isModifiedSource() {
+		return false;
+	}
+
+	@Override
+	public int getMatchedSourcePoints() {
+		return totalMatched;
+	}
+}
@@ -0,0 +1,329 @@
+/*
+ * Copyright (c) 2013-2014, Peter Abeles. All Rights Reserved.
+ *
+ * This file is part of Project BUBO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package bubo.clouds.fit.c2c;
+
+import bubo.clouds.detect.alg.ApproximateSurfaceNormals;
+import bubo.clouds.detect.alg.PointVectorNN;
+import bubo.clouds.fit.MatchCloudToCloud;
+import bubo.clouds.fit.algs.RobustKernel;
+import bubo.struct.StoppingCondition;
+import georegression.geometry.ConvertRotation3D_F64;
+import georegression.struct.point.Point3D_F64;
+import georegression.struct.point.Vector3D_F64;
+import georegression.struct.se.Se3_F64;
+import org.ddogleg.nn.NearestNeighbor;
+import org.ddogleg.nn.NnData;
+import org.ddogleg.struct.FastQueue;
+import org.ddogleg.struct.GrowQueue_F64;
+import org.ejml.data.DMatrixRMaj;
+import org.ejml.dense.row.CommonOps_DDRM;
+import org.ejml.dense.row.factory.LinearSolverFactory_DDRM;
+import org.ejml.interfaces.linsol.LinearSolverDense;
+
+import java.util.List;
+
+/**
+ * <p>
+ * Point-to-plane ICP for 3D rigid body motion.  Instead of minimizing the distance between matched points, the
+ * distance of each source point from the tangent plane at the matched destination point is minimized.  This
+ * allows points to slide along surfaces and typically converges in far fewer iterations than point-to-point ICP.
+ * Surface normals of the destination cloud are estimated using {@link ApproximateSurfaceNormals} and destination
+ * points without a normal are never matched.
+ * </p>
+ *
+ * <p>
+ * At each iteration the motion is linearized using a small angle approximation and the resulting 6 by 6 system is
+ * solved using weighted linear least-squares.  Optionally a {@link RobustKernel} is used to reweight the residuals
+ * at each iteration, reducing the influence of outliers.  The error passed to the {@link StoppingCondition} is
+ * the mean squared point-to-plane distance.
+ * </p>
+ *
+ * @author Peter Abeles
+ */
+public class MatchCloudToCloudIcpPlaneSe3 implements MatchCloudToCloud<Se3_F64, Point3D_F64> {
+
+	// estimates the surface normal of destination points
+	ApproximateSurfaceNormals surfaceNormals;
+	// destination points and their normals
+	FastQueue<PointVectorNN> pointsNormal = new FastQueue<PointVectorNN>(PointVectorNN.class, false);
+
+	// Nearest-neighbor algorithm
+	NearestNeighbor<PointVectorNN> nn;
+	// maximum distance apart two points can be.  Euclidean squared
+	double maxDistanceSq;
+	// storage for NN results
+	NnData<PointVectorNN> storageNN = new NnData<PointVectorNN>();
+	double query[] = new double[3];
+	// destination points with a valid normal in a format NN understands
+	FastQueue<double[]> pointsDst = new FastQueue<double[]>(double[].class, true) {
+		@Override
+		protected double[] createInstance() {
+			return new double[3];
+		}
+	};
+	FastQueue<PointVectorNN> dataDst = new FastQueue<PointVectorNN>(PointVectorNN.class, false);
+
+	// robust kernel and its threshold
+	RobustKernel kernel;
+	double kernelThreshold;
+
+	// stopping condition
+	StoppingCondition stop;
+
+	// source points in their original location
+	GrowQueue_F64 srcX = new GrowQueue_F64();
+	GrowQueue_F64 srcY = new GrowQueue_F64();
+	GrowQueue_F64 srcZ = new GrowQueue_F64();
+
+	// linear system which is solved for the change in motion
+	DMatrixRMaj A = new DMatrixRMaj(6, 6);
+	DMatrixRMaj B = new DMatrixRMaj(6, 1);
+	DMatrixRMaj X = new DMatrixRMaj(6, 1);
+	LinearSolverDense<DMatrixRMaj> solver = LinearSolverFactory_DDRM.symmPosDef(6);
+	double jacobian[] = new double[6];
+
+	// found transform from source to destination and work space
+	Se3_F64 found = new Se3_F64();
+	Se3_F64 delta = new Se3_F64();
+	Se3_F64 work = new Se3_F64();
+
+	// number of source points matched in the most recent iteration
+	int totalMatched;
+	// mean squared point-to-plane distance
+	double foundError;
+	// number of iterations performed
+	int iterations;
+
+	/**
+	 * Configures ICP
+	 *
+	 * @param surfaceNormals Estimates the surface normal at each destination point
+	 * @param nn Nearest-Neighbor search
+	 * @param maxDistanceSq Maximum distance between two paired points. Euclidean squared
+	 * @param stop Stopping criteria for ICP iterations
+	 * @param kernel Robust kernel used to weight the residuals.
+	 * @param kernelThreshold Threshold for the robust kernel.  Units of distance.  Ignored for {@link RobustKernel#NONE}.
+	 */
+	public MatchCloudToCloudIcpPlaneSe3(ApproximateSurfaceNormals surfaceNormals,
+										NearestNeighbor<PointVectorNN> nn,
+										double maxDistanceSq, StoppingCondition stop,
+										RobustKernel kernel, double kernelThreshold) {
+		if (kernel != RobustKernel.NONE && kernelThreshold <= 0)
+			throw new IllegalArgumentException("kernelThreshold must be more than zero");
+
+		this.surfaceNormals = surfaceNormals;
+		this.nn = nn;
+		this.maxDistanceSq = maxDistanceSq;
+		this.stop = stop.copy();
+		this.kernel = kernel;
+		this.kernelThreshold = kernelThreshold;
+	}
+
+	@Override
+	public void setSource(List<Point3D_F64> source) {
+		int N = source.size();
+		srcX.resize(N);
+		srcY.resize(N);
+		srcZ.resize(N);
+		for (int i = 0; i < N; i++) {
+			Point3D_F64 p = source.get(i);
+			srcX.data[i] = p.x;
+			srcY.data[i] = p.y;
+			srcZ.data[i] = p.z;
+		}
+	}
+
+	@Override
+	public void setDestination(List<Point3D_F64> destination) {
+		pointsNormal.reset();
+		surfaceNormals.process(destination, pointsNormal);
+
+		// only points with a valid normal can be matched
+		pointsDst.reset();
+		dataDst.reset();
+		for (int i = 0; i < pointsNormal.size; i++) {
+			PointVectorNN pv = pointsNormal.get(i);
+			if (pv.normal.normSq() == 0)
+				continue;
+
+			double[] d = pointsDst.grow();
+			d[0] = pv.p.x;
+			d[1] = pv.p.y;
+			d[2] = pv.p.z;
+			dataDst.add(pv);
+		}
+
+		nn.init(3);
+		nn.setPoints(pointsDst.toList(), dataDst.toList());
+	}
+
+	@Override
+	public boolean compute() {
+		found.reset();
+		totalMatched = 0;
+		iterations = 0;
+		if (srcX.size == 0)
+			return false;
+
+		stop.reset();
+		while (true) {
+			if (!constructLinearSystem())
+				return false;
+
+			if (!solver.setA(A))
+				return false;
+			solver.solve(B, X);
+
+			// apply the change in motion after the current estimate
+			computeDelta();
+			found.concat(delta, work);
+			Se3_F64 tmp = found;
+			found = work;
+			work = tmp;
+			iterations++;
+
+			if (stop.isFinished(foundError))
+				break;
+		}
+
+		return true;
+	}
+
+	/**
+	 * Matches each source point to the destination using the current estimate and constructs the normal equations
+	 * for the change in motion.  The unknowns are ordered (rotX, rotY, rotZ, tranX, tranY, tranZ).
+	 *
+	 * @return true if enough points were matched to estimate the motion
+	 */
+	private boolean constructLinearSystem() {
+		A.zero();
+		B.zero();
+		totalMatched = 0;
+		double errorSum = 0;
+
+		double[] r = found.getR().data;
+		Vector3D_F64 t = found.getT();
+
+		for (int i = 0; i < srcX.size; i++) {
+			double sx = srcX.data[i];
+			double sy = srcY.data[i];
+			double sz = srcZ.data[i];
+			double px = r[0] * sx + r[1] * sy + r[2] * sz + t.x;
+			double py = r[3] * sx + r[4] * sy + r[5] * sz + t.y;
+			double pz = r[6] * sx + r[7] * sy + r[8] * sz + t.z;
+
+			query[0] = px;
+			query[1] = py;
+			query[2] = pz;
+
+			if (!nn.findNearest(query, maxDistanceSq, storageNN))
+				continue;
+
+			PointVectorNN match = storageNN.data;
+			Vector3D_F64 n = match.normal;
+
+			// signed distance from the plane
+			double residual = (px - match.p.x) * n.x + (py - match.p.y) * n.y + (pz - match.p.z) * n.z;
+
+			totalMatched++;
+			errorSum += residual * residual;
+
+			double w = kernel.weight(residual, kernelThreshold);
+			if (w == 0)
+				continue;
+
+			// derivative of the residual.  (p cross n, n)
+			jacobian[0] = py * n.z - pz * n.y;
+			jacobian[1] = pz * n.x - px * n.z;
+			jacobian[2] = px * n.y - py * n.x;
+			jacobian[3] = n.x;
+			jacobian[4] = n.y;
+			jacobian[5] = n.z;
+
+			// only the upper triangle is filled in here
+			for (int row = 0; row < 6; row++) {
+				double wj = w * jacobian[row];
+				int index = row * 6;
+				for (int col = row; col < 6; col++) {
+					A.data[index + col] += wj * jacobian[col];
+				}
+				B.data[row] -= wj * residual;
+			}
+		}
+
+		if (totalMatched < 6)
+			return false;
+
+		for (int row = 1; row < 6; row++) {
+			for (int col = 0; col < row; col++) {
+				A.data[row * 6 + col] = A.data[col * 6 + row];
+			}
+		}
+
+		foundError = errorSum / totalMatched;
+		return true;
+	}
+
+	/**
+	 * Converts the solution to the linear system into a rigid body transform
+	 */
+	private void computeDelta() {
+		double rx = X.data[0];
+		double ry = X.data[1];
+		double rz = X.data[2];
+		double theta = Math.sqrt(rx * rx + ry * ry + rz * rz);
+
+		if (theta == 0) {
+			CommonOps_DDRM.setIdentity(delta.getR());
+		} else {
+			ConvertRotation3D_F64.rodriguesToMatrix(rx / theta, ry / theta, rz / theta, theta, delta.getR());
+		}
+		delta.getT().set(X.data[3], X.data[4], X.data[5]);
+	}
+
+	/**
+	 * Mean squared point-to-plane distance of matched points at the start of the most recent iteration
+	 */
+	public double getFoundError() {
+		return foundError;
+	}
+
+	/**
+	 * Number of iterations performed by the most recent call to {@link #compute()}
+	 */
+	public int getIterations() {
+		return iterations;
+	}
+
+	@Override
+	public Se3_F64 getSourceToDestination() {
+		return found;
+	}
+
+	@Override
+	public boolean isModifiedSource() {
+		return false;
+	}
+
+	@Override
+	public int getMatchedSourcePoints() {
+		return totalMatched;
+	}
+}
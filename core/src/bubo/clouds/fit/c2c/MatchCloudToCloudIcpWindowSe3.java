@@ -0,0 +1,111 @@
+/*
+ * Copyright (c) 2013-2014, Peter Abeles. All Rights Reserved.
+ *
+ * This file is part of Project BUBO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package bubo.clouds.fit.c2c;
+
+import bubo.clouds.fit.algs.SlidingWindowPointGrid3D;
+import bubo.struct.StoppingCondition;
+import georegression.struct.point.Point3D_F64;
+
+import java.util.List;
+
+/**
+ * <p>
+ * Variant of {@link MatchCloudToCloudIcpArraySe3} where the destination is a sliding window of scans stored in a
+ * {@link SlidingWindowPointGrid3D}.  New scans can be added to the destination with {@link #addDestination} and
+ * the oldest ones are removed once the window is full.  The cost of updating the destination is proportional to
+ * the number of new points instead of the size of the whole destination cloud, which is intended for odometry
+ * where the destination is the previous few frames or a local map.
+ * </p>
+ *
+ * <p>
+ * {@link #setDestination} discards all previous scans and adds the points as a single scan.
+ * </p>
+ *
+ * @author Peter Abeles
+ */
+public class MatchCloudToCloudIcpWindowSe3 extends MatchCloudToCloudIcpArraySe3 {
+
+	// the destination points
+	SlidingWindowPointGrid3D grid;
+
+	// maximum number of scans in the destination.  if zero there is no limit
+	int windowSize;
+
+	/**
+	 * Configures ICP
+	 *
+	 * @param maxDistance Maximum distance between two paired points. Euclidean.
+	 * @param windowSize Maximum number of scans in the destination.  If zero there is no limit.
+	 * @param stop Stopping criteria for ICP iterations
+	 */
+	public MatchCloudToCloudIcpWindowSe3(double maxDistance, int windowSize, StoppingCondition stop) {
+		super(maxDistance * maxDistance, stop);
+		if (windowSize < 0)
+			throw new IllegalArgumentException("windowSize can't be negative");
+		this.windowSize = windowSize;
+		this.grid = new SlidingWindowPointGrid3D(maxDistance, maxDistance);
+	}
+
+	/**
+	 * Discards all the scans in the destination and adds the points as a single scan
+	 */
+	@Override
+	public void setDestination(List<Point3D_F64> destination) {
+		grid.reset();
+		grid.addScan(destination);
+	}
+
+	/**
+	 * Adds a scan to the destination.  If the window is full then the oldest scan is removed.
+	 *
+	 * @param scan Points in the scan.  Copied.
+	 */
+	public void addDestination(List<Point3D_F64> scan) {
+		grid.addScan(scan);
+		if (windowSize > 0) {
+			while (grid.getNumberOfScans() > windowSize) {
+				grid.removeOldestScan();
+			}
+		}
+	}
+
+	/**
+	 * Removes the oldest scan from the destination
+	 */
+	public void removeOldestDestination() {
+		grid.removeOldestScan();
+	}
+
+	@Override
+	protected boolean findClosest(double[] query, double[] match) {
+		return grid.findClosest(query[0], query[1], query[2], maxDistanceSq, match);
+	}
+
+	/**
+	 * The destination cloud
+	 */
+	public SlidingWindowPointGrid3D getDestination() {
+		return grid;
+	}
+
+	public int getWindowSize() {
+		return windowSize;
+	}
+}
@@ -0,0 +1,193 @@
+/*
+ * Copyright (c) 2013-2014, Peter Abeles. All Rights Reserved.
+ *
+ * This file is part of Project BUBO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package bubo.clouds.fit.c2c;
+
+import bubo.clouds.filter.UniformDensityCloudOctree;
+import bubo.clouds.fit.MatchCloudToCloud;
+import georegression.struct.point.Point3D_F64;
+import georegression.struct.se.Se3_F64;
+import georegression.transform.se.SePointOps_F64;
+import org.ddogleg.struct.FastQueue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <p>
+ * Coarse-to-fine registration of 3D point clouds.  A pyramid is created by down sampling the source and
+ * destination clouds so that each voxel of the specified size contains at most one point.  Registration starts
+ * at the coarsest level and the transform found at each level is used as the initial estimate for the next level.
+ * Coarse levels have few points and can use a larger matching distance, which reduces the total computation and
+ * widens the basin of convergence.
+ * </p>
+ *
+ * <p>
+ * Each level is registered using its own {@link MatchCloudToCloud}.  Source points are transformed by the current
+ * estimate before being passed to it, so the original source list is never modified.  If registration fails at
+ * a coarse level the current estimate is passed on to the next level and only a failure at the finest level
+ * causes {@link #compute()} to fail.
+ * </p>
+ *
+ * @author Peter Abeles
+ */
+public class MatchCloudToCloudPyramidSe3 implements MatchCloudToCloud<Se3_F64, Point3D_F64> {
+
+	// registration algorithm for each level
+	List<MatchCloudToCloud<Se3_F64, Point3D_F64>> levels;
+	// down samples the clouds for each level.  null if a level is full resolution
+	List<UniformDensityCloudOctree> filters = new ArrayList<UniformDensityCloudOctree>();
+
+	// the down sampled clouds
+	List<List<Point3D_F64>> pyramidSrc = new ArrayList<List<Point3D_F64>>();
+	List<List<Point3D_F64>> pyramidDst = new ArrayList<List<Point3D_F64>>();
+
+	// source points transformed by the current estimate
+	FastQueue<Point3D_F64> workSrc = new FastQueue<Point3D_F64>(Point3D_F64.class, true);
+
+	// transform from the source to the destination
+	Se3_F64 found = new Se3_F64();
+	Se3_F64 work = new Se3_F64();
+
+	// number of matched points at the finest level
+	int totalMatched;
+
+	/**
+	 * Configures the pyramid
+	 *
+	 * @param voxelSizes Width of a voxel at each level, ordered from coarse to fine.  A value of zero indicates
+	 *                   that the level should be processed at full resolution.
+	 * @param levels Registration algorithm used at each level
+	 * @param randSeed Seed for randomly selecting which point in a voxel is kept
+	 */
+	public MatchCloudToCloudPyramidSe3(double voxelSizes[], List<MatchCloudToCloud<Se3_F64, Point3D_F64>> levels,
+									   long randSeed) {
+		if (voxelSizes.length != levels.size())
+			throw new IllegalArgumentException("There must be one algorithm for each level");
+		if (levels.isEmpty())
+			throw new IllegalArgumentException("There must be at least one level");
+
+		this.levels = levels;
+		for (int i = 0; i < voxelSizes.length; i++) {
+			if (voxelSizes[i] < 0)
+				throw new IllegalArgumentException("Voxel size can't be negative");
+			if (voxelSizes[i] == 0)
+				filters.add(null);
+			else
+				filters.add(new UniformDensityCloudOctree(1, voxelSizes[i], randSeed + i));
+
+			pyramidSrc.add(new ArrayList<Point3D_F64>());
+			pyramidDst.add(new ArrayList<Point3D_F64>());
+		}
+	}
+
+	@Override
+	public void setSource(List<Point3D_F64> points) {
+		createPyramid(points, pyramidSrc);
+	}
+
+	/**
+	 * Creates the destination pyramid and passes each level to its registration algorithm.  This is only done
+	 * here, so the destination's search structures aren't rebuilt when several sources are registered to it.
+	 */
+	@Override
+	public void setDestination(List<Point3D_F64> points) {
+		createPyramid(points, pyramidDst);
+		for (int i = 0; i < levels.size(); i++) {
+			levels.get(i).setDestination(pyramidDst.get(i));
+		}
+	}
+
+	private void createPyramid(List<Point3D_F64> points, List<List<Point3D_F64>> pyramid) {
+		for (int i = 0; i < filters.size(); i++) {
+			List<Point3D_F64> level = pyramid.get(i);
+			level.clear();
+
+			UniformDensityCloudOctree filter = filters.get(i);
+			if (filter == null || points.isEmpty())
+				level.addAll(points);
+			else
+				filter.process(points, level);
+		}
+	}
+
+	@Override
+	public boolean compute() {
+		found.reset();
+		totalMatched = 0;
+
+		int finest = levels.size() - 1;
+		for (int i = 0; i <= finest; i++) {
+			MatchCloudToCloud<Se3_F64, Point3D_F64> alg = levels.get(i);
+
+			// apply the current estimate to the source points
+			List<Point3D_F64> src = pyramidSrc.get(i);
+			workSrc.reset();
+			for (int j = 0; j < src.size(); j++) {
+				SePointOps_F64.transform(found, src.get(j), workSrc.grow());
+			}
+
+			alg.setSource(workSrc.toList());
+			if (!alg.compute()) {
+				if (i == finest)
+					return false;
+				continue;
+			}
+
+			found.concat(alg.getSourceToDestination(), work);
+			Se3_F64 tmp = found;
+			found = work;
+			work = tmp;
+
+			if (i == finest)
+				totalMatched = alg.getMatchedSourcePoints();
+		}
+
+		return true;
+	}
+
+	@Override
+	public Se3_F64 getSourceToDestination() {
+		return found;
+	}
+
+	@Override
+	public boolean isModifiedSource() {
+		return false;
+	}
+
+	@Override
+	public int getMatchedSourcePoints() {
+		return totalMatched;
+	}
+
+	/**
+	 * Number of points in the down sampled source cloud at the specified level
+	 */
+	public int getSourceSize(int level) {
+		return pyramidSrc.get(level).size();
+	}
+
+	/**
+	 * Number of points in the down sampled destination cloud at the specified level
+	 */
+	public int getDestinationSize(int level) {
+		return pyramidDst.get(level).size();
+	}
+}
@@ -0,0 +1,283 @@
+/*
+ * Copyright (c) 2013-2014, Peter Abeles. All Rights Reserved.
+ *
+ * This file is part of Project BUBO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package bubo.construct;
+
+import georegression.struct.point.Point3D_F64;
+import georegression.struct.shapes.Box3D_F64;
+import org.ddogleg.struct.GrowQueue_F64;
+import org.ddogleg.struct.GrowQueue_I32;
+import org.ddogleg.struct.GrowQueue_I64;
+
+import java.util.List;
+
+/**
+ * Constructs a {@link LinearOctree_F64} using the same rules as {@link ConstructOctreeNumPoints_F64}.  A node
+ * is split when the number of points inside of it exceeds a threshold and the divider is always the center of the
+ * node.  Instead of inserting points one at a time, all the points are added first and then the tree is
+ * built in a single pass by sorting the points by their Morton code.  Since the points inside any node are
+ * contiguous in sorted order, the points in each child can be found with a binary search.
+ *
+ * If the points inside a node all have the same Morton code then the node will not be split, which is equivalent
+ * to the pathological case of identical points in {@link ConstructOctreeNumPoints_F64}.  All internal data is
+ * recycled when {@link #initialize} is called.
+ *
+ * @author Peter Abeles
+ */
+public class ConstructLinearOctreeNumPoints_F64 {
+
+	// create a new node in the graph when the number of points exceeds
+	private int divideThreshold;
+
+	// the tree which is being constructed
+	protected LinearOctree_F64 tree = new LinearOctree_F64();
+
+	// points which have been added but not yet sorted.  Packed (x,y,z)
+	protected GrowQueue_F64 unsorted = new GrowQueue_F64();
+
+	// work space for sorting
+	private GrowQueue_I64 workCodes = new GrowQueue_I64();
+	private GrowQueue_I32 workOrder = new GrowQueue_I32();
+	private int histogram[] = new int[256];
+
+	// nodes which need to be examined for splitting
+	private GrowQueue_I32 open = new GrowQueue_I32();
+
+	/**
+	 * Specifies graph construction parameters
+	 *
+	 * @param divideThreshold Create a new node with the number of points exceeds this threshold
+	 * @param maxDepth Maximum depth of the tree.  Can't be more than {@link LinearOctree_F64#MAX_DEPTH}
+	 */
+	public ConstructLinearOctreeNumPoints_F64(int divideThreshold, int maxDepth) {
+		if (maxDepth < 1 || maxDepth > LinearOctree_F64.MAX_DEPTH)
+			throw new IllegalArgumentException("maxDepth must be from 1 to " + LinearOctree_F64.MAX_DEPTH);
+
+		this.divideThreshold = divideThreshold;
+		this.tree.maxDepth = maxDepth;
+	}
+
+	/**
+	 * Specifies graph construction parameters using the maximum possible depth
+	 *
+	 * @param divideThreshold Create a new node with the number of points exceeds this threshold
+	 */
+	public ConstructLinearOctreeNumPoints_F64(int divideThreshold) {
+		this(divideThreshold, LinearOctree_F64.MAX_DEPTH);
+	}
+
+	/**
+	 * Initializes the Octree.  The space contained by the Octree is specified by the passed in cube.
+	 * All previously added points are discarded.
+	 *
+	 * @param cube Space which is contained by the Octree.
+	 */
+	public void initialize(Box3D_F64 cube) {
+		tree.reset();
+		tree.space.set(cube);
+		unsorted.reset();
+	}
+
+	/**
+	 * Adds a point.  The tree isn't modified until {@link #construct()} is called.
+	 */
+	public void addPoint(double x, double y, double z) {
+		unsorted.add(x);
+		unsorted.add(y);
+		unsorted.add(z);
+	}
+
+	/**
+	 * Adds a point.  The tree isn't modified until {@link #construct()} is called.  Only the point's
+	 * coordinate is saved and not a reference to the point.
+	 */
+	public void addPoint(Point3D_F64 point) {
+		addPoint(point.x, point.y, point.z);
+	}
+
+	/**
+	 * Adds all points in the list.  The index of each point will be its index in the list if no other
+	 * points have been added since {@link #initialize}.
+	 *
+	 * @param points List of points to add
+	 */
+	public void addPoints(List<Point3D_F64> points) {
+		int N = points.size();
+		for (int i = 0; i < N; i++) {
+			addPoint(points.get(i));
+		}
+	}
+
+	/**
+	 * Builds the tree from all the points which have been added.
+	 */
+	public void construct() {
+		int N = unsorted.size / 3;
+
+		computeCodes(N);
+		sortCodes(N);
+
+		// copy the points into their sorted order
+		tree.points.resize(N * 3);
+		for (int i = 0; i < N; i++) {
+			int src = tree.order.data[i] * 3;
+			int dst = i * 3;
+			tree.points.data[dst] = unsorted.data[src];
+			tree.points.data[dst + 1] = unsorted.data[src + 1];
+			tree.points.data[dst + 2] = unsorted.data[src + 2];
+		}
+
+		buildNodes(N);
+	}
+
+	/**
+	 * Computes the Morton code of every point
+	 */
+	private void computeCodes(int N) {
+		tree.codes.resize(N);
+		tree.order.resize(N);
+		for (int i = 0; i < N; i++) {
+			int index = i * 3;
+			tree.codes.data[i] = tree.computeCode(unsorted.data[index], unsorted.data[index + 1], unsorted.data[index + 2]);
+			tree.order.data[i] = i;
+		}
+	}
+
+	/**
+	 * Sorts the points by their Morton code using a LSD radix sort.  A radix sort is stable, which ensures
+	 * that points with the same code will be in the order they were added.
+	 */
+	private void sortCodes(int N) {
+		workCodes.resize(N);
+		workOrder.resize(N);
+
+		long[] srcCodes = tree.codes.data;
+		int[] srcOrder = tree.order.data;
+		long[] dstCodes = workCodes.data;
+		int[] dstOrder = workOrder.data;
+
+		int totalBits = 3 * tree.maxDepth;
+		for (int shift = 0; shift < totalBits; shift += 8) {
+			for (int i = 0; i < 256; i++) {
+				histogram[i] = 0;
+			}
+			for (int i = 0; i < N; i++) {
+				histogram[(int) (srcCodes[i] >>> shift) & 0xFF]++;
+			}
+
+			// skip if all the points have the same value for this digit
+			if (N == 0 || histogram[(int) (srcCodes[0] >>> shift) & 0xFF] == N)
+				continue;
+
+			int total = 0;
+			for (int i = 0; i < 256; i++) {
+				int count = histogram[i];
+				histogram[i] = total;
+				total += count;
+			}
+
+			for (int i = 0; i < N; i++) {
+				int bin = (int) (srcCodes[i] >>> shift) & 0xFF;
+				int index = histogram[bin]++;
+				dstCodes[index] = srcCodes[i];
+				dstOrder[index] = srcOrder[i];
+			}
+
+			long[] tmpCodes = srcCodes;
+			srcCodes = dstCodes;
+			dstCodes = tmpCodes;
+			int[] tmpOrder = srcOrder;
+			srcOrder = dstOrder;
+			dstOrder = tmpOrder;
+		}
+
+		// make sure the sorted results are in the tree
+		if (srcCodes != tree.codes.data) {
+			System.arraycopy(srcCodes, 0, tree.codes.data, 0, N);
+			System.arraycopy(srcOrder, 0, tree.order.data, 0, N);
+		}
+	}
+
+	/**
+	 * Creates the nodes by recursively splitting the sorted points
+	 */
+	private void buildNodes(int N) {
+		long[] codes = tree.codes.data;
+
+		tree.addNode(0, 0, -1, 0, N);
+
+		open.reset();
+		open.add(0);
+
+		while (open.size > 0) {
+			int node = open.pop();
+
+			int start = tree.nodePointStart.data[node];
+			int count = tree.nodePointCount.data[node];
+			int depth = tree.nodeDepth.data[node];
+
+			if (count <= divideThreshold || depth >= tree.maxDepth)
+				continue;
+
+			// pathological case where all the points are identical
+			if (codes[start] == codes[start + count - 1])
+				continue;
+
+			long nodeCode = tree.nodeCode.data[node];
+			int shift = 3 * (tree.maxDepth - 1 - depth);
+			int end = start + count;
+
+			int firstChild = tree.getNumberOfNodes();
+			int mask = 0;
+			int childStart = start;
+			for (int i = 0; i < 8; i++) {
+				int childEnd = i == 7 ? end : lowerBound(codes, childStart, end, nodeCode | ((long) (i + 1) << shift));
+				if (childEnd > childStart) {
+					mask |= 1 << i;
+					int child = tree.addNode(nodeCode | ((long) i << shift), depth + 1, node, childStart, childEnd - childStart);
+					open.add(child);
+				}
+				childStart = childEnd;
+			}
+
+			tree.nodeFirstChild.data[node] = firstChild;
+			tree.nodeChildMask.data[node] = mask;
+		}
+	}
+
+	/**
+	 * Returns the index of the first element in the range which is &ge; the value
+	 */
+	private static int lowerBound(long[] codes, int start, int end, long value) {
+		while (start < end) {
+			int middle = (start + end) >>> 1;
+			if (codes[middle] < value)
+				start = middle + 1;
+			else
+				end = middle;
+		}
+		return start;
+	}
+
+	/**
+	 * Returns the Octree it has constructed
+	 */
+	public LinearOctree_F64 getTree() {
+		return tree;
+	}
+}
@@ -159,6 +159,30 @@ public abstract class ConstructOctree< O extends Octree, P extends GeoTuple> {
 		return child;
 	}
 
+	/**
+	 * Moves all the nodes owned by another constructor into this one.  Node instances are swapped with
+	 * unused instances in this constructor's storage so that no new memory is declared in either.  Unused
+	 * children arrays are also moved.  The other constructor is left empty and must be reset before
+	 * it can be used again.
+	 *
+	 * @param src Constructor whose nodes are to be moved into this one
+	 */
+	protected void absorbNodes(ConstructOctree<O,P> src) {
+		FastQueue<O> nodes = src.storageNodes;
+		for (int i = 0; i < nodes.size; i++) {
+			storageNodes.grow();
+			int index = storageNodes.size - 1;
+			O spare = storageNodes.data[index];
+			storageNodes.data[index] = nodes.data[i];
+			nodes.data[i] = spare;
+		}
+		nodes.reset();
+
+		while (!src.storageChildren.isEmpty()) {
+			storageChildren.push(src.storageChildren.pop());
+		}
+	}
+
 	/**
 	 * Sets the space the child occupies based on its parent and which child it is.
 	 * @param parent Parent node.
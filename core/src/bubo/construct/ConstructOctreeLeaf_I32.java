@@ -87,6 +87,85 @@ public class ConstructOctreeLeaf_I32 extends ConstructOctree_I32 {
 		}
 	}
 
+	/**
+	 * Creates the specified child of a node if it doesn't already exist.  If the node is a leaf then it is split.
+	 *
+	 * @param node The parent node
+	 * @param index Which child, 0 to 7
+	 * @return The child or null if it would not occupy a physically possible space
+	 */
+	public Octree_I32 addChild( Octree_I32 node , int index ) {
+		if( node.isLeaf() ) {
+			node.children = getChildrenArray();
+			computeDivider(node.space, node.divider);
+		}
+		return checkAddChild(node, index);
+	}
+
+	/**
+	 * Creates all the children of a leaf which occupy a physically possible space.
+	 *
+	 * @param node The leaf which is to be split.  Must be a leaf.
+	 */
+	public void splitLeaf( Octree_I32 node ) {
+		if( !node.isLeaf() )
+			throw new IllegalArgumentException("Node must be a leaf");
+
+		node.children = getChildrenArray();
+		computeDivider(node.space, node.divider);
+		for (int i = 0; i < 8; i++) {
+			checkAddChild(node, i);
+		}
+	}
+
+	/**
+	 * Discards all the descendants of a node, turning it into a leaf.  The descendants are not removed from
+	 * the list of all nodes until {@link #removeDiscarded()} is called.  Until then they can be identified by
+	 * having a null parent.
+	 *
+	 * @param node The node whose children are to be discarded
+	 */
+	public void discardChildren( Octree_I32 node ) {
+		if( node.isLeaf() )
+			return;
+
+		for (int i = 0; i < 8; i++) {
+			Octree_I32 child = node.children[i];
+			if( child != null ) {
+				discardChildren(child);
+				child.parent = null;
+				child.userData = null;
+				child.points.reset();
+				node.children[i] = null;
+			}
+		}
+		storageChildren.add(node.children);
+		node.children = null;
+	}
+
+	/**
+	 * Removes nodes which have been discarded by {@link #discardChildren} from the list of all nodes.  The
+	 * relative order of the remaining nodes is not changed and the discarded instances are recycled.
+	 *
+	 * @return Number of nodes which were removed
+	 */
+	public int removeDiscarded() {
+		Octree_I32[] nodes = storageNodes.data;
+		int N = storageNodes.size;
+
+		// the root is always at index 0 and has no parent
+		int kept = 1;
+		for (int i = 1; i < N; i++) {
+			Octree_I32 o = nodes[i];
+			if( o.parent != null ) {
+				nodes[i] = nodes[kept];
+				nodes[kept++] = o;
+			}
+		}
+		storageNodes.size = kept;
+		return N - kept;
+	}
+
 	/**
 	 * Finds and creates all leaf nodes which intersect the provided region.  If desired,
 	 * external storage can be provided to avoid declaring new memory.
@@ -19,12 +19,25 @@
 package bubo.construct;
 
 import georegression.struct.point.Point3D_F64;
+import georegression.struct.shapes.Box3D_F64;
+import org.ddogleg.struct.FastQueue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 /**
  * Creates an octree by adding new cells to the octree only when the number of points in a cell exceeds a specified
  * number.  The divider point is always the center of the cube and the same graph
  * will be produced independent of the order in which points are added.
  *
+ * If a thread pool has been specified then {@link #addPoints(java.util.List, java.util.List)} will construct
+ * the tree concurrently when the tree is empty.  The points are partitioned by which child of the root they belong
+ * to and the sub-tree of each child is constructed in a separate thread.  Since the graph is independent of the
+ * order the points are added, the resulting tree will be the same as when it's constructed sequentially.
+ *
  * @author Peter Abeles
  */
 public class ConstructOctreeNumPoints_F64 extends ConstructOctree_F64 {
@@ -32,6 +45,16 @@ public class ConstructOctreeNumPoints_F64 extends ConstructOctree_F64 {
 	// create a new node in the graph when the number of points exceeds
 	private int divideThreshold;
 
+	// If not null then sub-trees are constructed concurrently
+	private ExecutorService threadPool;
+
+	// constructs the sub-tree of each child of the root
+	private ConstructOctreeNumPoints_F64 workers[];
+	// points inside each child of the root
+	private FastQueue<Octree_F64.Info<Point3D_F64>> partitions[];
+	private BuildSubTree tasks[];
+	private List<Future<?>> futures = new ArrayList<Future<?>>();
+	private Box3D_F64 childSpace = new Box3D_F64();
 
 	/**
 	 * Specifies graph construction parameters
@@ -51,10 +74,137 @@ public class ConstructOctreeNumPoints_F64 extends ConstructOctree_F64 {
 	@Override
 	public Octree_F64 addPoint(Point3D_F64 point, Object data) {
 		// declare the structure which stores the point and data
-		Octree_F64.Info info = storageInfo.grow();
+		Octree_F64.Info<Point3D_F64> info = storageInfo.grow();
 		info.point = point;
 		info.userData = data;
 
+		return addInfo(info);
+	}
+
+	/**
+	 * Adds all points to the Octree.  If a thread pool has been specified and the tree is empty
+	 * then the tree will be constructed concurrently.
+	 *
+	 * @param points List of points to add
+	 */
+	@Override
+	public void addPoints(List<Point3D_F64> points) {
+		addPoints(points, null);
+	}
+
+	/**
+	 * Adds all points to the Octree along with their associated data.  If a thread pool has been specified and
+	 * the tree is empty then the tree will be constructed concurrently.
+	 *
+	 * @param points List of points to add
+	 * @param data (Optional) Data associated with each point.  Can be null.
+	 */
+	public void addPoints(List<Point3D_F64> points, List<?> data) {
+		if (threadPool == null || tree.points.size != 0 || !tree.isLeaf()) {
+			for (int i = 0; i < points.size(); i++) {
+				addPoint(points.get(i), data == null ? null : data.get(i));
+			}
+		} else {
+			addPointsConcurrent(points, data);
+		}
+	}
+
+	/**
+	 * Splits the root and constructs the sub-tree of each child in its own thread.  The nodes in each sub-tree
+	 * are then moved into this tree's storage.
+	 */
+	private void addPointsConcurrent(List<Point3D_F64> points, List<?> data) {
+		declareWorkers();
+
+		for (int i = 0; i < points.size(); i++) {
+			Octree_F64.Info<Point3D_F64> info = storageInfo.grow();
+			info.point = points.get(i);
+			info.userData = data == null ? null : data.get(i);
+			tree.points.add(info);
+		}
+
+		// see if the root should be split.  same logic as when adding points one at a time
+		if (tree.points.size <= divideThreshold || checkPathological(tree))
+			return;
+
+		tree.children = getChildrenArray();
+		computeDivider(tree.space, tree.divider);
+
+		for (int i = 0; i < 8; i++) {
+			partitions[i].reset();
+		}
+		for (int i = 0; i < tree.points.size; i++) {
+			Octree_F64.Info<Point3D_F64> info = tree.points.data[i];
+			partitions[tree.getChildIndex(info.point)].add(info);
+		}
+
+		// distribute the recycled children arrays across workers to avoid declaring new ones
+		int totalArrays = storageChildren.size();
+		for (int i = 0; i < 8; i++) {
+			if (partitions[i].size == 0)
+				continue;
+
+			setChildSpace(tree.space, tree.divider, i, childSpace);
+			workers[i].initialize(childSpace);
+
+			int numArrays = (int) ((long) totalArrays * partitions[i].size / tree.points.size);
+			for (int j = 0; j < numArrays && !storageChildren.isEmpty(); j++) {
+				workers[i].storageChildren.push(storageChildren.pop());
+			}
+		}
+
+		futures.clear();
+		for (int i = 0; i < 8; i++) {
+			if (partitions[i].size > 0)
+				futures.add(threadPool.submit(tasks[i]));
+		}
+		for (int i = 0; i < futures.size(); i++) {
+			try {
+				futures.get(i).get();
+			} catch (InterruptedException e) {
+				throw new RuntimeException(e);
+			} catch (ExecutionException e) {
+				throw new RuntimeException(e.getCause());
+			}
+		}
+
+		// move the sub-trees into this tree
+		for (int i = 0; i < 8; i++) {
+			if (partitions[i].size == 0)
+				continue;
+
+			Octree_F64 child = workers[i].getTree();
+			child.parent = tree;
+			tree.children[i] = child;
+
+			absorbNodes(workers[i]);
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private void declareWorkers() {
+		if (workers != null)
+			return;
+
+		workers = new ConstructOctreeNumPoints_F64[8];
+		partitions = new FastQueue[8];
+		tasks = new BuildSubTree[8];
+		for (int i = 0; i < 8; i++) {
+			workers[i] = new ConstructOctreeNumPoints_F64(divideThreshold);
+			partitions[i] = new FastQueue<Octree_F64.Info<Point3D_F64>>((Class) Octree_F64.Info.class, false);
+			tasks[i] = new BuildSubTree(workers[i], partitions[i]);
+		}
+	}
+
+	/**
+	 * Adds a point which has already been declared to the Octree
+	 *
+	 * @param info The point and its data
+	 * @return The node which contains the point
+	 */
+	protected Octree_F64 addInfo(Octree_F64.Info<Point3D_F64> info) {
+		Point3D_F64 point = info.point;
+
 		Octree_F64 node = tree;
 		tree.points.add(info);
 
@@ -69,9 +219,13 @@ public class ConstructOctreeNumPoints_F64 extends ConstructOctree_F64 {
 					int index = node.getChildIndex(point);
 					Octree_F64 child = checkAddChild(node, index, info);
 
-					// Create new children where appropriate for all points in node, but 'point'
-					for (int i = 0; i < node.points.size - 1; i++) {
+					// Create new children where appropriate for all points in node, but 'point'.
+					// 'point' is not always the last one since the node could have been created by the
+					// previous split
+					for (int i = 0; i < node.points.size; i++) {
 						Octree_F64.Info<Point3D_F64> infoP = node.points.get(i);
+						if (infoP == info)
+							continue;
 						int indexP = node.getChildIndex(infoP.point);
 
 						// see if the node exists
@@ -116,4 +270,36 @@ public class ConstructOctreeNumPoints_F64 extends ConstructOctree_F64 {
 
 		return pathological;
 	}
+
+	/**
+	 * Specifies the thread pool used to construct the tree concurrently.  If null then the tree is
+	 * constructed sequentially.
+	 */
+	public void setThreadPool(ExecutorService threadPool) {
+		this.threadPool = threadPool;
+	}
+
+	public ExecutorService getThreadPool() {
+		return threadPool;
+	}
+
+	/**
+	 * Adds points to the sub-tree of one child of the root
+	 */
+	private static class BuildSubTree implements Runnable {
+		ConstructOctreeNumPoints_F64 worker;
+		FastQueue<Octree_F64.Info<Point3D_F64>> points;
+
+		private BuildSubTree(ConstructOctreeNumPoints_F64 worker, FastQueue<Octree_F64.Info<Point3D_F64>> points) {
+			this.worker = worker;
+			this.points = points;
+		}
+
+		@Override
+		public void run() {
+			for (int i = 0; i < points.size; i++) {
+				worker.addInfo(points.data[i]);
+			}
+		}
+	}
 }
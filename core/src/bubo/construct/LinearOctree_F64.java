@@ -0,0 +1,366 @@
+/*
+ * Copyright (c) 2013-2014, Peter Abeles. All Rights Reserved.
+ *
+ * This file is part of Project BUBO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package bubo.construct;
+
+import georegression.struct.point.Point3D_F64;
+import georegression.struct.shapes.Box3D_F64;
+import org.ddogleg.struct.GrowQueue_F64;
+import org.ddogleg.struct.GrowQueue_I32;
+import org.ddogleg.struct.GrowQueue_I64;
+
+/**
+ * Linear Octree where nodes and points are stored in primitive arrays instead of as individual objects.  Each point
+ * is quantized into a grid with 2<sup>maxDepth</sup> cells along each axis and assigned a Morton (Z-order) code.
+ * Points are stored sorted by their code, which causes all the points contained inside any node to be
+ * a contiguous block in the {@link #points} array.  The structure of the tree is identical to {@link Octree_F64},
+ * up to the quantization resolution, and child indexes follow the same convention:
+ * <p>
+ * <ul>
+ * <li>children[0] = p.x <  divider.x and p.y <  divider.y and p.z <  divider.z</li>
+ * <li>children[1] = p.x <  divider.x and p.y >= divider.y and p.z <  divider.z</li>
+ * <li>children[2] = p.x >= divider.x and p.y <  divider.y and p.z <  divider.z</li>
+ * <li>children[3] = p.x >= divider.x and p.y >= divider.y and p.z <  divider.z</li>
+ * <li>children[4] = p.x <  divider.x and p.y <  divider.y and p.z >= divider.z</li>
+ * <li>children[5] = p.x <  divider.x and p.y >= divider.y and p.z >= divider.z</li>
+ * <li>children[6] = p.x >= divider.x and p.y <  divider.y and p.z >= divider.z</li>
+ * <li>children[7] = p.x >= divider.x and p.y >= divider.y and p.z >= divider.z</li>
+ * </ul>
+ * </p>
+ * Nodes are referenced by their index.  The root is always node 0 and a value of -1 indicates that no node exists.
+ * The children of a node are stored in consecutive indexes, only children which contain points are stored, and
+ * a bit mask indicates which children exist.
+ *
+ * @author Peter Abeles
+ * @see ConstructLinearOctreeNumPoints_F64
+ */
+public class LinearOctree_F64 {
+	/**
+	 * The maximum depth the tree can have.  Limited by the number of bits in a long.
+	 */
+	public static final int MAX_DEPTH = 21;
+
+	/**
+	 * Defines the space in which the root node is contained
+	 */
+	public Box3D_F64 space = new Box3D_F64();
+
+	/**
+	 * Number of levels below the root the tree can have.  Determines the quantization of the Morton codes.
+	 */
+	public int maxDepth = MAX_DEPTH;
+
+	/**
+	 * Points sorted by their Morton code.  Packed in the following order (x,y,z)
+	 */
+	public GrowQueue_F64 points = new GrowQueue_F64();
+	/**
+	 * Morton code of each point in {@link #points}
+	 */
+	public GrowQueue_I64 codes = new GrowQueue_I64();
+	/**
+	 * Index of each point in the list of points that the tree was constructed from
+	 */
+	public GrowQueue_I32 order = new GrowQueue_I32();
+
+	/**
+	 * Morton code of the lower extent of each node
+	 */
+	public GrowQueue_I64 nodeCode = new GrowQueue_I64();
+	/**
+	 * Depth of each node.  The root has a depth of 0
+	 */
+	public GrowQueue_I32 nodeDepth = new GrowQueue_I32();
+	/**
+	 * Index of the parent of each node.  -1 for the root
+	 */
+	public GrowQueue_I32 nodeParent = new GrowQueue_I32();
+	/**
+	 * Index of a node's first child.  -1 if it is a leaf
+	 */
+	public GrowQueue_I32 nodeFirstChild = new GrowQueue_I32();
+	/**
+	 * Bit mask indicating which children exist.  Bit 'i' is set if child 'i' exists.
+	 */
+	public GrowQueue_I32 nodeChildMask = new GrowQueue_I32();
+	/**
+	 * Index of the first point contained inside each node.
+	 */
+	public GrowQueue_I32 nodePointStart = new GrowQueue_I32();
+	/**
+	 * Number of points contained inside each node.
+	 */
+	public GrowQueue_I32 nodePointCount = new GrowQueue_I32();
+
+	/**
+	 * Discards all nodes and points
+	 */
+	public void reset() {
+		points.reset();
+		codes.reset();
+		order.reset();
+		nodeCode.reset();
+		nodeDepth.reset();
+		nodeParent.reset();
+		nodeFirstChild.reset();
+		nodeChildMask.reset();
+		nodePointStart.reset();
+		nodePointCount.reset();
+	}
+
+	/**
+	 * Adds a new node to the end of the node list and returns its index
+	 */
+	protected int addNode(long code, int depth, int parent, int pointStart, int pointCount) {
+		nodeCode.add(code);
+		nodeDepth.add(depth);
+		nodeParent.add(parent);
+		nodeFirstChild.add(-1);
+		nodeChildMask.add(0);
+		nodePointStart.add(pointStart);
+		nodePointCount.add(pointCount);
+		return nodeCode.size - 1;
+	}
+
+	/**
+	 * Number of nodes in the tree
+	 */
+	public int getNumberOfNodes() {
+		return nodeCode.size;
+	}
+
+	/**
+	 * Number of points in the tree
+	 */
+	public int getNumberOfPoints() {
+		return codes.size;
+	}
+
+	/**
+	 * Returns true if it is a leaf node or false if it is not
+	 */
+	public boolean isLeaf(int node) {
+		return nodeFirstChild.data[node] == -1;
+	}
+
+	/**
+	 * Returns the index of the parent or -1 if it's the root
+	 */
+	public int getParent(int node) {
+		return nodeParent.data[node];
+	}
+
+	/**
+	 * Returns the index of the specified child or -1 if the child doesn't exist
+	 *
+	 * @param node Index of the parent node
+	 * @param index Which child, 0 to 7
+	 */
+	public int getChild(int node, int index) {
+		int mask = nodeChildMask.data[node];
+		if ((mask & (1 << index)) == 0)
+			return -1;
+		return nodeFirstChild.data[node] + Integer.bitCount(mask & ((1 << index) - 1));
+	}
+
+	public int getDepth(int node) {
+		return nodeDepth.data[node];
+	}
+
+	/**
+	 * Index of the first point in the node.  The points inside a node are contiguous.
+	 */
+	public int getPointStart(int node) {
+		return nodePointStart.data[node];
+	}
+
+	/**
+	 * Number of points contained inside the node
+	 */
+	public int getPointCount(int node) {
+		return nodePointCount.data[node];
+	}
+
+	/**
+	 * Copies a point into the provided storage
+	 *
+	 * @param index Index of the point in sorted order
+	 * @param output Storage for the point
+	 */
+	public void getPoint(int index, Point3D_F64 output) {
+		int i = index * 3;
+		output.x = points.data[i];
+		output.y = points.data[i + 1];
+		output.z = points.data[i + 2];
+	}
+
+	/**
+	 * Index in the original input list of the point at the specified sorted index.
+	 */
+	public int getOriginalIndex(int index) {
+		return order.data[index];
+	}
+
+	/**
+	 * Computes the space which the node occupies
+	 *
+	 * @param node Index of the node
+	 * @param output Storage for the node's space
+	 */
+	public void getSpace(int node, Box3D_F64 output) {
+		long code = nodeCode.data[node];
+		double scale = 1.0 / (1 << maxDepth);
+		double lx = space.getLengthX() * scale;
+		double ly = space.getLengthY() * scale;
+		double lz = space.getLengthZ() * scale;
+
+		int cells = 1 << (maxDepth - nodeDepth.data[node]);
+
+		output.p0.x = space.p0.x + compact(code >> 1) * lx;
+		output.p0.y = space.p0.y + compact(code) * ly;
+		output.p0.z = space.p0.z + compact(code >> 2) * lz;
+		output.p1.x = output.p0.x + cells * lx;
+		output.p1.y = output.p0.y + cells * ly;
+		output.p1.z = output.p0.z + cells * lz;
+	}
+
+	/**
+	 * Returns true if the specified point is contained inside the space occupied by the root.
+	 */
+	public boolean contained(Point3D_F64 point) {
+		return contained(point.x, point.y, point.z);
+	}
+
+	public boolean contained(double x, double y, double z) {
+		return x >= space.p0.x && x < space.p1.x &&
+				y >= space.p0.y && y < space.p1.y &&
+				z >= space.p0.z && z < space.p1.z;
+	}
+
+	/**
+	 * Traverses down the octree and searches for the deepest node which contains the point
+	 *
+	 * @param point Point in which the leaf is contained.
+	 * @return Index of the deepest node which contains the point.  -1 if it's not bounded by the Octree.
+	 */
+	public int findDeepest(Point3D_F64 point) {
+		if (nodeCode.size == 0 || !contained(point))
+			return -1;
+
+		long code = computeCode(point.x, point.y, point.z);
+
+		int node = 0;
+		while (true) {
+			if (nodeFirstChild.data[node] == -1)
+				return node;
+
+			int next = getChild(node, childIndex(code, nodeDepth.data[node]));
+			if (next == -1)
+				return node;
+			node = next;
+		}
+	}
+
+	/**
+	 * Finds all the nodes in the Octree which contain the point.  The search stops when it hits a leaf.
+	 *
+	 * @param point (Input) Point which is being searched for
+	 * @param path  (Output) Index of all the nodes which contain point.  Order will be from general to specific.
+	 */
+	public void findPathToPoint(Point3D_F64 point, GrowQueue_I32 path) {
+		if (nodeCode.size == 0 || !contained(point))
+			return;
+
+		long code = computeCode(point.x, point.y, point.z);
+
+		int node = 0;
+		while (node != -1) {
+			path.add(node);
+
+			if (nodeFirstChild.data[node] == -1)
+				break;
+
+			node = getChild(node, childIndex(code, nodeDepth.data[node]));
+		}
+	}
+
+	/**
+	 * Adds the index of all the leaf nodes to the list
+	 */
+	public void findLeafs(GrowQueue_I32 output) {
+		for (int i = 0; i < nodeFirstChild.size; i++) {
+			if (nodeFirstChild.data[i] == -1)
+				output.add(i);
+		}
+	}
+
+	/**
+	 * Given the code of a point, returns which child of a node at the specified depth it belongs to
+	 */
+	public int childIndex(long code, int depth) {
+		return (int) (code >> (3 * (maxDepth - 1 - depth))) & 0x07;
+	}
+
+	/**
+	 * Computes the Morton code for a point.  Points outside the root's space are clamped to its border.
+	 */
+	public long computeCode(double x, double y, double z) {
+		int cells = 1 << maxDepth;
+
+		int qx = quantize(x, space.p0.x, space.p1.x, cells);
+		int qy = quantize(y, space.p0.y, space.p1.y, cells);
+		int qz = quantize(z, space.p0.z, space.p1.z, cells);
+
+		return spread(qz) << 2 | spread(qx) << 1 | spread(qy);
+	}
+
+	private static int quantize(double value, double lower, double upper, int cells) {
+		int q = (int) ((value - lower) / (upper - lower) * cells);
+		if (q < 0)
+			return 0;
+		if (q >= cells)
+			return cells - 1;
+		return q;
+	}
+
+	/**
+	 * Inserts two zero bits between each of the lower 21-bits
+	 */
+	protected static long spread(long v) {
+		v &= 0x1fffffL;
+		v = (v | v << 32) & 0x1f00000000ffffL;
+		v = (v | v << 16) & 0x1f0000ff0000ffL;
+		v = (v | v << 8) & 0x100f00f00f00f00fL;
+		v = (v | v << 4) & 0x10c30c30c30c30c3L;
+		v = (v | v << 2) & 0x1249249249249249L;
+		return v;
+	}
+
+	/**
+	 * Inverse of {@link #spread(long)}.
+	 */
+	protected static int compact(long v) {
+		v &= 0x1249249249249249L;
+		v = (v ^ (v >> 2)) & 0x10c30c30c30c30c3L;
+		v = (v ^ (v >> 4)) & 0x100f00f00f00f00fL;
+		v = (v ^ (v >> 8)) & 0x1f0000ff0000ffL;
+		v = (v ^ (v >> 16)) & 0x1f00000000ffffL;
+		v = (v ^ (v >> 32)) & 0x1fffffL;
+		return (int) v;
+	}
+}
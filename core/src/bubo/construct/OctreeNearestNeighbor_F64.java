@@ -0,0 +1,386 @@
+/*
+ * Copyright (c) 2013-2014, Peter Abeles. All Rights Reserved.
+ *
+ * This file is part of Project BUBO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package bubo.construct;
+
+import georegression.struct.point.Point3D_F64;
+import georegression.struct.shapes.Box3D_F64;
+import org.ddogleg.struct.FastQueue;
+import org.ddogleg.struct.GrowQueue_F64;
+
+/**
+ * Nearest-neighbor searches inside of an {@link Octree_F64}.  K-nearest-neighbor search is done best-first,
+ * nodes are examined in order of their distance from the target point and the search stops when no node can
+ * contain a closer point.  Only points contained inside of leafs are examined, which is the case for trees created
+ * by {@link ConstructOctreeNumPoints_F64}.  All distances are Euclidean squared.
+ *
+ * Internal work space and the output buffers are recycled between calls, so after the first few searches no new
+ * memory is declared.
+ *
+ * @author Peter Abeles
+ */
+@SuppressWarnings("unchecked")
+public class OctreeNearestNeighbor_F64 {
+
+	// the tree being searched
+	private Octree_F64 tree;
+
+	// min-heap of nodes which are to be searched, ordered by distance to the target
+	private Octree_F64 openNodes[] = new Octree_F64[16];
+	private double openDistance[] = new double[16];
+	private int openSize;
+
+	// max-heap of the best points found so far
+	private Octree.Info<Point3D_F64> bestInfo[] = new Octree.Info[16];
+	private double bestDistance[] = new double[16];
+	private int bestSize;
+
+	// distance of the point found by the most recent single nearest-neighbor search
+	private double lastDistance;
+
+	/**
+	 * Specifies the tree which is to be searched
+	 */
+	public void setTree(Octree_F64 tree) {
+		this.tree = tree;
+	}
+
+	public Octree_F64 getTree() {
+		return tree;
+	}
+
+	/**
+	 * Finds the K nearest points to the target.  Results are ordered from closest to farthest.
+	 *
+	 * @param target Point being searched for
+	 * @param maxDistanceSq Maximum distance a point can be from the target.  If negative then there is no limit.
+	 * @param numNeighbors Number of neighbors being searched for
+	 * @param results (Output) The closest points.  Reset before use.  Must not declare instances.
+	 * @param distances (Output) Distance of each point from the target.  Reset before use.
+	 */
+	public void findNearest(Point3D_F64 target, double maxDistanceSq, int numNeighbors,
+							FastQueue<Octree.Info<Point3D_F64>> results, GrowQueue_F64 distances) {
+		results.reset();
+		distances.reset();
+
+		if (tree == null || numNeighbors <= 0)
+			return;
+
+		if (maxDistanceSq < 0)
+			maxDistanceSq = Double.MAX_VALUE;
+
+		bestSize = 0;
+		openSize = 0;
+		pushOpen(tree, distanceSq(tree.space, target));
+
+		while (openSize > 0) {
+			double nodeDistance = openDistance[0];
+			Octree_F64 node = popOpen();
+
+			double bound = bestSize == numNeighbors ? bestDistance[0] : maxDistanceSq;
+			if (nodeDistance > bound)
+				break;
+
+			if (node.isLeaf()) {
+				for (int i = 0; i < node.points.size; i++) {
+					Octree.Info<Point3D_F64> info = node.points.data[i];
+					double d = info.point.distance2(target);
+					if (d > maxDistanceSq)
+						continue;
+
+					if (bestSize < numNeighbors) {
+						pushBest(info, d);
+					} else if (d < bestDistance[0]) {
+						replaceBest(info, d);
+					}
+				}
+			} else {
+				bound = bestSize == numNeighbors ? bestDistance[0] : maxDistanceSq;
+				for (int i = 0; i < 8; i++) {
+					Octree_F64 child = node.children[i];
+					if (child == null)
+						continue;
+					double d = distanceSq(child.space, target);
+					if (d <= bound)
+						pushOpen(child, d);
+				}
+			}
+		}
+
+		// remove references to the tree
+		for (int i = 0; i < openSize; i++) {
+			openNodes[i] = null;
+		}
+
+		// heap sort the results in place.  The farthest point is removed first and placed at the end
+		int N = bestSize;
+		for (int i = N - 1; i > 0; i--) {
+			Octree.Info<Point3D_F64> info = bestInfo[0];
+			double d = bestDistance[0];
+			popBest();
+			bestInfo[i] = info;
+			bestDistance[i] = d;
+		}
+		for (int i = 0; i < N; i++) {
+			results.add(bestInfo[i]);
+			distances.add(bestDistance[i]);
+			bestInfo[i] = null;
+		}
+		bestSize = 0;
+	}
+
+	/**
+	 * Finds the single closest point to the target
+	 *
+	 * @param target Point being searched for
+	 * @param maxDistanceSq Maximum distance a point can be from the target.  If negative then there is no limit.
+	 * @return The closest point or null if none could be found
+	 */
+	public Octree.Info<Point3D_F64> findNearest(Point3D_F64 target, double maxDistanceSq) {
+		if (tree == null)
+			return null;
+
+		if (maxDistanceSq < 0)
+			maxDistanceSq = Double.MAX_VALUE;
+
+		Octree.Info<Point3D_F64> best = null;
+		double bestDistance = maxDistanceSq;
+
+		openSize = 0;
+		pushOpen(tree, distanceSq(tree.space, target));
+
+		while (openSize > 0) {
+			double nodeDistance = openDistance[0];
+			Octree_F64 node = popOpen();
+
+			if (nodeDistance > bestDistance)
+				break;
+
+			if (node.isLeaf()) {
+				for (int i = 0; i < node.points.size; i++) {
+					Octree.Info<Point3D_F64> info = node.points.data[i];
+					double d = info.point.distance2(target);
+					if (d <= bestDistance && (best == null || d < bestDistance)) {
+						best = info;
+						bestDistance = d;
+					}
+				}
+			} else {
+				for (int i = 0; i < 8; i++) {
+					Octree_F64 child = node.children[i];
+					if (child == null)
+						continue;
+					double d = distanceSq(child.space, target);
+					if (d <= bestDistance)
+						pushOpen(child, d);
+				}
+			}
+		}
+
+		for (int i = 0; i < openSize; i++) {
+			openNodes[i] = null;
+		}
+
+		this.lastDistance = bestDistance;
+		return best;
+	}
+
+	/**
+	 * Distance of the point returned by {@link #findNearest(georegression.struct.point.Point3D_F64, double)}.
+	 */
+	public double getLastDistance() {
+		return lastDistance;
+	}
+
+	/**
+	 * Finds all points which are within the specified distance of the target.  Order of the results is
+	 * not specified.
+	 *
+	 * @param target Point being searched for
+	 * @param maxDistanceSq Maximum distance a point can be from the target.
+	 * @param results (Output) All points within the distance.  Reset before use.  Must not declare instances.
+	 * @param distances (Output) Distance of each point from the target.  Reset before use.
+	 */
+	public void findWithinRadius(Point3D_F64 target, double maxDistanceSq,
+								 FastQueue<Octree.Info<Point3D_F64>> results, GrowQueue_F64 distances) {
+		results.reset();
+		distances.reset();
+
+		if (tree == null)
+			return;
+
+		// the heap is used as a stack here since order doesn't matter
+		openSize = 0;
+		if (distanceSq(tree.space, target) <= maxDistanceSq)
+			growOpen(tree, 0);
+
+		while (openSize > 0) {
+			Octree_F64 node = openNodes[--openSize];
+			openNodes[openSize] = null;
+
+			if (node.isLeaf()) {
+				for (int i = 0; i < node.points.size; i++) {
+					Octree.Info<Point3D_F64> info = node.points.data[i];
+					double d = info.point.distance2(target);
+					if (d <= maxDistanceSq) {
+						results.add(info);
+						distances.add(d);
+					}
+				}
+			} else {
+				for (int i = 0; i < 8; i++) {
+					Octree_F64 child = node.children[i];
+					if (child != null && distanceSq(child.space, target) <= maxDistanceSq)
+						growOpen(child, 0);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Euclidean distance squared between the point and the closest point inside the box.  Zero if the point is
+	 * inside the box.
+	 */
+	public static double distanceSq(Box3D_F64 box, Point3D_F64 p) {
+		double dx = p.x < box.p0.x ? box.p0.x - p.x : (p.x > box.p1.x ? p.x - box.p1.x : 0);
+		double dy = p.y < box.p0.y ? box.p0.y - p.y : (p.y > box.p1.y ? p.y - box.p1.y : 0);
+		double dz = p.z < box.p0.z ? box.p0.z - p.z : (p.z > box.p1.z ? p.z - box.p1.z : 0);
+		return dx * dx + dy * dy + dz * dz;
+	}
+
+	/**
+	 * Adds a node to the end of the open list, enlarging the arrays if needed
+	 */
+	private void growOpen(Octree_F64 node, double distance) {
+		if (openSize == openNodes.length) {
+			Octree_F64 tmpNodes[] = new Octree_F64[openSize * 2];
+			double tmpDistance[] = new double[openSize * 2];
+			System.arraycopy(openNodes, 0, tmpNodes, 0, openSize);
+			System.arraycopy(openDistance, 0, tmpDistance, 0, openSize);
+			openNodes = tmpNodes;
+			openDistance = tmpDistance;
+		}
+		openNodes[openSize] = node;
+		openDistance[openSize++] = distance;
+	}
+
+	private void pushOpen(Octree_F64 node, double distance) {
+		growOpen(node, distance);
+
+		// sift up
+		int i = openSize - 1;
+		while (i > 0) {
+			int parent = (i - 1) / 2;
+			if (openDistance[parent] <= distance)
+				break;
+			openNodes[i] = openNodes[parent];
+			openDistance[i] = openDistance[parent];
+			i = parent;
+		}
+		openNodes[i] = node;
+		openDistance[i] = distance;
+	}
+
+	private Octree_F64 popOpen() {
+		Octree_F64 top = openNodes[0];
+
+		openSize--;
+		Octree_F64 node = openNodes[openSize];
+		double distance = openDistance[openSize];
+		openNodes[openSize] = null;
+
+		if (openSize > 0) {
+			// sift down
+			int i = 0;
+			while (true) {
+				int child = 2 * i + 1;
+				if (child >= openSize)
+					break;
+				if (child + 1 < openSize && openDistance[child + 1] < openDistance[child])
+					child++;
+				if (distance <= openDistance[child])
+					break;
+				openNodes[i] = openNodes[child];
+				openDistance[i] = openDistance[child];
+				i = child;
+			}
+			openNodes[i] = node;
+			openDistance[i] = distance;
+		}
+
+		return top;
+	}
+
+	private void pushBest(Octree.Info<Point3D_F64> info, double distance) {
+		if (bestSize == bestInfo.length) {
+			Octree.Info<Point3D_F64> tmpInfo[] = new Octree.Info[bestSize * 2];
+			double tmpDistance[] = new double[bestSize * 2];
+			System.arraycopy(bestInfo, 0, tmpInfo, 0, bestSize);
+			System.arraycopy(bestDistance, 0, tmpDistance, 0, bestSize);
+			bestInfo = tmpInfo;
+			bestDistance = tmpDistance;
+		}
+
+		// sift up
+		int i = bestSize++;
+		while (i > 0) {
+			int parent = (i - 1) / 2;
+			if (bestDistance[parent] >= distance)
+				break;
+			bestInfo[i] = bestInfo[parent];
+			bestDistance[i] = bestDistance[parent];
+			i = parent;
+		}
+		bestInfo[i] = info;
+		bestDistance[i] = distance;
+	}
+
+	/**
+	 * Replaces the farthest point with the new point
+	 */
+	private void replaceBest(Octree.Info<Point3D_F64> info, double distance) {
+		siftDownBest(info, distance, bestSize);
+	}
+
+	private void popBest() {
+		bestSize--;
+		Octree.Info<Point3D_F64> info = bestInfo[bestSize];
+		double distance = bestDistance[bestSize];
+		bestInfo[bestSize] = null;
+		if (bestSize > 0)
+			siftDownBest(info, distance, bestSize);
+	}
+
+	private void siftDownBest(Octree.Info<Point3D_F64> info, double distance, int size) {
+		int i = 0;
+		while (true) {
+			int child = 2 * i + 1;
+			if (child >= size)
+				break;
+			if (child + 1 < size && bestDistance[child + 1] > bestDistance[child])
+				child++;
+			if (distance >= bestDistance[child])
+				break;
+			bestInfo[i] = bestInfo[child];
+			bestDistance[i] = bestDistance[child];
+			i = child;
+		}
+		bestInfo[i] = info;
+		bestDistance[i] = distance;
+	}
+}
@@ -0,0 +1,214 @@
+/*
+ * Copyright (c) 2013-2014, Peter Abeles. All Rights Reserved.
+ *
+ * This file is part of Project BUBO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package bubo.construct;
+
+/**
+ * <p>
+ * Hash map from a 3D integer coordinate, packed into a long, to an int.  Uses open addressing with linear probing
+ * and is stored in primitive arrays, so no memory is declared unless the table needs to grow.  The load factor is
+ * kept under 0.5 and removed entries are deleted by shifting back the entries after them, so lookups never need to
+ * skip over deleted slots.
+ * </p>
+ *
+ * <p>
+ * Each axis is encoded with {@link #BITS} bits.  Coordinates are wrapped around if they are outside of
+ * that range, see {@link #key(int, int, int)}.  Values must be non-negative, since -1 indicates that a key isn't
+ * in the map.
+ * </p>
+ *
+ * @author Peter Abeles
+ */
+public class PackedKeyHashMap_I32 {
+
+	/**
+	 * Number of bits used to encode each axis in a key
+	 */
+	public static final int BITS = 21;
+	private static final long MASK = (1L << BITS) - 1;
+
+	// indicates that a slot in the table is empty.  Packed keys never have the upper bit set
+	private static final long EMPTY = -1;
+
+	// hash table
+	private long tableKeys[];
+	private int tableValues[];
+	// number of bits in the table's size
+	private int tableBits;
+	// number of keys in the map
+	private int size;
+
+	/**
+	 * @param initialBits The table's initial size is 2<sup>initialBits</sup>
+	 */
+	public PackedKeyHashMap_I32(int initialBits) {
+		createTable(initialBits);
+	}
+
+	public PackedKeyHashMap_I32() {
+		this(6);
+	}
+
+	/**
+	 * Packs the coordinate into a key.  Only the lower {@link #BITS} bits of each axis are used.
+	 */
+	public static long key(int x, int y, int z) {
+		return ((long) x & MASK) << (2 * BITS) | ((long) y & MASK) << BITS | ((long) z & MASK);
+	}
+
+	public static int keyX(long key) {
+		return (int) (key >> (2 * BITS));
+	}
+
+	public static int keyY(long key) {
+		return (int) ((key >> BITS) & MASK);
+	}
+
+	public static int keyZ(long key) {
+		return (int) (key & MASK);
+	}
+
+	/**
+	 * Returns the value associated with the key or -1 if the key isn't in the map
+	 */
+	public int get(long key) {
+		int mask = tableKeys.length - 1;
+		int slot = hash(key);
+		while (true) {
+			long k = tableKeys[slot];
+			if (k == key)
+				return tableValues[slot];
+			if (k == EMPTY)
+				return -1;
+			slot = (slot + 1) & mask;
+		}
+	}
+
+	/**
+	 * Associates the value with the key.  If the key is already in the map its value is replaced.
+	 *
+	 * @param key Packed coordinate
+	 * @param value Value.  Must be non-negative.
+	 */
+	public void put(long key, int value) {
+		int slot = find(key);
+		if (tableKeys[slot] == key) {
+			tableValues[slot] = value;
+			return;
+		}
+
+		// keep the load factor under 0.5
+		if ((size + 1) * 2 > tableKeys.length) {
+			long oldKeys[] = tableKeys;
+			int oldValues[] = tableValues;
+			createTable(tableBits + 1);
+			for (int i = 0; i < oldKeys.length; i++) {
+				if (oldKeys[i] != EMPTY) {
+					int s = find(oldKeys[i]);
+					tableKeys[s] = oldKeys[i];
+					tableValues[s] = oldValues[i];
+				}
+			}
+			slot = find(key);
+		}
+
+		tableKeys[slot] = key;
+		tableValues[slot] = value;
+		size++;
+	}
+
+	/**
+	 * Removes the key from the map
+	 *
+	 * @return The key's value or -1 if it wasn't in the map
+	 */
+	public int remove(long key) {
+		int slot = find(key);
+		if (tableKeys[slot] != key)
+			return -1;
+		int value = tableValues[slot];
+
+		// shift back entries which were displaced by the removed entry
+		int mask = tableKeys.length - 1;
+		int hole = slot;
+		int i = slot;
+		while (true) {
+			i = (i + 1) & mask;
+			long k = tableKeys[i];
+			if (k == EMPTY)
+				break;
+
+			// can the entry at i be moved into the hole?
+			int home = hash(k);
+			if (hole <= i ? (hole < home && home <= i) : (hole < home || home <= i))
+				continue;
+
+			tableKeys[hole] = k;
+			tableValues[hole] = tableValues[i];
+			hole = i;
+		}
+		tableKeys[hole] = EMPTY;
+		size--;
+
+		return value;
+	}
+
+	/**
+	 * Removes all keys.  The table's size is not changed.
+	 */
+	public void clear() {
+		for (int i = 0; i < tableKeys.length; i++) {
+			tableKeys[i] = EMPTY;
+		}
+		size = 0;
+	}
+
+	/**
+	 * Number of keys in the map
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns the slot which contains the key or the empty slot where it would be inserted
+	 */
+	private int find(long key) {
+		int mask = tableKeys.length - 1;
+		int slot = hash(key);
+		while (true) {
+			long k = tableKeys[slot];
+			if (k == key || k == EMPTY)
+				return slot;
+			slot = (slot + 1) & mask;
+		}
+	}
+
+	private void createTable(int bits) {
+		tableBits = bits;
+		tableKeys = new long[1 << bits];
+		tableValues = new int[1 << bits];
+		for (int i = 0; i < tableKeys.length; i++) {
+			tableKeys[i] = EMPTY;
+		}
+	}
+
+	private int hash(long key) {
+		return (int) ((key * 0x9E3779B97F4A7C15L) >>> (64 - tableBits));
+	}
+}
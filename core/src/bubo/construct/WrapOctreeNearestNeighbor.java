@@ -0,0 +1,174 @@
+/*
+ * Copyright (c) 2013-2014, Peter Abeles. All Rights Reserved.
+ *
+ * This file is part of Project BUBO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package bubo.construct;
+
+import georegression.struct.point.Point3D_F64;
+import georegression.struct.shapes.Box3D_F64;
+import org.ddogleg.nn.NearestNeighbor;
+import org.ddogleg.nn.NnData;
+import org.ddogleg.struct.FastQueue;
+import org.ddogleg.struct.GrowQueue_F64;
+
+import java.util.List;
+
+/**
+ * Wrapper around {@link OctreeNearestNeighbor_F64} which allows it to be used as a {@link NearestNeighbor}.
+ * The Octree is constructed using {@link ConstructOctreeNumPoints_F64} and can be accessed through
+ * {@link #getConstruct()}, allowing the same Octree to be used for other purposes.  Only 3D points are supported.
+ *
+ * @author Peter Abeles
+ */
+@SuppressWarnings("unchecked")
+public class WrapOctreeNearestNeighbor<D> implements NearestNeighbor<D> {
+
+	// constructs the Octree
+	private ConstructOctreeNumPoints_F64 construct;
+	// performs the search
+	private OctreeNearestNeighbor_F64 search = new OctreeNearestNeighbor_F64();
+
+	// copy of the input points which remembers the index of each point
+	private FastQueue<IndexedPoint> storagePoints = new FastQueue<IndexedPoint>(IndexedPoint.class, true);
+
+	// reference to the input
+	private List<double[]> points;
+	private List<D> data;
+
+	private Box3D_F64 bounds = new Box3D_F64();
+	private Point3D_F64 target = new Point3D_F64();
+
+	// storage for search results
+	private FastQueue<Octree.Info<Point3D_F64>> results = new FastQueue<Octree.Info<Point3D_F64>>((Class) Octree.Info.class, false);
+	private GrowQueue_F64 distances = new GrowQueue_F64();
+
+	/**
+	 * Specifies how the Octree is constructed
+	 *
+	 * @param divideThreshold A node is split when the number of points it contains exceeds this threshold.
+	 */
+	public WrapOctreeNearestNeighbor(int divideThreshold) {
+		construct = new ConstructOctreeNumPoints_F64(divideThreshold);
+	}
+
+	public WrapOctreeNearestNeighbor() {
+		this(20);
+	}
+
+	@Override
+	public void init(int pointDimension) {
+		if (pointDimension != 3)
+			throw new IllegalArgumentException("Only 3D points are supported");
+	}
+
+	@Override
+	public void setPoints(List<double[]> points, List<D> data) {
+		this.points = points;
+		this.data = data;
+
+		storagePoints.reset();
+		for (int i = 0; i < points.size(); i++) {
+			double[] d = points.get(i);
+			IndexedPoint p = storagePoints.grow();
+			p.set(d[0], d[1], d[2]);
+			p.index = i;
+		}
+
+		// the Octree's space is inclusive of the lower extent and exclusive of the upper extent
+		computeBounds();
+		construct.initialize(bounds);
+		for (int i = 0; i < storagePoints.size; i++) {
+			construct.addPoint(storagePoints.data[i], null);
+		}
+		search.setTree(construct.getTree());
+	}
+
+	private void computeBounds() {
+		if (storagePoints.size == 0) {
+			bounds.set(0, 0, 0, 1, 1, 1);
+			return;
+		}
+
+		Point3D_F64 p = storagePoints.data[0];
+		bounds.p0.set(p);
+		bounds.p1.set(p);
+		for (int i = 1; i < storagePoints.size; i++) {
+			p = storagePoints.data[i];
+			if (p.x < bounds.p0.x) bounds.p0.x = p.x;
+			else if (p.x > bounds.p1.x) bounds.p1.x = p.x;
+			if (p.y < bounds.p0.y) bounds.p0.y = p.y;
+			else if (p.y > bounds.p1.y) bounds.p1.y = p.y;
+			if (p.z < bounds.p0.z) bounds.p0.z = p.z;
+			else if (p.z > bounds.p1.z) bounds.p1.z = p.z;
+		}
+
+		// make sure the points on the upper extent are contained
+		double pad = Math.max(bounds.getLengthX(), Math.max(bounds.getLengthY(), bounds.getLengthZ())) * 1e-8 + 1e-12;
+		bounds.p1.x += pad;
+		bounds.p1.y += pad;
+		bounds.p1.z += pad;
+	}
+
+	@Override
+	public boolean findNearest(double[] point, double maxDistance, NnData<D> result) {
+		target.set(point[0], point[1], point[2]);
+
+		Octree.Info<Point3D_F64> info = search.findNearest(target, maxDistance);
+		if (info == null)
+			return false;
+
+		assign((IndexedPoint) info.point, search.getLastDistance(), result);
+		return true;
+	}
+
+	@Override
+	public void findNearest(double[] point, double maxDistance, int numNeighbors, FastQueue<NnData<D>> results) {
+		target.set(point[0], point[1], point[2]);
+
+		search.findNearest(target, maxDistance, numNeighbors, this.results, distances);
+
+		for (int i = 0; i < this.results.size; i++) {
+			assign((IndexedPoint) this.results.data[i].point, distances.data[i], results.grow());
+		}
+	}
+
+	private void assign(IndexedPoint p, double distance, NnData<D> result) {
+		result.point = points.get(p.index);
+		result.data = data == null ? null : data.get(p.index);
+		result.distance = distance;
+	}
+
+	/**
+	 * Used to construct the Octree.  The user data of each point is null and the point is a copy of the input.
+	 */
+	public ConstructOctreeNumPoints_F64 getConstruct() {
+		return construct;
+	}
+
+	public OctreeNearestNeighbor_F64 getSearch() {
+		return search;
+	}
+
+	/**
+	 * Point which keeps track of its index in the input list
+	 */
+	public static class IndexedPoint extends Point3D_F64 {
+		private static final long serialVersionUID = 1L;
+
+		public int index;
+	}
+}
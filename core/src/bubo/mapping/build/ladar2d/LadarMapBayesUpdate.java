@@ -30,8 +30,26 @@ import bubo.struct.StoppingCondition;
 import georegression.struct.point.Point2D_F64;
 import georegression.struct.se.Se2_F64;
 import georegression.transform.se.SePointOps_F64;
+import org.ddogleg.struct.GrowQueue_F64;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 /**
+ * <p>
+ * Updates an occupancy grid using ladar scans and a bayesian update.
+ * </p>
+ *
+ * <p>
+ * Scans with known locations can be integrated in a batch with {@link #processBatch}.  If a thread pool has
+ * been specified then the map is split into horizontal stripes and each stripe is updated by a different task.
+ * Each task traverses every beam in the same order as a serial update but only modifies cells inside its stripe,
+ * so each cell sees the same sequence of updates and the resulting map is identical to a serial update.
+ * </p>
+ *
  * @author Peter Abeles
  */
 // todo improve weighting mechanism.  use probability theory there too?
@@ -56,6 +74,17 @@ public class LadarMapBayesUpdate extends LineGridGenericUpdate {
 
 	Se2_F64 estimatedCurrToWorld = new Se2_F64();
 
+	// used to update the map concurrently.  If null then batch updates are done sequentially
+	ExecutorService threadPool;
+	// number of rows in each stripe that's updated concurrently
+	int stripeHeight = 64;
+	List<Stripe> stripes = new ArrayList<Stripe>();
+	List<Future<?>> futures = new ArrayList<Future<?>>();
+
+	// lines in map coordinates for all the beams in a batch.  (x0,y0,x1,y1,length,range)
+	GrowQueue_F64 lines = new GrowQueue_F64();
+	Point2D_F64 endPoint = new Point2D_F64();
+
 	public void init(Lrf2dParam param,
 					 OccupancyGrid2D_F32 map,
 					 GridMapSpacialInfo mapSpacial) {
@@ -64,6 +93,17 @@ public class LadarMapBayesUpdate extends LineGridGenericUpdate {
 		this.map = map;
 		this.mapSpacial = mapSpacial;
 
+		setClip(0, 0, map.getWidth(), map.getHeight());
+		setFreeSpaceRuns(new FreeSpaceRuns() {
+			@Override
+			public void freeRun(int x, int y, int dx, int dy, int length) {
+				float p = probability.freeSpaceProbability();
+				for (int i = 0; i < length; i++, x += dx, y += dy) {
+					bayesUpdate(x, y, p);
+				}
+			}
+		});
+
 		if (scanMatching != null) {
 			scanMatching.setSensorParam(param);
 			motion = new Lrf2dMotionRollingKeyFrame(scanMatching,10);
@@ -119,10 +159,119 @@ public class LadarMapBayesUpdate extends LineGridGenericUpdate {
 			double y1 = (temp.getY() - mapSpacial.getBl().getY()) / cellSize;
 
 //            System.out.println("( "+x0+" , "+y0+" ) ( "+x1+" , "+y1+" )");
-			// todo bounds check the line to avoid pointless search
-			update(x0, y0, x1, y1, dist);
+			traverse(x0, y0, x1, y1, dist, r[i] - probability.freeSpaceDistance());
+		}
+
+	}
+
+	/**
+	 * Updates the map using scans with known locations.  Scan matching is not used.  The map is modified in the
+	 * same order as if each scan had been processed one after another, and if a thread pool has been specified
+	 * the work is split up between threads.
+	 *
+	 * @param sensorToWorld Location of the sensor for each scan
+	 * @param ranges Range measurements for each scan
+	 */
+	public void processBatch(List<Se2_F64> sensorToWorld, List<double[]> ranges) {
+		if (sensorToWorld.size() != ranges.size())
+			throw new IllegalArgumentException("Number of locations and scans must be the same");
+
+		lines.reset();
+		for (int i = 0; i < ranges.size(); i++) {
+			addLines(sensorToWorld.get(i), ranges.get(i));
+		}
+
+		if (threadPool == null) {
+			for (int i = 0; i < lines.size; i += 6) {
+				double[] l = lines.data;
+				probability.setRangeMeasurement(l[i + 5]);
+				traverse(l[i], l[i + 1], l[i + 2], l[i + 3], l[i + 4], l[i + 5] - probability.freeSpaceDistance());
+			}
+		} else {
+			int numStripes = (map.getHeight() + stripeHeight - 1) / stripeHeight;
+			while (stripes.size() < numStripes) {
+				stripes.add(new Stripe());
+			}
+
+			for (int i = 0; i < numStripes; i++) {
+				Stripe s = stripes.get(i);
+				s.y0 = i * stripeHeight;
+				s.y1 = Math.min(s.y0 + stripeHeight, map.getHeight());
+				// lines are clipped to the stripe so cells outside of it are never visited
+				s.setClip(0, s.y0, map.getWidth(), s.y1);
+				futures.add(threadPool.submit(s));
+			}
+
+			for (int i = 0; i < futures.size(); i++) {
+				try {
+					futures.get(i).get();
+				} catch (InterruptedException e) {
+					throw new RuntimeException(e);
+				} catch (ExecutionException e) {
+					throw new RuntimeException(e.getCause());
+				}
+			}
+			futures.clear();
+		}
+	}
+
+	/**
+	 * Computes the line in map coordinates for each valid beam in the scan and adds it to the list
+	 */
+	private void addLines(Se2_F64 sensorToWorld, double r[]) {
+		final int N = param.getNumberOfScans();
+
+		double cellSize = mapSpacial.getCellSize();
+
+		double x0 = (sensorToWorld.getX() - mapSpacial.getBl().getX()) / cellSize;
+		double y0 = (sensorToWorld.getY() - mapSpacial.getBl().getY()) / cellSize;
+
+		for (int i = 0; i < N; i++) {
+			probability.setRangeMeasurement(r[i]);
+			double dist = r[i] + probability.lineExtension();
+
+			if (!param.isValidRange(dist)) {
+				continue;
+			}
+
+			trig.computeEndPoint(i, dist);
+			SePointOps_F64.transform(sensorToWorld, trig.x, trig.y, endPoint);
+
+			lines.add(x0);
+			lines.add(y0);
+			lines.add((endPoint.getX() - mapSpacial.getBl().getX()) / cellSize);
+			lines.add((endPoint.getY() - mapSpacial.getBl().getY()) / cellSize);
+			lines.add(dist);
+			lines.add(r[i]);
 		}
+	}
+
+	/**
+	 * Specifies the thread pool used by {@link #processBatch}.  The map must support different cells being
+	 * modified concurrently.  For tiled maps the stripe height should be a multiple of the tile size.
+	 *
+	 * @param threadPool Thread pool.  If null then batch updates are done sequentially.
+	 * @param stripeHeight Number of map rows updated by each task.
+	 */
+	public void setThreadPool(ExecutorService threadPool, int stripeHeight) {
+		if (stripeHeight <= 0)
+			throw new IllegalArgumentException("stripeHeight must be more than zero");
+		this.threadPool = threadPool;
+		this.stripeHeight = stripeHeight;
+		stripes.clear();
+	}
+
+	public ExecutorService getThreadPool() {
+		return threadPool;
+	}
 
+	/**
+	 * Changes the scan matching algorithm used by {@link #process}.  Must be called before {@link #init}.
+	 *
+	 * @param scanMatching Scan matching algorithm.  If null then the scan's location is used directly.
+	 */
+	public void setScanMatching(Lrf2dScanToScan scanMatching) {
+		this.scanMatching = scanMatching;
 	}
 
 	/**
@@ -158,5 +307,48 @@ public class LadarMapBayesUpdate extends LineGridGenericUpdate {
 		}
 	}
 
+	/**
+	 * Updates the cells inside a range of rows using all the lines in the batch
+	 */
+	private class Stripe extends LineGridGenericUpdate implements Runnable, LineGridGenericUpdate.FreeSpaceRuns {
+		// range of rows which can be modified.  y0 inclusive and y1 exclusive
+		int y0;
+		int y1;
+
+		// each stripe has its own copy since the model contains the range measurement
+		LineRangeProbability probability = LadarMapBayesUpdate.this.probability.copy();
+
+		Stripe() {
+			setFreeSpaceRuns(this);
+		}
+
+		@Override
+		public void run() {
+			double[] l = lines.data;
+			for (int i = 0; i < lines.size; i += 6) {
+				// skip lines which can't touch this stripe
+				double minY = Math.min(l[i + 1], l[i + 3]);
+				double maxY = Math.max(l[i + 1], l[i + 3]);
+				if (maxY < y0 - 1 || minY > y1 + 1)
+					continue;
+
+				probability.setRangeMeasurement(l[i + 5]);
+				traverse(l[i], l[i + 1], l[i + 2], l[i + 3], l[i + 4], l[i + 5] - probability.freeSpaceDistance());
+			}
+		}
+
+		@Override
+		public void freeRun(int x, int y, int dx, int dy, int length) {
+			float p = probability.freeSpaceProbability();
+			for (int i = 0; i < length; i++, x += dx, y += dy) {
+				bayesUpdate(x, y, p);
+			}
+		}
+
+		@Override
+		protected void update(int x, int y, double dist) {
+			bayesUpdate(x, y, probability.computeProbability(dist));
+		}
+	}
 
 }
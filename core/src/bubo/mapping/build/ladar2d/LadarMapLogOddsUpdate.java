@@ -0,0 +1,199 @@
+/*
+ * Copyright (c) 2013-2014, Peter Abeles. All Rights Reserved.
+ *
+ * This file is part of Project BUBO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package bubo.mapping.build.ladar2d;
+
+import bubo.desc.sensors.lrf2d.Lrf2dParam;
+import bubo.desc.sensors.lrf2d.Lrf2dPrecomputedTrig;
+import bubo.maps.d2.grid.GridMapSpacialInfo;
+import bubo.maps.d2.grid.impl.LogOddsGrid2D_I16;
+import georegression.struct.point.Point2D_F64;
+import georegression.struct.se.Se2_F64;
+import georegression.transform.se.SePointOps_F64;
+
+/**
+ * <p>
+ * Updates a {@link LogOddsGrid2D_I16} using ladar range measurements.  For each cell along a beam the sensor's
+ * probability is converted into a log-odds increment and added to the cell, making the update of each cell a
+ * single integer add.  The increments are precomputed for a sampled set of distances relative to the range
+ * measurement and stored as 8-bit integers.  This requires that the {@link LineRangeProbability} only depend on
+ * the difference between the distance and the measured range, which is true for {@link LineRangeGaussian}.
+ * Cells which are farther in front of the measurement than the table covers are assumed to be free space and are
+ * given the increment of the first table element.
+ * </p>
+ *
+ * <p>
+ * Unlike {@link LadarMapBayesUpdate}, the map's value is not decayed towards unknown on each update.  Instead the
+ * map's values are clamped, which also prevents a cell from becoming stuck.
+ * </p>
+ *
+ * @author Peter Abeles
+ */
+public class LadarMapLogOddsUpdate extends LineGridGenericUpdate {
+
+	Lrf2dPrecomputedTrig trig;
+	Lrf2dParam param;
+	LogOddsGrid2D_I16 map;
+	GridMapSpacialInfo mapSpacial;
+	LineRangeProbability probability;
+
+	// how much the sensor's probability is weighted
+	float sensorWeight;
+
+	// distance in front of the measurement at which the table starts
+	double tableRange;
+	// distance between samples in the table
+	double tableStep;
+	// increment for each sample, starting at a distance of -tableRange from the measurement
+	byte increments[];
+
+	// the current range measurement
+	double range;
+
+	Point2D_F64 temp = new Point2D_F64();
+
+	/**
+	 * Configures the update
+	 *
+	 * @param probability Sensor model
+	 * @param sensorWeight How much the sensor's probability is weighted.  0 to 1.  Try 0.05
+	 * @param tableRange Distance in front of the measurement the table starts at.  Should be large enough that
+	 *                   the probability has reached its free space value.
+	 * @param tableStep Distance between samples in the table.  Should be smaller than the map's cells.
+	 */
+	public LadarMapLogOddsUpdate(LineRangeProbability probability, float sensorWeight,
+								 double tableRange, double tableStep) {
+		this.probability = probability;
+		this.sensorWeight = sensorWeight;
+		this.tableRange = tableRange;
+		this.tableStep = tableStep;
+	}
+
+	/**
+	 * Uses the same sensor model and weight as {@link LadarMapBayesUpdate}
+	 */
+	public LadarMapLogOddsUpdate() {
+		this(new LineRangeGaussian(0.2), 0.05f, 1.0, 0.005);
+	}
+
+	public void init(Lrf2dParam param,
+					 LogOddsGrid2D_I16 map,
+					 GridMapSpacialInfo mapSpacial) {
+		this.param = param;
+		trig = new Lrf2dPrecomputedTrig(param);
+		this.map = map;
+		this.mapSpacial = mapSpacial;
+
+		computeIncrements();
+
+		setClip(0, 0, map.getWidth(), map.getHeight());
+		setFreeSpaceRuns(new FreeSpaceRuns() {
+			@Override
+			public void freeRun(int x, int y, int dx, int dy, int length) {
+				int increment = increments[0];
+				for (int i = 0; i < length; i++, x += dx, y += dy) {
+					LadarMapLogOddsUpdate.this.map.add(x, y, increment);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Samples the sensor model and converts it into log-odds increments for the map
+	 */
+	protected void computeIncrements() {
+		probability.setRangeMeasurement(tableRange);
+		double end = tableRange + probability.lineExtension();
+		int N = (int) Math.ceil(end / tableStep) + 1;
+
+		increments = new byte[N];
+		for (int i = 0; i < N; i++) {
+			float p = probability.computeProbability(i * tableStep);
+			p = (p - 0.5f) * sensorWeight + 0.5f;
+
+			int value = map.probabilityToValue(p);
+			if (value > Byte.MAX_VALUE)
+				value = Byte.MAX_VALUE;
+			else if (value < Byte.MIN_VALUE)
+				value = Byte.MIN_VALUE;
+			increments[i] = (byte) value;
+		}
+	}
+
+	/**
+	 * Updates the map using a scan
+	 *
+	 * @param sensorToWorld Location of the sensor in the world
+	 * @param ranges Range measurements
+	 */
+	public void process(Se2_F64 sensorToWorld, double ranges[]) {
+		final int N = param.getNumberOfScans();
+
+		double cellSize = mapSpacial.getCellSize();
+
+		double x0 = (sensorToWorld.getX() - mapSpacial.getBl().getX()) / cellSize;
+		double y0 = (sensorToWorld.getY() - mapSpacial.getBl().getY()) / cellSize;
+
+		double extension = probability.lineExtension();
+
+		for (int i = 0; i < N; i++) {
+			range = ranges[i];
+			double dist = range + extension;
+
+			if (!param.isValidRange(dist)) {
+				continue;
+			}
+
+			trig.computeEndPoint(i, dist);
+
+			SePointOps_F64.transform(sensorToWorld, trig.x, trig.y, temp);
+
+			double x1 = (temp.getX() - mapSpacial.getBl().getX()) / cellSize;
+			double y1 = (temp.getY() - mapSpacial.getBl().getY()) / cellSize;
+
+			// cells before the start of the table are free space
+			traverse(x0, y0, x1, y1, dist, range - tableRange - tableStep);
+		}
+	}
+
+	/**
+	 * Returns the increment for a cell at the specified distance along a beam with the current range
+	 */
+	protected int lookupIncrement(double dist) {
+		int index = (int) ((dist - range + tableRange) / tableStep + 0.5);
+		if (index < 0)
+			return increments[0];
+		if (index >= increments.length)
+			return 0;
+		return increments[index];
+	}
+
+	@Override
+	protected void update(int x, int y, double dist) {
+		map.add(x, y, lookupIncrement(dist));
+	}
+
+	public byte[] getIncrements() {
+		return increments;
+	}
+
+	public LogOddsGrid2D_I16 getMap() {
+		return map;
+	}
+}
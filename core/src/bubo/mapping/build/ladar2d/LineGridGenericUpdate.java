@@ -29,11 +29,33 @@ package bubo.mapping.build.ladar2d;
  * The line is drawn using Bresenham's algorithm.  The distance along the line as well
  * as the grid coordinate is passed onto an update function.
  * </p>
+ * <p/>
+ * <p>
+ * Alternatively, {@link #traverse} first clips the line to a rectangular region and then visits every cell the
+ * line passes through using an exact DDA (Amanatides and Woo).  Cells which are entirely in free space can
+ * optionally be passed in contiguous runs to a {@link FreeSpaceRuns} listener instead of one at a time.
+ * </p>
  *
  * @author Peter Abeles
  */
 public abstract class LineGridGenericUpdate {
 
+	// region lines are clipped to by traverse.  lower extent inclusive and upper extent exclusive
+	protected int clipX0 = 0;
+	protected int clipY0 = 0;
+	protected int clipX1 = Integer.MAX_VALUE;
+	protected int clipY1 = Integer.MAX_VALUE;
+
+	// if not null then free space cells are passed to it in runs
+	protected FreeSpaceRuns freeSpaceRuns;
+
+	// the free space run which is being constructed
+	private int runX;
+	private int runY;
+	private int runDx;
+	private int runDy;
+	private int runLength;
+
 	/**
 	 * Updates the map along the specified line.  All points are in grid coordinates.
 	 *
@@ -93,6 +115,167 @@ public abstract class LineGridGenericUpdate {
 		}
 	}
 
+	/**
+	 * <p>
+	 * Visits every cell the line passes through which is inside the clipping region.  The line is first clipped
+	 * so cells outside the region are never examined, then traversed using an exact DDA.  The distance passed to
+	 * {@link #update(int, int, double)} is the distance of the middle of the line's segment inside the cell.
+	 * </p>
+	 *
+	 * <p>
+	 * If a {@link FreeSpaceRuns} listener has been set then cells which are entirely closer than 'freeLength'
+	 * are passed to it as runs along a single row or column, instead of to {@link #update(int, int, double)}.
+	 * </p>
+	 *
+	 * @param x0         Beginning of line. x-coordinate.
+	 * @param y0         Beginning of line. y-coordinate.
+	 * @param x1         Ending of line. x-coordinate.
+	 * @param y1         Ending of line. y-coordinate.
+	 * @param length     The length of the specified line.
+	 * @param freeLength Distance along the line up to which cells are free space.  Ignored if no listener.
+	 */
+	public void traverse(double x0, double y0, double x1, double y1, double length, double freeLength) {
+		double dx = x1 - x0;
+		double dy = y1 - y0;
+
+		// clip the line using the Liang-Barsky algorithm
+		double t0 = 0;
+		double t1 = 1;
+		if (dx == 0) {
+			if (x0 < clipX0 || x0 >= clipX1)
+				return;
+		} else {
+			double ta = (clipX0 - x0) / dx;
+			double tb = (clipX1 - x0) / dx;
+			t0 = Math.max(t0, Math.min(ta, tb));
+			t1 = Math.min(t1, Math.max(ta, tb));
+		}
+		if (dy == 0) {
+			if (y0 < clipY0 || y0 >= clipY1)
+				return;
+		} else {
+			double ta = (clipY0 - y0) / dy;
+			double tb = (clipY1 - y0) / dy;
+			t0 = Math.max(t0, Math.min(ta, tb));
+			t1 = Math.min(t1, Math.max(ta, tb));
+		}
+		if (t0 > t1)
+			return;
+
+		// cell the clipped line starts in
+		int x = cellIndex(x0 + t0 * dx, dx, clipX0, clipX1);
+		int y = cellIndex(y0 + t0 * dy, dy, clipY0, clipY1);
+
+		int stepX = dx > 0 ? 1 : (dx < 0 ? -1 : 0);
+		int stepY = dy > 0 ? 1 : (dy < 0 ? -1 : 0);
+
+		runLength = 0;
+		double t = t0;
+		while (true) {
+			// parametric location the line exits the cell
+			double tx = stepX == 0 ? Double.MAX_VALUE : ((stepX > 0 ? x + 1 : x) - x0) / dx;
+			double ty = stepY == 0 ? Double.MAX_VALUE : ((stepY > 0 ? y + 1 : y) - y0) / dy;
+			double tExit = Math.min(Math.min(tx, ty), t1);
+
+			if (freeSpaceRuns != null && tExit * length <= freeLength) {
+				addToRun(x, y);
+			} else {
+				flushRun();
+				update(x, y, (t + tExit) * 0.5 * length);
+			}
+
+			if (tExit >= t1)
+				break;
+
+			if (tx <= ty)
+				x += stepX;
+			else
+				y += stepY;
+			t = tExit;
+
+			if (x < clipX0 || x >= clipX1 || y < clipY0 || y >= clipY1)
+				break;
+		}
+		flushRun();
+	}
+
+	/**
+	 * Index of the cell which contains the coordinate.  If on the border of a cell then the cell in the
+	 * direction of travel is selected.
+	 */
+	private static int cellIndex(double value, double delta, int lower, int upper) {
+		int index = (int) Math.floor(value);
+		if (delta < 0 && index == value)
+			index--;
+		if (index < lower)
+			return lower;
+		if (index >= upper)
+			return upper - 1;
+		return index;
+	}
+
+	private void addToRun(int x, int y) {
+		if (runLength == 0) {
+			runX = x;
+			runY = y;
+			runDx = 0;
+			runDy = 0;
+			runLength = 1;
+			return;
+		}
+
+		int lastX = runX + runDx * (runLength - 1);
+		int lastY = runY + runDy * (runLength - 1);
+		int dx = x - lastX;
+		int dy = y - lastY;
+
+		if (runLength == 1) {
+			runDx = dx;
+			runDy = dy;
+			runLength = 2;
+		} else if (dx == runDx && dy == runDy) {
+			runLength++;
+		} else {
+			flushRun();
+			addToRun(x, y);
+		}
+	}
+
+	private void flushRun() {
+		if (runLength > 0) {
+			if (runLength == 1) {
+				runDx = 1;
+				runDy = 0;
+			}
+			freeSpaceRuns.freeRun(runX, runY, runDx, runDy, runLength);
+			runLength = 0;
+		}
+	}
+
+	/**
+	 * Specifies the region which lines are clipped to in {@link #traverse}.  Typically this is the map's shape.
+	 *
+	 * @param x0 Lower x-coordinate.  Inclusive.
+	 * @param y0 Lower y-coordinate.  Inclusive.
+	 * @param x1 Upper x-coordinate.  Exclusive.
+	 * @param y1 Upper y-coordinate.  Exclusive.
+	 */
+	public void setClip(int x0, int y0, int x1, int y1) {
+		this.clipX0 = x0;
+		this.clipY0 = y0;
+		this.clipX1 = x1;
+		this.clipY1 = y1;
+	}
+
+	/**
+	 * Specifies a listener which is passed runs of free space cells by {@link #traverse}.
+	 *
+	 * @param freeSpaceRuns The listener.  If null then all cells are passed to {@link #update(int, int, double)}.
+	 */
+	public void setFreeSpaceRuns(FreeSpaceRuns freeSpaceRuns) {
+		this.freeSpaceRuns = freeSpaceRuns;
+	}
+
 	/**
 	 * The map grid coordinate that needs to be updated and the distance it is along the line.
 	 *
@@ -101,4 +284,21 @@ public abstract class LineGridGenericUpdate {
 	 * @param dist Distance along the line.
 	 */
 	protected abstract void update(int x, int y, double dist);
+
+	/**
+	 * Receives runs of cells along a line which are entirely in free space.
+	 */
+	public static interface FreeSpaceRuns {
+		/**
+		 * A contiguous run of free space cells.  Cell 'i' is at (x + i*dx, y + i*dy).  One of dx or dy is
+		 * zero and the other is 1 or -1.
+		 *
+		 * @param x x-coordinate of the first cell
+		 * @param y y-coordinate of the first cell
+		 * @param dx step along x-axis
+		 * @param dy step along y-axis
+		 * @param length Number of cells in the run
+		 */
+		public void freeRun(int x, int y, int dx, int dy, int length);
+	}
 }
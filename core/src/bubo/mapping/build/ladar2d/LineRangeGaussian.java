@@ -75,4 +75,24 @@ public class LineRangeGaussian implements LineRangeProbability {
 			return 0.5f;
 		}
 	}
+
+	@Override
+	public double freeSpaceDistance() {
+		return rZero;
+	}
+
+	@Override
+	public float freeSpaceProbability() {
+		return 0.0f;
+	}
+
+	@Override
+	public LineRangeProbability copy() {
+		LineRangeGaussian ret = new LineRangeGaussian(1);
+		ret.var = var;
+		ret.rZero = rZero;
+		ret.rHalf = rHalf;
+		ret.rangeMeas = rangeMeas;
+		return ret;
+	}
 }
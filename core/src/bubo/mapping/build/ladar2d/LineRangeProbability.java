@@ -51,4 +51,28 @@ public interface LineRangeProbability {
 	 * @return Probability that this is the true range.  Between 0 and 1.
 	 */
 	public float computeProbability(double dist);
+
+	/**
+	 * Distance in front of the range measurement beyond which the probability is always
+	 * {@link #freeSpaceProbability()}.
+	 *
+	 * @return Distance from the measurement to the start of the free space region.
+	 */
+	public double freeSpaceDistance();
+
+	/**
+	 * The probability for all distances which are more than {@link #freeSpaceDistance()} in front of the
+	 * range measurement.
+	 *
+	 * @return Probability of free space.
+	 */
+	public float freeSpaceProbability();
+
+	/**
+	 * Creates a new instance with the same configuration.  The copy can be used independently of the original,
+	 * e.g. in a different thread.
+	 *
+	 * @return A copy of this sensor model
+	 */
+	public LineRangeProbability copy();
 }
@@ -0,0 +1,363 @@
+/*
+ * Copyright (c) 2013-2014, Peter Abeles. All Rights Reserved.
+ *
+ * This file is part of Project BUBO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package bubo.mapping.build.ladar3d;
+
+import bubo.construct.PackedKeyHashMap_I32;
+import bubo.maps.d3.grid.GridMapSpacialInfo3D;
+import bubo.maps.d3.grid.impl.OctreeGridMap_F64;
+import georegression.struct.point.Point3D_F64;
+import georegression.struct.se.Se3_F64;
+import georegression.transform.se.SePointOps_F64;
+import org.ddogleg.struct.GrowQueue_I64;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * <p>
+ * Inserts 3D scans into an {@link OctreeGridMap_F64}, similar to how it's done in OctoMap.  A ray is cast from
+ * the sensor's origin to each point in the scan using a 3D DDA (Amanatides and Woo).  Cells which the ray passes
+ * through are free and the cell containing the point is occupied.  The set of free and occupied cells is found for
+ * the entire scan and duplicates are removed before the map is modified, ensuring that each cell is only updated
+ * once per scan.  If a cell is both free and occupied then it is treated as occupied.
+ * </p>
+ *
+ * <p>
+ * Cells are updated by adding the log-odds of a hit or a miss and the results are clamped.  Rays are clipped to
+ * the map's bounds.  If a maximum range is specified then rays which are longer are truncated and only mark
+ * free space.  Pruning walks the entire tree, so by default the map is not pruned after each scan.  Instead
+ * call {@link OctreeGridMap_F64#prune()} periodically or turn it on with {@link #setPrune(boolean)}.
+ * </p>
+ *
+ * @author Peter Abeles
+ */
+public class OctreeGridMapScanUpdate {
+
+	// log-odds of a cell being hit or missed
+	double logOddsHit;
+	double logOddsMiss;
+
+	// range of allowed log-odds
+	double minLogOdds;
+	double maxLogOdds;
+
+	// maximum length of a ray.  if <= 0 then there is no limit
+	double maxRange = -1;
+
+	// if true the map is pruned after each scan
+	boolean prune = false;
+
+	OctreeGridMap_F64 map;
+	GridMapSpacialInfo3D spacial;
+
+	// transform from sensor to map
+	Se3_F64 worldToMap = new Se3_F64();
+	Se3_F64 sensorToMap = new Se3_F64();
+
+	// keys of cells which are free and occupied
+	GrowQueue_I64 free = new GrowQueue_I64();
+	GrowQueue_I64 occupied = new GrowQueue_I64();
+
+	// storage for a point in map coordinates
+	Point3D_F64 end = new Point3D_F64();
+	// parametric range of the clipped ray
+	double clipT[] = new double[2];
+
+	/**
+	 * Configures the update.  Probabilities are converted into log-odds internally.
+	 *
+	 * @param probHit Probability of a cell being occupied when a point is inside of it.  Try 0.7
+	 * @param probMiss Probability of a cell being occupied when a ray passes through it.  Try 0.4
+	 * @param clampMin Smallest probability a cell can have.  Try 0.12
+	 * @param clampMax Largest probability a cell can have.  Try 0.97
+	 */
+	public OctreeGridMapScanUpdate(double probHit, double probMiss, double clampMin, double clampMax) {
+		if (probHit <= 0.5 || probHit >= 1)
+			throw new IllegalArgumentException("probHit must be more than 0.5 and less than 1");
+		if (probMiss >= 0.5 || probMiss <= 0)
+			throw new IllegalArgumentException("probMiss must be less than 0.5 and more than 0");
+		if (clampMin <= 0 || clampMax >= 1 || clampMin > clampMax)
+			throw new IllegalArgumentException("Invalid clamp range");
+
+		logOddsHit = logOdds(probHit);
+		logOddsMiss = logOdds(probMiss);
+		minLogOdds = logOdds(clampMin);
+		maxLogOdds = logOdds(clampMax);
+	}
+
+	/**
+	 * Uses the same default values as OctoMap
+	 */
+	public OctreeGridMapScanUpdate() {
+		this(0.7, 0.4, 0.12, 0.97);
+	}
+
+	/**
+	 * Specifies the map which is to be updated
+	 *
+	 * @param map The map
+	 * @param spacial Relationship between the map and the world
+	 */
+	public void setMap(OctreeGridMap_F64 map, GridMapSpacialInfo3D spacial) {
+		int maxSize = 1 << PackedKeyHashMap_I32.BITS;
+		if (map.getSizeX() > maxSize || map.getSizeY() > maxSize || map.getSizeZ() > maxSize)
+			throw new IllegalArgumentException("Map is too large");
+
+		this.map = map;
+		this.spacial = spacial;
+	}
+
+	/**
+	 * Updates the map using the scan.
+	 *
+	 * @param sensorToWorld Location of the sensor in the world
+	 * @param points Points in the scan in the sensor's reference frame
+	 */
+	public void process(Se3_F64 sensorToWorld, List<Point3D_F64> points) {
+		spacial.getMapToCanonical().invert(worldToMap);
+		sensorToWorld.concat(worldToMap, sensorToMap);
+
+		double cellSize = spacial.getCellSize();
+
+		// sensor origin in grid coordinates
+		double x0 = sensorToMap.T.x / cellSize;
+		double y0 = sensorToMap.T.y / cellSize;
+		double z0 = sensorToMap.T.z / cellSize;
+
+		free.reset();
+		occupied.reset();
+
+		for (int i = 0; i < points.size(); i++) {
+			Point3D_F64 p = points.get(i);
+
+			boolean hit = true;
+			if (maxRange > 0) {
+				double r = p.norm();
+				if (r > maxRange) {
+					hit = false;
+					end.set(p.x * maxRange / r, p.y * maxRange / r, p.z * maxRange / r);
+				} else {
+					end.set(p);
+				}
+			} else {
+				end.set(p);
+			}
+			SePointOps_F64.transform(sensorToMap, end, end);
+
+			double x1 = end.x / cellSize;
+			double y1 = end.y / cellSize;
+			double z1 = end.z / cellSize;
+
+			traverse(x0, y0, z0, x1, y1, z1, hit);
+		}
+
+		int numFree = removeDuplicates(free);
+		int numOccupied = removeDuplicates(occupied);
+
+		// update the map, skipping free cells which are also occupied
+		int j = 0;
+		for (int i = 0; i < numFree; i++) {
+			long key = free.data[i];
+			while (j < numOccupied && occupied.data[j] < key)
+				j++;
+			if (j < numOccupied && occupied.data[j] == key)
+				continue;
+			update(key, logOddsMiss);
+		}
+		for (int i = 0; i < numOccupied; i++) {
+			update(occupied.data[i], logOddsHit);
+		}
+
+		if (prune)
+			map.prune();
+	}
+
+	/**
+	 * Casts a ray through the grid and records which cells it passes through.  The ray is clipped to the map's
+	 * bounds.
+	 */
+	protected void traverse(double x0, double y0, double z0, double x1, double y1, double z1, boolean hit) {
+		double dx = x1 - x0;
+		double dy = y1 - y0;
+		double dz = z1 - z0;
+
+		// clip the ray to the map
+		double t[] = clipT;
+		t[0] = 0;
+		t[1] = 1;
+		if (!clip(x0, dx, map.getSizeX(), t) || !clip(y0, dy, map.getSizeY(), t) || !clip(z0, dz, map.getSizeZ(), t))
+			return;
+
+		// the end point is outside the map so it can't be marked as occupied
+		if (t[1] < 1)
+			hit = false;
+
+		int x = cellIndex(x0 + t[0] * dx, dx, map.getSizeX());
+		int y = cellIndex(y0 + t[0] * dy, dy, map.getSizeY());
+		int z = cellIndex(z0 + t[0] * dz, dz, map.getSizeZ());
+
+		int endX = (int) Math.floor(x1);
+		int endY = (int) Math.floor(y1);
+		int endZ = (int) Math.floor(z1);
+
+		int stepX = dx > 0 ? 1 : (dx < 0 ? -1 : 0);
+		int stepY = dy > 0 ? 1 : (dy < 0 ? -1 : 0);
+		int stepZ = dz > 0 ? 1 : (dz < 0 ? -1 : 0);
+
+		while (true) {
+			if (hit && x == endX && y == endY && z == endZ) {
+				occupied.add(PackedKeyHashMap_I32.key(x, y, z));
+				break;
+			}
+			free.add(PackedKeyHashMap_I32.key(x, y, z));
+
+			// parametric location the ray exits the cell
+			double tx = stepX == 0 ? Double.MAX_VALUE : ((stepX > 0 ? x + 1 : x) - x0) / dx;
+			double ty = stepY == 0 ? Double.MAX_VALUE : ((stepY > 0 ? y + 1 : y) - y0) / dy;
+			double tz = stepZ == 0 ? Double.MAX_VALUE : ((stepZ > 0 ? z + 1 : z) - z0) / dz;
+
+			if (tx <= ty && tx <= tz) {
+				if (tx >= t[1])
+					break;
+				x += stepX;
+			} else if (ty <= tz) {
+				if (ty >= t[1])
+					break;
+				y += stepY;
+			} else {
+				if (tz >= t[1])
+					break;
+				z += stepZ;
+			}
+
+			if (x < 0 || y < 0 || z < 0 || x >= map.getSizeX() || y >= map.getSizeY() || z >= map.getSizeZ())
+				break;
+		}
+
+		// handle the situation where the DDA stopped just short of the end point's cell due to round off
+		if (hit && (x != endX || y != endY || z != endZ)) {
+			if (endX >= 0 && endY >= 0 && endZ >= 0 &&
+					endX < map.getSizeX() && endY < map.getSizeY() && endZ < map.getSizeZ())
+				occupied.add(PackedKeyHashMap_I32.key(endX, endY, endZ));
+		}
+	}
+
+	/**
+	 * Clips the parametric range of the ray along one axis using the Liang-Barsky algorithm.
+	 *
+	 * @return false if the ray is entirely outside
+	 */
+	private static boolean clip(double start, double delta, int size, double t[]) {
+		if (delta == 0)
+			return start >= 0 && start < size;
+
+		double ta = -start / delta;
+		double tb = (size - start) / delta;
+		t[0] = Math.max(t[0], Math.min(ta, tb));
+		t[1] = Math.min(t[1], Math.max(ta, tb));
+		return t[0] <= t[1];
+	}
+
+	/**
+	 * Index of the cell which contains the coordinate.  If on the border of a cell then the cell in the
+	 * direction of travel is selected.
+	 */
+	private static int cellIndex(double value, double delta, int size) {
+		int index = (int) Math.floor(value);
+		if (delta < 0 && index == value)
+			index--;
+		if (index < 0)
+			return 0;
+		if (index >= size)
+			return size - 1;
+		return index;
+	}
+
+	/**
+	 * Sorts the keys and removes duplicates.
+	 *
+	 * @return Number of unique keys
+	 */
+	private static int removeDuplicates(GrowQueue_I64 keys) {
+		if (keys.size == 0)
+			return 0;
+
+		Arrays.sort(keys.data, 0, keys.size);
+
+		int N = 1;
+		for (int i = 1; i < keys.size; i++) {
+			if (keys.data[i] != keys.data[N - 1])
+				keys.data[N++] = keys.data[i];
+		}
+		keys.size = N;
+		return N;
+	}
+
+	private void update(long key, double logOdds) {
+		int x = PackedKeyHashMap_I32.keyX(key);
+		int y = PackedKeyHashMap_I32.keyY(key);
+		int z = PackedKeyHashMap_I32.keyZ(key);
+		map.updateLogOdds(x, y, z, logOdds, minLogOdds, maxLogOdds);
+	}
+
+	private static double logOdds(double p) {
+		return Math.log(p / (1.0 - p));
+	}
+
+	/**
+	 * Number of unique free space cells in the most recent scan, including ones which were also occupied
+	 */
+	public int getNumberOfFree() {
+		return free.size;
+	}
+
+	/**
+	 * Number of unique occupied cells in the most recent scan
+	 */
+	public int getNumberOfOccupied() {
+		return occupied.size;
+	}
+
+	/**
+	 * Specifies the maximum length of a ray.  Longer rays are truncated and do not mark a cell as occupied.
+	 *
+	 * @param maxRange Maximum range.  If &le; 0 then there is no limit.
+	 */
+	public void setMaxRange(double maxRange) {
+		this.maxRange = maxRange;
+	}
+
+	public double getMaxRange() {
+		return maxRange;
+	}
+
+	/**
+	 * If true then {@link OctreeGridMap_F64#prune()} is called after each scan, collapsing regions which
+	 * have the same value.  Pruning costs time proportional to the size of the tree and regions which are
+	 * collapsed are expanded again when the next scan touches them.  False by default.
+	 */
+	public void setPrune(boolean prune) {
+		this.prune = prune;
+	}
+
+	public boolean isPrune() {
+		return prune;
+	}
+}
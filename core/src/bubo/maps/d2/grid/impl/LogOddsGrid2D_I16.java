@@ -0,0 +1,196 @@
+/*
+ * Copyright (c) 2013-2014, Peter Abeles. All Rights Reserved.
+ *
+ * This file is part of Project BUBO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package bubo.maps.d2.grid.impl;
+
+import bubo.maps.d2.grid.OccupancyGrid2D_F32;
+
+/**
+ * <p>
+ * Dense occupancy grid which internally stores the log-odds of each cell being occupied as a 16-bit integer.
+ * The log-odds of a cell is the stored value multiplied by the resolution.  A value of 0 indicates that
+ * the cell is unknown.  Values are clamped to a user specified range, which prevents a cell from becoming
+ * so certain that it can't be changed by new observations.
+ * </p>
+ *
+ * <p>
+ * Updating a cell is done by adding a precomputed increment to its value using {@link #add(int, int, int)}, see
+ * {@link bubo.mapping.build.ladar2d.LadarMapLogOddsUpdate}.  Conversion into a probability is only done when
+ * it is read through the {@link OccupancyGrid2D_F32} interface and is done with a lookup table.
+ * </p>
+ *
+ * @author Peter Abeles
+ */
+public class LogOddsGrid2D_I16 extends ArrayGrid2DBase implements OccupancyGrid2D_F32 {
+
+	// grid map in a row major format
+	private short data[];
+
+	// log-odds of a single increment
+	private double resolution;
+
+	// range of allowed values
+	private int minValue;
+	private int maxValue;
+
+	// look up table from value to probability.  index = value - minValue
+	private float probability[];
+
+	/**
+	 * Specifies the map's shape and how values are stored.
+	 *
+	 * @param width Map's width
+	 * @param height Map's height
+	 * @param resolution Log-odds of a single increment.  Try 0.01
+	 * @param minValue Smallest value a cell can have.  Must be &le; 0 and &ge; Short.MIN_VALUE
+	 * @param maxValue Largest value a cell can have.  Must be &ge; 0 and &le; Short.MAX_VALUE
+	 */
+	public LogOddsGrid2D_I16(int width, int height, double resolution, int minValue, int maxValue) {
+		super(width, height);
+
+		if (minValue > 0 || minValue < Short.MIN_VALUE)
+			throw new IllegalArgumentException("minValue must be from Short.MIN_VALUE to 0");
+		if (maxValue < 0 || maxValue > Short.MAX_VALUE)
+			throw new IllegalArgumentException("maxValue must be from 0 to Short.MAX_VALUE");
+		if (resolution <= 0)
+			throw new IllegalArgumentException("resolution must be more than zero");
+
+		this.resolution = resolution;
+		this.minValue = minValue;
+		this.maxValue = maxValue;
+
+		data = new short[width * height];
+
+		probability = new float[maxValue - minValue + 1];
+		for (int i = 0; i < probability.length; i++) {
+			probability[i] = (float) (1.0 / (1.0 + Math.exp(-(i + minValue) * resolution)));
+		}
+	}
+
+	/**
+	 * Creates a map with a resolution of 0.01 and values clamped to a log-odds of &plusmn;3.5, which is
+	 * a probability of about 0.03 to 0.97.
+	 */
+	public LogOddsGrid2D_I16(int width, int height) {
+		this(width, height, 0.01, -350, 350);
+	}
+
+	/**
+	 * Adds the increment to the cell's value.  The results is clamped to the allowed range.  No bounds checking
+	 * is done.
+	 *
+	 * @param x x-coordinate of the cell
+	 * @param y y-coordinate of the cell
+	 * @param increment Change in the cell's value
+	 */
+	public void add(int x, int y, int increment) {
+		int index = y * width + x;
+		int value = data[index] + increment;
+		if (value > maxValue)
+			value = maxValue;
+		else if (value < minValue)
+			value = minValue;
+		data[index] = (short) value;
+	}
+
+	/**
+	 * Sets the cell's value directly.  The value is clamped to the allowed range.
+	 */
+	public void setValue(int x, int y, int value) {
+		checkBounds(x, y);
+
+		if (value > maxValue)
+			value = maxValue;
+		else if (value < minValue)
+			value = minValue;
+		data[y * width + x] = (short) value;
+	}
+
+	/**
+	 * Returns the cell's value.  The log-odds is the value times the resolution.
+	 */
+	public int getValue(int x, int y) {
+		checkBounds(x, y);
+
+		return data[y * width + x];
+	}
+
+	@Override
+	public void set(int x, int y, float value) {
+		checkBounds(x, y);
+
+		data[y * width + x] = (short) probabilityToValue(value);
+	}
+
+	@Override
+	public float get(int x, int y) {
+		checkBounds(x, y);
+
+		return probability[data[y * width + x] - minValue];
+	}
+
+	/**
+	 * Converts a probability into the closest allowed value
+	 */
+	public int probabilityToValue(double p) {
+		double v = Math.log(p / (1.0 - p)) / resolution;
+
+		if (v >= maxValue)
+			return maxValue;
+		else if (v <= minValue)
+			return minValue;
+		return (int) Math.round(v);
+	}
+
+	/**
+	 * Converts a value into a probability.  The value must be inside the allowed range.
+	 */
+	public float valueToProbability(int value) {
+		return probability[value - minValue];
+	}
+
+	@Override
+	public void clear() {
+		for (int i = 0; i < data.length; i++) {
+			data[i] = 0;
+		}
+	}
+
+	@Override
+	public boolean isKnown(int x, int y) {
+		return data[y * width + x] != 0;
+	}
+
+	@Override
+	public boolean isValid(float value) {
+		return value >= 0f && value <= 1f;
+	}
+
+	public double getResolution() {
+		return resolution;
+	}
+
+	public int getMinValue() {
+		return minValue;
+	}
+
+	public int getMaxValue() {
+		return maxValue;
+	}
+}
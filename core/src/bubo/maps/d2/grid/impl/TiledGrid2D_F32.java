@@ -0,0 +1,314 @@
+/*
+ * Copyright (c) 2013-2014, Peter Abeles. All Rights Reserved.
+ *
+ * This file is part of Project BUBO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package bubo.maps.d2.grid.impl;
+
+import bubo.maps.d2.grid.OccupancyGrid2D_F32;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * <p>
+ * Sparse floating point implementation of OccupancyGrid2D_F32.  The map is broken up into square tiles which are
+ * only declared when a cell inside of them is set to a value other than unknown (0.5).  Cells inside of tiles
+ * which have not been declared are unknown.  Large maps which are mostly unknown only use memory for the regions
+ * which have been observed.
+ * </p>
+ *
+ * <p>
+ * The map can be grown after it has been created using {@link #growToInclude(int, int)}.  If it grows along the
+ * negative x or y axis then the coordinate of existing cells will change by a multiple of the tile's width.  The
+ * total change is returned by {@link #getShiftX()} and {@link #getShiftY()}.
+ * </p>
+ *
+ * @author Peter Abeles
+ */
+public class TiledGrid2D_F32 extends ArrayGrid2DBase implements OccupancyGrid2D_F32 {
+
+	// value of a cell which is unknown
+	public static final float UNKNOWN = 0.5f;
+
+	// number of bits used to specify a cell's coordinate inside a tile
+	private int tileBits;
+	// width of a tile in cells
+	private int tileWidth;
+
+	// tiles in a row major format.  null if a tile has not been declared
+	private Tile tiles[];
+	// number of tiles along each axis
+	private int tilesX;
+	private int tilesY;
+
+	// how much the coordinate of cells has changed from growing the map
+	private int shiftX;
+	private int shiftY;
+
+	/**
+	 * Creates a map with the specified tile size
+	 *
+	 * @param width Map's width
+	 * @param height Map's height
+	 * @param tileBits Width of a tile is 2<sup>tileBits</sup>
+	 */
+	public TiledGrid2D_F32(int width, int height, int tileBits) {
+		super(width, height);
+		if (tileBits < 1 || tileBits > 12)
+			throw new IllegalArgumentException("tileBits must be from 1 to 12");
+
+		this.tileBits = tileBits;
+		this.tileWidth = 1 << tileBits;
+
+		tilesX = (width + tileWidth - 1) >> tileBits;
+		tilesY = (height + tileWidth - 1) >> tileBits;
+		tiles = new Tile[tilesX * tilesY];
+	}
+
+	/**
+	 * Creates a map with 64x64 tiles
+	 */
+	public TiledGrid2D_F32(int width, int height) {
+		this(width, height, 6);
+	}
+
+	@Override
+	public void set(int x, int y, float value) {
+		checkBounds(x, y);
+
+		int index = (y >> tileBits) * tilesX + (x >> tileBits);
+		Tile tile = tiles[index];
+		if (tile == null) {
+			if (value == UNKNOWN)
+				return;
+			tile = tiles[index] = new Tile(x >> tileBits, y >> tileBits, tileWidth);
+		}
+
+		int mask = tileWidth - 1;
+		tile.data[((y & mask) << tileBits) + (x & mask)] = value;
+	}
+
+	@Override
+	public float get(int x, int y) {
+		checkBounds(x, y);
+
+		Tile tile = tiles[(y >> tileBits) * tilesX + (x >> tileBits)];
+		if (tile == null)
+			return UNKNOWN;
+
+		int mask = tileWidth - 1;
+		return tile.data[((y & mask) << tileBits) + (x & mask)];
+	}
+
+	/**
+	 * Discards all the tiles.
+	 */
+	@Override
+	public void clear() {
+		for (int i = 0; i < tiles.length; i++) {
+			tiles[i] = null;
+		}
+	}
+
+	@Override
+	public boolean isKnown(int x, int y) {
+		Tile tile = tiles[(y >> tileBits) * tilesX + (x >> tileBits)];
+		if (tile == null)
+			return false;
+
+		int mask = tileWidth - 1;
+		return tile.data[((y & mask) << tileBits) + (x & mask)] != UNKNOWN;
+	}
+
+	@Override
+	public boolean isValid(float value) {
+		return value >= 0f && value <= 1f;
+	}
+
+	/**
+	 * Enlarges the map so that it contains the specified cell.  If the map is grown along the negative axis then the
+	 * coordinates of all existing cells will be shifted by a multiple of the tile width.  Use {@link #getShiftX()}
+	 * and {@link #getShiftY()} to find the total shift.
+	 *
+	 * @param x x-coordinate of the cell in the current coordinate system
+	 * @param y y-coordinate of the cell in the current coordinate system
+	 */
+	public void growToInclude(int x, int y) {
+		if (isInBounds(x, y))
+			return;
+
+		// number of tiles added along each side
+		int left = x < 0 ? (-x + tileWidth - 1) >> tileBits : 0;
+		int bottom = y < 0 ? (-y + tileWidth - 1) >> tileBits : 0;
+		int newWidth = Math.max(width, x + 1) + left * tileWidth;
+		int newHeight = Math.max(height, y + 1) + bottom * tileWidth;
+
+		int newTilesX = (newWidth + tileWidth - 1) >> tileBits;
+		int newTilesY = (newHeight + tileWidth - 1) >> tileBits;
+
+		Tile[] newTiles = new Tile[newTilesX * newTilesY];
+		for (int ty = 0; ty < tilesY; ty++) {
+			for (int tx = 0; tx < tilesX; tx++) {
+				Tile tile = tiles[ty * tilesX + tx];
+				if (tile == null)
+					continue;
+				tile.tileX = tx + left;
+				tile.tileY = ty + bottom;
+				newTiles[tile.tileY * newTilesX + tile.tileX] = tile;
+			}
+		}
+
+		tiles = newTiles;
+		tilesX = newTilesX;
+		tilesY = newTilesY;
+		width = newWidth;
+		height = newHeight;
+		shiftX += left * tileWidth;
+		shiftY += bottom * tileWidth;
+	}
+
+	/**
+	 * Total amount the x-coordinate of cells has changed by from growing the map.  The cell which was at
+	 * coordinate x when the map was created is now at x + shiftX.
+	 */
+	public int getShiftX() {
+		return shiftX;
+	}
+
+	/**
+	 * Total amount the y-coordinate of cells has changed by from growing the map.  The cell which was at
+	 * coordinate y when the map was created is now at y + shiftY.
+	 */
+	public int getShiftY() {
+		return shiftY;
+	}
+
+	/**
+	 * Width of a tile in cells
+	 */
+	public int getTileWidth() {
+		return tileWidth;
+	}
+
+	/**
+	 * Number of tiles which have been declared
+	 */
+	public int getNumberOfTiles() {
+		int total = 0;
+		for (int i = 0; i < tiles.length; i++) {
+			if (tiles[i] != null)
+				total++;
+		}
+		return total;
+	}
+
+	/**
+	 * Iterates through all the tiles which have been declared.  The order is row major.  Tiles should not be
+	 * declared or discarded while iterating.
+	 */
+	public Iterator<Tile> tileIterator() {
+		return new TileIterator();
+	}
+
+	/**
+	 * A square region in the map.  Cells in the tile are stored in a row major format.
+	 */
+	public static class Tile {
+		// coordinate of the tile in the grid of tiles
+		int tileX;
+		int tileY;
+		// width of the tile
+		int width;
+
+		/**
+		 * Value of each cell in a row major format
+		 */
+		public float data[];
+
+		private Tile(int tileX, int tileY, int width) {
+			this.tileX = tileX;
+			this.tileY = tileY;
+			this.width = width;
+			this.data = new float[width * width];
+			for (int i = 0; i < data.length; i++) {
+				data[i] = UNKNOWN;
+			}
+		}
+
+		/**
+		 * x-coordinate of the cell at the tile's lower extent
+		 */
+		public int getX0() {
+			return tileX * width;
+		}
+
+		/**
+		 * y-coordinate of the cell at the tile's lower extent
+		 */
+		public int getY0() {
+			return tileY * width;
+		}
+
+		public int getWidth() {
+			return width;
+		}
+
+		/**
+		 * Value of a cell inside the tile
+		 *
+		 * @param x x-coordinate relative to the tile's lower extent
+		 * @param y y-coordinate relative to the tile's lower extent
+		 */
+		public float get(int x, int y) {
+			return data[y * width + x];
+		}
+	}
+
+	private class TileIterator implements Iterator<Tile> {
+		int index = -1;
+
+		private TileIterator() {
+			advance();
+		}
+
+		private void advance() {
+			index++;
+			while (index < tiles.length && tiles[index] == null)
+				index++;
+		}
+
+		@Override
+		public boolean hasNext() {
+			return index < tiles.length;
+		}
+
+		@Override
+		public Tile next() {
+			if (index >= tiles.length)
+				throw new NoSuchElementException();
+			Tile tile = tiles[index];
+			advance();
+			return tile;
+		}
+
+		@Override
+		public void remove() {
+			throw new RuntimeException("Remove is not supported");
+		}
+	}
+}
@@ -26,6 +26,9 @@ import org.ddogleg.struct.FastQueue;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 /**
  * <p>
@@ -44,6 +47,13 @@ import java.util.List;
  * NOTE: If a cell is along the map's border cells outside the map will be treated as having a value
  * of 'defaultValue'.  A better way would be to reweigh it based on the cells which are inside the image.
  * </p>
+ * <p>
+ * If the kernel is separable, e.g. Gaussian, then it is applied as three 1D passes along the x, y, and z axes.
+ * Each pass pushes the difference between a cell's value and 'defaultValue' into a hashed sparse sum, which
+ * avoids creating octree nodes for intermediate results, and the blurred map is only built once the last pass
+ * is done.  The map is divided into slabs which are processed independently and, if a thread pool has been
+ * specified, concurrently.  Slabs have a fixed size so the results don't depend on the number of threads.
+ * </p>
  * @author Peter Abeles
  */
 public class BlurOctreeGridMap_F64 {
@@ -52,10 +62,28 @@ public class BlurOctreeGridMap_F64 {
 	protected List<Octree_I32> neighbors = new ArrayList<Octree_I32>();
 	protected List<Octree_I32> ignore = new ArrayList<Octree_I32>();
 	protected Box3D_I32 box = new Box3D_I32();
+	protected Point3D_I32 location = new Point3D_I32();
 
 	// stores information on the computed sum for convolution
 	protected FastQueue<SumData> convData = new FastQueue<SumData>(SumData.class,true);
 
+	// tolerance used to decide if a kernel is separable
+	protected double separableTol = 1e-12;
+	// 1D kernels along each axis of a separable kernel
+	protected double kernelX[] = new double[0];
+	protected double kernelY[] = new double[0];
+	protected double kernelZ[] = new double[0];
+
+	// if not null then slabs are processed concurrently
+	protected ExecutorService threadPool;
+	// number of cells along the split axis in each slab
+	protected int slabSize = 16;
+	// slabs along the z-axis used by the x and y passes
+	protected List<Slab> slabsZ = new ArrayList<Slab>();
+	// slabs along the y-axis used by the z pass
+	protected List<Slab> slabsY = new ArrayList<Slab>();
+	protected List<Future<?>> futures = new ArrayList<Future<?>>();
+
 	/**
 	 * Applies the kernel to the map while taking advantage of its sparsity.
 	 *
@@ -67,6 +95,23 @@ public class BlurOctreeGridMap_F64 {
 		if( !UtilMaps.sameShape(input, blurred))
 			throw new IllegalArgumentException("Maps must be the same shape!");
 
+		int w = kernel.getWidth();
+		if( kernelX.length < w ) {
+			kernelX = new double[w];
+			kernelY = new double[w];
+			kernelZ = new double[w];
+		}
+
+		if( kernel.separate(kernelX, kernelY, kernelZ, separableTol) )
+			applySeparable(input, kernel.getRadius(), blurred);
+		else
+			applyDirect(input, kernel, blurred);
+	}
+
+	/**
+	 * Applies the kernel by having each known cell push its value onto every one of its neighbors in the blurred map.
+	 */
+	protected void applyDirect( OctreeGridMap_F64 input , Kernel3D_F64 kernel , OctreeGridMap_F64 blurred ) {
 		blurred.clear();
 		convData.reset();
 
@@ -85,42 +130,59 @@ public class BlurOctreeGridMap_F64 {
 	protected void createBlurredCells(OctreeGridMap_F64 input, Kernel3D_F64 kernel, OctreeGridMap_F64 blurred) {
 		FastQueue<Octree_I32> list = input.getConstruct().getAllNodes();
 
-		int radius = kernel.radius;
 		for (int i = 0; i < list.size; i++) {
 			Octree_I32 o = list.get(i);
-			if (o.userData == null || !o.isLeaf() || !o.isSmallest())
+			if (o.userData == null || !o.isLeaf())
 				continue;
 
-			// set the box around it
-			box.p0.set(o.space.p0);
-			box.p0.x -= radius;
-			box.p0.y -= radius;
-			box.p0.z -= radius;
+			double probability = ((MapLeaf)o.getUserData()).probability;
 
-			box.p1.set(o.space.p0);
-			box.p1.x += radius + 1;
-			box.p1.y += radius + 1;
-			box.p1.z += radius + 1;
+			// a collapsed leaf contains multiple cells with the same value
+			Box3D_I32 space = o.space;
+			for (int z = space.p0.z; z < space.p1.z; z++) {
+				for (int y = space.p0.y; y < space.p1.y; y++) {
+					for (int x = space.p0.x; x < space.p1.x; x++) {
+						location.set(x, y, z);
+						blurCell(kernel, location, probability, blurred);
+					}
+				}
+			}
+		}
+	}
 
-			// create grid cells in blurred image around the location of 'o'
-			blurred.getConstruct().addLeafsIntersect(box, neighbors, ignore);
+	/**
+	 * Creates cells in the blurred map around the cell in the input map and applies its value to them
+	 */
+	private void blurCell(Kernel3D_F64 kernel, Point3D_I32 p, double probability, OctreeGridMap_F64 blurred) {
+		int radius = kernel.radius;
 
-			applyToNeighbors(kernel, o);
-		}
+		// set the box around it
+		box.p0.set(p);
+		box.p0.x -= radius;
+		box.p0.y -= radius;
+		box.p0.z -= radius;
+
+		box.p1.set(p);
+		box.p1.x += radius + 1;
+		box.p1.y += radius + 1;
+		box.p1.z += radius + 1;
+
+		// create grid cells in blurred image around the location of 'p'
+		blurred.getConstruct().addLeafsIntersect(box, neighbors, ignore);
+
+		applyToNeighbors(kernel, p, probability);
 	}
 
 	/**
-	 * Apply the probability to all the neighbors of 'o' in the blurred image.  The weight given
+	 * Apply the probability to all the neighbors of 'p' in the blurred image.  The weight given
 	 * to each neighbor is the weight from the kernel centered around it.  This is more efficient
 	 * that picking a point and convolving around it since only a few points actually have
 	 * values which aren't 'defaultValue'.
 	 */
-	protected void applyToNeighbors(Kernel3D_F64 kernel, Octree_I32 o) {
+	protected void applyToNeighbors(Kernel3D_F64 kernel, Point3D_I32 p, double probability) {
 
 		int radius = kernel.getRadius();
 		int width = kernel.getWidth()-1;
-		Point3D_I32 p = o.getLocation();
-		double probability = ((MapLeaf)o.getUserData()).probability;
 		for (int j = 0; j < neighbors.size(); j++) {
 			Octree_I32 neighbor = neighbors.get(j);
 			Point3D_I32 n = neighbor.getLocation();
@@ -142,6 +204,201 @@ public class BlurOctreeGridMap_F64 {
 		}
 	}
 
+	/**
+	 * Applies a separable kernel as three 1D passes.  The 1D kernels must already be in kernelX, kernelY, and kernelZ.
+	 */
+	protected void applySeparable( OctreeGridMap_F64 input , int radius , OctreeGridMap_F64 blurred ) {
+		int numZ = declareSlabs(slabsZ, input.getSizeZ());
+		int numY = declareSlabs(slabsY, input.getSizeY());
+
+		// assign the difference between each known cell and the blurred map's default value to the slab it's
+		// inside of.  Unknown cells are treated as having the blurred map's default value, as in applyDirect()
+		double defaultValue = blurred.getDefaultValue();
+		FastQueue<Octree_I32> list = input.getConstruct().getAllNodes();
+		for (int i = 0; i < list.size; i++) {
+			Octree_I32 o = list.get(i);
+			if (o.userData == null || !o.isLeaf())
+				continue;
+
+			double value = ((MapLeaf)o.getUserData()).probability - defaultValue;
+
+			Box3D_I32 space = o.space;
+			for (int z = space.p0.z; z < space.p1.z; z++) {
+				HashAccumulator3D_F64 slab = slabsZ.get(z/slabSize).input;
+				for (int y = space.p0.y; y < space.p1.y; y++) {
+					for (int x = space.p0.x; x < space.p1.x; x++) {
+						slab.add(x, y, z, value);
+					}
+				}
+			}
+		}
+
+		// blur along the x and y axes, which doesn't move values between slabs along the z-axis
+		for (int i = 0; i < numZ; i++) {
+			Slab s = slabsZ.get(i);
+			s.set(input, radius, 0, kernelX, 1, kernelY);
+		}
+		process(slabsZ, numZ);
+
+		// reassign the partial results to slabs along the y-axis so that each can be blurred along the z-axis
+		for (int i = 0; i < numZ; i++) {
+			HashAccumulator3D_F64 results = slabsZ.get(i).output;
+			for (int j = 0; j < results.size(); j++) {
+				int y = results.getY(j);
+				slabsY.get(y/slabSize).input.add(results.getX(j), y, results.getZ(j), results.getValue(j));
+			}
+		}
+		for (int i = 0; i < numY; i++) {
+			Slab s = slabsY.get(i);
+			s.set(input, radius, 2, kernelZ, -1, null);
+		}
+		process(slabsY, numY);
+
+		// construct the blurred map.  Cells outside the map are treated as having the default value
+		blurred.clear();
+		for (int i = 0; i < numY; i++) {
+			HashAccumulator3D_F64 results = slabsY.get(i).output;
+			for (int j = 0; j < results.size(); j++) {
+				blurred.set(results.getX(j), results.getY(j), results.getZ(j), defaultValue + results.getValue(j));
+			}
+		}
+	}
+
+	/**
+	 * Makes sure there are enough slabs to cover the axis and resets them
+	 *
+	 * @return Number of slabs
+	 */
+	private int declareSlabs( List<Slab> slabs , int length ) {
+		int num = (length + slabSize - 1)/slabSize;
+		while( slabs.size() < num ) {
+			slabs.add(new Slab());
+		}
+		for (int i = 0; i < num; i++) {
+			slabs.get(i).input.reset();
+		}
+		return num;
+	}
+
+	/**
+	 * Processes the slabs sequentially or using the thread pool
+	 */
+	private void process( List<Slab> slabs , int num ) {
+		if( threadPool == null ) {
+			for (int i = 0; i < num; i++) {
+				slabs.get(i).run();
+			}
+		} else {
+			for (int i = 0; i < num; i++) {
+				futures.add(threadPool.submit(slabs.get(i)));
+			}
+
+			for (int i = 0; i < futures.size(); i++) {
+				try {
+					futures.get(i).get();
+				} catch (InterruptedException e) {
+					throw new RuntimeException(e);
+				} catch (ExecutionException e) {
+					throw new RuntimeException(e.getCause());
+				}
+			}
+			futures.clear();
+		}
+	}
+
+	/**
+	 * Pushes the value in each cell onto its neighbors along one axis.  Neighbors outside the map are skipped.
+	 *
+	 * @param src (Input) Cells which are being blurred
+	 * @param dst (Output) Sum of the blurred values.  Not reset.
+	 * @param axis Which axis.  0 = x, 1 = y, 2 = z
+	 * @param kernel 1D kernel
+	 * @param radius Radius of the kernel
+	 * @param length Number of cells in the map along the axis
+	 */
+	protected static void blurAxis( HashAccumulator3D_F64 src , HashAccumulator3D_F64 dst ,
+									int axis , double kernel[] , int radius , int length ) {
+		for (int i = 0; i < src.size(); i++) {
+			int x = src.getX(i);
+			int y = src.getY(i);
+			int z = src.getZ(i);
+			double value = src.getValue(i);
+
+			int c = axis == 0 ? x : (axis == 1 ? y : z);
+			int lower = Math.max(0, c - radius);
+			int upper = Math.min(length - 1, c + radius);
+
+			for (int n = lower; n <= upper; n++) {
+				double v = kernel[radius + n - c]*value;
+				if( axis == 0 )
+					dst.add(n, y, z, v);
+				else if( axis == 1 )
+					dst.add(x, n, z, v);
+				else
+					dst.add(x, y, n, v);
+			}
+		}
+	}
+
+	/**
+	 * Specifies the thread pool used to blur the map when the kernel is separable.
+	 *
+	 * @param threadPool Thread pool.  If null then the map is blurred sequentially.
+	 */
+	public void setThreadPool(ExecutorService threadPool) {
+		this.threadPool = threadPool;
+	}
+
+	public ExecutorService getThreadPool() {
+		return threadPool;
+	}
+
+	/**
+	 * Region of the map which is blurred along one or two axes independently of all the other regions
+	 */
+	protected static class Slab implements Runnable {
+		// cells inside the slab
+		HashAccumulator3D_F64 input = new HashAccumulator3D_F64();
+		// results of the first pass when there are two passes
+		HashAccumulator3D_F64 work = new HashAccumulator3D_F64();
+		// blurred cells
+		HashAccumulator3D_F64 output = new HashAccumulator3D_F64();
+
+		int radius;
+		int axis0, length0;
+		double kernel0[];
+		// second axis.  -1 if there's only one pass
+		int axis1, length1;
+		double kernel1[];
+
+		public void set( OctreeGridMap_F64 map , int radius , int axis0 , double kernel0[] ,
+						 int axis1 , double kernel1[] ) {
+			this.radius = radius;
+			this.axis0 = axis0;
+			this.length0 = length(map, axis0);
+			this.kernel0 = kernel0;
+			this.axis1 = axis1;
+			this.length1 = axis1 < 0 ? 0 : length(map, axis1);
+			this.kernel1 = kernel1;
+		}
+
+		private static int length( OctreeGridMap_F64 map , int axis ) {
+			return axis == 0 ? map.getSizeX() : (axis == 1 ? map.getSizeY() : map.getSizeZ());
+		}
+
+		@Override
+		public void run() {
+			output.reset();
+			if( axis1 < 0 ) {
+				blurAxis(input, output, axis0, kernel0, radius, length0);
+			} else {
+				work.reset();
+				blurAxis(input, work, axis0, kernel0, radius, length0);
+				blurAxis(work, output, axis1, kernel1, radius, length1);
+			}
+		}
+	}
+
 	/**
 	 * Now that all off the non-unknown nodes have applied their probabilities to their neighbors,
 	 * compute the probability for each non-unknown cell in the blurred image.  This takes in
@@ -156,7 +413,8 @@ public class BlurOctreeGridMap_F64 {
 
 			SumData blur = o.getUserData();
 
-			if( blur.weight > 1.0 )
+			// allow for round off error when summing the weights
+			if( blur.weight > 1.0 + 1e-8 )
 				throw new RuntimeException("BUG!!  Weight should be <= 1");
 
 			// take in account all the unknown cells surrounding it
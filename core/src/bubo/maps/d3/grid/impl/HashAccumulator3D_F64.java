@@ -0,0 +1,89 @@
+/*
+ * Copyright (c) 2013-2014, Peter Abeles. All Rights Reserved.
+ *
+ * This file is part of Project BUBO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package bubo.maps.d3.grid.impl;
+
+import bubo.construct.PackedKeyHashMap_I32;
+import org.ddogleg.struct.GrowQueue_F64;
+import org.ddogleg.struct.GrowQueue_I64;
+
+/**
+ * Sparse sum over 3D integer coordinates.  Values added to the same cell are summed together.  Cells are stored
+ * in the order they are first added to and a {@link PackedKeyHashMap_I32} is used to look up a cell's index.
+ * Coordinates must be non-negative and less than 2<sup>21</sup>.
+ *
+ * @author Peter Abeles
+ */
+public class HashAccumulator3D_F64 {
+
+	// key and sum of each cell in the order they were added
+	GrowQueue_I64 keys = new GrowQueue_I64();
+	GrowQueue_F64 values = new GrowQueue_F64();
+
+	// look up table from key to the index of the cell
+	PackedKeyHashMap_I32 table = new PackedKeyHashMap_I32(8);
+
+	/**
+	 * Adds the value to the cell's sum.  If the cell doesn't exist it is created.
+	 */
+	public void add(int x, int y, int z, double value) {
+		long key = PackedKeyHashMap_I32.key(x, y, z);
+
+		int index = table.get(key);
+		if (index >= 0) {
+			values.data[index] += value;
+		} else {
+			table.put(key, keys.size);
+			keys.add(key);
+			values.add(value);
+		}
+	}
+
+	/**
+	 * Discards all cells
+	 */
+	public void reset() {
+		table.clear();
+		keys.reset();
+		values.reset();
+	}
+
+	/**
+	 * Number of cells
+	 */
+	public int size() {
+		return keys.size;
+	}
+
+	public int getX(int index) {
+		return PackedKeyHashMap_I32.keyX(keys.data[index]);
+	}
+
+	public int getY(int index) {
+		return PackedKeyHashMap_I32.keyY(keys.data[index]);
+	}
+
+	public int getZ(int index) {
+		return PackedKeyHashMap_I32.keyZ(keys.data[index]);
+	}
+
+	public double getValue(int index) {
+		return values.data[index];
+	}
+}
@@ -0,0 +1,280 @@
+/*
+ * Copyright (c) 2013-2014, Peter Abeles. All Rights Reserved.
+ *
+ * This file is part of Project BUBO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package bubo.maps.d3.grid.impl;
+
+import bubo.construct.PackedKeyHashMap_I32;
+import bubo.maps.d3.grid.CellProbability_F64;
+import bubo.maps.d3.grid.OccupancyGrid3D_F64;
+import org.ddogleg.struct.GrowQueue_I64;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * <p>
+ * Sparse 3D map which uses voxel hashing.  The map is broken up into blocks of 8x8x8 cells, which are stored
+ * in dense arrays.  Blocks are found using a {@link PackedKeyHashMap_I32} whose keys are the block's packed
+ * (x,y,z) coordinate.  A block is only declared when one of its cells is assigned a value other
+ * than the default.  Reading and writing a cell takes constant time, unlike {@link OctreeGridMap_F64} which
+ * must descend through the tree.
+ * </p>
+ *
+ * <p>
+ * Cells which have never been assigned a value are assumed to have the default value.  Blocks are recycled when
+ * the map is cleared.
+ * </p>
+ *
+ * @author Peter Abeles
+ */
+public class HashGridMap_F64 implements OccupancyGrid3D_F64 {
+
+	// number of bits in a block's width
+	public static final int BLOCK_BITS = 3;
+	// width of a block
+	public static final int BLOCK_WIDTH = 1 << BLOCK_BITS;
+	// number of cells in a block
+	public static final int BLOCK_CELLS = BLOCK_WIDTH * BLOCK_WIDTH * BLOCK_WIDTH;
+
+	// value of cells with no information
+	double defaultValue = 0.5;
+
+	// size of the map
+	int sizeX;
+	int sizeY;
+	int sizeZ;
+
+	// hash table.  keys are the block coordinate and the value the index of the block
+	PackedKeyHashMap_I32 table = new PackedKeyHashMap_I32(6);
+
+	// value of each cell inside of each block.  Index = (z*8 + y)*8 + x
+	List<double[]> blocks = new ArrayList<double[]>();
+	// key of each block which is in use
+	GrowQueue_I64 blockKeys = new GrowQueue_I64();
+
+	/**
+	 * Creates a new map with the specified shape.
+	 *
+	 * @param sizeX Number of map cells along x-axis
+	 * @param sizeY Number of map cells along y-axis
+	 * @param sizeZ Number of map cells along z-axis
+	 */
+	public HashGridMap_F64(int sizeX, int sizeY, int sizeZ) {
+		int maxSize = 1 << (PackedKeyHashMap_I32.BITS + BLOCK_BITS);
+		if (sizeX > maxSize || sizeY > maxSize || sizeZ > maxSize)
+			throw new IllegalArgumentException("The map can't be larger than " + maxSize + " along any axis");
+
+		this.sizeX = sizeX;
+		this.sizeY = sizeY;
+		this.sizeZ = sizeZ;
+	}
+
+	@Override
+	public void set(int x, int y, int z, double value) {
+		if (!isInBounds(x, y, z))
+			throw new IllegalArgumentException("Out of bounds: " + x + " " + y + " " + z);
+
+		long key = blockKey(x, y, z);
+		int block = table.get(key);
+		if (block < 0) {
+			if (value == defaultValue)
+				return;
+			block = addBlock(key);
+		}
+
+		blocks.get(block)[cellIndex(x, y, z)] = value;
+	}
+
+	@Override
+	public double get(int x, int y, int z) {
+		if (!isInBounds(x, y, z))
+			return defaultValue;
+
+		int block = table.get(blockKey(x, y, z));
+		if (block < 0)
+			return defaultValue;
+
+		return blocks.get(block)[cellIndex(x, y, z)];
+	}
+
+	@Override
+	public boolean isValid(double value) {
+		return value >= 0 && value <= 1;
+	}
+
+	@Override
+	public double getDefaultValue() {
+		return defaultValue;
+	}
+
+	@Override
+	public void setDefaultValue(double value) {
+		defaultValue = value;
+	}
+
+	@Override
+	public Iterator<CellProbability_F64> iteratorKnown() {
+		return new KnownIterator();
+	}
+
+	@Override
+	public OccupancyGrid3D_F64 copy() {
+		HashGridMap_F64 ret = new HashGridMap_F64(sizeX, sizeY, sizeZ);
+		ret.defaultValue = defaultValue;
+
+		for (int i = 0; i < blockKeys.size; i++) {
+			int block = ret.addBlock(blockKeys.data[i]);
+			System.arraycopy(blocks.get(i), 0, ret.blocks.get(block), 0, BLOCK_CELLS);
+		}
+
+		return ret;
+	}
+
+	/**
+	 * Sets all cells to the default value.  Blocks are saved and recycled.
+	 */
+	@Override
+	public void clear() {
+		table.clear();
+		blockKeys.reset();
+	}
+
+	@Override
+	public boolean isInBounds(int x, int y, int z) {
+		return x >= 0 && y >= 0 && z >= 0 && x < sizeX && y < sizeY && z < sizeZ;
+	}
+
+	/**
+	 * Returns true if the cell has the default value
+	 */
+	@Override
+	public boolean isDefault(int x, int y, int z) {
+		return get(x, y, z) == defaultValue;
+	}
+
+	@Override
+	public int getSizeX() {
+		return sizeX;
+	}
+
+	@Override
+	public int getSizeY() {
+		return sizeY;
+	}
+
+	@Override
+	public int getSizeZ() {
+		return sizeZ;
+	}
+
+	/**
+	 * Number of blocks which have been declared
+	 */
+	public int getNumberOfBlocks() {
+		return blockKeys.size;
+	}
+
+	/**
+	 * Declares a new block, which is filled with the default value, and adds it to the table.
+	 */
+	private int addBlock(long key) {
+		int index = blockKeys.size;
+		blockKeys.add(key);
+
+		double[] block;
+		if (index < blocks.size()) {
+			block = blocks.get(index);
+		} else {
+			block = new double[BLOCK_CELLS];
+			blocks.add(block);
+		}
+		for (int i = 0; i < BLOCK_CELLS; i++) {
+			block[i] = defaultValue;
+		}
+
+		table.put(key, index);
+		return index;
+	}
+
+	private static long blockKey(int x, int y, int z) {
+		return PackedKeyHashMap_I32.key(x >> BLOCK_BITS, y >> BLOCK_BITS, z >> BLOCK_BITS);
+	}
+
+	private static int cellIndex(int x, int y, int z) {
+		int mask = BLOCK_WIDTH - 1;
+		return ((((z & mask) << BLOCK_BITS) + (y & mask)) << BLOCK_BITS) + (x & mask);
+	}
+
+	/**
+	 * Iterates through all cells in each block which don't have the default value
+	 */
+	private class KnownIterator implements Iterator<CellProbability_F64> {
+		int block;
+		int cell = -1;
+
+		CellProbability_F64 storage = new CellProbability_F64();
+
+		public KnownIterator() {
+			searchNext();
+		}
+
+		@Override
+		public boolean hasNext() {
+			return block < blockKeys.size;
+		}
+
+		@Override
+		public CellProbability_F64 next() {
+			if (block >= blockKeys.size)
+				throw new NoSuchElementException();
+
+			long key = blockKeys.data[block];
+			int bx = PackedKeyHashMap_I32.keyX(key);
+			int by = PackedKeyHashMap_I32.keyY(key);
+			int bz = PackedKeyHashMap_I32.keyZ(key);
+
+			storage.x = (bx << BLOCK_BITS) + (cell & (BLOCK_WIDTH - 1));
+			storage.y = (by << BLOCK_BITS) + ((cell >> BLOCK_BITS) & (BLOCK_WIDTH - 1));
+			storage.z = (bz << BLOCK_BITS) + (cell >> (2 * BLOCK_BITS));
+			storage.probability = blocks.get(block)[cell];
+
+			searchNext();
+			return storage;
+		}
+
+		private void searchNext() {
+			while (block < blockKeys.size) {
+				double[] values = blocks.get(block);
+				for (cell++; cell < BLOCK_CELLS; cell++) {
+					if (values[cell] != defaultValue)
+						return;
+				}
+				block++;
+				cell = -1;
+			}
+		}
+
+		@Override
+		public void remove() {
+			throw new RuntimeException("Remove is not supported");
+		}
+	}
+}
@@ -56,6 +56,58 @@ public class Kernel3D_F64 {
 		return data.length;
 	}
 
+	/**
+	 * Checks to see if the kernel can be written as the product of three 1D kernels, K(i,j,k) = a[i]*b[j]*c[k],
+	 * and if so computes them.  The 1D kernels are found from the kernel's sum along each axis.
+	 *
+	 * @param a (Output) Kernel along the first axis.  Must have a length of at least {@link #getWidth()}
+	 * @param b (Output) Kernel along the second axis.  Must have a length of at least {@link #getWidth()}
+	 * @param c (Output) Kernel along the third axis.  Must have a length of at least {@link #getWidth()}
+	 * @param tol Tolerance relative to the largest element in the kernel
+	 * @return true if the kernel is separable or false if not
+	 */
+	public boolean separate( double a[] , double b[] , double c[] , double tol ) {
+		for (int i = 0; i < width; i++) {
+			a[i] = b[i] = c[i] = 0;
+		}
+
+		double total = 0;
+		double max = 0;
+		int index = 0;
+		for (int i = 0; i < width; i++) {
+			for (int j = 0; j < width; j++) {
+				for (int k = 0; k < width; k++, index++) {
+					double v = data[index];
+					a[i] += v;
+					b[j] += v;
+					c[k] += v;
+					total += v;
+					max = Math.max(max, Math.abs(v));
+				}
+			}
+		}
+
+		if (total == 0)
+			return false;
+
+		// the product of the sums is equal to the kernel times the total squared
+		for (int k = 0; k < width; k++) {
+			c[k] /= total * total;
+		}
+
+		index = 0;
+		for (int i = 0; i < width; i++) {
+			for (int j = 0; j < width; j++) {
+				for (int k = 0; k < width; k++, index++) {
+					if (Math.abs(a[i] * b[j] * c[k] - data[index]) > tol * max)
+						return false;
+				}
+			}
+		}
+
+		return true;
+	}
+
 	/**
 	 * Creates a kernel with a symmetric normal distribution
 	 * @param sigma standard deviation of the distribution
@@ -19,6 +19,7 @@
 package bubo.maps.d3.grid.impl;
 
 import bubo.construct.ConstructOctreeLeaf_I32;
+import bubo.construct.ConstructOctree_I32;
 import bubo.construct.OctreeOps;
 import bubo.construct.Octree_I32;
 import bubo.maps.d3.grid.CellProbability_F64;
@@ -27,6 +28,7 @@ import georegression.metric.Intersection3D_I32;
 import georegression.struct.point.Point3D_I32;
 import georegression.struct.shapes.Box3D_I32;
 import org.ddogleg.struct.FastQueue;
+import org.ddogleg.struct.GrowQueue_F64;
 
 import java.util.Iterator;
 import java.util.List;
@@ -40,6 +42,11 @@ import java.util.List;
  * data parameter.  If a graph node doesn't exist or has no user data assigned to it then it is assumed to
  * have the value of the 'defaultValue' parameter.
  *
+ * Subtrees where every cell has the same value can be collapsed into a single leaf by calling {@link #prune()},
+ * reducing memory and the cost of traversing the tree.  All the cells inside a collapsed leaf have the leaf's
+ * value.  If a cell inside a collapsed leaf is modified then the leaf is expanded again.  Coarse resolution
+ * queries can be done with {@link #getAtDepth}.
+ *
  * @see ConstructOctreeLeaf_I32
  *
  * @author Peter Abeles
@@ -61,6 +68,10 @@ public class OctreeGridMap_F64 implements OccupancyGrid3D_F64 {
 	// describes the area which the map is contained inside of
 	Box3D_I32 region;
 
+	// work space
+	Box3D_I32 tempBox = new Box3D_I32();
+	GrowQueue_F64 tempValues = new GrowQueue_F64();
+
 	/**
 	 * Creates a new map based on the users request.  The actual map size is adjusted to ensure
 	 * that the leaf cells are the specified size
@@ -80,7 +91,28 @@ public class OctreeGridMap_F64 implements OccupancyGrid3D_F64 {
 	public void set(int x, int y, int z, double value) {
 		temp.set(x,y,z);
 
-		Octree_I32 leaf = construct.addLeaf(temp);
+		Octree_I32 leaf = addLeaf(temp);
+		assign(leaf, value);
+	}
+
+	/**
+	 * Assigns a value to every cell inside of a leaf.  If the leaf isn't the smallest possible size then it becomes
+	 * a collapsed leaf.  Used when the tree's structure is created directly, e.g. when a map is loaded.
+	 *
+	 * @param leaf A leaf in this map's octree
+	 * @param value The value of each cell inside the leaf
+	 */
+	public void setLeaf( Octree_I32 leaf , double value ) {
+		if( !leaf.isLeaf() )
+			throw new IllegalArgumentException("Node must be a leaf");
+
+		assign(leaf, value);
+	}
+
+	/**
+	 * Assigns the value to the leaf, declaring its data if it has none
+	 */
+	private void assign( Octree_I32 leaf , double value ) {
 		MapLeaf info;
 		if( leaf.userData == null ) {
 			info = this.info.grow();
@@ -91,6 +123,237 @@ public class OctreeGridMap_F64 implements OccupancyGrid3D_F64 {
 		info.probability = value;
 	}
 
+	/**
+	 * Finds the smallest leaf at this point and creates it if needed.  Collapsed leafs which are encountered
+	 * along the way are expanded.
+	 */
+	private Octree_I32 addLeaf( Point3D_I32 point ) {
+		Octree_I32 node = construct.getTree();
+		if( !node.contained(point) )
+			return null;
+
+		while( !node.isSmallest() ) {
+			if( node.isLeaf() ) {
+				if( node.userData != null ) {
+					expand(node);
+				} else {
+					return construct.addLeaf(point);
+				}
+			}
+			Octree_I32 child = node.children[node.getChildIndex(point)];
+			if( child == null )
+				return construct.addLeaf(point);
+			node = child;
+		}
+		return node;
+	}
+
+	/**
+	 * Expands a collapsed leaf by creating all its children and giving them the leaf's value
+	 */
+	private void expand( Octree_I32 node ) {
+		MapLeaf leaf = node.getUserData();
+		node.userData = null;
+		construct.splitLeaf(node);
+		for (int i = 0; i < 8; i++) {
+			Octree_I32 child = node.children[i];
+			if( child == null )
+				continue;
+			MapLeaf info = this.info.grow();
+			info.probability = leaf.probability;
+			child.userData = info;
+		}
+		// recycle the leaf's data by giving it to a child
+		Octree_I32 first = lastChild(node);
+		this.info.removeTail();
+		first.userData = leaf;
+	}
+
+	private static Octree_I32 lastChild( Octree_I32 node ) {
+		for (int i = 7; i >= 0; i--) {
+			if( node.children[i] != null )
+				return node.children[i];
+		}
+		throw new RuntimeException("BUG! no children");
+	}
+
+	/**
+	 * Collapses all subtrees in which every cell has the same value into a single leaf.  Unused nodes and
+	 * map data are recycled.
+	 *
+	 * @return Number of nodes which were removed
+	 */
+	public int prune() {
+		FastQueue<Octree_I32> nodes = construct.getAllNodes();
+
+		// children are always after their parent in the list, so this visits children before their parents
+		for (int i = nodes.size-1; i >= 0; i--) {
+			Octree_I32 o = nodes.data[i];
+			if( o.isLeaf() || (i > 0 && o.parent == null) )
+				continue;
+
+			if( isHomogeneous(o) ) {
+				o.userData = lastChild(o).userData;
+				construct.discardChildren(o);
+			}
+		}
+
+		int removed = construct.removeDiscarded();
+		if( removed > 0 )
+			compactInfo();
+		return removed;
+	}
+
+	/**
+	 * Checks to see if all the children which can exist do exist, are leafs, and have the same value
+	 */
+	private boolean isHomogeneous( Octree_I32 o ) {
+		double value = 0;
+		boolean first = true;
+		for (int i = 0; i < 8; i++) {
+			Octree_I32 child = o.children[i];
+			if( child == null ) {
+				if( isChildValid(o,i) )
+					return false;
+				continue;
+			}
+			if( !child.isLeaf() || child.userData == null )
+				return false;
+			double p = ((MapLeaf)child.userData).probability;
+			if( first ) {
+				value = p;
+				first = false;
+			} else if( p != value ) {
+				return false;
+			}
+		}
+		return !first;
+	}
+
+	/**
+	 * Returns true if the specified child would occupy a physically possible space
+	 */
+	private boolean isChildValid( Octree_I32 o , int index ) {
+		ConstructOctree_I32.setChildSpace(o.space, o.divider, index, tempBox);
+		return tempBox.p0.x < tempBox.p1.x && tempBox.p0.y < tempBox.p1.y && tempBox.p0.z < tempBox.p1.z;
+	}
+
+	/**
+	 * Moves the map data which is still in use to the front of the list so that unused data can be recycled
+	 */
+	private void compactInfo() {
+		FastQueue<Octree_I32> nodes = construct.getAllNodes();
+
+		tempValues.reset();
+		for (int i = 0; i < nodes.size; i++) {
+			Octree_I32 o = nodes.data[i];
+			if( o.userData != null )
+				tempValues.add(((MapLeaf)o.userData).probability);
+		}
+
+		int index = 0;
+		for (int i = 0; i < nodes.size; i++) {
+			Octree_I32 o = nodes.data[i];
+			if( o.userData != null ) {
+				MapLeaf leaf = info.data[index];
+				leaf.probability = tempValues.data[index++];
+				o.userData = leaf;
+			}
+		}
+		info.size = index;
+	}
+
+	/**
+	 * Returns the value of the map at a coarser resolution.  The value of a node at the specified depth is the
+	 * largest value of any cell inside of it, which is conservative when planning around obstacles.  If a leaf
+	 * is encountered before the depth is reached then the leaf's value is returned.
+	 *
+	 * @param x x-coordinate of a cell
+	 * @param y y-coordinate of a cell
+	 * @param z z-coordinate of a cell
+	 * @param depth Depth of the node.  The root has a depth of 0.
+	 * @return Largest value inside the node
+	 */
+	public double getAtDepth( int x , int y , int z , int depth ) {
+		temp.set(x,y,z);
+		Octree_I32 node = construct.getTree();
+		if( !node.contained(temp) )
+			return defaultValue;
+
+		for (int i = 0; i < depth && !node.isLeaf(); i++) {
+			Octree_I32 child = node.children[node.getChildIndex(temp)];
+			if( child == null )
+				return defaultValue;
+			node = child;
+		}
+
+		return maxValue(node);
+	}
+
+	/**
+	 * Largest value of any cell inside the node
+	 */
+	private double maxValue( Octree_I32 node ) {
+		if( node.isLeaf() ) {
+			if( node.userData == null )
+				return defaultValue;
+			return ((MapLeaf)node.userData).probability;
+		}
+
+		double max = -Double.MAX_VALUE;
+		for (int i = 0; i < 8; i++) {
+			Octree_I32 child = node.children[i];
+			double value;
+			if( child != null )
+				value = maxValue(child);
+			else if( isChildValid(node,i) )
+				value = defaultValue;
+			else
+				continue;
+			if( value > max )
+				max = value;
+		}
+		return max;
+	}
+
+	/**
+	 * Updates a cell by adding to its log-odds.  The results is clamped to the specified range.  Cells which have
+	 * not been assigned a value start at the default value.  Only a single traversal of the tree is needed.
+	 *
+	 * @param x x-coordinate of the cell
+	 * @param y y-coordinate of the cell
+	 * @param z z-coordinate of the cell
+	 * @param logOdds Change in the cell's log-odds
+	 * @param minLogOdds Smallest allowed log-odds
+	 * @param maxLogOdds Largest allowed log-odds
+	 * @return true if the cell is inside the map and was updated
+	 */
+	public boolean updateLogOdds(int x, int y, int z, double logOdds, double minLogOdds, double maxLogOdds) {
+		temp.set(x,y,z);
+
+		Octree_I32 leaf = addLeaf(temp);
+		if( leaf == null )
+			return false;
+
+		MapLeaf info;
+		if( leaf.userData == null ) {
+			info = this.info.grow();
+			info.probability = defaultValue;
+			leaf.userData = info;
+		} else {
+			info = (MapLeaf)leaf.userData;
+		}
+
+		double l = Math.log(info.probability/(1.0-info.probability)) + logOdds;
+		if( l < minLogOdds )
+			l = minLogOdds;
+		else if( l > maxLogOdds )
+			l = maxLogOdds;
+
+		info.probability = 1.0/(1.0+Math.exp(-l));
+		return true;
+	}
+
 	@Override
 	public double get(int x, int y, int z) {
 		temp.set(x,y,z);
@@ -150,7 +413,7 @@ public class OctreeGridMap_F64 implements OccupancyGrid3D_F64 {
 	public boolean isDefault(int x, int y, int z) {
 		temp.set(x,y,z);
 		Octree_I32 node = construct.getTree().findDeepest(temp);
-		if( node != null && node.isLeaf() && node.isSmallest() ) {
+		if( node != null && node.isLeaf() && node.userData != null ) {
 			MapLeaf info = node.getUserData();
 			return info.probability != defaultValue;
 		}
@@ -177,7 +440,8 @@ public class OctreeGridMap_F64 implements OccupancyGrid3D_F64 {
 	}
 
 	/**
-	 * Returns all grid cells which have been assigned values as {@link bubo.construct.Octree_I32} nodes.
+	 * Returns all grid cells which have been assigned values as {@link bubo.construct.Octree_I32} nodes.  If the
+	 * map has been pruned then some of the nodes might be collapsed leafs which contain multiple cells.
 	 * @return List of all occupied cells
 	 */
 	public List<Octree_I32> getGridCells() {
@@ -186,7 +450,8 @@ public class OctreeGridMap_F64 implements OccupancyGrid3D_F64 {
 
 	/**
 	 * Iterator which will go through all the map cells.  This is defined as nodes in the graph which are
-	 * the smallest size possible and have been assigned a probability
+	 * the smallest size possible and have been assigned a probability.  Every cell inside of a collapsed
+	 * leaf is also returned.
 	 */
 	private class OctIterator implements Iterator<CellProbability_F64> {
 
@@ -194,6 +459,8 @@ public class OctreeGridMap_F64 implements OccupancyGrid3D_F64 {
 		int index;
 
 		Octree_I32 next;
+		// the cell inside of next which will be returned
+		Point3D_I32 cell = new Point3D_I32();
 		CellProbability_F64 storage = new CellProbability_F64();
 
 		public OctIterator() {
@@ -207,12 +474,24 @@ public class OctreeGridMap_F64 implements OccupancyGrid3D_F64 {
 
 		@Override
 		public CellProbability_F64 next() {
-			Octree_I32 prev = next;
-			searchNext();
-			MapLeaf info = prev.getUserData();
-			storage.set( prev.space.p0 );
+			MapLeaf info = next.getUserData();
+			storage.set( cell );
 			storage.probability = info.probability;
 
+			// move to the next cell inside the leaf
+			Box3D_I32 space = next.space;
+			cell.x++;
+			if( cell.x == space.p1.x ) {
+				cell.x = space.p0.x;
+				cell.y++;
+				if( cell.y == space.p1.y ) {
+					cell.y = space.p0.y;
+					cell.z++;
+					if( cell.z == space.p1.z )
+						searchNext();
+				}
+			}
+
 			return storage;
 		}
 
@@ -220,10 +499,11 @@ public class OctreeGridMap_F64 implements OccupancyGrid3D_F64 {
 			next = null;
 			while( index < nodes.size() ) {
 				Octree_I32 o = nodes.get(index++);
-				if( o.isSmallest() ) {
+				if( o.isLeaf() ) {
 					MapLeaf info = o.getUserData();
 					if (info != null && info.probability != 0.5f) {
 						next = o;
+						cell.set(o.space.p0);
 						break;
 					}
 				}
@@ -0,0 +1,53 @@
+/*
+ * Copyright (c) 2013-2014, Peter Abeles. All Rights Reserved.
+ *
+ * This file is part of Project BUBO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package bubo.clouds.fit.algs;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * @author Peter Abeles
+ */
+public class TestRobustKernel {
+
+	@Test
+	public void none() {
+		assertEquals(1, RobustKernel.NONE.weight(0, 2), 1e-8);
+		assertEquals(1, RobustKernel.NONE.weight(-100, 2), 1e-8);
+	}
+
+	@Test
+	public void huber() {
+		assertEquals(1, RobustKernel.HUBER.weight(0, 2), 1e-8);
+		assertEquals(1, RobustKernel.HUBER.weight(-2, 2), 1e-8);
+		assertEquals(0.5, RobustKernel.HUBER.weight(4, 2), 1e-8);
+		assertEquals(0.5, RobustKernel.HUBER.weight(-4, 2), 1e-8);
+	}
+
+	@Test
+	public void tukey() {
+		assertEquals(1, RobustKernel.TUKEY.weight(0, 2), 1e-8);
+		assertEquals(0.75 * 0.75, RobustKernel.TUKEY.weight(1, 2), 1e-8);
+		assertEquals(0.75 * 0.75, RobustKernel.TUKEY.weight(-1, 2), 1e-8);
+		assertEquals(0, RobustKernel.TUKEY.weight(2, 2), 1e-8);
+		assertEquals(0, RobustKernel.TUKEY.weight(-5, 2), 1e-8);
+	}
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright (c) 2013-2014, Peter Abeles. All Rights Reserved.
+ *
+ * This file is part of Project BUBO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package bubo.clouds.fit.algs;
+
+import georegression.geometry.UtilPoint3D_F64;
+import georegression.struct.point.Point3D_F64;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Peter Abeles
+ */
+public class TestSlidingWindowPointGrid3D {
+
+	Random rand = new Random(234);
+
+	/**
+	 * Compare against a brute force search while scans are added and removed
+	 */
+	@Test
+	public void findClosest_bruteForce() {
+		SlidingWindowPointGrid3D alg = new SlidingWindowPointGrid3D(0.1, 0.1);
+
+		List<List<Point3D_F64>> window = new ArrayList<List<Point3D_F64>>();
+		double[] found = new double[3];
+
+		for (int trial = 0; trial < 20; trial++) {
+			// scans drift so that old cells become empty and are removed
+			double offset = trial * 0.05;
+			List<Point3D_F64> scan = UtilPoint3D_F64.random(-1 + offset, 1 + offset, 300, rand);
+			alg.addScan(scan);
+			window.add(scan);
+			if (window.size() > 4) {
+				alg.removeOldestScan();
+				window.remove(0);
+			}
+
+			assertEquals(window.size(), alg.getNumberOfScans());
+			assertEquals(window.size() * 300, alg.getNumberOfPoints());
+
+			for (int i = 0; i < 100; i++) {
+				double x = (rand.nextDouble() * 2 - 1) * 1.1 + offset;
+				double y = (rand.nextDouble() * 2 - 1) * 1.1 + offset;
+				double z = (rand.nextDouble() * 2 - 1) * 1.1 + offset;
+				double maxDistanceSq = rand.nextBoolean() ? 0.01 : 0.04;
+
+				Point3D_F64 expected = bruteForce(window, x, y, z, maxDistanceSq);
+				boolean success = alg.findClosest(x, y, z, maxDistanceSq, found);
+
+				if (expected == null) {
+					assertFalse(success);
+				} else {
+					assertTrue(success);
+					assertEquals(expected.distance2(new Point3D_F64(x, y, z)),
+							new Point3D_F64(found[0], found[1], found[2]).distance2(new Point3D_F64(x, y, z)), 1e-12);
+				}
+			}
+		}
+	}
+
+	@Test
+	public void reset() {
+		SlidingWindowPointGrid3D alg = new SlidingWindowPointGrid3D(0.1, 0.1);
+
+		alg.addScan(UtilPoint3D_F64.random(-1, 1, 300, rand));
+		alg.addScan(UtilPoint3D_F64.random(-1, 1, 300, rand));
+		assertTrue(alg.getNumberOfCells() > 0);
+
+		alg.reset();
+		assertEquals(0, alg.getNumberOfScans());
+		assertEquals(0, alg.getNumberOfPoints());
+		assertEquals(0, alg.getNumberOfCells());
+		assertNull(alg.findClosestPoint(new Point3D_F64(0, 0, 0)));
+
+		// should work after being reset
+		List<Point3D_F64> scan = new ArrayList<Point3D_F64>();
+		scan.add(new Point3D_F64(0.01, 0.02, 0.03));
+		alg.addScan(scan);
+		Point3D_F64 found = alg.findClosestPoint(new Point3D_F64(0, 0, 0));
+		assertEquals(0, found.distance(scan.get(0)), 1e-12);
+	}
+
+	/**
+	 * Points in the same cell from different scans.  Only the oldest should be removed.
+	 */
+	@Test
+	public void removeOldestScan_sharedCell() {
+		SlidingWindowPointGrid3D alg = new SlidingWindowPointGrid3D(1, 1);
+
+		List<Point3D_F64> scanA = new ArrayList<Point3D_F64>();
+		scanA.add(new Point3D_F64(0.1, 0.1, 0.1));
+		scanA.add(new Point3D_F64(0.2, 0.1, 0.1));
+		List<Point3D_F64> scanB = new ArrayList<Point3D_F64>();
+		scanB.add(new Point3D_F64(0.9, 0.9, 0.9));
+
+		alg.addScan(scanA);
+		alg.addScan(scanB);
+		assertEquals(1, alg.getNumberOfCells());
+
+		Point3D_F64 found = alg.findClosestPoint(new Point3D_F64(0, 0, 0));
+		assertEquals(0, found.distance(scanA.get(0)), 1e-12);
+
+		alg.removeOldestScan();
+		assertEquals(1, alg.getNumberOfCells());
+		assertNull(alg.findClosestPoint(new Point3D_F64(0, 0, 0)));
+		found = alg.findClosestPoint(new Point3D_F64(0.5, 0.5, 0.5));
+		assertEquals(0, found.distance(scanB.get(0)), 1e-12);
+
+		alg.removeOldestScan();
+		assertEquals(0, alg.getNumberOfCells());
+	}
+
+	private Point3D_F64 bruteForce(List<List<Point3D_F64>> window, double x, double y, double z, double maxDistanceSq) {
+		Point3D_F64 best = null;
+		double bestDistance = maxDistanceSq;
+		for (List<Point3D_F64> scan : window) {
+			for (Point3D_F64 p : scan) {
+				double d = p.distance2(new Point3D_F64(x, y, z));
+				if (d <= bestDistance) {
+					bestDistance = d;
+					best = p;
+				}
+			}
+		}
+		return best;
+	}
+}
@@ -21,12 +21,25 @@ package bubo.clouds.fit.c2c;
 import bubo.clouds.FactoryFitting;
 import bubo.clouds.fit.MatchCloudToCloud;
 import bubo.struct.StoppingCondition;
+import georegression.geometry.ConvertRotation3D_F64;
+import georegression.geometry.UtilPoint3D_F64;
+import georegression.struct.EulerType;
 import georegression.struct.point.Point2D_F64;
 import georegression.struct.point.Point3D_F64;
 import georegression.struct.se.Se2_F64;
 import georegression.struct.se.Se3_F64;
+import georegression.transform.se.SePointOps_F64;
 import org.junit.Test;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
 /**
  * @author Peter Abeles
  */
@@ -54,4 +67,94 @@ public class TestMatchCloudToCloudIcp {
 		}.all();
 	}
 
+	@Test
+	public void check3D_concurrent() {
+		final ExecutorService pool = Executors.newFixedThreadPool(3);
+		try {
+			new GeneralCloudToCloudChecksSe3() {
+
+				@Override
+				public MatchCloudToCloud<Se3_F64, Point3D_F64> create() {
+					return FactoryFitting.cloudIcp3D(0.1, new StoppingCondition(200, 1e-6), pool, 3);
+				}
+			}.all();
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	/**
+	 * Individual points should be searched for using the shared tree when there's a thread pool
+	 */
+	@Test
+	public void concurrent_findClosestPoint() {
+		Random rand = new Random(234);
+		List<Point3D_F64> dst = UtilPoint3D_F64.random(0, 1, 100, rand);
+
+		ExecutorService pool = Executors.newFixedThreadPool(2);
+		try {
+			MatchCloudToCloudIcp.SE3 alg =
+					(MatchCloudToCloudIcp.SE3) FactoryFitting.cloudIcp3D(0.1, new StoppingCondition(20, 1e-8), pool, 2);
+			alg.setDestination(dst);
+
+			for (int i = 0; i < dst.size(); i++) {
+				Point3D_F64 p = dst.get(i).copy();
+				p.x += 0.001;
+				assertTrue(dst.get(i) == alg.model.findClosestPoint(p));
+			}
+			assertTrue(null == alg.model.findClosestPoint(new Point3D_F64(5, 5, 5)));
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	/**
+	 * The found transform should be identical to the sequential solution for any number of threads
+	 */
+	@Test
+	public void concurrent_sameAsSequential() {
+		Random rand = new Random(234);
+
+		Se3_F64 expected = new Se3_F64();
+		ConvertRotation3D_F64.eulerToMatrix(EulerType.XYZ, 0.02, -0.04, 0.03, expected.getR());
+		expected.getT().set(0.05, -0.02, 0.03);
+
+		List<Point3D_F64> src = UtilPoint3D_F64.random(0, 1, 503, rand);
+		List<Point3D_F64> dst = new ArrayList<Point3D_F64>();
+		for (Point3D_F64 p : src) {
+			dst.add(SePointOps_F64.transform(expected, p, null));
+		}
+
+		Se3_F64 sequential = process(FactoryFitting.cloudIcp3D(0.1, new StoppingCondition(20, 1e-8)), src, dst);
+
+		ExecutorService pool = Executors.newFixedThreadPool(4);
+		try {
+			for (int numThreads = 1; numThreads <= 7; numThreads += 3) {
+				MatchCloudToCloud<Se3_F64, Point3D_F64> alg =
+						FactoryFitting.cloudIcp3D(0.1, new StoppingCondition(20, 1e-8), pool, numThreads);
+				Se3_F64 found = process(alg, src, dst);
+
+				assertEquals(sequential.T.x, found.T.x, 0);
+				assertEquals(sequential.T.y, found.T.y, 0);
+				assertEquals(sequential.T.z, found.T.z, 0);
+				for (int i = 0; i < 9; i++) {
+					assertEquals(sequential.R.data[i], found.R.data[i], 0);
+				}
+			}
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	private static Se3_F64 process(MatchCloudToCloud<Se3_F64, Point3D_F64> alg,
+								   List<Point3D_F64> src, List<Point3D_F64> dst) {
+		List<Point3D_F64> copy = new ArrayList<Point3D_F64>();
+		for (Point3D_F64 p : src) {
+			copy.add(p.copy());
+		}
+		alg.setSource(copy);
+		alg.setDestination(dst);
+		assertTrue(alg.compute());
+		return alg.getSourceToDestination().copy();
+	}
 }
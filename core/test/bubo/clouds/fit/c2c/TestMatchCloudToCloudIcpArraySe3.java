@@ -0,0 +1,154 @@
+/*
+ * Copyright (c) 2013-2014, Peter Abeles. All Rights Reserved.
+ *
+ * This file is part of Project BUBO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package bubo.clouds.fit.c2c;
+
+import bubo.clouds.FactoryFitting;
+import bubo.clouds.fit.MatchCloudToCloud;
+import bubo.struct.StoppingCondition;
+import georegression.geometry.ConvertRotation3D_F64;
+import georegression.geometry.UtilPoint3D_F64;
+import georegression.struct.EulerType;
+import georegression.struct.point.Point3D_F64;
+import georegression.struct.se.Se3_F64;
+import georegression.transform.se.SePointOps_F64;
+import org.ejml.dense.row.MatrixFeatures_DDRM;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Peter Abeles
+ */
+public class TestMatchCloudToCloudIcpArraySe3 {
+
+	Random rand = new Random(234);
+
+	@Test
+	public void generic() {
+		new GeneralCloudToCloudChecksSe3() {
+
+			@Override
+			public MatchCloudToCloud<Se3_F64, Point3D_F64> create() {
+				return FactoryFitting.cloudIcp3DArray(0.1, new StoppingCondition(200, 1e-6));
+			}
+		}.all();
+	}
+
+	/**
+	 * Compare against the list based implementation.  Should produce the same solution
+	 */
+	@Test
+	public void compareToList() {
+		Se3_F64 expected = new Se3_F64();
+		ConvertRotation3D_F64.eulerToMatrix(EulerType.XYZ, 0.02, -0.04, 0.03, expected.getR());
+		expected.getT().set(0.05, -0.02, 0.03);
+
+		List<Point3D_F64> src = UtilPoint3D_F64.random(0, 1, 400, rand);
+		List<Point3D_F64> dst = transform(expected, src);
+
+		MatchCloudToCloud<Se3_F64, Point3D_F64> array = FactoryFitting.cloudIcp3DArray(0.1, new StoppingCondition(20, 1e-8));
+		MatchCloudToCloud<Se3_F64, Point3D_F64> list = FactoryFitting.cloudIcp3D(0.1, new StoppingCondition(20, 1e-8));
+
+		array.setSource(src);
+		array.setDestination(dst);
+		assertTrue(array.compute());
+
+		list.setSource(copy(src));
+		list.setDestination(dst);
+		assertTrue(list.compute());
+
+		Se3_F64 foundArray = array.getSourceToDestination();
+		Se3_F64 foundList = list.getSourceToDestination();
+
+		assertEquals(foundList.T.x, foundArray.T.x, 1e-8);
+		assertEquals(foundList.T.y, foundArray.T.y, 1e-8);
+		assertEquals(foundList.T.z, foundArray.T.z, 1e-8);
+		assertTrue(MatrixFeatures_DDRM.isIdentical(foundList.getR(), foundArray.getR(), 1e-8));
+		assertEquals(list.getMatchedSourcePoints(), array.getMatchedSourcePoints());
+	}
+
+	/**
+	 * The input list should not be modified and calling it multiple times should produce the same result
+	 */
+	@Test
+	public void sourceNotModified_multipleCalls() {
+		Se3_F64 expected = new Se3_F64();
+		expected.getT().set(0.05, -0.02, 0.03);
+
+		List<Point3D_F64> src = UtilPoint3D_F64.random(0, 1, 300, rand);
+		List<Point3D_F64> original = copy(src);
+		List<Point3D_F64> dst = transform(expected, src);
+
+		MatchCloudToCloud<Se3_F64, Point3D_F64> alg = FactoryFitting.cloudIcp3DArray(0.1, new StoppingCondition(50, 1e-8));
+		assertFalse(alg.isModifiedSource());
+
+		alg.setSource(src);
+		alg.setDestination(dst);
+		assertTrue(alg.compute());
+		Se3_F64 found = alg.getSourceToDestination().copy();
+
+		for (int i = 0; i < src.size(); i++) {
+			assertEquals(0, original.get(i).distance(src.get(i)), 1e-15);
+		}
+
+		alg.setSource(src);
+		assertTrue(alg.compute());
+		Se3_F64 found2 = alg.getSourceToDestination();
+
+		assertEquals(found.T.x, found2.T.x, 1e-12);
+		assertEquals(found.T.y, found2.T.y, 1e-12);
+		assertEquals(found.T.z, found2.T.z, 1e-12);
+		assertTrue(MatrixFeatures_DDRM.isIdentical(found.getR(), found2.getR(), 1e-12));
+	}
+
+	@Test
+	public void noMatches() {
+		List<Point3D_F64> src = UtilPoint3D_F64.random(0, 1, 50, rand);
+		List<Point3D_F64> dst = UtilPoint3D_F64.random(10, 11, 50, rand);
+
+		MatchCloudToCloud<Se3_F64, Point3D_F64> alg = FactoryFitting.cloudIcp3DArray(0.1, new StoppingCondition(50, 1e-8));
+		alg.setSource(src);
+		alg.setDestination(dst);
+		assertFalse(alg.compute());
+		assertEquals(0, alg.getMatchedSourcePoints());
+	}
+
+	private static List<Point3D_F64> transform(Se3_F64 se, List<Point3D_F64> points) {
+		List<Point3D_F64> out = new ArrayList<Point3D_F64>();
+		for (Point3D_F64 p : points) {
+			out.add(SePointOps_F64.transform(se, p, null));
+		}
+		return out;
+	}
+
+	private static List<Point3D_F64> copy(List<Point3D_F64> points) {
+		List<Point3D_F64> out = new ArrayList<Point3D_F64>();
+		for (Point3D_F64 p : points) {
+			out.add(p.copy());
+		}
+		return out;
+	}
+}
@@ -0,0 +1,194 @@
+/*
+ * Copyright (c) 2013-2014, Peter Abeles. All Rights Reserved.
+ *
+ * This file is part of Project BUBO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package bubo.clouds.fit.c2c;
+
+import bubo.clouds.FactoryFitting;
+import bubo.clouds.detect.wrapper.ConfigSurfaceNormals;
+import bubo.clouds.fit.MatchCloudToCloud;
+import bubo.clouds.fit.algs.RobustKernel;
+import bubo.struct.StoppingCondition;
+import georegression.geometry.ConvertRotation3D_F64;
+import georegression.struct.EulerType;
+import georegression.struct.point.Point3D_F64;
+import georegression.struct.se.Se3_F64;
+import georegression.transform.se.SePointOps_F64;
+import org.ejml.dense.row.MatrixFeatures_DDRM;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Peter Abeles
+ */
+public class TestMatchCloudToCloudIcpPlaneSe3 {
+
+	Random rand = new Random(234);
+
+	@Test
+	public void translate() {
+		Se3_F64 expected = new Se3_F64();
+		expected.getT().set(0.03, -0.02, 0.025);
+
+		check(expected, RobustKernel.NONE, 0);
+	}
+
+	@Test
+	public void rotate() {
+		Se3_F64 expected = new Se3_F64();
+		ConvertRotation3D_F64.eulerToMatrix(EulerType.XYZ, 0.02, -0.03, 0.04, expected.getR());
+
+		check(expected, RobustKernel.NONE, 0);
+	}
+
+	@Test
+	public void kernels() {
+		Se3_F64 expected = new Se3_F64();
+		ConvertRotation3D_F64.eulerToMatrix(EulerType.XYZ, 0.02, -0.03, 0.04, expected.getR());
+		expected.getT().set(0.03, -0.02, 0.025);
+
+		check(expected, RobustKernel.HUBER, 0.02);
+		check(expected, RobustKernel.TUKEY, 0.1);
+	}
+
+	private void check(Se3_F64 expected, RobustKernel kernel, double threshold) {
+		List<Point3D_F64> src = createBox(1500);
+		List<Point3D_F64> dst = transform(expected, src);
+
+		MatchCloudToCloudIcpPlaneSe3 alg = create(kernel, threshold);
+
+		alg.setSource(src);
+		alg.setDestination(dst);
+		assertTrue(alg.compute());
+		assertTrue(alg.getIterations() < 20);
+		assertTrue(alg.getMatchedSourcePoints() > src.size() / 2);
+
+		checkEquals(expected, alg.getSourceToDestination(), 1e-4);
+	}
+
+	/**
+	 * Points in the source which aren't in the destination should be ignored by the robust kernel
+	 */
+	@Test
+	public void outliers() {
+		Se3_F64 expected = new Se3_F64();
+		ConvertRotation3D_F64.eulerToMatrix(EulerType.XYZ, 0.01, -0.02, 0.015, expected.getR());
+		expected.getT().set(0.02, -0.01, 0.015);
+
+		List<Point3D_F64> src = createBox(1500);
+		List<Point3D_F64> dst = transform(expected, src);
+
+		// points which are slightly off the surface of the box
+		for (int i = 0; i < 300; i++) {
+			Point3D_F64 p = src.get(rand.nextInt(1500)).copy();
+			p.x += rand.nextGaussian() * 0.04;
+			p.y += rand.nextGaussian() * 0.04;
+			p.z += rand.nextGaussian() * 0.04;
+			src.add(p);
+		}
+
+		MatchCloudToCloudIcpPlaneSe3 alg = create(RobustKernel.TUKEY, 0.01);
+		alg.setSource(src);
+		alg.setDestination(dst);
+		assertTrue(alg.compute());
+
+		checkEquals(expected, alg.getSourceToDestination(), 2e-3);
+	}
+
+	@Test
+	public void noMatches() {
+		List<Point3D_F64> src = createBox(200);
+		List<Point3D_F64> dst = createBox(200);
+		for (Point3D_F64 p : dst) {
+			p.x += 10;
+		}
+
+		MatchCloudToCloud<Se3_F64, Point3D_F64> alg = create(RobustKernel.NONE, 0);
+		alg.setSource(src);
+		alg.setDestination(dst);
+		assertFalse(alg.compute());
+	}
+
+	@Test
+	public void sourceNotModified() {
+		List<Point3D_F64> src = createBox(300);
+		List<Point3D_F64> original = new ArrayList<Point3D_F64>();
+		for (Point3D_F64 p : src) {
+			original.add(p.copy());
+		}
+
+		Se3_F64 motion = new Se3_F64();
+		motion.getT().set(0.02, 0, 0);
+
+		MatchCloudToCloud<Se3_F64, Point3D_F64> alg = create(RobustKernel.NONE, 0);
+		assertFalse(alg.isModifiedSource());
+		alg.setSource(src);
+		alg.setDestination(transform(motion, src));
+		assertTrue(alg.compute());
+
+		for (int i = 0; i < src.size(); i++) {
+			assertEquals(0, original.get(i).distance(src.get(i)), 1e-15);
+		}
+	}
+
+	private MatchCloudToCloudIcpPlaneSe3 create(RobustKernel kernel, double threshold) {
+		return (MatchCloudToCloudIcpPlaneSe3) FactoryFitting.cloudIcp3DPlane(0.2, new StoppingCondition(50, 1e-12),
+				new ConfigSurfaceNormals(8, Double.MAX_VALUE), kernel, threshold);
+	}
+
+	private static void checkEquals(Se3_F64 expected, Se3_F64 found, double tol) {
+		assertEquals(expected.T.x, found.T.x, tol);
+		assertEquals(expected.T.y, found.T.y, tol);
+		assertEquals(expected.T.z, found.T.z, tol);
+		assertTrue(MatrixFeatures_DDRM.isIdentical(expected.getR(), found.getR(), tol));
+	}
+
+	/**
+	 * Randomly samples points from the surface of a box with sides of different lengths
+	 */
+	private List<Point3D_F64> createBox(int N) {
+		double[] length = new double[]{1.0, 0.8, 0.6};
+
+		List<Point3D_F64> out = new ArrayList<Point3D_F64>();
+		for (int i = 0; i < N; i++) {
+			int axis = rand.nextInt(3);
+			double[] v = new double[3];
+			for (int j = 0; j < 3; j++) {
+				v[j] = rand.nextDouble() * length[j];
+			}
+			v[axis] = rand.nextBoolean() ? 0 : length[axis];
+			out.add(new Point3D_F64(v[0], v[1], v[2]));
+		}
+		return out;
+	}
+
+	private static List<Point3D_F64> transform(Se3_F64 se, List<Point3D_F64> points) {
+		List<Point3D_F64> out = new ArrayList<Point3D_F64>();
+		for (Point3D_F64 p : points) {
+			out.add(SePointOps_F64.transform(se, p, null));
+		}
+		return out;
+	}
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright (c) 2013-2014, Peter Abeles. All Rights Reserved.
+ *
+ * This file is part of Project BUBO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package bubo.clouds.fit.c2c;
+
+import bubo.clouds.FactoryFitting;
+import bubo.clouds.fit.MatchCloudToCloud;
+import bubo.struct.StoppingCondition;
+import georegression.geometry.ConvertRotation3D_F64;
+import georegression.geometry.UtilPoint3D_F64;
+import georegression.struct.EulerType;
+import georegression.struct.point.Point3D_F64;
+import georegression.struct.se.Se3_F64;
+import georegression.transform.se.SePointOps_F64;
+import org.ejml.dense.row.MatrixFeatures_DDRM;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Peter Abeles
+ */
+public class TestMatchCloudToCloudIcpWindowSe3 {
+
+	Random rand = new Random(234);
+
+	@Test
+	public void generic() {
+		new GeneralCloudToCloudChecksSe3() {
+
+			@Override
+			public MatchCloudToCloud<Se3_F64, Point3D_F64> create() {
+				return FactoryFitting.cloudIcp3DWindow(0.1, 0, new StoppingCondition(200, 1e-6));
+			}
+		}.all();
+	}
+
+	/**
+	 * Should produce the same solution as the kd-tree based implementation when the destination is a single scan
+	 */
+	@Test
+	public void compareToArray() {
+		Se3_F64 expected = new Se3_F64();
+		ConvertRotation3D_F64.eulerToMatrix(EulerType.XYZ, 0.02, -0.04, 0.03, expected.getR());
+		expected.getT().set(0.05, -0.02, 0.03);
+
+		List<Point3D_F64> src = UtilPoint3D_F64.random(0, 1, 400, rand);
+		List<Point3D_F64> dst = transform(expected, src);
+
+		MatchCloudToCloud<Se3_F64, Point3D_F64> window = FactoryFitting.cloudIcp3DWindow(0.1, 0, new StoppingCondition(20, 1e-8));
+		MatchCloudToCloud<Se3_F64, Point3D_F64> array = FactoryFitting.cloudIcp3DArray(0.1, new StoppingCondition(20, 1e-8));
+
+		window.setSource(src);
+		window.setDestination(dst);
+		assertTrue(window.compute());
+		array.setSource(src);
+		array.setDestination(dst);
+		assertTrue(array.compute());
+
+		checkEquals(array.getSourceToDestination(), window.getSourceToDestination(), 1e-8);
+		assertEquals(array.getMatchedSourcePoints(), window.getMatchedSourcePoints());
+	}
+
+	/**
+	 * Add scans which are parts of the same cloud.  Scans which fall out of the window should no longer be matched
+	 */
+	@Test
+	public void addDestination_window() {
+		Se3_F64 expected = new Se3_F64();
+		expected.getT().set(0.03, -0.02, 0.01);
+
+		List<Point3D_F64> src = UtilPoint3D_F64.random(0, 1, 600, rand);
+		List<Point3D_F64> dst = transform(expected, src);
+
+		MatchCloudToCloudIcpWindowSe3 alg = FactoryFitting.cloudIcp3DWindow(0.1, 2, new StoppingCondition(50, 1e-8));
+
+		// far away scan which will be pushed out of the window
+		List<Point3D_F64> far = UtilPoint3D_F64.random(10, 11, 200, rand);
+		alg.addDestination(far);
+
+		// split the destination along the x-axis
+		List<Point3D_F64> left = new ArrayList<Point3D_F64>();
+		List<Point3D_F64> right = new ArrayList<Point3D_F64>();
+		for (int i = 0; i < src.size(); i++) {
+			if (src.get(i).x < 0.5)
+				left.add(dst.get(i));
+			else
+				right.add(dst.get(i));
+		}
+		alg.addDestination(left);
+		alg.addDestination(right);
+
+		assertEquals(2, alg.getDestination().getNumberOfScans());
+		assertEquals(600, alg.getDestination().getNumberOfPoints());
+
+		alg.setSource(src);
+		assertTrue(alg.compute());
+		checkEquals(expected, alg.getSourceToDestination(), 1e-4);
+
+		// remove the left side.  Points on the left should no longer be matched
+		alg.removeOldestDestination();
+		assertEquals(1, alg.getDestination().getNumberOfScans());
+		assertEquals(right.size(), alg.getDestination().getNumberOfPoints());
+		alg.setSource(transform(expected, src));
+		assertTrue(alg.compute());
+		assertTrue(alg.getMatchedSourcePoints() < right.size() + 0.1 * src.size());
+	}
+
+	private static void checkEquals(Se3_F64 expected, Se3_F64 found, double tol) {
+		assertEquals(expected.T.x, found.T.x, tol);
+		assertEquals(expected.T.y, found.T.y, tol);
+		assertEquals(expected.T.z, found.T.z, tol);
+		assertTrue(MatrixFeatures_DDRM.isIdentical(expected.getR(), found.getR(), tol));
+	}
+
+	private static List<Point3D_F64> transform(Se3_F64 se, List<Point3D_F64> points) {
+		List<Point3D_F64> out = new ArrayList<Point3D_F64>();
+		for (Point3D_F64 p : points) {
+			out.add(SePointOps_F64.transform(se, p, null));
+		}
+		return out;
+	}
+}
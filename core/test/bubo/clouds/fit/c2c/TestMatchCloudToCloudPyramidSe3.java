@@ -0,0 +1,201 @@
+/*
+ * Copyright (c) 2013-2014, Peter Abeles. All Rights Reserved.
+ *
+ * This file is part of Project BUBO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package bubo.clouds.fit.c2c;
+
+import bubo.clouds.FactoryFitting;
+import bubo.clouds.fit.MatchCloudToCloud;
+import bubo.struct.StoppingCondition;
+import georegression.geometry.ConvertRotation3D_F64;
+import georegression.geometry.UtilPoint3D_F64;
+import georegression.struct.EulerType;
+import georegression.struct.point.Point3D_F64;
+import georegression.struct.se.Se3_F64;
+import georegression.transform.se.SePointOps_F64;
+import org.ejml.dense.row.MatrixFeatures_DDRM;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Peter Abeles
+ */
+public class TestMatchCloudToCloudPyramidSe3 {
+
+	Random rand = new Random(234);
+
+	@Test
+	public void generic() {
+		new GeneralCloudToCloudChecksSe3() {
+
+			@Override
+			public MatchCloudToCloud<Se3_F64, Point3D_F64> create() {
+				return FactoryFitting.cloudIcp3DPyramid(new double[]{0.1, 0}, new double[]{0.2, 0.1},
+						new StoppingCondition(200, 1e-6), 0xBEEF);
+			}
+		}.all();
+	}
+
+	/**
+	 * The motion is too large for a single level with a small matching distance but the pyramid should converge
+	 */
+	@Test
+	public void largeMotion() {
+		Se3_F64 expected = new Se3_F64();
+		ConvertRotation3D_F64.eulerToMatrix(EulerType.XYZ, 0.05, -0.08, 0.06, expected.getR());
+		expected.getT().set(0.2, -0.15, 0.1);
+
+		List<Point3D_F64> src = UtilPoint3D_F64.random(0, 1, 4000, rand);
+		List<Point3D_F64> dst = new ArrayList<Point3D_F64>();
+		for (Point3D_F64 p : src) {
+			dst.add(SePointOps_F64.transform(expected, p, null));
+		}
+		List<Point3D_F64> original = copy(src);
+
+		MatchCloudToCloudPyramidSe3 alg = (MatchCloudToCloudPyramidSe3) FactoryFitting.cloudIcp3DPyramid(
+				new double[]{0.25, 0.1, 0}, new double[]{0.5, 0.2, 0.05}, new StoppingCondition(200, 1e-8), 0xBEEF);
+
+		assertFalse(alg.isModifiedSource());
+		alg.setSource(src);
+		alg.setDestination(dst);
+
+		// the coarse levels should have fewer points
+		assertTrue(alg.getSourceSize(0) < alg.getSourceSize(1));
+		assertTrue(alg.getSourceSize(1) < alg.getSourceSize(2));
+		assertEquals(src.size(), alg.getSourceSize(2));
+		assertTrue(alg.getDestinationSize(0) < alg.getDestinationSize(1));
+
+		assertTrue(alg.compute());
+
+		Se3_F64 found = alg.getSourceToDestination();
+		assertEquals(expected.T.x, found.T.x, 1e-4);
+		assertEquals(expected.T.y, found.T.y, 1e-4);
+		assertEquals(expected.T.z, found.T.z, 1e-4);
+		assertTrue(MatrixFeatures_DDRM.isIdentical(expected.getR(), found.getR(), 1e-4));
+		assertTrue(alg.getMatchedSourcePoints() > src.size() * 0.9);
+
+		// source should not be modified
+		for (int i = 0; i < src.size(); i++) {
+			assertEquals(0, original.get(i).distance(src.get(i)), 1e-15);
+		}
+
+		// a single level will get stuck in a local minimum
+		MatchCloudToCloud<Se3_F64, Point3D_F64> single =
+				FactoryFitting.cloudIcp3DArray(0.05, new StoppingCondition(200, 1e-8));
+		single.setSource(src);
+		single.setDestination(dst);
+		if (single.compute()) {
+			assertTrue(expected.T.distance(single.getSourceToDestination().T) > 1e-2);
+		}
+	}
+
+	/**
+	 * The destination should only be passed to each level when it changes, not every time compute is called
+	 */
+	@Test
+	public void setDestination_once() {
+		List<MatchCloudToCloud<Se3_F64, Point3D_F64>> levels = new ArrayList<MatchCloudToCloud<Se3_F64, Point3D_F64>>();
+		List<CountDestination> counters = new ArrayList<CountDestination>();
+		for (int i = 0; i < 2; i++) {
+			CountDestination c = new CountDestination(
+					FactoryFitting.cloudIcp3DArray(0.2, new StoppingCondition(50, 1e-8)));
+			counters.add(c);
+			levels.add(c);
+		}
+		MatchCloudToCloudPyramidSe3 alg = new MatchCloudToCloudPyramidSe3(new double[]{0.1, 0}, levels, 234);
+
+		List<Point3D_F64> dst = UtilPoint3D_F64.random(0, 1, 500, rand);
+		alg.setDestination(dst);
+		for (int trial = 0; trial < 3; trial++) {
+			alg.setSource(UtilPoint3D_F64.random(0, 1, 200, rand));
+			alg.compute();
+		}
+
+		for (CountDestination c : counters) {
+			assertEquals(1, c.total);
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void mismatchedLevels() {
+		FactoryFitting.cloudIcp3DPyramid(new double[]{0.1, 0}, new double[]{0.1}, new StoppingCondition(20, 1e-8), 0xBEEF);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void negativeVoxel() {
+		FactoryFitting.cloudIcp3DPyramid(new double[]{-0.1}, new double[]{0.1}, new StoppingCondition(20, 1e-8), 0xBEEF);
+	}
+
+	private static List<Point3D_F64> copy(List<Point3D_F64> points) {
+		List<Point3D_F64> out = new ArrayList<Point3D_F64>();
+		for (Point3D_F64 p : points) {
+			out.add(p.copy());
+		}
+		return out;
+	}
+
+	/**
+	 * Counts the number of times the destination is set
+	 */
+	private static class CountDestination implements MatchCloudToCloud<Se3_F64, Point3D_F64> {
+		MatchCloudToCloud<Se3_F64, Point3D_F64> alg;
+		int total;
+
+		CountDestination(MatchCloudToCloud<Se3_F64, Point3D_F64> alg) {
+			this.alg = alg;
+		}
+
+		@Override
+		public void setSource(List<Point3D_F64> points) {
+			alg.setSource(points);
+		}
+
+		@Override
+		public void setDestination(List<Point3D_F64> points) {
+			total++;
+			alg.setDestination(points);
+		}
+
+		@Override
+		public boolean compute() {
+			return alg.compute();
+		}
+
+		@Override
+		public Se3_F64 getSourceToDestination() {
+			return alg.getSourceToDestination();
+		}
+
+		@Override
+		public boolean isModifiedSource() {
+			return alg.isModifiedSource();
+		}
+
+		@Override
+		public int getMatchedSourcePoints() {
+			return alg.getMatchedSourcePoints();
+		}
+	}
+}
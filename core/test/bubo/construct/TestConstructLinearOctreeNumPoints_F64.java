@@ -0,0 +1,181 @@
+/*
+ * Copyright (c) 2013-2014, Peter Abeles. All Rights Reserved.
+ *
+ * This file is part of Project BUBO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package bubo.construct;
+
+import georegression.struct.point.Point3D_F64;
+import georegression.struct.shapes.Box3D_F64;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Peter Abeles
+ */
+public class TestConstructLinearOctreeNumPoints_F64 {
+
+	Random rand = new Random(234);
+
+	/**
+	 * The constructed tree should have the same structure as the one created by {@link ConstructOctreeNumPoints_F64}
+	 */
+	@Test
+	public void compareToConstructOctreeNumPoints() {
+		Box3D_F64 cube = new Box3D_F64(-50, -50, -50, 50, 50, 50);
+		List<Point3D_F64> points = new ArrayList<Point3D_F64>();
+
+		// clustered points so that the tree is deep in some places and shallow in others
+		for (int i = 0; i < 2000; i++) {
+			double s = i < 1000 ? 2 : 50;
+			points.add(new Point3D_F64(s * (rand.nextDouble() * 2 - 1), s * (rand.nextDouble() * 2 - 1), s * (rand.nextDouble() * 2 - 1)));
+		}
+
+		ConstructOctreeNumPoints_F64 expected = new ConstructOctreeNumPoints_F64(10);
+		expected.initialize(cube);
+		for (int i = 0; i < points.size(); i++) {
+			expected.addPoint(points.get(i), i);
+		}
+
+		ConstructLinearOctreeNumPoints_F64 alg = new ConstructLinearOctreeNumPoints_F64(10);
+		alg.initialize(cube);
+		alg.addPoints(points);
+		alg.construct();
+
+		LinearOctree_F64 found = alg.getTree();
+		compare(expected.getTree(), found, 0);
+		assertEquals(expected.getAllNodes().size, found.getNumberOfNodes());
+	}
+
+	private void compare(Octree_F64 expected, LinearOctree_F64 found, int node) {
+		assertEquals(expected.points.size, found.getPointCount(node));
+		assertEquals(expected.isLeaf(), found.isLeaf(node));
+
+		// same set of points should be contained in the node
+		boolean[] contained = new boolean[found.getNumberOfPoints()];
+		int start = found.getPointStart(node);
+		for (int i = 0; i < found.getPointCount(node); i++) {
+			contained[found.getOriginalIndex(start + i)] = true;
+		}
+		for (int i = 0; i < expected.points.size; i++) {
+			assertTrue(contained[(Integer) expected.points.get(i).userData]);
+		}
+
+		if (expected.isLeaf())
+			return;
+
+		for (int i = 0; i < 8; i++) {
+			Octree_F64 e = expected.children[i];
+			int f = found.getChild(node, i);
+			if (e == null) {
+				assertEquals(-1, f);
+			} else {
+				assertEquals(node, found.getParent(f));
+				compare(e, found, f);
+			}
+		}
+	}
+
+	@Test
+	public void sortedByCode() {
+		ConstructLinearOctreeNumPoints_F64 alg = new ConstructLinearOctreeNumPoints_F64(3);
+		alg.initialize(new Box3D_F64(-1, -1, -1, 1, 1, 1));
+		for (int i = 0; i < 500; i++) {
+			alg.addPoint(rand.nextDouble() * 2 - 1, rand.nextDouble() * 2 - 1, rand.nextDouble() * 2 - 1);
+		}
+		alg.construct();
+
+		LinearOctree_F64 tree = alg.getTree();
+		Point3D_F64 p = new Point3D_F64();
+		boolean[] used = new boolean[500];
+		for (int i = 0; i < tree.getNumberOfPoints(); i++) {
+			if (i > 0)
+				assertTrue(tree.codes.get(i - 1) <= tree.codes.get(i));
+			tree.getPoint(i, p);
+			assertEquals(tree.computeCode(p.x, p.y, p.z), tree.codes.get(i));
+			used[tree.getOriginalIndex(i)] = true;
+		}
+		for (int i = 0; i < used.length; i++) {
+			assertTrue(used[i]);
+		}
+	}
+
+	@Test
+	public void maxDepth() {
+		ConstructLinearOctreeNumPoints_F64 alg = new ConstructLinearOctreeNumPoints_F64(0, 3);
+		alg.initialize(new Box3D_F64(0, 0, 0, 8, 8, 8));
+		for (int i = 0; i < 100; i++) {
+			alg.addPoint(rand.nextDouble() * 8, rand.nextDouble() * 8, rand.nextDouble() * 8);
+		}
+		alg.construct();
+
+		LinearOctree_F64 tree = alg.getTree();
+		for (int i = 0; i < tree.getNumberOfNodes(); i++) {
+			assertTrue(tree.getDepth(i) <= 3);
+			// only nodes which can't be split should be leafs before the maximum depth
+			if (tree.getDepth(i) < 3 && tree.isLeaf(i)) {
+				int start = tree.getPointStart(i);
+				int end = start + tree.getPointCount(i) - 1;
+				assertEquals(tree.codes.get(start), tree.codes.get(end));
+			}
+		}
+	}
+
+	/**
+	 * If more points have the same value then there is no good way to split the list.
+	 */
+	@Test
+	public void numerousIdenticalPoints() {
+		ConstructLinearOctreeNumPoints_F64 alg = new ConstructLinearOctreeNumPoints_F64(10);
+		alg.initialize(new Box3D_F64(-100, -100, -100, 200, 200, 200));
+
+		for (int i = 0; i < 100; i++) {
+			alg.addPoint(new Point3D_F64(1, 1, 1));
+		}
+		alg.construct();
+
+		LinearOctree_F64 tree = alg.getTree();
+		assertEquals(1, tree.getNumberOfNodes());
+		assertTrue(tree.isLeaf(0));
+		assertEquals(100, tree.getPointCount(0));
+	}
+
+	/**
+	 * Calling initialize should discard the previous tree
+	 */
+	@Test
+	public void initialize_reset() {
+		ConstructLinearOctreeNumPoints_F64 alg = new ConstructLinearOctreeNumPoints_F64(2);
+		alg.initialize(new Box3D_F64(-1, -1, -1, 1, 1, 1));
+		for (int i = 0; i < 50; i++) {
+			alg.addPoint(rand.nextDouble() * 2 - 1, rand.nextDouble() * 2 - 1, rand.nextDouble() * 2 - 1);
+		}
+		alg.construct();
+		assertTrue(alg.getTree().getNumberOfNodes() > 1);
+
+		alg.initialize(new Box3D_F64(-1, -1, -1, 1, 1, 1));
+		alg.addPoint(0.5, 0.5, 0.5);
+		alg.construct();
+
+		assertEquals(1, alg.getTree().getNumberOfNodes());
+		assertEquals(1, alg.getTree().getNumberOfPoints());
+	}
+}
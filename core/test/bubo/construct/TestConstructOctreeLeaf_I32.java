@@ -124,6 +124,28 @@ public class TestConstructOctreeLeaf_I32 {
 		return total;
 	}
 
+	@Test
+	public void addChild() {
+		ConstructOctreeLeaf_I32 alg = new ConstructOctreeLeaf_I32();
+
+		alg.initialize(new Box3D_I32(0, 0, 0, 10, 10, 1));
+
+		Octree_I32 root = alg.getTree();
+		Octree_I32 child = alg.addChild(root, 7);
+		assertTrue(child != null);
+		assertTrue(child.parent == root);
+		assertTrue(root.children[7] == child);
+		assertEquals(2, alg.getAllNodes().size());
+
+		// adding it again should return the same node
+		assertTrue(child == alg.addChild(root, 7));
+		assertEquals(2, alg.getAllNodes().size());
+
+		// the z-axis has a width of one so children below the divider have no volume
+		assertTrue(alg.addChild(root, 3) == null);
+		assertEquals(2, alg.getAllNodes().size());
+	}
+
 	@Test
 	public void addLeafsIntersect() {
 		ConstructOctreeLeaf_I32 alg = new ConstructOctreeLeaf_I32();
@@ -22,6 +22,12 @@ import georegression.struct.point.Point3D_F64;
 import georegression.struct.shapes.Box3D_F64;
 import org.junit.Test;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
 import static org.junit.Assert.*;
 
 /**
@@ -29,6 +35,8 @@ import static org.junit.Assert.*;
  */
 public class TestConstructOctreeNumPoints_F64 {
 
+	Random rand = new Random(234);
+
 	/**
 	 * Makes sure the point and data are correctly associated to each other
 	 */
@@ -150,4 +158,109 @@ public class TestConstructOctreeNumPoints_F64 {
 		}
 	}
 
+	/**
+	 * Constructing the tree concurrently should produce the same tree as adding the points one at a time
+	 */
+	@Test
+	public void addPoints_concurrent() {
+		List<Point3D_F64> points = new ArrayList<Point3D_F64>();
+		List<Integer> data = new ArrayList<Integer>();
+		for (int i = 0; i < 3000; i++) {
+			double s = i < 1500 ? 2 : 50;
+			points.add(new Point3D_F64(s * (rand.nextDouble() * 2 - 1), s * (rand.nextDouble() * 2 - 1), s * (rand.nextDouble() * 2 - 1)));
+			data.add(i);
+		}
+		// a few identical points to test the pathological case
+		for (int i = 0; i < 20; i++) {
+			points.add(new Point3D_F64(-10, -10, -10));
+			data.add(points.size() - 1);
+		}
+
+		Box3D_F64 cube = new Box3D_F64(-50, -50, -50, 50, 50, 50);
+
+		ConstructOctreeNumPoints_F64 expected = new ConstructOctreeNumPoints_F64(10);
+		expected.initialize(cube);
+		for (int i = 0; i < points.size(); i++) {
+			expected.addPoint(points.get(i), data.get(i));
+		}
+
+		ExecutorService pool = Executors.newFixedThreadPool(3);
+		try {
+			ConstructOctreeNumPoints_F64 alg = new ConstructOctreeNumPoints_F64(10);
+			alg.setThreadPool(pool);
+
+			// do it twice to make sure data is correctly recycled
+			for (int trial = 0; trial < 2; trial++) {
+				alg.initialize(cube);
+				alg.addPoints(points, data);
+
+				assertEquals(expected.getAllNodes().size, alg.getAllNodes().size);
+				assertEquals(points.size(), alg.getAllPoints().size);
+				compare(expected.getTree(), alg.getTree());
+
+				// every node should be in the list of all nodes only once
+				List<Octree_F64> all = alg.getAllNodes().toList();
+				for (int i = 0; i < all.size(); i++) {
+					Octree_F64 o = all.get(i);
+					assertEquals(i, all.indexOf(o));
+					if (o != alg.getTree())
+						assertTrue(all.contains(o.parent));
+				}
+			}
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	/**
+	 * If there are too few points for the root to be split then it should remain a leaf
+	 */
+	@Test
+	public void addPoints_concurrent_noSplit() {
+		ExecutorService pool = Executors.newFixedThreadPool(2);
+		try {
+			ConstructOctreeNumPoints_F64 alg = new ConstructOctreeNumPoints_F64(10);
+			alg.setThreadPool(pool);
+			alg.initialize(new Box3D_F64(-1, -1, -1, 1, 1, 1));
+
+			List<Point3D_F64> points = new ArrayList<Point3D_F64>();
+			for (int i = 0; i < 10; i++) {
+				points.add(new Point3D_F64(rand.nextDouble() - 0.5, rand.nextDouble() - 0.5, rand.nextDouble() - 0.5));
+			}
+			alg.addPoints(points);
+
+			assertTrue(alg.getTree().isLeaf());
+			assertEquals(10, alg.getTree().points.size);
+			assertEquals(1, alg.getAllNodes().size);
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	private void compare(Octree_F64 expected, Octree_F64 found) {
+		assertEquals(expected.points.size, found.points.size);
+		assertEquals(expected.isLeaf(), found.isLeaf());
+		assertEquals(0, expected.space.p0.distance(found.space.p0), 1e-8);
+		assertEquals(0, expected.space.p1.distance(found.space.p1), 1e-8);
+
+		boolean[] contained = new boolean[4000];
+		for (int i = 0; i < found.points.size; i++) {
+			contained[(Integer) found.points.get(i).userData] = true;
+		}
+		for (int i = 0; i < expected.points.size; i++) {
+			assertTrue(contained[(Integer) expected.points.get(i).userData]);
+		}
+
+		if (expected.isLeaf())
+			return;
+
+		for (int i = 0; i < 8; i++) {
+			if (expected.children[i] == null) {
+				assertNull(found.children[i]);
+			} else {
+				assertTrue(found.children[i].parent == found);
+				compare(expected.children[i], found.children[i]);
+			}
+		}
+	}
 }
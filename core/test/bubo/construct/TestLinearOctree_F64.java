@@ -0,0 +1,215 @@
+/*
+ * Copyright (c) 2013-2014, Peter Abeles. All Rights Reserved.
+ *
+ * This file is part of Project BUBO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package bubo.construct;
+
+import georegression.struct.point.Point3D_F64;
+import georegression.struct.shapes.Box3D_F64;
+import org.ddogleg.struct.GrowQueue_I32;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Peter Abeles
+ */
+public class TestLinearOctree_F64 {
+
+	Random rand = new Random(234);
+
+	@Test
+	public void spread_compact() {
+		for (int i = 0; i < 100; i++) {
+			int v = rand.nextInt(1 << 21);
+			long s = LinearOctree_F64.spread(v);
+			assertEquals(v, LinearOctree_F64.compact(s));
+			// only every third bit should be set
+			assertEquals(0, s & ~0x1249249249249249L);
+		}
+	}
+
+	/**
+	 * The child index found from the code should be the same as {@link Octree_F64#getChildIndex}
+	 */
+	@Test
+	public void childIndex() {
+		LinearOctree_F64 alg = new LinearOctree_F64();
+		alg.space.set(-10, -20, -30, 20, 10, 40);
+		alg.maxDepth = 10;
+
+		Octree_F64 node = new Octree_F64();
+		node.space.set(alg.space);
+
+		for (int i = 0; i < 200; i++) {
+			Point3D_F64 p = randomPoint(alg.space);
+			long code = alg.computeCode(p.x, p.y, p.z);
+
+			Octree_F64 n = node;
+			for (int depth = 0; depth < 4; depth++) {
+				ConstructOctree_F64.computeDivider(n.space, n.divider);
+				int expected = n.getChildIndex(p);
+				assertEquals(expected, alg.childIndex(code, depth));
+
+				Octree_F64 child = new Octree_F64();
+				ConstructOctree_F64.setChildSpace(n.space, n.divider, expected, child.space);
+				n = child;
+			}
+		}
+	}
+
+	@Test
+	public void getChild() {
+		LinearOctree_F64 alg = new LinearOctree_F64();
+		alg.addNode(0, 0, -1, 0, 10);
+		alg.addNode(0, 1, 0, 0, 4);
+		alg.addNode(0, 1, 0, 4, 6);
+		alg.nodeFirstChild.data[0] = 1;
+		alg.nodeChildMask.data[0] = (1 << 2) | (1 << 6);
+
+		assertFalse(alg.isLeaf(0));
+		assertTrue(alg.isLeaf(1));
+		assertEquals(-1, alg.getChild(0, 0));
+		assertEquals(1, alg.getChild(0, 2));
+		assertEquals(-1, alg.getChild(0, 3));
+		assertEquals(2, alg.getChild(0, 6));
+		assertEquals(-1, alg.getChild(0, 7));
+		assertEquals(0, alg.getParent(2));
+	}
+
+	@Test
+	public void getSpace() {
+		ConstructLinearOctreeNumPoints_F64 construct = new ConstructLinearOctreeNumPoints_F64(5, 8);
+		Box3D_F64 cube = new Box3D_F64(-10, -20, -30, 20, 10, 40);
+		construct.initialize(cube);
+		for (int i = 0; i < 300; i++) {
+			construct.addPoint(randomPoint(cube));
+		}
+		construct.construct();
+
+		LinearOctree_F64 alg = construct.getTree();
+		Box3D_F64 space = new Box3D_F64();
+		Box3D_F64 childSpace = new Box3D_F64();
+		Point3D_F64 divider = new Point3D_F64();
+		Point3D_F64 p = new Point3D_F64();
+
+		alg.getSpace(0, space);
+		assertEquals(0, space.p0.distance(cube.p0), 1e-8);
+		assertEquals(0, space.p1.distance(cube.p1), 1e-8);
+
+		for (int node = 0; node < alg.getNumberOfNodes(); node++) {
+			alg.getSpace(node, space);
+
+			// points should be contained inside the node
+			int start = alg.getPointStart(node);
+			for (int i = 0; i < alg.getPointCount(node); i++) {
+				alg.getPoint(start + i, p);
+				assertTrue(p.x >= space.p0.x - 1e-8 && p.x < space.p1.x + 1e-8);
+				assertTrue(p.y >= space.p0.y - 1e-8 && p.y < space.p1.y + 1e-8);
+				assertTrue(p.z >= space.p0.z - 1e-8 && p.z < space.p1.z + 1e-8);
+			}
+
+			// children should be the same as what the pointer octree would compute
+			if (!alg.isLeaf(node)) {
+				ConstructOctree_F64.computeDivider(space, divider);
+				for (int i = 0; i < 8; i++) {
+					int child = alg.getChild(node, i);
+					if (child == -1)
+						continue;
+					Box3D_F64 expected = new Box3D_F64();
+					ConstructOctree_F64.setChildSpace(space, divider, i, expected);
+					alg.getSpace(child, childSpace);
+					assertEquals(0, expected.p0.distance(childSpace.p0), 1e-8);
+					assertEquals(0, expected.p1.distance(childSpace.p1), 1e-8);
+				}
+			}
+		}
+	}
+
+	@Test
+	public void findDeepest() {
+		ConstructLinearOctreeNumPoints_F64 construct = new ConstructLinearOctreeNumPoints_F64(5);
+		Box3D_F64 cube = new Box3D_F64(-10, -20, -30, 20, 10, 40);
+		construct.initialize(cube);
+		for (int i = 0; i < 300; i++) {
+			construct.addPoint(randomPoint(cube));
+		}
+		construct.construct();
+		LinearOctree_F64 alg = construct.getTree();
+
+		// outside the tree
+		assertEquals(-1, alg.findDeepest(new Point3D_F64(100, 0, 0)));
+
+		Point3D_F64 p = new Point3D_F64();
+		for (int i = 0; i < alg.getNumberOfPoints(); i++) {
+			alg.getPoint(i, p);
+			int node = alg.findDeepest(p);
+			assertTrue(alg.isLeaf(node));
+			int start = alg.getPointStart(node);
+			assertTrue(i >= start && i < start + alg.getPointCount(node));
+		}
+
+		// should stop at a node where the child doesn't exist
+		for (int i = 0; i < 100; i++) {
+			p = randomPoint(cube);
+			int node = alg.findDeepest(p);
+			if (!alg.isLeaf(node)) {
+				long code = alg.computeCode(p.x, p.y, p.z);
+				assertEquals(-1, alg.getChild(node, alg.childIndex(code, alg.getDepth(node))));
+			}
+		}
+	}
+
+	@Test
+	public void findPathToPoint() {
+		ConstructLinearOctreeNumPoints_F64 construct = new ConstructLinearOctreeNumPoints_F64(5);
+		Box3D_F64 cube = new Box3D_F64(-10, -20, -30, 20, 10, 40);
+		construct.initialize(cube);
+		for (int i = 0; i < 300; i++) {
+			construct.addPoint(randomPoint(cube));
+		}
+		construct.construct();
+		LinearOctree_F64 alg = construct.getTree();
+
+		GrowQueue_I32 path = new GrowQueue_I32();
+		alg.findPathToPoint(new Point3D_F64(100, 0, 0), path);
+		assertEquals(0, path.size);
+
+		Point3D_F64 p = new Point3D_F64();
+		for (int i = 0; i < alg.getNumberOfPoints(); i++) {
+			alg.getPoint(i, p);
+			path.reset();
+			alg.findPathToPoint(p, path);
+
+			assertEquals(0, path.get(0));
+			assertEquals(alg.findDeepest(p), path.get(path.size - 1));
+			for (int j = 1; j < path.size; j++) {
+				assertEquals(path.get(j - 1), alg.getParent(path.get(j)));
+				assertEquals(j, alg.getDepth(path.get(j)));
+			}
+		}
+	}
+
+	private Point3D_F64 randomPoint(Box3D_F64 cube) {
+		double x = cube.p0.x + rand.nextDouble() * cube.getLengthX();
+		double y = cube.p0.y + rand.nextDouble() * cube.getLengthY();
+		double z = cube.p0.z + rand.nextDouble() * cube.getLengthZ();
+		return new Point3D_F64(x, y, z);
+	}
+}
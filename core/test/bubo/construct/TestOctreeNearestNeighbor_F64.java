@@ -0,0 +1,169 @@
+/*
+ * Copyright (c) 2013-2014, Peter Abeles. All Rights Reserved.
+ *
+ * This file is part of Project BUBO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package bubo.construct;
+
+import georegression.struct.point.Point3D_F64;
+import georegression.struct.shapes.Box3D_F64;
+import org.ddogleg.struct.FastQueue;
+import org.ddogleg.struct.GrowQueue_F64;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Peter Abeles
+ */
+@SuppressWarnings("unchecked")
+public class TestOctreeNearestNeighbor_F64 {
+
+	Random rand = new Random(234);
+
+	List<Point3D_F64> cloud = new ArrayList<Point3D_F64>();
+	ConstructOctreeNumPoints_F64 construct = new ConstructOctreeNumPoints_F64(8);
+
+	FastQueue<Octree.Info<Point3D_F64>> results = new FastQueue<Octree.Info<Point3D_F64>>((Class) Octree.Info.class, false);
+	GrowQueue_F64 distances = new GrowQueue_F64();
+
+	public TestOctreeNearestNeighbor_F64() {
+		for (int i = 0; i < 500; i++) {
+			cloud.add(new Point3D_F64(rand.nextDouble() * 10 - 5, rand.nextDouble() * 10 - 5, rand.nextDouble() * 10 - 5));
+		}
+		construct.initialize(new Box3D_F64(-5, -5, -5, 5, 5, 5));
+		construct.addPoints(cloud);
+	}
+
+	@Test
+	public void findNearest_K() {
+		OctreeNearestNeighbor_F64 alg = new OctreeNearestNeighbor_F64();
+		alg.setTree(construct.getTree());
+
+		for (int trial = 0; trial < 50; trial++) {
+			// some of the targets will be outside the tree
+			Point3D_F64 target = new Point3D_F64(rand.nextDouble() * 14 - 7, rand.nextDouble() * 14 - 7, rand.nextDouble() * 14 - 7);
+			int K = 1 + rand.nextInt(15);
+
+			alg.findNearest(target, -1, K, results, distances);
+
+			double[] expected = sortedDistances(target);
+			assertEquals(K, results.size);
+			for (int i = 0; i < K; i++) {
+				assertEquals(expected[i], distances.get(i), 1e-8);
+				assertEquals(expected[i], results.get(i).point.distance2(target), 1e-8);
+			}
+		}
+	}
+
+	@Test
+	public void findNearest_K_maxDistance() {
+		OctreeNearestNeighbor_F64 alg = new OctreeNearestNeighbor_F64();
+		alg.setTree(construct.getTree());
+
+		for (int trial = 0; trial < 50; trial++) {
+			Point3D_F64 target = new Point3D_F64(rand.nextDouble() * 10 - 5, rand.nextDouble() * 10 - 5, rand.nextDouble() * 10 - 5);
+			double maxDistanceSq = 0.5;
+
+			alg.findNearest(target, maxDistanceSq, 10, results, distances);
+
+			double[] expected = sortedDistances(target);
+			int N = 0;
+			while (N < 10 && expected[N] <= maxDistanceSq)
+				N++;
+
+			assertEquals(N, results.size);
+			for (int i = 0; i < N; i++) {
+				assertEquals(expected[i], distances.get(i), 1e-8);
+			}
+		}
+	}
+
+	/**
+	 * Ask for more points than there are in the tree
+	 */
+	@Test
+	public void findNearest_K_tooMany() {
+		OctreeNearestNeighbor_F64 alg = new OctreeNearestNeighbor_F64();
+		alg.setTree(construct.getTree());
+
+		alg.findNearest(new Point3D_F64(1, 2, 3), -1, cloud.size() + 10, results, distances);
+
+		assertEquals(cloud.size(), results.size);
+		for (int i = 1; i < distances.size; i++) {
+			assertTrue(distances.get(i - 1) <= distances.get(i));
+		}
+	}
+
+	@Test
+	public void findNearest_single() {
+		OctreeNearestNeighbor_F64 alg = new OctreeNearestNeighbor_F64();
+		alg.setTree(construct.getTree());
+
+		for (int trial = 0; trial < 50; trial++) {
+			Point3D_F64 target = new Point3D_F64(rand.nextDouble() * 14 - 7, rand.nextDouble() * 14 - 7, rand.nextDouble() * 14 - 7);
+
+			Octree.Info<Point3D_F64> found = alg.findNearest(target, -1);
+
+			double[] expected = sortedDistances(target);
+			assertEquals(expected[0], found.point.distance2(target), 1e-8);
+			assertEquals(expected[0], alg.getLastDistance(), 1e-8);
+
+			// nothing should be found if the max distance is smaller
+			if (expected[0] > 1e-8)
+				assertNull(alg.findNearest(target, expected[0] * 0.99));
+		}
+	}
+
+	@Test
+	public void findWithinRadius() {
+		OctreeNearestNeighbor_F64 alg = new OctreeNearestNeighbor_F64();
+		alg.setTree(construct.getTree());
+
+		for (int trial = 0; trial < 50; trial++) {
+			Point3D_F64 target = new Point3D_F64(rand.nextDouble() * 10 - 5, rand.nextDouble() * 10 - 5, rand.nextDouble() * 10 - 5);
+			double maxDistanceSq = rand.nextDouble() * 4;
+
+			alg.findWithinRadius(target, maxDistanceSq, results, distances);
+
+			int expected = 0;
+			for (int i = 0; i < cloud.size(); i++) {
+				if (cloud.get(i).distance2(target) <= maxDistanceSq)
+					expected++;
+			}
+
+			assertEquals(expected, results.size);
+			for (int i = 0; i < results.size; i++) {
+				assertTrue(results.get(i).point.distance2(target) <= maxDistanceSq);
+				assertEquals(results.get(i).point.distance2(target), distances.get(i), 1e-8);
+			}
+		}
+	}
+
+	private double[] sortedDistances(Point3D_F64 target) {
+		double[] d = new double[cloud.size()];
+		for (int i = 0; i < cloud.size(); i++) {
+			d[i] = cloud.get(i).distance2(target);
+		}
+		Arrays.sort(d);
+		return d;
+	}
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright (c) 2013-2014, Peter Abeles. All Rights Reserved.
+ *
+ * This file is part of Project BUBO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package bubo.construct;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * @author Peter Abeles
+ */
+public class TestPackedKeyHashMap_I32 {
+
+	Random rand = new Random(234);
+
+	@Test
+	public void key() {
+		long key = PackedKeyHashMap_I32.key(5, 2097151, 0);
+		assertEquals(5, PackedKeyHashMap_I32.keyX(key));
+		assertEquals(2097151, PackedKeyHashMap_I32.keyY(key));
+		assertEquals(0, PackedKeyHashMap_I32.keyZ(key));
+
+		// coordinates outside the range wrap around
+		assertEquals(PackedKeyHashMap_I32.key(2097151, 0, 1), PackedKeyHashMap_I32.key(-1, 2097152, 1));
+		assertEquals(2097151, PackedKeyHashMap_I32.keyX(PackedKeyHashMap_I32.key(-1, 0, 0)));
+	}
+
+	/**
+	 * Randomly add and remove keys and compare against a standard map.  Few keys are used so that there are
+	 * long chains of collisions which are affected by removal.
+	 */
+	@Test
+	public void compareToHashMap() {
+		PackedKeyHashMap_I32 alg = new PackedKeyHashMap_I32(2);
+		Map<Long, Integer> expected = new HashMap<Long, Integer>();
+
+		List<Long> keys = new ArrayList<Long>();
+		for (int i = 0; i < 300; i++) {
+			keys.add(PackedKeyHashMap_I32.key(rand.nextInt(20), rand.nextInt(20), rand.nextInt(3)));
+		}
+
+		for (int trial = 0; trial < 20000; trial++) {
+			long key = keys.get(rand.nextInt(keys.size()));
+			if (rand.nextInt(3) == 0) {
+				Integer removed = expected.remove(key);
+				assertEquals(removed == null ? -1 : removed, alg.remove(key));
+			} else {
+				int value = rand.nextInt(1000);
+				expected.put(key, value);
+				alg.put(key, value);
+			}
+			assertEquals(expected.size(), alg.size());
+		}
+
+		for (int i = 0; i < keys.size(); i++) {
+			long key = keys.get(i);
+			Integer value = expected.get(key);
+			assertEquals(value == null ? -1 : value, alg.get(key));
+		}
+	}
+
+	@Test
+	public void clear() {
+		PackedKeyHashMap_I32 alg = new PackedKeyHashMap_I32();
+		for (int i = 0; i < 100; i++) {
+			alg.put(PackedKeyHashMap_I32.key(i, 2, 3), i);
+		}
+		assertEquals(100, alg.size());
+
+		alg.clear();
+		assertEquals(0, alg.size());
+		assertEquals(-1, alg.get(PackedKeyHashMap_I32.key(5, 2, 3)));
+
+		alg.put(PackedKeyHashMap_I32.key(5, 2, 3), 7);
+		assertEquals(7, alg.get(PackedKeyHashMap_I32.key(5, 2, 3)));
+	}
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright (c) 2013-2014, Peter Abeles. All Rights Reserved.
+ *
+ * This file is part of Project BUBO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package bubo.construct;
+
+import org.ddogleg.nn.FactoryNearestNeighbor;
+import org.ddogleg.nn.NearestNeighbor;
+import org.ddogleg.nn.NnData;
+import org.ddogleg.struct.FastQueue;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Peter Abeles
+ */
+@SuppressWarnings("unchecked")
+public class TestWrapOctreeNearestNeighbor {
+
+	Random rand = new Random(234);
+
+	/**
+	 * Compares the results against an exhaustive search
+	 */
+	@Test
+	public void compareToExhaustive() {
+		List<double[]> points = new ArrayList<double[]>();
+		List<Integer> data = new ArrayList<Integer>();
+		for (int i = 0; i < 300; i++) {
+			points.add(new double[]{rand.nextGaussian(), rand.nextGaussian(), rand.nextGaussian()});
+			data.add(i);
+		}
+
+		NearestNeighbor<Integer> expected = FactoryNearestNeighbor.exhaustive();
+		expected.init(3);
+		expected.setPoints(points, data);
+
+		WrapOctreeNearestNeighbor<Integer> alg = new WrapOctreeNearestNeighbor<Integer>(10);
+		alg.init(3);
+		alg.setPoints(points, data);
+
+		NnData<Integer> resultE = new NnData<Integer>();
+		NnData<Integer> resultF = new NnData<Integer>();
+		FastQueue<NnData<Integer>> listE = new FastQueue<NnData<Integer>>((Class) NnData.class, true);
+		FastQueue<NnData<Integer>> listF = new FastQueue<NnData<Integer>>((Class) NnData.class, true);
+
+		for (int trial = 0; trial < 50; trial++) {
+			double[] target = new double[]{rand.nextGaussian(), rand.nextGaussian(), rand.nextGaussian()};
+
+			assertTrue(expected.findNearest(target, -1, resultE));
+			assertTrue(alg.findNearest(target, -1, resultF));
+			assertTrue(resultE.point == resultF.point);
+			assertEquals(resultE.data, resultF.data);
+			assertEquals(resultE.distance, resultF.distance, 1e-8);
+
+			listE.reset();
+			listF.reset();
+			expected.findNearest(target, 0.5, 8, listE);
+			alg.findNearest(target, 0.5, 8, listF);
+
+			assertEquals(listE.size, listF.size);
+			for (int i = 0; i < listF.size; i++) {
+				NnData<Integer> f = listF.get(i);
+				assertTrue(f.distance <= 0.5);
+				assertTrue(points.get(f.data) == f.point);
+				// see if it's in the expected list
+				boolean matched = false;
+				for (int j = 0; j < listE.size; j++) {
+					if (listE.get(j).data.equals(f.data))
+						matched = true;
+				}
+				assertTrue(matched);
+			}
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void init_not3D() {
+		new WrapOctreeNearestNeighbor<Integer>().init(2);
+	}
+
+	/**
+	 * Points on the upper extent of the cloud should be found
+	 */
+	@Test
+	public void pointsOnBounds() {
+		List<double[]> points = new ArrayList<double[]>();
+		points.add(new double[]{0, 0, 0});
+		points.add(new double[]{1, 1, 1});
+
+		WrapOctreeNearestNeighbor<Object> alg = new WrapOctreeNearestNeighbor<Object>(0);
+		alg.init(3);
+		alg.setPoints(points, null);
+
+		NnData<Object> result = new NnData<Object>();
+		assertTrue(alg.findNearest(new double[]{1, 1, 1}, 0.1, result));
+		assertTrue(result.point == points.get(1));
+		assertEquals(0, result.distance, 1e-8);
+	}
+}
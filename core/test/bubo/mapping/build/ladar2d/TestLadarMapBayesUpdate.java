@@ -0,0 +1,135 @@
+/*
+ * Copyright (c) 2013-2014, Peter Abeles. All Rights Reserved.
+ *
+ * This file is part of Project BUBO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package bubo.mapping.build.ladar2d;
+
+import bubo.desc.sensors.lrf2d.Lrf2dParam;
+import bubo.log.streams.PositionRangeArrayData;
+import bubo.maps.d2.grid.GridMapSpacialInfo;
+import bubo.maps.d2.grid.impl.ArrayGrid2D_F32;
+import georegression.struct.se.Se2_F64;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Peter Abeles
+ */
+public class TestLadarMapBayesUpdate {
+
+	Random rand = new Random(234);
+
+	Lrf2dParam param = new Lrf2dParam("test", -Math.PI / 2, Math.PI, 90, 10, 0.01, 0.01);
+	GridMapSpacialInfo spacial = new GridMapSpacialInfo(0.1, -10, -10);
+
+	List<Se2_F64> locations = new ArrayList<Se2_F64>();
+	List<double[]> scans = new ArrayList<double[]>();
+
+	public TestLadarMapBayesUpdate() {
+		for (int i = 0; i < 15; i++) {
+			locations.add(new Se2_F64(rand.nextGaussian() * 2, rand.nextGaussian() * 2, rand.nextDouble() * 6));
+			double r[] = new double[param.getNumberOfScans()];
+			for (int j = 0; j < r.length; j++) {
+				r[j] = 0.5 + rand.nextDouble() * 9;
+			}
+			// an invalid range
+			r[3] = 20;
+			scans.add(r);
+		}
+	}
+
+	/**
+	 * A sequential batch should produce the same results as processing each scan
+	 */
+	@Test
+	public void processBatch_sameAsProcess() {
+		ArrayGrid2D_F32 expected = createMap();
+		LadarMapBayesUpdate alg = createAlg(expected);
+		for (int i = 0; i < scans.size(); i++) {
+			PositionRangeArrayData data = new PositionRangeArrayData();
+			data.setScanToWorld(locations.get(i));
+			data.setRange(scans.get(i));
+			alg.process(data);
+		}
+
+		ArrayGrid2D_F32 found = createMap();
+		alg = createAlg(found);
+		alg.processBatch(locations, scans);
+
+		checkIdentical(expected, found);
+	}
+
+	/**
+	 * The concurrent update should produce identical results to the sequential update
+	 */
+	@Test
+	public void processBatch_concurrent() {
+		ArrayGrid2D_F32 expected = createMap();
+		createAlg(expected).processBatch(locations, scans);
+
+		ExecutorService pool = Executors.newFixedThreadPool(3);
+		try {
+			// stripe height which doesn't divide the map evenly
+			ArrayGrid2D_F32 found = createMap();
+			LadarMapBayesUpdate alg = createAlg(found);
+			alg.setThreadPool(pool, 7);
+			alg.processBatch(locations, scans);
+			checkIdentical(expected, found);
+
+			// the map should be processed the same way a second time
+			createAlg(expected).processBatch(locations, scans);
+			alg.processBatch(locations, scans);
+			checkIdentical(expected, found);
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	private void checkIdentical(ArrayGrid2D_F32 expected, ArrayGrid2D_F32 found) {
+		int total = 0;
+		for (int y = 0; y < expected.getHeight(); y++) {
+			for (int x = 0; x < expected.getWidth(); x++) {
+				assertTrue(expected.get(x, y) == found.get(x, y));
+				if (expected.isKnown(x, y))
+					total++;
+			}
+		}
+		// sanity check
+		assertTrue(total > 1000);
+	}
+
+	private ArrayGrid2D_F32 createMap() {
+		ArrayGrid2D_F32 map = new ArrayGrid2D_F32(200, 200);
+		map.clear();
+		return map;
+	}
+
+	private LadarMapBayesUpdate createAlg(ArrayGrid2D_F32 map) {
+		LadarMapBayesUpdate alg = new LadarMapBayesUpdate();
+		alg.setScanMatching(null);
+		alg.init(param, map, spacial);
+		return alg;
+	}
+}
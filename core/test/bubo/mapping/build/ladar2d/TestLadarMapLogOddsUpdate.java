@@ -0,0 +1,110 @@
+/*
+ * Copyright (c) 2013-2014, Peter Abeles. All Rights Reserved.
+ *
+ * This file is part of Project BUBO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package bubo.mapping.build.ladar2d;
+
+import bubo.desc.sensors.lrf2d.Lrf2dParam;
+import bubo.maps.d2.grid.GridMapSpacialInfo;
+import bubo.maps.d2.grid.impl.LogOddsGrid2D_I16;
+import georegression.struct.se.Se2_F64;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Peter Abeles
+ */
+public class TestLadarMapLogOddsUpdate {
+
+	/**
+	 * Both beams are along the x-axis.  Cells in front of the hit should be free, at the hit occupied,
+	 * and beyond unknown.
+	 */
+	@Test
+	public void alongAxis() {
+		LogOddsGrid2D_I16 map = new LogOddsGrid2D_I16(100, 20);
+		map.clear();
+
+		LadarMapLogOddsUpdate alg = createAlg(map);
+
+		alg.process(new Se2_F64(0.05, 1.05, 0), new double[]{5.0, 5.0});
+
+		// free space in front
+		for (int x = 0; x < 40; x++) {
+			assertTrue(map.get(x, 10) < 0.5f);
+		}
+		// the obstacle
+		assertTrue(map.get(50, 10) > 0.5f);
+		// unknown behind it
+		for (int x = 60; x < 100; x++) {
+			assertFalse(map.isKnown(x, 10));
+		}
+		// nothing off of the beam was modified
+		for (int x = 0; x < 100; x++) {
+			assertFalse(map.isKnown(x, 9));
+			assertFalse(map.isKnown(x, 11));
+		}
+	}
+
+	/**
+	 * Repeated observations should saturate at the map's limits
+	 */
+	@Test
+	public void saturates() {
+		LogOddsGrid2D_I16 map = new LogOddsGrid2D_I16(100, 20);
+		map.clear();
+
+		LadarMapLogOddsUpdate alg = createAlg(map);
+
+		for (int i = 0; i < 1000; i++) {
+			alg.process(new Se2_F64(0.05, 1.05, 0), new double[]{5.0, 5.0});
+		}
+
+		assertEquals(map.getMinValue(), map.getValue(10, 10));
+		assertEquals(map.getMaxValue(), map.getValue(50, 10));
+	}
+
+	/**
+	 * The increments should match the sensor model passed through the same weighting as the bayes update
+	 */
+	@Test
+	public void increments() {
+		LogOddsGrid2D_I16 map = new LogOddsGrid2D_I16(100, 20);
+		LadarMapLogOddsUpdate alg = createAlg(map);
+
+		LineRangeGaussian model = new LineRangeGaussian(0.2);
+		model.setRangeMeasurement(5.0);
+		alg.range = 5.0;
+
+		for (int i = 0; i < 100; i++) {
+			double dist = i * 0.055;
+			float p = (model.computeProbability(dist) - 0.5f) * 0.05f + 0.5f;
+			double expected = Math.log(p / (1.0 - p)) / map.getResolution();
+
+			assertEquals(expected, alg.lookupIncrement(dist), 1.0);
+		}
+	}
+
+	private LadarMapLogOddsUpdate createAlg(LogOddsGrid2D_I16 map) {
+		Lrf2dParam param = new Lrf2dParam("test", 0, 0, 2, 20, 0.01, 0.01);
+		LadarMapLogOddsUpdate alg = new LadarMapLogOddsUpdate();
+		alg.init(param, map, new GridMapSpacialInfo(0.1, 0, 0));
+		return alg;
+	}
+}
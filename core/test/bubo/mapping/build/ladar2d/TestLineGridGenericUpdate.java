@@ -24,8 +24,10 @@ import org.junit.Test;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Random;
 
 import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
 
 /**
  * @author Peter Abeles
@@ -97,6 +99,137 @@ public class TestLineGridGenericUpdate {
 		}
 	}
 
+	@Test
+	public void traverse_axis() {
+		DebugUpdate update = new DebugUpdate();
+
+		update.traverse(1.5, 2.5, 6.5, 2.5, 5, 0);
+
+		assertEquals(6, update.points.size());
+		for (int i = 0; i < 6; i++) {
+			assertEquals(1 + i, update.points.get(i).x);
+			assertEquals(2, update.points.get(i).y);
+		}
+		assertEquals(0.25, update.dist.get(0), 1e-8);
+		assertEquals(1.0, update.dist.get(1), 1e-8);
+		assertEquals(4.75, update.dist.get(5), 1e-8);
+
+		// negative direction along y-axis
+		update = new DebugUpdate();
+		update.traverse(3.5, 6.5, 3.5, 1.5, 5, 0);
+		assertEquals(6, update.points.size());
+		for (int i = 0; i < 6; i++) {
+			assertEquals(3, update.points.get(i).x);
+			assertEquals(6 - i, update.points.get(i).y);
+		}
+	}
+
+	/**
+	 * Parts of the line outside the clipping region should be skipped
+	 */
+	@Test
+	public void traverse_clipped() {
+		DebugUpdate update = new DebugUpdate();
+		update.setClip(0, 0, 10, 8);
+
+		update.traverse(-10.5, 3.5, 20.5, 3.5, 31, 0);
+
+		assertEquals(10, update.points.size());
+		for (int i = 0; i < 10; i++) {
+			assertEquals(i, update.points.get(i).x);
+			assertEquals(3, update.points.get(i).y);
+		}
+		assertEquals(11.0, update.dist.get(0), 1e-8);
+
+		// entirely outside
+		update = new DebugUpdate();
+		update.setClip(0, 0, 10, 8);
+		update.traverse(-10.5, 3.5, -2, 20, 10, 0);
+		assertEquals(0, update.points.size());
+	}
+
+	/**
+	 * Compares against cells found by densely sampling along random lines
+	 */
+	@Test
+	public void traverse_random() {
+		Random rand = new Random(234);
+
+		for (int trial = 0; trial < 200; trial++) {
+			double x0 = rand.nextDouble() * 30 - 10;
+			double y0 = rand.nextDouble() * 30 - 10;
+			double x1 = rand.nextDouble() * 30 - 10;
+			double y1 = rand.nextDouble() * 30 - 10;
+			double length = Math.sqrt((x1 - x0) * (x1 - x0) + (y1 - y0) * (y1 - y0));
+
+			DebugUpdate update = new DebugUpdate();
+			update.setClip(0, 0, 10, 12);
+			update.traverse(x0, y0, x1, y1, length, 0);
+
+			// neighboring cells should be connected and the distance should increase
+			for (int i = 1; i < update.points.size(); i++) {
+				Point2D_I32 a = update.points.get(i - 1);
+				Point2D_I32 b = update.points.get(i);
+				assertEquals(1, Math.abs(a.x - b.x) + Math.abs(a.y - b.y));
+				assertTrue(update.dist.get(i) >= update.dist.get(i - 1));
+			}
+
+			// every cell the line passes through should be visited
+			for (int i = 0; i <= 5000; i++) {
+				double t = i / 5000.0;
+				int x = (int) Math.floor(x0 + t * (x1 - x0));
+				int y = (int) Math.floor(y0 + t * (y1 - y0));
+				if (x < 0 || y < 0 || x >= 10 || y >= 12)
+					continue;
+				assertTrue(update.points.contains(new Point2D_I32(x, y)));
+			}
+		}
+	}
+
+	/**
+	 * The same cells should be visited when free space is passed in runs
+	 */
+	@Test
+	public void traverse_freeSpaceRuns() {
+		Random rand = new Random(234);
+
+		for (int trial = 0; trial < 50; trial++) {
+			double x0 = rand.nextDouble() * 10;
+			double y0 = rand.nextDouble() * 10;
+			double x1 = rand.nextDouble() * 10;
+			double y1 = rand.nextDouble() * 10;
+			double length = Math.sqrt((x1 - x0) * (x1 - x0) + (y1 - y0) * (y1 - y0));
+			double free = length * 0.7;
+
+			DebugUpdate expected = new DebugUpdate();
+			expected.traverse(x0, y0, x1, y1, length, free);
+
+			final List<Point2D_I32> runs = new ArrayList<Point2D_I32>();
+			DebugUpdate found = new DebugUpdate();
+			found.setFreeSpaceRuns(new LineGridGenericUpdate.FreeSpaceRuns() {
+				@Override
+				public void freeRun(int x, int y, int dx, int dy, int length) {
+					assertEquals(1, Math.abs(dx) + Math.abs(dy));
+					assertTrue(length > 0);
+					for (int i = 0; i < length; i++) {
+						runs.add(new Point2D_I32(x + i * dx, y + i * dy));
+					}
+				}
+			});
+			found.traverse(x0, y0, x1, y1, length, free);
+
+			// runs come first, then cells which are passed in individually
+			assertEquals(expected.points.size(), runs.size() + found.points.size());
+			for (int i = 0; i < runs.size(); i++) {
+				assertEquals(expected.points.get(i), runs.get(i));
+				assertTrue(expected.dist.get(i) <= free);
+			}
+			for (int i = 0; i < found.points.size(); i++) {
+				assertEquals(expected.points.get(runs.size() + i), found.points.get(i));
+			}
+		}
+	}
+
 	private static class DebugUpdate extends LineGridGenericUpdate {
 
 		List<Point2D_I32> points = new ArrayList<Point2D_I32>();
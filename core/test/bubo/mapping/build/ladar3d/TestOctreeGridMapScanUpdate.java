@@ -0,0 +1,229 @@
+/*
+ * Copyright (c) 2013-2014, Peter Abeles. All Rights Reserved.
+ *
+ * This file is part of Project BUBO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package bubo.mapping.build.ladar3d;
+
+import bubo.maps.d3.grid.GridMapSpacialInfo3D;
+import bubo.maps.d3.grid.impl.OctreeGridMap_F64;
+import georegression.geometry.ConvertRotation3D_F64;
+import georegression.struct.EulerType;
+import georegression.struct.point.Point3D_F64;
+import georegression.struct.se.Se3_F64;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Peter Abeles
+ */
+public class TestOctreeGridMapScanUpdate {
+
+	GridMapSpacialInfo3D spacial = new GridMapSpacialInfo3D(0.5, new Se3_F64());
+
+	/**
+	 * Single ray along the x-axis
+	 */
+	@Test
+	public void singleRay() {
+		OctreeGridMap_F64 map = new OctreeGridMap_F64(20, 10, 10);
+		OctreeGridMapScanUpdate alg = new OctreeGridMapScanUpdate();
+		alg.setMap(map, spacial);
+
+		alg.process(location(0.25, 2.25, 3.25), list(new Point3D_F64(5.2, 0, 0)));
+
+		for (int x = 0; x < 10; x++) {
+			assertEquals(0.4, map.get(x, 4, 6), 1e-8);
+		}
+		assertEquals(0.7, map.get(10, 4, 6), 1e-8);
+		for (int x = 11; x < 20; x++) {
+			assertEquals(0.5, map.get(x, 4, 6), 1e-8);
+		}
+		assertEquals(0.5, map.get(3, 5, 6), 1e-8);
+		assertEquals(0.5, map.get(3, 4, 5), 1e-8);
+	}
+
+	/**
+	 * Each cell should only be updated once per scan and occupied should have priority over free
+	 */
+	@Test
+	public void duplicates() {
+		OctreeGridMap_F64 map = new OctreeGridMap_F64(20, 10, 10);
+		OctreeGridMapScanUpdate alg = new OctreeGridMapScanUpdate();
+		alg.setMap(map, spacial);
+
+		List<Point3D_F64> points = new ArrayList<Point3D_F64>();
+		points.add(new Point3D_F64(5.2, 0, 0));
+		points.add(new Point3D_F64(5.2, 0, 0));
+		points.add(new Point3D_F64(3.1, 0, 0));
+		points.add(new Point3D_F64(5.1, 0, 0));
+
+		alg.process(location(0.25, 2.25, 3.25), points);
+
+		assertEquals(10, alg.getNumberOfFree());
+		assertEquals(2, alg.getNumberOfOccupied());
+
+		for (int x = 0; x < 10; x++) {
+			if (x == 6)
+				assertEquals(0.7, map.get(x, 4, 6), 1e-8);
+			else
+				assertEquals(0.4, map.get(x, 4, 6), 1e-8);
+		}
+		assertEquals(0.7, map.get(10, 4, 6), 1e-8);
+	}
+
+	/**
+	 * Repeated observations should be clamped
+	 */
+	@Test
+	public void clamped() {
+		OctreeGridMap_F64 map = new OctreeGridMap_F64(20, 10, 10);
+		OctreeGridMapScanUpdate alg = new OctreeGridMapScanUpdate();
+		alg.setMap(map, spacial);
+
+		for (int i = 0; i < 50; i++) {
+			alg.process(location(0.25, 2.25, 3.25), list(new Point3D_F64(5.2, 0, 0)));
+		}
+
+		assertEquals(0.12, map.get(3, 4, 6), 1e-8);
+		assertEquals(0.97, map.get(10, 4, 6), 1e-8);
+	}
+
+	/**
+	 * Points are in the sensor frame and should be transformed into the map
+	 */
+	@Test
+	public void sensorPose() {
+		OctreeGridMap_F64 map = new OctreeGridMap_F64(20, 20, 20);
+		OctreeGridMapScanUpdate alg = new OctreeGridMapScanUpdate();
+		alg.setMap(map, spacial);
+
+		// rotate the sensor so that its x-axis is along the world's y-axis
+		Se3_F64 sensorToWorld = location(2.25, 1.25, 3.25);
+		ConvertRotation3D_F64.eulerToMatrix(EulerType.XYZ, 0, 0, Math.PI / 2, sensorToWorld.R);
+
+		alg.process(sensorToWorld, list(new Point3D_F64(4.0, 0, 0)));
+
+		for (int y = 2; y < 10; y++) {
+			assertEquals(0.4, map.get(4, y, 6), 1e-8);
+		}
+		assertEquals(0.7, map.get(4, 10, 6), 1e-8);
+	}
+
+	/**
+	 * Rays which are outside of the map should be clipped
+	 */
+	@Test
+	public void clipped() {
+		OctreeGridMap_F64 map = new OctreeGridMap_F64(10, 10, 10);
+		OctreeGridMapScanUpdate alg = new OctreeGridMapScanUpdate();
+		alg.setMap(map, spacial);
+
+		// starts and ends outside the map
+		alg.process(location(-3, 2.25, 3.25), list(new Point3D_F64(12, 0, 0)));
+
+		assertEquals(10, alg.getNumberOfFree());
+		assertEquals(0, alg.getNumberOfOccupied());
+		for (int x = 0; x < 10; x++) {
+			assertEquals(0.4, map.get(x, 4, 6), 1e-8);
+		}
+
+		// entirely outside
+		alg.process(location(-3, 2.25, 3.25), list(new Point3D_F64(0, -5, 0)));
+		assertEquals(0, alg.getNumberOfFree());
+	}
+
+	@Test
+	public void maxRange() {
+		OctreeGridMap_F64 map = new OctreeGridMap_F64(20, 10, 10);
+		OctreeGridMapScanUpdate alg = new OctreeGridMapScanUpdate();
+		alg.setMap(map, spacial);
+		alg.setMaxRange(2.1);
+
+		alg.process(location(0.25, 2.25, 3.25), list(new Point3D_F64(5.2, 0, 0)));
+
+		assertEquals(0, alg.getNumberOfOccupied());
+		for (int x = 0; x < 5; x++) {
+			assertEquals(0.4, map.get(x, 4, 6), 1e-8);
+		}
+		assertEquals(0.5, map.get(5, 4, 6), 1e-8);
+		assertEquals(0.5, map.get(10, 4, 6), 1e-8);
+	}
+
+	/**
+	 * Diagonal rays should produce a connected path of free cells ending in an occupied cell
+	 */
+	@Test
+	public void diagonal() {
+		OctreeGridMap_F64 map = new OctreeGridMap_F64(20, 20, 20);
+		OctreeGridMapScanUpdate alg = new OctreeGridMapScanUpdate();
+		alg.setMap(map, spacial);
+
+		alg.process(location(0.3, 0.4, 0.6), list(new Point3D_F64(6.1, 5.2, 7.3)));
+
+		// the number of cells traversed is the sum of the number of steps along each axis
+		int steps = (12 - 0) + (11 - 0) + (15 - 1);
+		assertEquals(steps, alg.getNumberOfFree());
+		assertEquals(1, alg.getNumberOfOccupied());
+		assertEquals(0.7, map.get(12, 11, 15), 1e-8);
+		assertEquals(0.4, map.get(0, 0, 1), 1e-8);
+	}
+
+	/**
+	 * The map should only be pruned after a scan if requested
+	 */
+	@Test
+	public void prune() {
+		for (boolean prune : new boolean[]{false, true}) {
+			OctreeGridMap_F64 map = new OctreeGridMap_F64(20, 10, 10);
+			// a block of cells with the same value which can be collapsed
+			for (int z = 8; z < 10; z++)
+				for (int y = 8; y < 10; y++)
+					for (int x = 16; x < 18; x++)
+						map.set(x, y, z, 0.9);
+
+			OctreeGridMapScanUpdate alg = new OctreeGridMapScanUpdate();
+			assertFalse(alg.isPrune());
+			alg.setPrune(prune);
+			alg.setMap(map, spacial);
+
+			alg.process(location(0.25, 2.25, 3.25), list(new Point3D_F64(5.2, 0, 0)));
+
+			if (prune)
+				assertEquals(0, map.prune());
+			else
+				assertTrue(map.prune() > 0);
+			assertEquals(0.9, map.get(17, 9, 9), 1e-8);
+		}
+	}
+
+	private static Se3_F64 location(double x, double y, double z) {
+		Se3_F64 ret = new Se3_F64();
+		ret.T.set(x, y, z);
+		return ret;
+	}
+
+	private static List<Point3D_F64> list(Point3D_F64 p) {
+		List<Point3D_F64> ret = new ArrayList<Point3D_F64>();
+		ret.add(p);
+		return ret;
+	}
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright (c) 2013-2014, Peter Abeles. All Rights Reserved.
+ *
+ * This file is part of Project BUBO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package bubo.maps.d2.grid.impl;
+
+import bubo.maps.d2.grid.OccupancyGrid2D;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Peter Abeles
+ */
+public class TestLogOddsGrid2D_I16 extends GenericMapTests {
+
+	@Test
+	public void clear() {
+		LogOddsGrid2D_I16 map = new LogOddsGrid2D_I16(5, 7);
+
+		for (int y = 0; y < map.getHeight(); y++) {
+			for (int x = 0; x < map.getWidth(); x++) {
+				map.set(x, y, rand.nextFloat());
+			}
+		}
+
+		map.clear();
+
+		for (int y = 0; y < map.getHeight(); y++) {
+			for (int x = 0; x < map.getWidth(); x++) {
+				assertEquals(0.5f, map.get(x, y), 1e-8);
+				assertFalse(map.isKnown(x, y));
+			}
+		}
+	}
+
+	/**
+	 * Values are quantized so an exact match isn't possible
+	 */
+	@Test
+	public void set_get() {
+		LogOddsGrid2D_I16 map = new LogOddsGrid2D_I16(5, 7);
+
+		for (int i = 0; i < 20; i++) {
+			float p = 0.1f + 0.8f * rand.nextFloat();
+			map.set(2, 3, p);
+			assertEquals(p, map.get(2, 3), 0.005);
+		}
+
+		map.set(2, 3, 0.5f);
+		assertEquals(0, map.getValue(2, 3));
+		assertEquals(0.5f, map.get(2, 3), 1e-8);
+	}
+
+	@Test
+	public void set_clamped() {
+		LogOddsGrid2D_I16 map = new LogOddsGrid2D_I16(5, 7, 0.01, -100, 200);
+
+		map.set(1, 2, 0f);
+		assertEquals(-100, map.getValue(1, 2));
+		map.set(1, 2, 1f);
+		assertEquals(200, map.getValue(1, 2));
+		assertEquals(1.0 / (1.0 + Math.exp(-2.0)), map.get(1, 2), 1e-6);
+	}
+
+	@Test
+	public void add() {
+		LogOddsGrid2D_I16 map = new LogOddsGrid2D_I16(5, 7, 0.01, -100, 200);
+
+		map.add(1, 2, 30);
+		map.add(1, 2, -5);
+		assertEquals(25, map.getValue(1, 2));
+		assertEquals(1.0 / (1.0 + Math.exp(-0.25)), map.get(1, 2), 1e-6);
+
+		for (int i = 0; i < 20; i++) {
+			map.add(1, 2, 30);
+		}
+		assertEquals(200, map.getValue(1, 2));
+
+		for (int i = 0; i < 40; i++) {
+			map.add(1, 2, -30);
+		}
+		assertEquals(-100, map.getValue(1, 2));
+	}
+
+	@Test
+	public void probabilityToValue() {
+		LogOddsGrid2D_I16 map = new LogOddsGrid2D_I16(5, 7);
+
+		for (int value = map.getMinValue(); value <= map.getMaxValue(); value++) {
+			assertEquals(value, map.probabilityToValue(map.valueToProbability(value)));
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void constructor_badRange() {
+		new LogOddsGrid2D_I16(5, 7, 0.01, -100, 40000);
+	}
+
+	@Test
+	public void isKnown() {
+		super.isKnown_F32();
+	}
+
+	@Test
+	public void isValid() {
+		super.isValid_F32();
+	}
+
+	@Test
+	public void inBounds() {
+		super.isInBounds();
+	}
+
+	@Test
+	public void widthHeight() {
+		super.getWidth_getHeight();
+	}
+
+	@Override
+	public <T extends OccupancyGrid2D> T createMap(int width, int height) {
+		return (T) new LogOddsGrid2D_I16(width, height);
+	}
+}
@@ -0,0 +1,218 @@
+/*
+ * Copyright (c) 2013-2014, Peter Abeles. All Rights Reserved.
+ *
+ * This file is part of Project BUBO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package bubo.maps.d2.grid.impl;
+
+import bubo.maps.d2.grid.OccupancyGrid2D;
+import org.junit.Test;
+
+import java.util.Iterator;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Peter Abeles
+ */
+public class TestTiledGrid2D_F32 extends GenericMapTests {
+
+	@Test
+	public void clear() {
+		TiledGrid2D_F32 map = new TiledGrid2D_F32(5, 7, 1);
+
+		for (int y = 0; y < map.getHeight(); y++) {
+			for (int x = 0; x < map.getWidth(); x++) {
+				map.set(x, y, rand.nextFloat());
+			}
+		}
+
+		map.clear();
+
+		for (int y = 0; y < map.getHeight(); y++) {
+			for (int x = 0; x < map.getWidth(); x++) {
+				assertEquals(0.5f, map.get(x, y), 1e-4);
+			}
+		}
+	}
+
+	@Test
+	public void set_get() {
+		TiledGrid2D_F32 map = new TiledGrid2D_F32(5, 7);
+
+		assertTrue(5.6f != map.get(2, 3));
+		map.set(2, 3, 5.6f);
+		assertTrue(5.6f == map.get(2, 3));
+	}
+
+	@Test
+	public void isKnown() {
+		super.isKnown_F32();
+	}
+
+	@Test
+	public void isValid() {
+		super.isValid_F32();
+	}
+
+	@Test
+	public void inBounds() {
+		super.isInBounds();
+	}
+
+	@Test
+	public void widthHeight() {
+		super.getWidth_getHeight();
+	}
+
+	/**
+	 * Tiles should only be declared when a known value is written
+	 */
+	@Test
+	public void lazyAllocation() {
+		TiledGrid2D_F32 map = new TiledGrid2D_F32(100, 80, 4);
+
+		assertEquals(0, map.getNumberOfTiles());
+		assertEquals(0.5f, map.get(50, 40), 1e-8);
+		assertFalse(map.isKnown(50, 40));
+
+		map.set(50, 40, 0.5f);
+		assertEquals(0, map.getNumberOfTiles());
+
+		map.set(50, 40, 0.2f);
+		map.set(49, 41, 0.3f);
+		assertEquals(1, map.getNumberOfTiles());
+		map.set(99, 79, 0.9f);
+		assertEquals(2, map.getNumberOfTiles());
+
+		assertEquals(0.2f, map.get(50, 40), 1e-8);
+		assertEquals(0.3f, map.get(49, 41), 1e-8);
+		assertEquals(0.9f, map.get(99, 79), 1e-8);
+		assertEquals(0.5f, map.get(51, 40), 1e-8);
+
+		map.clear();
+		assertEquals(0, map.getNumberOfTiles());
+		assertEquals(0.5f, map.get(50, 40), 1e-8);
+	}
+
+	/**
+	 * Compare against a dense map after random writes
+	 */
+	@Test
+	public void compareToDense() {
+		TiledGrid2D_F32 map = new TiledGrid2D_F32(70, 45, 3);
+		ArrayGrid2D_F32 dense = new ArrayGrid2D_F32(70, 45);
+		dense.clear();
+
+		for (int i = 0; i < 500; i++) {
+			int x = rand.nextInt(70);
+			int y = rand.nextInt(45);
+			float value = rand.nextFloat();
+			map.set(x, y, value);
+			dense.set(x, y, value);
+		}
+
+		for (int y = 0; y < 45; y++) {
+			for (int x = 0; x < 70; x++) {
+				assertTrue(dense.get(x, y) == map.get(x, y));
+				assertEquals(dense.isKnown(x, y), map.isKnown(x, y));
+			}
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void set_outOfBounds() {
+		TiledGrid2D_F32 map = new TiledGrid2D_F32(70, 45, 3);
+		map.set(70, 2, 0.2f);
+	}
+
+	@Test
+	public void tileIterator() {
+		TiledGrid2D_F32 map = new TiledGrid2D_F32(64, 64, 4);
+
+		map.set(1, 2, 0.1f);
+		map.set(40, 20, 0.7f);
+
+		Iterator<TiledGrid2D_F32.Tile> iter = map.tileIterator();
+
+		assertTrue(iter.hasNext());
+		TiledGrid2D_F32.Tile tile = iter.next();
+		assertEquals(0, tile.getX0());
+		assertEquals(0, tile.getY0());
+		assertEquals(16, tile.getWidth());
+		assertEquals(0.1f, tile.get(1, 2), 1e-8);
+
+		assertTrue(iter.hasNext());
+		tile = iter.next();
+		assertEquals(32, tile.getX0());
+		assertEquals(16, tile.getY0());
+		assertEquals(0.7f, tile.get(8, 4), 1e-8);
+
+		assertFalse(iter.hasNext());
+	}
+
+	@Test
+	public void growToInclude_positive() {
+		TiledGrid2D_F32 map = new TiledGrid2D_F32(20, 10, 3);
+		map.set(5, 6, 0.2f);
+		map.set(19, 9, 0.8f);
+
+		map.growToInclude(30, 40);
+
+		assertEquals(31, map.getWidth());
+		assertEquals(41, map.getHeight());
+		assertEquals(0, map.getShiftX());
+		assertEquals(0, map.getShiftY());
+
+		assertEquals(0.2f, map.get(5, 6), 1e-8);
+		assertEquals(0.8f, map.get(19, 9), 1e-8);
+		assertEquals(2, map.getNumberOfTiles());
+
+		map.set(30, 40, 0.1f);
+		assertEquals(0.1f, map.get(30, 40), 1e-8);
+	}
+
+	@Test
+	public void growToInclude_negative() {
+		TiledGrid2D_F32 map = new TiledGrid2D_F32(20, 10, 3);
+		map.set(5, 6, 0.2f);
+
+		map.growToInclude(-3, -9);
+
+		assertEquals(8, map.getShiftX());
+		assertEquals(16, map.getShiftY());
+		assertEquals(28, map.getWidth());
+		assertEquals(26, map.getHeight());
+
+		assertEquals(0.2f, map.get(5 + 8, 6 + 16), 1e-8);
+		assertEquals(0.5f, map.get(5, 6), 1e-8);
+		assertEquals(1, map.getNumberOfTiles());
+
+		// the requested cell is now inside the map
+		assertTrue(map.isInBounds(-3 + 8, -9 + 16));
+
+		// nothing should change if it's already inside
+		map.growToInclude(2, 2);
+		assertEquals(28, map.getWidth());
+		assertEquals(8, map.getShiftX());
+	}
+
+	@Override
+	public <T extends OccupancyGrid2D> T createMap(int width, int height) {
+		return (T) new TiledGrid2D_F32(width, height);
+	}
+}
@@ -25,6 +25,8 @@ import org.ddogleg.struct.FastQueue;
 import org.junit.Test;
 
 import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
@@ -60,6 +62,133 @@ public class TestBlurOctreeGridMap_F64 {
 		}
 	}
 
+	/**
+	 * Blurring a pruned map should produce the same results as the original map
+	 */
+	@Test
+	public void apply_pruned() {
+		Kernel3D_F64 kernel = randomKernel(1);
+
+		BlurOctreeGridMap_F64 alg = new BlurOctreeGridMap_F64();
+		OctreeGridMap_F64 input = new OctreeGridMap_F64(8,8,8);
+		for (int z = 0; z < 4; z++) {
+			for (int y = 0; y < 4; y++) {
+				for (int x = 0; x < 4; x++) {
+					input.set(x,y,z,0.7);
+				}
+			}
+		}
+		input.set(6,6,6,0.2);
+
+		OctreeGridMap_F64 expected = new OctreeGridMap_F64(8,8,8);
+		alg.apply(input,kernel,expected);
+
+		assertTrue(input.prune() > 0);
+		OctreeGridMap_F64 found = new OctreeGridMap_F64(8,8,8);
+		alg.apply(input,kernel,found);
+
+		for (int i = 0; i < 8; i++) {
+			for (int j = 0; j < 8; j++) {
+				for (int k = 0; k < 8; k++) {
+					assertEquals(expected.get(i,j,k),found.get(i,j,k),1e-8);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Compares the separable implementation against pushing values to all the neighbors
+	 */
+	@Test
+	public void applySeparable() {
+		Kernel3D_F64 kernel = Kernel3D_F64.gaussian(2);
+		OctreeGridMap_F64 input = randomMap(new Random(234), 20, 35, 40);
+
+		BlurOctreeGridMap_F64 alg = new BlurOctreeGridMap_F64();
+		OctreeGridMap_F64 expected = new OctreeGridMap_F64(20,35,40);
+		alg.applyDirect(input, kernel, expected);
+
+		OctreeGridMap_F64 found = new OctreeGridMap_F64(20,35,40);
+		alg.apply(input, kernel, found);
+
+		checkIdentical(expected, found, 1e-8);
+
+		// should have created the same cells
+		assertEquals(expected.info.size, found.info.size);
+	}
+
+	/**
+	 * The input and blurred maps have different default values.  The blurred map's default value should be used
+	 * for cells which aren't known, just like when the kernel is applied directly.
+	 */
+	@Test
+	public void applySeparable_differentDefault() {
+		Kernel3D_F64 kernel = Kernel3D_F64.gaussian(2);
+		OctreeGridMap_F64 input = randomMap(new Random(234), 20, 35, 40);
+		input.setDefaultValue(0.5);
+
+		BlurOctreeGridMap_F64 alg = new BlurOctreeGridMap_F64();
+		OctreeGridMap_F64 expected = new OctreeGridMap_F64(20,35,40);
+		expected.setDefaultValue(0.2);
+		alg.applyDirect(input, kernel, expected);
+
+		OctreeGridMap_F64 found = new OctreeGridMap_F64(20,35,40);
+		found.setDefaultValue(0.2);
+		alg.apply(input, kernel, found);
+
+		checkIdentical(expected, found, 1e-8);
+	}
+
+	/**
+	 * Using a thread pool should produce identical results
+	 */
+	@Test
+	public void applySeparable_threads() {
+		Kernel3D_F64 kernel = Kernel3D_F64.gaussian(2);
+		OctreeGridMap_F64 input = randomMap(new Random(234), 20, 35, 40);
+
+		BlurOctreeGridMap_F64 alg = new BlurOctreeGridMap_F64();
+		OctreeGridMap_F64 expected = new OctreeGridMap_F64(20,35,40);
+		alg.apply(input, kernel, expected);
+
+		ExecutorService pool = Executors.newFixedThreadPool(3);
+		try {
+			alg.setThreadPool(pool);
+			OctreeGridMap_F64 found = new OctreeGridMap_F64(20,35,40);
+			alg.apply(input, kernel, found);
+			checkIdentical(expected, found, 0);
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	private static OctreeGridMap_F64 randomMap( Random rand , int lengthX , int lengthY , int lengthZ ) {
+		OctreeGridMap_F64 map = new OctreeGridMap_F64(lengthX,lengthY,lengthZ);
+		for (int i = 0; i < 200; i++) {
+			map.set(rand.nextInt(lengthX),rand.nextInt(lengthY),rand.nextInt(lengthZ),rand.nextDouble());
+		}
+		// a block which will be collapsed into a single leaf
+		for (int z = 8; z < 16; z++) {
+			for (int y = 8; y < 16; y++) {
+				for (int x = 8; x < 16; x++) {
+					map.set(x,y,z,0.9);
+				}
+			}
+		}
+		map.prune();
+		return map;
+	}
+
+	private static void checkIdentical( OctreeGridMap_F64 expected , OctreeGridMap_F64 found , double tol ) {
+		for (int i = 0; i < expected.getSizeX(); i++) {
+			for (int j = 0; j < expected.getSizeY(); j++) {
+				for (int k = 0; k < expected.getSizeZ(); k++) {
+					assertEquals(expected.get(i,j,k),found.get(i,j,k),tol);
+				}
+			}
+		}
+	}
+
 	@Test
 	public void createBlurredCells() {
 		Kernel3D_F64 kernel = randomKernel(1);
@@ -104,7 +233,7 @@ public class TestBlurOctreeGridMap_F64 {
 		alg.neighbors.add( blurred.getConstruct().addLeaf(new Point3D_I32( 3, 3, 3)));
 		alg.neighbors.add( blurred.getConstruct().addLeaf(new Point3D_I32( 3, 4, 3)));
 
-		alg.applyToNeighbors(kernel,o);
+		alg.applyToNeighbors(kernel,o.getLocation(),0.8);
 
 		assertEquals(3,alg.convData.size);
 
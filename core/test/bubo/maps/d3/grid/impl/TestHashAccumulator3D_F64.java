@@ -0,0 +1,115 @@
+/*
+ * Copyright (c) 2013-2014, Peter Abeles. All Rights Reserved.
+ *
+ * This file is part of Project BUBO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package bubo.maps.d3.grid.impl;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * @author Peter Abeles
+ */
+public class TestHashAccumulator3D_F64 {
+
+	Random rand = new Random(234);
+
+	@Test
+	public void add() {
+		HashAccumulator3D_F64 alg = new HashAccumulator3D_F64();
+
+		alg.add(1, 2, 3, 0.5);
+		alg.add(4, 5, 6, 1.0);
+		alg.add(1, 2, 3, 0.25);
+		alg.add(3, 2, 1, 2.0);
+
+		assertEquals(3, alg.size());
+		check(alg, 0, 1, 2, 3, 0.75);
+		check(alg, 1, 4, 5, 6, 1.0);
+		check(alg, 2, 3, 2, 1, 2.0);
+	}
+
+	/**
+	 * Adds enough cells to force the table to grow multiple times
+	 */
+	@Test
+	public void add_many() {
+		HashAccumulator3D_F64 alg = new HashAccumulator3D_F64();
+
+		double expected[][][] = new double[20][30][15];
+		for (int i = 0; i < 20000; i++) {
+			int x = rand.nextInt(20);
+			int y = rand.nextInt(30);
+			int z = rand.nextInt(15);
+			double v = rand.nextDouble();
+			expected[x][y][z] += v;
+			alg.add(x, y, z, v);
+		}
+
+		int total = 0;
+		for (int x = 0; x < 20; x++) {
+			for (int y = 0; y < 30; y++) {
+				for (int z = 0; z < 15; z++) {
+					if (expected[x][y][z] != 0)
+						total++;
+				}
+			}
+		}
+		assertEquals(total, alg.size());
+
+		for (int i = 0; i < alg.size(); i++) {
+			double v = expected[alg.getX(i)][alg.getY(i)][alg.getZ(i)];
+			assertEquals(v, alg.getValue(i), 1e-8);
+		}
+	}
+
+	@Test
+	public void largeCoordinates() {
+		HashAccumulator3D_F64 alg = new HashAccumulator3D_F64();
+		int max = (1 << 21) - 1;
+		alg.add(max, 0, max, 1);
+		alg.add(0, max, 0, 2);
+
+		check(alg, 0, max, 0, max, 1);
+		check(alg, 1, 0, max, 0, 2);
+	}
+
+	@Test
+	public void reset() {
+		HashAccumulator3D_F64 alg = new HashAccumulator3D_F64();
+		for (int i = 0; i < 100; i++) {
+			alg.add(i, 1, 2, 1);
+		}
+		alg.reset();
+		assertEquals(0, alg.size());
+
+		alg.add(5, 1, 2, 3);
+		assertEquals(1, alg.size());
+		check(alg, 0, 5, 1, 2, 3);
+	}
+
+	private static void check(HashAccumulator3D_F64 alg, int index, int x, int y, int z, double value) {
+		assertEquals(x, alg.getX(index));
+		assertEquals(y, alg.getY(index));
+		assertEquals(z, alg.getZ(index));
+		assertEquals(value, alg.getValue(index), 1e-8);
+	}
+}
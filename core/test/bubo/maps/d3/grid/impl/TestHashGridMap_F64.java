@@ -0,0 +1,143 @@
+/*
+ * Copyright (c) 2013-2014, Peter Abeles. All Rights Reserved.
+ *
+ * This file is part of Project BUBO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package bubo.maps.d3.grid.impl;
+
+import bubo.maps.d3.grid.CellProbability_F64;
+import bubo.maps.d3.grid.OccupancyGrid3D_F64;
+import org.junit.Test;
+
+import java.util.Iterator;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Peter Abeles
+ */
+public class TestHashGridMap_F64 extends GenericOccupancyGrid3DChecks {
+
+	/**
+	 * Randomly write to a large number of blocks, forcing the table to grow, and compare to the expected values
+	 */
+	@Test
+	public void compareToDense() {
+		Random rand = new Random(234);
+		HashGridMap_F64 map = new HashGridMap_F64(60, 70, 80);
+		double expected[][][] = new double[60][70][80];
+		for (int i = 0; i < 60; i++) {
+			for (int j = 0; j < 70; j++) {
+				for (int k = 0; k < 80; k++) {
+					expected[i][j][k] = 0.5;
+				}
+			}
+		}
+
+		for (int i = 0; i < 5000; i++) {
+			int x = rand.nextInt(60);
+			int y = rand.nextInt(70);
+			int z = rand.nextInt(80);
+			double p = rand.nextDouble();
+			map.set(x, y, z, p);
+			expected[x][y][z] = p;
+		}
+
+		int total = 0;
+		for (int i = 0; i < 60; i++) {
+			for (int j = 0; j < 70; j++) {
+				for (int k = 0; k < 80; k++) {
+					assertTrue(expected[i][j][k] == map.get(i, j, k));
+					if (expected[i][j][k] != 0.5)
+						total++;
+				}
+			}
+		}
+
+		// every known cell should be found once by the iterator
+		Iterator<CellProbability_F64> iter = map.iteratorKnown();
+		int count = 0;
+		while (iter.hasNext()) {
+			CellProbability_F64 c = iter.next();
+			assertTrue(expected[c.x][c.y][c.z] == c.probability);
+			expected[c.x][c.y][c.z] = 0.5;
+			count++;
+		}
+		assertEquals(total, count);
+	}
+
+	/**
+	 * Blocks should only be declared when a value other than the default is written
+	 */
+	@Test
+	public void lazyBlocks() {
+		HashGridMap_F64 map = new HashGridMap_F64(20, 30, 40);
+
+		map.set(3, 4, 5, 0.5);
+		assertEquals(0, map.getNumberOfBlocks());
+
+		map.set(3, 4, 5, 0.7);
+		map.set(7, 7, 7, 0.2);
+		assertEquals(1, map.getNumberOfBlocks());
+		map.set(8, 7, 7, 0.2);
+		assertEquals(2, map.getNumberOfBlocks());
+
+		assertFalse(map.isDefault(3, 4, 5));
+		assertTrue(map.isDefault(2, 4, 5));
+	}
+
+	@Test
+	public void clear() {
+		HashGridMap_F64 map = new HashGridMap_F64(20, 30, 40);
+
+		map.set(3, 4, 5, 0.7);
+		map.set(15, 4, 5, 0.2);
+		map.clear();
+
+		assertEquals(0, map.getNumberOfBlocks());
+		assertEquals(0.5, map.get(3, 4, 5), 1e-8);
+		assertFalse(map.iteratorKnown().hasNext());
+
+		// recycled blocks should be reset
+		map.set(15, 4, 5, 0.9);
+		assertEquals(0.9, map.get(15, 4, 5), 1e-8);
+		assertEquals(0.5, map.get(3, 4, 5), 1e-8);
+		assertEquals(0.5, map.get(15, 5, 5), 1e-8);
+	}
+
+	@Test
+	public void outOfBounds() {
+		HashGridMap_F64 map = new HashGridMap_F64(20, 30, 40);
+
+		assertEquals(0.5, map.get(-1, 4, 5), 1e-8);
+		assertEquals(0.5, map.get(20, 4, 5), 1e-8);
+		assertFalse(map.isInBounds(3, 30, 5));
+		assertTrue(map.isInBounds(19, 29, 39));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void set_outOfBounds() {
+		HashGridMap_F64 map = new HashGridMap_F64(20, 30, 40);
+		map.set(3, 4, 40, 0.2);
+	}
+
+	@Override
+	public OccupancyGrid3D_F64 createOccupancyGrid(int sizeX, int sizeY, int sizeZ) {
+		return new HashGridMap_F64(sizeX, sizeY, sizeZ);
+	}
+}
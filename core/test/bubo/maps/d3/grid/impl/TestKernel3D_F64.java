@@ -25,6 +25,7 @@ import java.util.Collections;
 import java.util.List;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 /**
@@ -110,6 +111,49 @@ public class TestKernel3D_F64 {
 		}
 	}
 
+	@Test
+	public void separate() {
+		double a[] = new double[]{1,2,3};
+		double b[] = new double[]{0.5,4,1};
+		double c[] = new double[]{2,1,0.25};
+
+		Kernel3D_F64 k = new Kernel3D_F64(1);
+		int index = 0;
+		for (int i = 0; i < 3; i++) {
+			for (int j = 0; j < 3; j++) {
+				for (int l = 0; l < 3; l++) {
+					k.data[index++] = a[i]*b[j]*c[l];
+				}
+			}
+		}
+
+		double foundA[] = new double[3];
+		double foundB[] = new double[3];
+		double foundC[] = new double[3];
+		assertTrue(k.separate(foundA, foundB, foundC, 1e-12));
+
+		for (int i = 0; i < 3; i++) {
+			for (int j = 0; j < 3; j++) {
+				for (int l = 0; l < 3; l++) {
+					assertEquals(k.get(i,j,l),foundA[i]*foundB[j]*foundC[l],1e-12);
+				}
+			}
+		}
+
+		// no longer separable
+		k.data[5] += 0.1;
+		assertFalse(k.separate(foundA, foundB, foundC, 1e-12));
+	}
+
+	@Test
+	public void separate_gaussian() {
+		Kernel3D_F64 k = Kernel3D_F64.gaussian(2);
+		double a[] = new double[5];
+		double b[] = new double[5];
+		double c[] = new double[5];
+		assertTrue(k.separate(a, b, c, 1e-12));
+	}
+
 	private static class DistanceWeight implements Comparable<DistanceWeight>
 	{
 		double weight;
@@ -18,13 +18,227 @@
 
 package bubo.maps.d3.grid.impl;
 
+import bubo.construct.Octree_I32;
+import bubo.maps.d3.grid.CellProbability_F64;
 import bubo.maps.d3.grid.OccupancyGrid3D_F64;
+import georegression.struct.point.Point3D_I32;
+import org.junit.Test;
+
+import java.util.Iterator;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 /**
  * @author Peter Abeles
  */
 public class TestOctreeGridMap_F64 extends GenericOccupancyGrid3DChecks{
 
+	@Test
+	public void updateLogOdds() {
+		OctreeGridMap_F64 map = new OctreeGridMap_F64(10,12,14);
+
+		// starts at the default value
+		assertTrue(map.updateLogOdds(2,3,4,1.0,-2,2));
+		assertEquals(1.0/(1.0+Math.exp(-1.0)),map.get(2,3,4),1e-8);
+
+		map.set(2,3,5,0.25);
+		assertTrue(map.updateLogOdds(2,3,5,0.5,-2,2));
+		assertEquals(1.0/(1.0+Math.exp(-(Math.log(0.25/0.75)+0.5))),map.get(2,3,5),1e-8);
+
+		// clamped
+		assertTrue(map.updateLogOdds(2,3,4,5.0,-2,2));
+		assertEquals(1.0/(1.0+Math.exp(-2.0)),map.get(2,3,4),1e-8);
+		assertTrue(map.updateLogOdds(2,3,4,-10.0,-2,2));
+		assertEquals(1.0/(1.0+Math.exp(2.0)),map.get(2,3,4),1e-8);
+
+		// out of bounds
+		assertFalse(map.updateLogOdds(20,3,4,1.0,-2,2));
+	}
+
+	/**
+	 * Fill in a region with the same value and see if it's collapsed
+	 */
+	@Test
+	public void prune_collapse() {
+		OctreeGridMap_F64 map = new OctreeGridMap_F64(16,16,16);
+
+		fill(map,0,0,0,8,0.9);
+		map.set(12,12,12,0.2);
+
+		int before = map.getConstruct().getAllNodes().size;
+		int removed = map.prune();
+		assertTrue(removed > 0);
+		assertEquals(before-removed,map.getConstruct().getAllNodes().size);
+
+		// the 8x8x8 region should be a single leaf
+		Octree_I32 node = map.getConstruct().getTree().findDeepest(new Point3D_I32(3,4,5));
+		assertTrue(node.isLeaf());
+		assertEquals(8,node.space.getLengthX());
+		assertEquals(2,map.info.size);
+
+		for (int z = 0; z < 16; z++) {
+			for (int y = 0; y < 16; y++) {
+				for (int x = 0; x < 16; x++) {
+					double expected = x < 8 && y < 8 && z < 8 ? 0.9 : 0.5;
+					if( x == 12 && y == 12 && z == 12 )
+						expected = 0.2;
+					assertEquals(expected,map.get(x,y,z),1e-8);
+				}
+			}
+		}
+
+		// nothing more to prune
+		assertEquals(0,map.prune());
+	}
+
+	/**
+	 * The entire map has the same value
+	 */
+	@Test
+	public void prune_root() {
+		OctreeGridMap_F64 map = new OctreeGridMap_F64(4,2,3);
+		fill(map,0,0,0,4,0.1);
+		map.prune();
+
+		assertTrue(map.getConstruct().getTree().isLeaf());
+		assertEquals(1,map.getConstruct().getAllNodes().size);
+		assertEquals(1,map.info.size);
+		assertEquals(0.1,map.get(3,1,2),1e-8);
+		assertEquals(0.1,map.get(0,0,0),1e-8);
+	}
+
+	/**
+	 * Modifying a collapsed region should expand it
+	 */
+	@Test
+	public void prune_expand() {
+		OctreeGridMap_F64 map = new OctreeGridMap_F64(16,16,16);
+		fill(map,0,0,0,8,0.9);
+		map.prune();
+
+		map.set(2,3,4,0.3);
+		assertTrue(map.updateLogOdds(5,5,5,1.0,-5,5));
+
+		for (int z = 0; z < 8; z++) {
+			for (int y = 0; y < 8; y++) {
+				for (int x = 0; x < 8; x++) {
+					double expected = 0.9;
+					if( x == 2 && y == 3 && z == 4 )
+						expected = 0.3;
+					else if( x == 5 && y == 5 && z == 5 )
+						expected = 1.0/(1.0+Math.exp(-(Math.log(9)+1)));
+					assertEquals(expected,map.get(x,y,z),1e-8);
+				}
+			}
+		}
+
+		// setting it back should allow it to collapse again
+		map.set(2,3,4,0.9);
+		map.set(5,5,5,0.9);
+		map.prune();
+		assertTrue(map.getConstruct().getTree().findDeepest(new Point3D_I32(3,4,5)).space.getLengthX() == 8);
+	}
+
+	/**
+	 * The known cells should be the same before and after pruning
+	 */
+	@Test
+	public void prune_iterator() {
+		Random rand = new Random(234);
+		OctreeGridMap_F64 map = new OctreeGridMap_F64(10,12,14);
+		fill(map,0,0,0,4,0.8);
+		for (int i = 0; i < 50; i++) {
+			map.set(rand.nextInt(10),rand.nextInt(12),rand.nextInt(14),rand.nextDouble());
+		}
+
+		OctreeGridMap_F64 expected = (OctreeGridMap_F64)map.copy();
+		map.prune();
+
+		int total = 0;
+		Iterator<CellProbability_F64> iter = map.iteratorKnown();
+		while( iter.hasNext() ) {
+			CellProbability_F64 c = iter.next();
+			assertTrue(expected.get(c.x,c.y,c.z) == c.probability);
+			total++;
+		}
+
+		int count = 0;
+		iter = expected.iteratorKnown();
+		while( iter.hasNext() ) {
+			CellProbability_F64 c = iter.next();
+			assertTrue(map.get(c.x,c.y,c.z) == c.probability);
+			count++;
+		}
+		assertEquals(count,total);
+	}
+
+	@Test
+	public void getAtDepth() {
+		OctreeGridMap_F64 map = new OctreeGridMap_F64(16,16,16);
+		map.set(1,2,3,0.9);
+		map.set(6,6,6,0.2);
+		map.set(12,12,12,0.3);
+
+		// root is the max of everything
+		assertEquals(0.9,map.getAtDepth(12,12,12,0),1e-8);
+		// 8x8x8 region
+		assertEquals(0.9,map.getAtDepth(6,6,6,1),1e-8);
+		assertEquals(0.5,map.getAtDepth(12,12,12,1),1e-8);
+		// 4x4x4 region
+		assertEquals(0.5,map.getAtDepth(6,6,6,2),1e-8);
+		// finest resolution
+		assertEquals(0.2,map.getAtDepth(6,6,6,4),1e-8);
+		assertEquals(0.2,map.getAtDepth(6,6,6,10),1e-8);
+		// region which has no nodes
+		assertEquals(0.5,map.getAtDepth(12,1,1,3),1e-8);
+
+		// collapsed leafs should return their value
+		OctreeGridMap_F64 pruned = new OctreeGridMap_F64(16,16,16);
+		fill(pruned,8,8,8,8,0.1);
+		pruned.prune();
+		assertEquals(0.1,pruned.getAtDepth(9,9,9,3),1e-8);
+		assertEquals(0.5,pruned.getAtDepth(9,9,9,0),1e-8);
+	}
+
+	@Test
+	public void setLeaf() {
+		OctreeGridMap_F64 map = new OctreeGridMap_F64(16,16,16);
+
+		Octree_I32 root = map.getConstruct().getTree();
+		Octree_I32 child = map.getConstruct().addChild(root,0);
+		map.setLeaf(child,0.8);
+
+		// every cell inside the leaf should have the value
+		assertEquals(0.8,map.get(0,0,0),1e-8);
+		assertEquals(0.8,map.get(7,7,7),1e-8);
+		assertEquals(0.5,map.get(8,7,7),1e-8);
+
+		// change the value
+		map.setLeaf(child,0.3);
+		assertEquals(0.3,map.get(4,5,6),1e-8);
+		assertEquals(1,map.info.size);
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void setLeaf_notLeaf() {
+		OctreeGridMap_F64 map = new OctreeGridMap_F64(16,16,16);
+		map.set(1,2,3,0.7);
+		map.setLeaf(map.getConstruct().getTree(),0.3);
+	}
+
+	private static void fill( OctreeGridMap_F64 map , int x0 , int y0 , int z0 , int width , double value ) {
+		for (int z = z0; z < Math.min(z0+width,map.getSizeZ()); z++) {
+			for (int y = y0; y < Math.min(y0+width,map.getSizeY()); y++) {
+				for (int x = x0; x < Math.min(x0+width,map.getSizeX()); x++) {
+					map.set(x,y,z,value);
+				}
+			}
+		}
+	}
+
 	@Override
 	public OccupancyGrid3D_F64 createOccupancyGrid(int sizeX, int sizeY, int sizeZ) {
 		return new OctreeGridMap_F64(sizeX,sizeY,sizeZ);
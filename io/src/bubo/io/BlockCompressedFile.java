@@ -0,0 +1,426 @@
+/*
+ * Copyright (c) 2013-2014, Peter Abeles. All Rights Reserved.
+ *
+ * This file is part of Project BUBO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package bubo.io;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Random access to the uncompressed contents of a file written by {@link BlockCompressedOutputStream}.  Data is
+ * located using its position in the uncompressed data and only the blocks which contain it are decompressed.
+ * Recently used blocks are kept in a cache.  All functions can be called by several threads at the same time.
+ *
+ * @author Peter Abeles
+ */
+public class BlockCompressedFile {
+
+	private RandomAccessFile file;
+	private FileChannel channel;
+
+	// uncompressed size of each block, except the last one
+	private int blockSize;
+	// total number of uncompressed bytes
+	private long uncompressedLength;
+
+	// location of each block in the file.  Has one extra element which is the end of the last block
+	private long[] blockOffsets;
+	// CRC32 of each block's uncompressed data
+	private int[] checksums;
+
+	// recently decompressed blocks, ordered from least to most recently used
+	private final LinkedHashMap<Integer, byte[]> cache;
+	private final int cacheSize;
+
+	/**
+	 * Opens the file and reads its index
+	 *
+	 * @param fileName  Name of the file
+	 * @param cacheSize Maximum number of decompressed blocks which are cached.
+	 * @throws IOException If the file isn't a valid block compressed file
+	 */
+	public BlockCompressedFile(String fileName, int cacheSize) throws IOException {
+		this.cacheSize = cacheSize;
+		this.cache = new LinkedHashMap<Integer, byte[]>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Integer, byte[]> eldest) {
+				return size() > BlockCompressedFile.this.cacheSize;
+			}
+		};
+
+		file = new RandomAccessFile(fileName, "r");
+		try {
+			channel = file.getChannel();
+			readIndex();
+		} catch (IOException e) {
+			file.close();
+			throw e;
+		}
+	}
+
+	public BlockCompressedFile(String fileName) throws IOException {
+		this(fileName, 8);
+	}
+
+	/**
+	 * Reads the header, trailer, and the block index
+	 */
+	private void readIndex() throws IOException {
+		long fileSize = channel.size();
+		if (fileSize < BlockCompressedOutputStream.HEADER_SIZE + BlockCompressedOutputStream.TRAILER_SIZE + 12)
+			throw new IOException("File is too small");
+
+		ByteBuffer header = readFully(0, BlockCompressedOutputStream.HEADER_SIZE);
+		if (header.getInt() != BlockCompressedOutputStream.MAGIC)
+			throw new IOException("Not a block compressed file");
+		int version = header.getInt();
+		if (version > BlockCompressedOutputStream.VERSION)
+			throw new IOException("Unsupported version " + version);
+		blockSize = header.getInt();
+
+		ByteBuffer trailer = readFully(fileSize - BlockCompressedOutputStream.TRAILER_SIZE,
+				BlockCompressedOutputStream.TRAILER_SIZE);
+		long indexLocation = trailer.getLong();
+		if (trailer.getInt() != BlockCompressedOutputStream.MAGIC)
+			throw new IOException("File is truncated");
+		if (indexLocation < BlockCompressedOutputStream.HEADER_SIZE || indexLocation > fileSize - 24)
+			throw new IOException("Bad index location");
+
+		ByteBuffer index = readFully(indexLocation, (int) (fileSize - BlockCompressedOutputStream.TRAILER_SIZE - indexLocation));
+		int numBlocks = index.getInt();
+		uncompressedLength = index.getLong();
+		if (numBlocks < 0 || index.remaining() != numBlocks * 8L)
+			throw new IOException("Bad block index");
+
+		blockOffsets = new long[numBlocks + 1];
+		checksums = new int[numBlocks];
+		blockOffsets[0] = BlockCompressedOutputStream.HEADER_SIZE;
+		for (int i = 0; i < numBlocks; i++) {
+			blockOffsets[i + 1] = blockOffsets[i] + index.getInt();
+			checksums[i] = index.getInt();
+		}
+		if (blockOffsets[numBlocks] != indexLocation)
+			throw new IOException("Block index doesn't match the file");
+	}
+
+	/**
+	 * Reads data from the file into a little endian buffer
+	 */
+	private ByteBuffer readFully(long location, int length) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(length);
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer, location + buffer.position()) < 0)
+				throw new EOFException();
+		}
+		buffer.flip();
+		buffer.order(ByteOrder.LITTLE_ENDIAN);
+		return buffer;
+	}
+
+	/**
+	 * Returns the uncompressed data in the specified block.  The returned array must not be modified.
+	 *
+	 * @param index Which block
+	 * @return Uncompressed data.  Its length is the size of the block.
+	 */
+	public byte[] getBlock(int index) throws IOException {
+		synchronized (cache) {
+			byte[] data = cache.get(index);
+			if (data != null)
+				return data;
+		}
+
+		byte[] data = decompressBlock(index);
+
+		synchronized (cache) {
+			cache.put(index, data);
+		}
+		return data;
+	}
+
+	/**
+	 * Decompresses a block without using the cache
+	 */
+	private byte[] decompressBlock(int index) throws IOException {
+		int compressedLength = (int) (blockOffsets[index + 1] - blockOffsets[index]);
+		ByteBuffer compressed = readFully(blockOffsets[index], compressedLength);
+
+		byte[] data = new byte[getBlockLength(index)];
+		Inflater inflater = new Inflater(true);
+		try {
+			inflater.setInput(compressed.array(), 0, compressedLength);
+			int total = 0;
+			while (total < data.length) {
+				int found = inflater.inflate(data, total, data.length - total);
+				if (found == 0 && (inflater.finished() || inflater.needsInput()))
+					throw new IOException("Block " + index + " is too short");
+				total += found;
+			}
+		} catch (DataFormatException e) {
+			throw new IOException(e);
+		} finally {
+			inflater.end();
+		}
+
+		CRC32 crc = new CRC32();
+		crc.update(data, 0, data.length);
+		if ((int) crc.getValue() != checksums[index])
+			throw new IOException("Checksum failed for block " + index);
+
+		return data;
+	}
+
+	/**
+	 * Reads uncompressed data starting at the specified location
+	 *
+	 * @param location Location in the uncompressed data
+	 * @param data     Storage for the data
+	 * @param offset   Where in the array the data is written to
+	 * @param length   Number of bytes to read
+	 * @return Number of bytes read.  Less than length if the end of the data was reached.  -1 if location
+	 * is at the end.
+	 */
+	public int read(long location, byte[] data, int offset, int length) throws IOException {
+		if (location < 0)
+			throw new IllegalArgumentException("Negative location");
+		if (location >= uncompressedLength)
+			return length == 0 ? 0 : -1;
+
+		length = (int) Math.min(length, uncompressedLength - location);
+		int total = 0;
+		while (total < length) {
+			int index = (int) (location / blockSize);
+			int start = (int) (location - (long) index * blockSize);
+			byte[] block = getBlock(index);
+			int amount = Math.min(length - total, block.length - start);
+			System.arraycopy(block, start, data, offset + total, amount);
+			total += amount;
+			location += amount;
+		}
+		return total;
+	}
+
+	/**
+	 * Creates a stream which reads the uncompressed data starting at the specified location.
+	 *
+	 * @param location Location in the uncompressed data
+	 */
+	public BlockInputStream openStream(long location) {
+		return new BlockInputStream(location);
+	}
+
+	/**
+	 * Decompresses the entire file and writes it to the output stream.  If a thread pool is provided then
+	 * blocks are decompressed in parallel.  The cache is not used.
+	 *
+	 * @param out        Where the uncompressed data is written to.  Not closed.
+	 * @param threadPool Thread pool used to decompress blocks.  If null then blocks are decompressed sequentially.
+	 */
+	public void decompress(OutputStream out, ExecutorService threadPool) throws IOException {
+		int numBlocks = getNumberOfBlocks();
+
+		if (threadPool == null) {
+			for (int i = 0; i < numBlocks; i++) {
+				out.write(decompressBlock(i));
+			}
+			return;
+		}
+
+		// limit the number of decompressed blocks in memory
+		int maxPending = Runtime.getRuntime().availableProcessors() * 2;
+		List<Future<byte[]>> pending = new ArrayList<Future<byte[]>>();
+		int next = 0;
+		try {
+			while (next < numBlocks || pending.size() > 0) {
+				while (next < numBlocks && pending.size() < maxPending) {
+					final int index = next++;
+					pending.add(threadPool.submit(new Callable<byte[]>() {
+						@Override
+						public byte[] call() throws IOException {
+							return decompressBlock(index);
+						}
+					}));
+				}
+
+				try {
+					out.write(pending.remove(0).get());
+				} catch (InterruptedException e) {
+					throw new RuntimeException(e);
+				} catch (ExecutionException e) {
+					if (e.getCause() instanceof IOException)
+						throw (IOException) e.getCause();
+					throw new RuntimeException(e.getCause());
+				}
+			}
+		} finally {
+			for (int i = 0; i < pending.size(); i++) {
+				pending.get(i).cancel(true);
+			}
+		}
+	}
+
+	/**
+	 * Uncompressed size of the specified block
+	 */
+	public int getBlockLength(int index) {
+		return (int) Math.min(blockSize, uncompressedLength - (long) index * blockSize);
+	}
+
+	public int getNumberOfBlocks() {
+		return checksums.length;
+	}
+
+	public int getBlockSize() {
+		return blockSize;
+	}
+
+	public long getUncompressedLength() {
+		return uncompressedLength;
+	}
+
+	/**
+	 * Size of the compressed file in bytes
+	 */
+	public long getCompressedLength() throws IOException {
+		return channel.size();
+	}
+
+	public void close() throws IOException {
+		file.close();
+		synchronized (cache) {
+			cache.clear();
+		}
+	}
+
+	/**
+	 * Reads the uncompressed data sequentially, starting from a location.  Each stream should only be used by
+	 * one thread at a time.
+	 */
+	public class BlockInputStream extends InputStream {
+		// location in the uncompressed data
+		private long location;
+
+		// block being read
+		private byte[] block;
+		private int blockIndex = -1;
+
+		private long mark;
+
+		BlockInputStream(long location) {
+			this.location = location;
+		}
+
+		@Override
+		public int read() throws IOException {
+			if (location >= uncompressedLength)
+				return -1;
+			int start = selectBlock();
+			location++;
+			return block[start] & 0xFF;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (len == 0)
+				return 0;
+			if (location >= uncompressedLength)
+				return -1;
+
+			int start = selectBlock();
+			int amount = Math.min(len, block.length - start);
+			System.arraycopy(block, start, b, off, amount);
+			location += amount;
+			return amount;
+		}
+
+		/**
+		 * Makes sure the block which contains the current location is being read and returns the location
+		 * inside the block
+		 */
+		private int selectBlock() throws IOException {
+			int index = (int) (location / blockSize);
+			if (index != blockIndex) {
+				block = getBlock(index);
+				blockIndex = index;
+			}
+			return (int) (location - (long) index * blockSize);
+		}
+
+		@Override
+		public long skip(long n) {
+			n = Math.max(0, Math.min(n, uncompressedLength - location));
+			location += n;
+			return n;
+		}
+
+		@Override
+		public int available() {
+			return (int) Math.min(Integer.MAX_VALUE, Math.max(0, uncompressedLength - location));
+		}
+
+		@Override
+		public boolean markSupported() {
+			return true;
+		}
+
+		@Override
+		public synchronized void mark(int readlimit) {
+			mark = location;
+		}
+
+		@Override
+		public synchronized void reset() {
+			location = mark;
+		}
+
+		/**
+		 * Location in the uncompressed data of the next byte to be read
+		 */
+		public long getLocation() {
+			return location;
+		}
+
+		public void setLocation(long location) {
+			this.location = location;
+		}
+
+		/**
+		 * The file which is being read
+		 */
+		public BlockCompressedFile getFile() {
+			return BlockCompressedFile.this;
+		}
+	}
+}
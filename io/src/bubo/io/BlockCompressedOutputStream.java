@@ -0,0 +1,295 @@
+/*
+ * Copyright (c) 2013-2014, Peter Abeles. All Rights Reserved.
+ *
+ * This file is part of Project BUBO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package bubo.io;
+
+import org.ddogleg.struct.GrowQueue_I32;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * <p>
+ * Writes data into a seekable compressed file, which can be read using {@link BlockCompressedFile}.  The data is
+ * split into blocks of the same uncompressed size and each block is compressed independently, so any part of the
+ * file can be read by only decompressing the blocks which contain it.  If a thread pool is provided then the blocks
+ * are compressed in parallel.  The number of blocks being compressed at any one time is limited so that memory
+ * usage is bounded.
+ * </p>
+ *
+ * <p>
+ * File format, all numbers are little endian:
+ * <pre>
+ * header  = MAGIC (int), VERSION (int), block size (int)
+ * blocks  = raw deflate data for each block
+ * index   = number of blocks (int), uncompressed length (long), then for each block its compressed
+ *           length (int) and the CRC32 of its uncompressed data (int)
+ * trailer = location of the index (long), MAGIC (int)
+ * </pre>
+ * Every block has an uncompressed size of 'block size', except for the last one.
+ * </p>
+ *
+ * @author Peter Abeles
+ */
+public class BlockCompressedOutputStream extends OutputStream {
+	/**
+	 * First and last four bytes of the file.  Spells "BLKZ" when saved.
+	 */
+	public static final int MAGIC = 0x5A4B4C42;
+	public static final int VERSION = 1;
+	/**
+	 * Size of the header in bytes
+	 */
+	public static final int HEADER_SIZE = 12;
+	/**
+	 * Size of the trailer in bytes
+	 */
+	public static final int TRAILER_SIZE = 12;
+
+	// where the compressed data is written to
+	private OutputStream out;
+
+	// uncompressed size of each block
+	private int blockSize;
+	// compression level used by the deflater
+	private int level;
+
+	// if not null then blocks are compressed by the thread pool
+	private ExecutorService threadPool;
+	// maximum number of blocks which can be compressed at once
+	private int maxPending;
+
+	// storage for the block being filled
+	private byte[] current;
+	private int currentSize;
+
+	// blocks being compressed, in the order they will be written
+	private List<Future<Block>> pending = new ArrayList<Future<Block>>();
+
+	// compressed size and checksum of every block written so far
+	private GrowQueue_I32 compressedLengths = new GrowQueue_I32();
+	private GrowQueue_I32 checksums = new GrowQueue_I32();
+
+	// number of bytes written to the output and the number of uncompressed bytes
+	private long outputLength;
+	private long uncompressedLength;
+
+	private boolean closed;
+
+	/**
+	 * Creates the stream and writes the header
+	 *
+	 * @param out        Where the compressed file is written to.  Closed when this stream is closed.
+	 * @param blockSize  Number of uncompressed bytes in each block.
+	 * @param level      Compression level, see {@link Deflater}.
+	 * @param threadPool Thread pool used to compress blocks.  If null then blocks are compressed as they are filled.
+	 */
+	public BlockCompressedOutputStream(OutputStream out, int blockSize, int level, ExecutorService threadPool)
+			throws IOException {
+		if (blockSize <= 0)
+			throw new IllegalArgumentException("blockSize must be more than zero");
+
+		this.out = out;
+		this.blockSize = blockSize;
+		this.level = level;
+		this.threadPool = threadPool;
+		this.maxPending = Runtime.getRuntime().availableProcessors() * 2;
+
+		current = new byte[blockSize];
+
+		LittleEndianIO.writeInt(out, MAGIC);
+		LittleEndianIO.writeInt(out, VERSION);
+		LittleEndianIO.writeInt(out, blockSize);
+		outputLength = HEADER_SIZE;
+	}
+
+	/**
+	 * Blocks of 1 MB using the default compression level
+	 */
+	public BlockCompressedOutputStream(OutputStream out, ExecutorService threadPool) throws IOException {
+		this(out, 1024 * 1024, Deflater.DEFAULT_COMPRESSION, threadPool);
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		current[currentSize++] = (byte) b;
+		if (currentSize == blockSize)
+			finishBlock();
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		while (len > 0) {
+			int amount = Math.min(len, blockSize - currentSize);
+			System.arraycopy(b, off, current, currentSize, amount);
+			currentSize += amount;
+			off += amount;
+			len -= amount;
+			if (currentSize == blockSize)
+				finishBlock();
+		}
+	}
+
+	/**
+	 * Compresses the current block, or queues it to be compressed, and starts a new block
+	 */
+	private void finishBlock() throws IOException {
+		Compress task = new Compress(current, currentSize, level);
+		uncompressedLength += currentSize;
+
+		if (threadPool == null) {
+			writeBlock(task.call());
+			currentSize = 0;
+			return;
+		}
+
+		pending.add(threadPool.submit(task));
+		current = new byte[blockSize];
+		currentSize = 0;
+
+		while (pending.size() >= maxPending) {
+			writeBlock(waitForBlock(pending.remove(0)));
+		}
+	}
+
+	private void writeBlock(Block block) throws IOException {
+		out.write(block.data, 0, block.length);
+		compressedLengths.add(block.length);
+		checksums.add(block.checksum);
+		outputLength += block.length;
+	}
+
+	private static Block waitForBlock(Future<Block> future) {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			throw new RuntimeException(e);
+		} catch (ExecutionException e) {
+			throw new RuntimeException(e.getCause());
+		}
+	}
+
+	/**
+	 * Writes all the blocks which have been filled.  The block being filled is not written since that would
+	 * change the block size.
+	 */
+	@Override
+	public void flush() throws IOException {
+		while (pending.size() > 0) {
+			writeBlock(waitForBlock(pending.remove(0)));
+		}
+		out.flush();
+	}
+
+	/**
+	 * Writes the last block and the index then closes the output stream
+	 */
+	@Override
+	public void close() throws IOException {
+		if (closed)
+			return;
+		closed = true;
+
+		if (currentSize > 0)
+			finishBlock();
+		flush();
+
+		long indexLocation = outputLength;
+		LittleEndianIO.writeInt(out, compressedLengths.size);
+		LittleEndianIO.writeLong(out, uncompressedLength);
+		for (int i = 0; i < compressedLengths.size; i++) {
+			LittleEndianIO.writeInt(out, compressedLengths.data[i]);
+			LittleEndianIO.writeInt(out, checksums.data[i]);
+		}
+		LittleEndianIO.writeLong(out, indexLocation);
+		LittleEndianIO.writeInt(out, MAGIC);
+		out.close();
+	}
+
+	/**
+	 * Total number of uncompressed bytes written so far
+	 */
+	public long getUncompressedLength() {
+		return uncompressedLength + currentSize;
+	}
+
+	public int getBlockSize() {
+		return blockSize;
+	}
+
+	public ExecutorService getThreadPool() {
+		return threadPool;
+	}
+
+	/**
+	 * Compressed block
+	 */
+	private static class Block {
+		byte[] data;
+		int length;
+		int checksum;
+	}
+
+	/**
+	 * Compresses a single block
+	 */
+	private static class Compress implements Callable<Block> {
+		byte[] input;
+		int length;
+		int level;
+
+		Compress(byte[] input, int length, int level) {
+			this.input = input;
+			this.length = length;
+			this.level = level;
+		}
+
+		@Override
+		public Block call() {
+			CRC32 crc = new CRC32();
+			crc.update(input, 0, length);
+
+			Deflater deflater = new Deflater(level, true);
+			deflater.setInput(input, 0, length);
+			deflater.finish();
+
+			Block ret = new Block();
+			ret.checksum = (int) crc.getValue();
+			ret.data = new byte[Math.max(64, length + length / 8 + 64)];
+			while (!deflater.finished()) {
+				if (ret.length == ret.data.length) {
+					byte[] tmp = new byte[ret.data.length * 2];
+					System.arraycopy(ret.data, 0, tmp, 0, ret.length);
+					ret.data = tmp;
+				}
+				ret.length += deflater.deflate(ret.data, ret.length, ret.data.length - ret.length);
+			}
+			deflater.end();
+
+			return ret;
+		}
+	}
+}
@@ -22,10 +22,14 @@ import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 
 /**
  * Java uses big endian byte order.  To output little endian the byte order needs to be changed.  This class
- * contains functions for writing and reading little endian primitive data.
+ * contains functions for writing and reading little endian primitive data.  If the input stream is a
+ * {@link ByteBufferInputStream} whose buffer is little endian then primitives are read directly from the buffer
+ * instead of one byte at a time.
  *
  * @author Peter Abeles
  */
@@ -36,6 +40,10 @@ public class LittleEndianIO {
 	}
 
 	public static short readShort(InputStream in) throws IOException {
+		ByteBuffer buffer = littleEndianBuffer(in, 2);
+		if (buffer != null)
+			return buffer.getShort();
+
 		short val = 0;
 
 		val |= readByte(in);
@@ -50,6 +58,10 @@ public class LittleEndianIO {
 	}
 
 	public static int readInt(InputStream in) throws IOException {
+		ByteBuffer buffer = littleEndianBuffer(in, 4);
+		if (buffer != null)
+			return buffer.getInt();
+
 		int val = 0;
 
 		val |= readByte(in);
@@ -79,6 +91,10 @@ public class LittleEndianIO {
 	}
 
 	public static float readFloat(InputStream in) throws IOException {
+		ByteBuffer buffer = littleEndianBuffer(in, 4);
+		if (buffer != null)
+			return buffer.getFloat();
+
 		int rawValue = readInt(in);
 
 		return Float.intBitsToFloat(rawValue);
@@ -96,6 +112,10 @@ public class LittleEndianIO {
 	}
 
 	public static double readDouble(InputStream in) throws IOException {
+		ByteBuffer buffer = littleEndianBuffer(in, 8);
+		if (buffer != null)
+			return buffer.getDouble();
+
 		long rawValue = readLong(in);
 
 		return Double.longBitsToDouble(rawValue);
@@ -113,6 +133,10 @@ public class LittleEndianIO {
 	}
 
 	public static long readLong(InputStream in) throws IOException {
+		ByteBuffer buffer = littleEndianBuffer(in, 8);
+		if (buffer != null)
+			return buffer.getLong();
+
 		long val = 0;
 
 		val |= (long) readByte(in);
@@ -161,4 +185,22 @@ public class LittleEndianIO {
 
 		return val;
 	}
+
+	/**
+	 * If the stream reads from a little endian buffer then the buffer is returned, otherwise null.
+	 *
+	 * @param length Number of bytes which are to be read
+	 * @throws EOFException If the buffer has fewer than 'length' bytes remaining
+	 */
+	private static ByteBuffer littleEndianBuffer(InputStream in, int length) throws EOFException {
+		if (!(in instanceof ByteBufferInputStream))
+			return null;
+
+		ByteBuffer buffer = ((ByteBufferInputStream) in).getBuffer();
+		if (buffer.order() != ByteOrder.LITTLE_ENDIAN)
+			return null;
+		if (buffer.remaining() < length)
+			throw new EOFException();
+		return buffer;
+	}
 }
@@ -20,6 +20,8 @@ package bubo.io;
 
 import javax.swing.*;
 import java.io.*;
+import java.util.concurrent.ExecutorService;
+import java.util.zip.Deflater;
 import java.util.zip.GZIPInputStream;
 
 
@@ -89,4 +91,37 @@ public class UtilCompression {
 
 		return ret;
 	}
+
+	/**
+	 * Converts a GZIP file into a seekable block compressed file, see {@link BlockCompressedOutputStream}.
+	 * Decompressing the GZIP file is inherently sequential, but the blocks are compressed in parallel if a
+	 * thread pool is provided.
+	 *
+	 * @param inputName  Name of the GZIP file
+	 * @param outputName Name of the block compressed file which is created
+	 * @param blockSize  Number of uncompressed bytes in each block
+	 * @param threadPool Used to compress blocks in parallel.  Can be null.
+	 * @throws IOException
+	 */
+	public static void gzipToBlockCompressed(String inputName, String outputName, int blockSize,
+											 ExecutorService threadPool) throws IOException {
+		InputStream in = new GZIPInputStream(new FileInputStream(inputName), 64 * 1024);
+		try {
+			OutputStream out = new BufferedOutputStream(new FileOutputStream(outputName), 1024 * 1024);
+			try {
+				// if this fails the file's stream is still closed
+				out = new BlockCompressedOutputStream(out, blockSize, Deflater.DEFAULT_COMPRESSION, threadPool);
+
+				byte buffer[] = new byte[64 * 1024];
+				int read;
+				while ((read = in.read(buffer)) > 0) {
+					out.write(buffer, 0, read);
+				}
+			} finally {
+				out.close();
+			}
+		} finally {
+			in.close();
+		}
+	}
 }
@@ -0,0 +1,130 @@
+/*
+ * Copyright (c) 2013-2014, Peter Abeles. All Rights Reserved.
+ *
+ * This file is part of Project BUBO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package bubo.io.data.encoded;
+
+import java.awt.image.BufferedImage;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+
+/**
+ * Least recently used cache of decoded images.  Used by {@link ImageJpegLazy} so that images which are viewed
+ * repeatedly, e.g. when stepping back and forth through a log, are only decoded once.  Images read from a file are
+ * typically identified by a {@link Key}, so that the same image read twice maps to the same entry.  Thread safe.
+ *
+ * @author Peter Abeles
+ */
+public class DecodedImageCache {
+
+	// decoded images, ordered from least to most recently used
+	private final LinkedHashMap<Object, BufferedImage> images;
+	private final int maxImages;
+
+	/**
+	 * @param maxImages Maximum number of decoded images which are cached.
+	 */
+	public DecodedImageCache(int maxImages) {
+		this.maxImages = maxImages;
+		images = new LinkedHashMap<Object, BufferedImage>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Object, BufferedImage> eldest) {
+				return size() > DecodedImageCache.this.maxImages;
+			}
+		};
+	}
+
+	/**
+	 * Returns the decoded image or null if it isn't in the cache
+	 *
+	 * @param key The encoded image
+	 */
+	public synchronized BufferedImage get(Object key) {
+		return images.get(key);
+	}
+
+	/**
+	 * Adds a decoded image to the cache, removing the least recently used image if it is full
+	 *
+	 * @param key   The encoded image
+	 * @param image The decoded image
+	 */
+	public synchronized void put(Object key, BufferedImage image) {
+		images.put(key, image);
+	}
+
+	public synchronized int size() {
+		return images.size();
+	}
+
+	public synchronized void clear() {
+		images.clear();
+	}
+
+	public int getMaxImages() {
+		return maxImages;
+	}
+
+	/**
+	 * Identifies encoded data by where it is stored
+	 */
+	public static class Key {
+		// identifies the file or buffer the data is in
+		Object source;
+		// location of the data inside the source
+		long offset;
+		// number of bytes of data
+		int length;
+
+		/**
+		 * @param source Identifies the file or buffer.  Compared using equals().
+		 * @param offset Location of the data inside the source
+		 * @param length Number of bytes of data
+		 */
+		public Key(Object source, long offset, int length) {
+			this.source = source;
+			this.offset = offset;
+			this.length = length;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof Key))
+				return false;
+			Key k = (Key) o;
+			return offset == k.offset && length == k.length && source.equals(k.source);
+		}
+
+		@Override
+		public int hashCode() {
+			return source.hashCode() * 31 + (int) (offset ^ (offset >>> 32)) * 17 + length;
+		}
+
+		public Object getSource() {
+			return source;
+		}
+
+		public long getOffset() {
+			return offset;
+		}
+
+		public int getLength() {
+			return length;
+		}
+	}
+}
@@ -21,12 +21,14 @@ package bubo.io.data.encoded;
 
 import boofcv.io.image.ConvertBufferedImage;
 import boofcv.struct.image.GrayU8;
+import boofcv.struct.image.ImageBase;
+import bubo.io.ByteBufferInputStream;
 import bubo.io.data.ImageEncoded;
 
 import javax.imageio.ImageIO;
 import java.awt.image.BufferedImage;
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 
 /**
@@ -45,6 +47,17 @@ public class ImageJpeg implements ImageEncoded {
 		this.length = length;
 	}
 
+	/**
+	 * Changes the encoded image
+	 *
+	 * @param data   Array containing the JPEG.  Can be larger than the JPEG.
+	 * @param length Number of bytes in the JPEG
+	 */
+	public void setData(byte[] data, int length) {
+		this.data = data;
+		this.length = length;
+	}
+
 	@Override
 	public byte[] getData() {
 		return data;
@@ -62,16 +75,29 @@ public class ImageJpeg implements ImageEncoded {
 
 	@Override
 	public <T extends boofcv.struct.image.ImageBase> T convertToImage() {
-		BufferedImage buffImg = convertToBuffered();
-		return (T) ConvertBufferedImage.convertFromSingle(buffImg, null, imageType);
+		return convertToImage(convertToBuffered(), imageType);
 	}
 
 	@Override
 	public BufferedImage convertToBuffered() {
+		return decode(ByteBuffer.wrap(data, 0, length));
+	}
+
+	/**
+	 * Decompresses the JPEG stored between the buffer's position and limit.  The buffer isn't modified.
+	 */
+	public static BufferedImage decode(ByteBuffer jpeg) {
 		try {
-			return ImageIO.read(new ByteArrayInputStream(data));
+			return ImageIO.read(new ByteBufferInputStream(jpeg.duplicate()));
 		} catch (IOException e) {
 			throw new RuntimeException(e);
 		}
 	}
+
+	/**
+	 * Converts a decompressed JPEG into an image of the specified type
+	 */
+	public static <T extends ImageBase> T convertToImage(BufferedImage image, Class imageType) {
+		return (T) ConvertBufferedImage.convertFromSingle(image, null, imageType);
+	}
 }
@@ -0,0 +1,131 @@
+/*
+ * Copyright (c) 2013-2014, Peter Abeles. All Rights Reserved.
+ *
+ * This file is part of Project BUBO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package bubo.io.data.encoded;
+
+
+import boofcv.struct.image.GrayU8;
+import bubo.io.data.ImageEncoded;
+
+import java.awt.image.BufferedImage;
+import java.nio.ByteBuffer;
+
+
+/**
+ * JPEG image which references its encoded data inside the buffer it was decoded from, e.g. a memory mapped log
+ * file, instead of copying it.  The data is only copied into an array if {@link #getData()} is called and the
+ * image is only decompressed when it is converted.  Decompressed images can optionally be stored in a
+ * {@link DecodedImageCache}.
+ *
+ * @author Peter Abeles
+ */
+public class ImageJpegLazy implements ImageEncoded {
+
+	Class imageType = GrayU8.class;
+
+	// view of the encoded data inside the source.  Position is the start of the data and limit its end
+	ByteBuffer source;
+	// copy of the data.  null until requested
+	byte[] data;
+
+	// if not null then decoded images are stored here
+	DecodedImageCache cache;
+	// identifies the image in the cache
+	Object key;
+
+	/**
+	 * @param source View of the encoded data.  The data from its position to its limit is referenced.
+	 * @param key    Identifies the data in the cache, e.g. a {@link DecodedImageCache.Key}.  If null then this
+	 *               instance is used, and other instances referencing the same data won't share its decoded image.
+	 * @param cache  Cache for decoded images.  Can be null.
+	 */
+	public ImageJpegLazy(ByteBuffer source, Object key, DecodedImageCache cache) {
+		this.source = source.slice();
+		this.key = key == null ? this : key;
+		this.cache = cache;
+	}
+
+	public ImageJpegLazy(ByteBuffer source, DecodedImageCache cache) {
+		this(source, null, cache);
+	}
+
+	/**
+	 * Returns a copy of the encoded data.  The copy is created the first time this is called.
+	 */
+	@Override
+	public synchronized byte[] getData() {
+		if (data == null) {
+			data = new byte[source.capacity()];
+			ByteBuffer view = source.duplicate();
+			view.clear();
+			view.get(data);
+		}
+		return data;
+	}
+
+	@Override
+	public int getDataSize() {
+		return source.capacity();
+	}
+
+	@Override
+	public String getFormat() {
+		return "JPEG";
+	}
+
+	/**
+	 * Returns true if the encoded data has been copied into an array
+	 */
+	public synchronized boolean isMaterialized() {
+		return data != null;
+	}
+
+	@Override
+	public <T extends boofcv.struct.image.ImageBase> T convertToImage() {
+		return ImageJpeg.convertToImage(convertToBuffered(), imageType);
+	}
+
+	@Override
+	public BufferedImage convertToBuffered() {
+		if (cache != null) {
+			BufferedImage found = cache.get(key);
+			if (found != null)
+				return found;
+		}
+
+		ByteBuffer view = source.duplicate();
+		view.clear();
+		BufferedImage image = ImageJpeg.decode(view);
+
+		if (cache != null && image != null)
+			cache.put(key, image);
+		return image;
+	}
+
+	public DecodedImageCache getCache() {
+		return cache;
+	}
+
+	public void setCache(DecodedImageCache cache) {
+		this.cache = cache;
+	}
+
+	public Object getKey() {
+		return key;
+	}
+}
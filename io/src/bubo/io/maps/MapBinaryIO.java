@@ -0,0 +1,526 @@
+/*
+ * Copyright (c) 2013-2014, Peter Abeles. All Rights Reserved.
+ *
+ * This file is part of Project BUBO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package bubo.io.maps;
+
+import bubo.construct.ConstructOctreeLeaf_I32;
+import bubo.construct.Octree_I32;
+import bubo.maps.d2.grid.OccupancyGrid2D_F32;
+import bubo.maps.d2.grid.impl.ArrayGrid2D_F32;
+import bubo.maps.d3.grid.impl.MapLeaf;
+import bubo.maps.d3.grid.impl.OctreeGridMap_F64;
+import org.ddogleg.struct.GrowQueue_F64;
+import org.ddogleg.struct.GrowQueue_I8;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * <p>
+ * Versioned binary format for occupancy grid maps.  All values are little endian.  Every file starts with a header
+ * composed of the magic number {@link #MAGIC}, the format {@link #VERSION}, and the type of map.
+ * </p>
+ *
+ * <p>
+ * {@link OccupancyGrid2D_F32} maps are split into square tiles, which are saved in row major order.  Each tile is
+ * saved as one of the following: unknown (every cell is 0.5), constant (every cell has the same value), or
+ * the cell values compressed using deflate.
+ * </p>
+ *
+ * <p>
+ * {@link OctreeGridMap_F64} maps are saved as a depth-first traversal of the octree's nodes.  Only nodes which
+ * contain a known cell are saved.  For each node a byte is saved indicating which of its children are saved, and
+ * a value of zero indicates that it is a leaf.  The value of each leaf is saved, in the same order, after all
+ * the nodes.  Collapsed leafs are preserved.
+ * </p>
+ *
+ * <p>
+ * Maps can be read from a stream or from a memory mapped file.  Data is read in blocks and never one
+ * byte at a time.  Not thread safe.
+ * </p>
+ *
+ * @author Peter Abeles
+ */
+public class MapBinaryIO {
+	/**
+	 * Identifies the file as a map.  Spells "BUBM" when saved.
+	 */
+	public static final int MAGIC = 0x4D425542;
+	/**
+	 * Version of the format which is written
+	 */
+	public static final int VERSION = 1;
+
+	public static final int TYPE_GRID2D_F32 = 1;
+	public static final int TYPE_OCTREE_F64 = 2;
+
+	// types of tiles in a 2D grid
+	private static final int TILE_UNKNOWN = 0;
+	private static final int TILE_CONSTANT = 1;
+	private static final int TILE_DEFLATE = 2;
+
+	// number of bytes in the header
+	private static final int HEADER_BYTES = 12;
+
+	// width of a tile in a 2D grid
+	private int tileWidth = 64;
+
+	// work space for encoding and decoding
+	private ByteBuffer work = allocate(1024);
+	private byte compressed[] = new byte[1024];
+	private Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+	private Inflater inflater = new Inflater();
+	private GrowQueue_I8 masks = new GrowQueue_I8();
+	private GrowQueue_F64 values = new GrowQueue_F64();
+
+	/**
+	 * Specifies the width of tiles in 2D grids.
+	 */
+	public void setTileWidth(int tileWidth) {
+		if (tileWidth <= 0)
+			throw new IllegalArgumentException("tileWidth must be more than zero");
+		this.tileWidth = tileWidth;
+	}
+
+	public int getTileWidth() {
+		return tileWidth;
+	}
+
+	/**
+	 * Saves a 2D grid map.
+	 */
+	public void save(OccupancyGrid2D_F32 map, OutputStream out) throws IOException {
+		int width = map.getWidth();
+		int height = map.getHeight();
+
+		ByteBuffer b = declareWork(HEADER_BYTES + 12);
+		writeHeader(b, TYPE_GRID2D_F32);
+		b.putInt(width);
+		b.putInt(height);
+		b.putInt(tileWidth);
+		out.write(b.array(), 0, b.position());
+
+		for (int y0 = 0; y0 < height; y0 += tileWidth) {
+			int y1 = Math.min(height, y0 + tileWidth);
+			for (int x0 = 0; x0 < width; x0 += tileWidth) {
+				int x1 = Math.min(width, x0 + tileWidth);
+				saveTile(map, x0, y0, x1, y1, out);
+			}
+		}
+	}
+
+	private void saveTile(OccupancyGrid2D_F32 map, int x0, int y0, int x1, int y1, OutputStream out)
+			throws IOException {
+		int N = (x1 - x0) * (y1 - y0);
+
+		// 5 extra bytes are needed for the tile's type and size
+		ByteBuffer b = declareWork(N * 4 + 5);
+		b.position(5);
+		float first = map.get(x0, y0);
+		boolean constant = true;
+		for (int y = y0; y < y1; y++) {
+			for (int x = x0; x < x1; x++) {
+				float v = map.get(x, y);
+				constant &= Float.floatToIntBits(v) == Float.floatToIntBits(first);
+				b.putFloat(v);
+			}
+		}
+
+		if (constant) {
+			b.clear();
+			if (first == 0.5f) {
+				b.put((byte) TILE_UNKNOWN);
+			} else {
+				b.put((byte) TILE_CONSTANT);
+				b.putFloat(first);
+			}
+			out.write(b.array(), 0, b.position());
+			return;
+		}
+
+		deflater.reset();
+		deflater.setInput(b.array(), 5, N * 4);
+		deflater.finish();
+		int length = 0;
+		while (!deflater.finished()) {
+			if (length == compressed.length) {
+				byte tmp[] = new byte[compressed.length * 2];
+				System.arraycopy(compressed, 0, tmp, 0, length);
+				compressed = tmp;
+			}
+			length += deflater.deflate(compressed, length, compressed.length - length);
+		}
+
+		b.clear();
+		b.put((byte) TILE_DEFLATE);
+		b.putInt(length);
+		out.write(b.array(), 0, 5);
+		out.write(compressed, 0, length);
+	}
+
+	/**
+	 * Saves a 3D octree map.
+	 */
+	public void save(OctreeGridMap_F64 map, OutputStream out) throws IOException {
+		masks.reset();
+		values.reset();
+		encode(map.getConstruct().getTree());
+
+		ByteBuffer b = declareWork(HEADER_BYTES + 28);
+		writeHeader(b, TYPE_OCTREE_F64);
+		b.putInt(map.getSizeX());
+		b.putInt(map.getSizeY());
+		b.putInt(map.getSizeZ());
+		b.putDouble(map.getDefaultValue());
+		b.putInt(masks.size);
+		out.write(b.array(), 0, b.position());
+		out.write(masks.data, 0, masks.size);
+
+		b = declareWork(values.size * 8);
+		b.asDoubleBuffer().put(values.data, 0, values.size);
+		out.write(b.array(), 0, values.size * 8);
+	}
+
+	/**
+	 * Adds the node and all its descendants which contain known cells to the bit stream
+	 *
+	 * @return true if the node contains a known cell
+	 */
+	private boolean encode(Octree_I32 node) {
+		if (node.isLeaf()) {
+			if (node.userData == null)
+				return false;
+			masks.add((byte) 0);
+			values.add(((MapLeaf) node.userData).probability);
+			return true;
+		}
+
+		// placeholder for the child mask
+		int index = masks.size;
+		masks.add((byte) 0);
+
+		int mask = 0;
+		for (int i = 0; i < 8; i++) {
+			Octree_I32 child = node.children[i];
+			if (child != null && encode(child))
+				mask |= 1 << i;
+		}
+
+		if (mask == 0) {
+			// none of the children added anything
+			masks.size = index;
+			return false;
+		}
+		masks.data[index] = (byte) mask;
+		return true;
+	}
+
+	/**
+	 * Reads a 2D grid map from the stream.
+	 */
+	public ArrayGrid2D_F32 loadGrid2D(InputStream in) throws IOException {
+		return loadGrid2D(new StreamSource(in));
+	}
+
+	/**
+	 * Reads a 2D grid map from a memory mapped file.
+	 */
+	public ArrayGrid2D_F32 loadGrid2D(File file) throws IOException {
+		FileInputStream in = new FileInputStream(file);
+		try {
+			return loadGrid2D(new BufferSource(map(in)));
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Reads an octree map from the stream.
+	 */
+	public OctreeGridMap_F64 loadOctree(InputStream in) throws IOException {
+		return loadOctree(new StreamSource(in));
+	}
+
+	/**
+	 * Reads an octree map from a memory mapped file.
+	 */
+	public OctreeGridMap_F64 loadOctree(File file) throws IOException {
+		FileInputStream in = new FileInputStream(file);
+		try {
+			return loadOctree(new BufferSource(map(in)));
+		} finally {
+			in.close();
+		}
+	}
+
+	private static ByteBuffer map(FileInputStream in) throws IOException {
+		FileChannel channel = in.getChannel();
+		return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+	}
+
+	private ArrayGrid2D_F32 loadGrid2D(Source source) throws IOException {
+		readHeader(source, TYPE_GRID2D_F32);
+		ByteBuffer b = source.read(12);
+		int width = b.getInt();
+		int height = b.getInt();
+		int tileWidth = b.getInt();
+		if (width < 0 || height < 0 || tileWidth <= 0)
+			throw new IOException("Invalid map shape");
+
+		ArrayGrid2D_F32 map = new ArrayGrid2D_F32(width, height);
+		float tile[] = new float[tileWidth * tileWidth];
+
+		for (int y0 = 0; y0 < height; y0 += tileWidth) {
+			int y1 = Math.min(height, y0 + tileWidth);
+			for (int x0 = 0; x0 < width; x0 += tileWidth) {
+				int x1 = Math.min(width, x0 + tileWidth);
+				int N = (x1 - x0) * (y1 - y0);
+
+				int type = source.read(1).get();
+				if (type == TILE_UNKNOWN) {
+					fill(tile, N, 0.5f);
+				} else if (type == TILE_CONSTANT) {
+					fill(tile, N, source.read(4).getFloat());
+				} else if (type == TILE_DEFLATE) {
+					int length = source.read(4).getInt();
+					inflate(source.read(length), length, N).asFloatBuffer().get(tile, 0, N);
+				} else {
+					throw new IOException("Unknown tile type " + type);
+				}
+
+				int index = 0;
+				for (int y = y0; y < y1; y++) {
+					for (int x = x0; x < x1; x++) {
+						map.set(x, y, tile[index++]);
+					}
+				}
+			}
+		}
+
+		return map;
+	}
+
+	private static void fill(float tile[], int N, float value) {
+		for (int i = 0; i < N; i++) {
+			tile[i] = value;
+		}
+	}
+
+	/**
+	 * Decompresses a tile.  The returned buffer contains the tile's floats.
+	 */
+	private ByteBuffer inflate(ByteBuffer src, int length, int N) throws IOException {
+		if (compressed.length < length)
+			compressed = new byte[length];
+		src.get(compressed, 0, length);
+
+		ByteBuffer b = declareWork(N * 4);
+		inflater.reset();
+		inflater.setInput(compressed, 0, length);
+		try {
+			int total = 0;
+			while (total < N * 4 && !inflater.finished()) {
+				int found = inflater.inflate(b.array(), total, N * 4 - total);
+				if (found == 0 && inflater.needsInput())
+					break;
+				total += found;
+			}
+			if (total != N * 4)
+				throw new IOException("Tile is truncated");
+		} catch (DataFormatException e) {
+			throw new IOException(e);
+		}
+		return b;
+	}
+
+	private OctreeGridMap_F64 loadOctree(Source source) throws IOException {
+		readHeader(source, TYPE_OCTREE_F64);
+		ByteBuffer b = source.read(24);
+		int sizeX = b.getInt();
+		int sizeY = b.getInt();
+		int sizeZ = b.getInt();
+		double defaultValue = b.getDouble();
+		int numMasks = b.getInt();
+		if (sizeX < 0 || sizeY < 0 || sizeZ < 0 || numMasks < 0)
+			throw new IOException("Invalid map shape");
+
+		OctreeGridMap_F64 map = new OctreeGridMap_F64(sizeX, sizeY, sizeZ);
+		map.setDefaultValue(defaultValue);
+
+		masks.resize(numMasks);
+		source.read(numMasks).get(masks.data, 0, numMasks);
+
+		// the number of leafs is the number of zeros in the mask
+		int numLeafs = 0;
+		for (int i = 0; i < numMasks; i++) {
+			if (masks.data[i] == 0)
+				numLeafs++;
+		}
+		values.resize(numLeafs);
+		source.read(numLeafs * 8).asDoubleBuffer().get(values.data, 0, numLeafs);
+
+		if (numMasks > 0) {
+			Cursor cursor = new Cursor();
+			decode(map, map.getConstruct().getTree(), cursor);
+			if (cursor.mask != numMasks)
+				throw new IOException("Unexpected number of nodes");
+		}
+
+		return map;
+	}
+
+	/**
+	 * Recreates the node and its descendants from the bit stream
+	 */
+	private void decode(OctreeGridMap_F64 map, Octree_I32 node, Cursor cursor) throws IOException {
+		if (cursor.mask >= masks.size)
+			throw new IOException("Octree bit stream is truncated");
+
+		int mask = masks.data[cursor.mask++] & 0xFF;
+		if (mask == 0) {
+			map.setLeaf(node, values.data[cursor.value++]);
+			return;
+		}
+
+		ConstructOctreeLeaf_I32 construct = map.getConstruct();
+		for (int i = 0; i < 8; i++) {
+			if ((mask & (1 << i)) == 0)
+				continue;
+			Octree_I32 child = construct.addChild(node, i);
+			if (child == null)
+				throw new IOException("Child doesn't occupy a valid space");
+			decode(map, child, cursor);
+		}
+	}
+
+	private void writeHeader(ByteBuffer b, int type) {
+		b.putInt(MAGIC);
+		b.putInt(VERSION);
+		b.putInt(type);
+	}
+
+	private void readHeader(Source source, int expectedType) throws IOException {
+		ByteBuffer b = source.read(HEADER_BYTES);
+		if (b.getInt() != MAGIC)
+			throw new IOException("Not a map file");
+		int version = b.getInt();
+		if (version > VERSION)
+			throw new IOException("Unsupported version " + version);
+		int type = b.getInt();
+		if (type != expectedType)
+			throw new IOException("Unexpected map type " + type);
+	}
+
+	/**
+	 * Returns the work buffer after making sure it can hold the specified number of bytes
+	 */
+	private ByteBuffer declareWork(int length) {
+		if (work.capacity() < length)
+			work = allocate(Math.max(length, work.capacity() * 2));
+		work.clear();
+		return work;
+	}
+
+	private static ByteBuffer allocate(int length) {
+		ByteBuffer b = ByteBuffer.allocate(length);
+		b.order(ByteOrder.LITTLE_ENDIAN);
+		return b;
+	}
+
+	/**
+	 * Location in the octree bit stream
+	 */
+	private static class Cursor {
+		int mask;
+		int value;
+	}
+
+	/**
+	 * Provides blocks of data
+	 */
+	private interface Source {
+		/**
+		 * Returns a buffer with the next 'length' bytes starting at its position.  Only valid until the next call.
+		 */
+		ByteBuffer read(int length) throws IOException;
+	}
+
+	/**
+	 * Reads blocks from a stream into a reusable buffer
+	 */
+	private static class StreamSource implements Source {
+		InputStream in;
+		ByteBuffer buffer = allocate(1024);
+
+		StreamSource(InputStream in) {
+			this.in = in;
+		}
+
+		@Override
+		public ByteBuffer read(int length) throws IOException {
+			if (buffer.capacity() < length)
+				buffer = allocate(Math.max(length, buffer.capacity() * 2));
+
+			byte data[] = buffer.array();
+			int total = 0;
+			while (total < length) {
+				int found = in.read(data, total, length - total);
+				if (found < 0)
+					throw new EOFException();
+				total += found;
+			}
+			buffer.clear();
+			buffer.limit(length);
+			return buffer;
+		}
+	}
+
+	/**
+	 * Reads blocks directly from a buffer, e.g. a memory mapped file
+	 */
+	private static class BufferSource implements Source {
+		ByteBuffer buffer;
+
+		BufferSource(ByteBuffer buffer) {
+			this.buffer = buffer;
+		}
+
+		@Override
+		public ByteBuffer read(int length) throws IOException {
+			if (buffer.remaining() < length)
+				throw new EOFException();
+
+			ByteBuffer b = buffer.slice();
+			b.order(ByteOrder.LITTLE_ENDIAN);
+			b.limit(length);
+			buffer.position(buffer.position() + length);
+			return b;
+		}
+	}
+}
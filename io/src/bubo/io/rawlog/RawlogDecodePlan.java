@@ -0,0 +1,256 @@
+/*
+ * Copyright (c) 2013-2014, Peter Abeles. All Rights Reserved.
+ *
+ * This file is part of Project BUBO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package bubo.io.rawlog;
+
+import bubo.io.UtilReflections;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Describes how to decode a specific version of a {@link RawlogSerializable} class.  The constructor and, for
+ * {@link RawlogSerializableStandard} classes, the setter and type of each variable are found once using
+ * reflections and then cached.  Plans are immutable and shared between all decoders and threads.
+ *
+ * @author Peter Abeles
+ */
+public class RawlogDecodePlan {
+
+	// how each variable is read
+	public static final int TYPE_STRING = 0;
+	public static final int TYPE_BYTE = 1;
+	public static final int TYPE_INT = 2;
+	public static final int TYPE_LONG = 3;
+	public static final int TYPE_FLOAT = 4;
+	public static final int TYPE_DOUBLE = 5;
+	public static final int TYPE_BOOLEAN = 6;
+	public static final int TYPE_BYTE_ARRAY = 7;
+	public static final int TYPE_BOOLEAN_ARRAY = 8;
+	public static final int TYPE_FLOAT_ARRAY = 9;
+	public static final int TYPE_DOUBLE_ARRAY = 10;
+	public static final int TYPE_OBJECT = 11;
+
+	// plans which have already been created
+	private static final ConcurrentHashMap<Key, RawlogDecodePlan> cache =
+			new ConcurrentHashMap<Key, RawlogDecodePlan>();
+
+	// the class and version this plan decodes
+	final Class<?> type;
+	final int version;
+	// true for RawlogSerializableStandard and false for RawlogSerializableCustom
+	final boolean standard;
+
+	final Constructor<?> constructor;
+
+	// name, getter, setter, and type of each variable in a standard class, in the order they are encoded
+	final String[] varNames;
+	final Method[] getters;
+	final Method[] setters;
+	final int[] varTypes;
+	final Class<?>[] varClasses;
+
+	/**
+	 * Returns the plan for the class and version.  The plan is created if it doesn't already exist.
+	 */
+	public static RawlogDecodePlan lookup(Class<?> type, int version) {
+		Key key = new Key(type, version);
+		RawlogDecodePlan plan = cache.get(key);
+		if (plan == null) {
+			plan = new RawlogDecodePlan(type, version);
+			RawlogDecodePlan previous = cache.putIfAbsent(key, plan);
+			if (previous != null)
+				plan = previous;
+		}
+		return plan;
+	}
+
+	private RawlogDecodePlan(Class<?> type, int version) {
+		this.type = type;
+		this.version = version;
+
+		try {
+			constructor = type.getConstructor();
+		} catch (NoSuchMethodException e) {
+			throw new RuntimeException("No default constructor for " + type.getName());
+		}
+
+		if (RawlogSerializableStandard.class.isAssignableFrom(type)) {
+			standard = true;
+		} else if (RawlogSerializableCustom.class.isAssignableFrom(type)) {
+			standard = false;
+		} else {
+			throw new RuntimeException("Not a serializable class! " + type.getName());
+		}
+
+		if (!standard) {
+			varNames = null;
+			getters = null;
+			setters = null;
+			varTypes = null;
+			varClasses = null;
+			return;
+		}
+
+		varNames = ((RawlogSerializableStandard) newInstance()).getVariableOrder(version);
+		getters = new Method[varNames.length];
+		setters = new Method[varNames.length];
+		varTypes = new int[varNames.length];
+		varClasses = new Class<?>[varNames.length];
+
+		for (int i = 0; i < varNames.length; i++) {
+			Method mGet = UtilReflections.findGetter(type, varNames[i]);
+			Method mSet = UtilReflections.findSetter(type, varNames[i]);
+
+			if (mGet == null)
+				throw new RuntimeException("A getter could not be found for " + varNames[i]);
+			else if (mSet == null)
+				throw new RuntimeException("A setter could not be found for " + varNames[i]);
+
+			// get the variable type from the get return type
+			getters[i] = mGet;
+			setters[i] = mSet;
+			varClasses[i] = mGet.getReturnType();
+			varTypes[i] = typeCode(varClasses[i]);
+		}
+	}
+
+	private static int typeCode(Class<?> varType) {
+		if (varType == String.class)
+			return TYPE_STRING;
+		else if (varType == byte.class)
+			return TYPE_BYTE;
+		else if (varType == int.class)
+			return TYPE_INT;
+		else if (varType == long.class)
+			return TYPE_LONG;
+		else if (varType == float.class)
+			return TYPE_FLOAT;
+		else if (varType == double.class)
+			return TYPE_DOUBLE;
+		else if (varType == boolean.class)
+			return TYPE_BOOLEAN;
+		else if (varType == byte[].class)
+			return TYPE_BYTE_ARRAY;
+		else if (varType == boolean[].class)
+			return TYPE_BOOLEAN_ARRAY;
+		else if (varType == float[].class)
+			return TYPE_FLOAT_ARRAY;
+		else if (varType == double[].class)
+			return TYPE_DOUBLE_ARRAY;
+		else
+			// must be a more complex type
+			return TYPE_OBJECT;
+	}
+
+	/**
+	 * Creates a new instance of the class
+	 */
+	public Object newInstance() {
+		try {
+			return constructor.newInstance();
+		} catch (InstantiationException e) {
+			throw new RuntimeException(e);
+		} catch (IllegalAccessException e) {
+			throw new RuntimeException(e);
+		} catch (InvocationTargetException e) {
+			throw new RuntimeException(e.getCause());
+		}
+	}
+
+	/**
+	 * Assigns the value of a variable in a standard class
+	 *
+	 * @param target Object being decoded
+	 * @param index Index of the variable
+	 * @param value The variable's value
+	 */
+	public void set(Object target, int index, Object value) {
+		try {
+			setters[index].invoke(target, value);
+		} catch (IllegalAccessException e) {
+			throw new RuntimeException("Failed to invoke " + setters[index].getName(), e);
+		} catch (InvocationTargetException e) {
+			throw new RuntimeException("Failed to invoke " + setters[index].getName(), e);
+		}
+	}
+
+	/**
+	 * Returns the current value of a variable in a standard class
+	 *
+	 * @param target Object being decoded
+	 * @param index Index of the variable
+	 */
+	public Object get(Object target, int index) {
+		try {
+			return getters[index].invoke(target);
+		} catch (IllegalAccessException e) {
+			throw new RuntimeException("Failed to invoke " + getters[index].getName(), e);
+		} catch (InvocationTargetException e) {
+			throw new RuntimeException("Failed to invoke " + getters[index].getName(), e);
+		}
+	}
+
+	public Class<?> getType() {
+		return type;
+	}
+
+	public int getVersion() {
+		return version;
+	}
+
+	public boolean isStandard() {
+		return standard;
+	}
+
+	/**
+	 * Number of variables in a standard class
+	 */
+	public int getNumberOfVariables() {
+		return varNames == null ? 0 : varNames.length;
+	}
+
+	/**
+	 * Key used to look up plans
+	 */
+	private static class Key {
+		Class<?> type;
+		int version;
+
+		Key(Class<?> type, int version) {
+			this.type = type;
+			this.version = version;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof Key))
+				return false;
+			Key k = (Key) o;
+			return type == k.type && version == k.version;
+		}
+
+		@Override
+		public int hashCode() {
+			return type.hashCode() * 31 + version;
+		}
+	}
+}
@@ -18,17 +18,42 @@
 
 package bubo.io.rawlog;
 
+import bubo.io.ByteBufferInputStream;
 import bubo.io.LittleEndianIO;
-import bubo.io.UtilReflections;
+import bubo.io.data.encoded.DecodedImageCache;
 
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
 /**
  * Reads a rawlog (http://www.mrpt.org/) data stream and generates objects from the serialized data.   Note that
  * rawlog uses little endian format, so special functions are provided for reading in all primitive variables.
+ * If the data is in memory, e.g. a memory mapped file, then it can be decoded directly from a {@link ByteBuffer}
+ * and arrays are read in bulk.  The class of each object is looked up once and cached by its encoded name, and
+ * how it is decoded is described by a cached {@link RawlogDecodePlan}.
+ * <p>
+ * To avoid creating garbage, objects can be decoded into existing instances.  An instance is passed to
+ * {@link #decode(RawlogSerializable)} and if it's the same class as the next object it is reused, along with the
+ * objects and arrays it references when their size doesn't change.  If a {@link RawlogObjectPool} is specified then
+ * new instances are taken from it when available.
+ * </p>
+ * <p>
+ * When decoding from a buffer, large payloads such as encoded images can be read lazily.  Instead of being copied
+ * they reference the region of the buffer they are stored in, see {@link #readLazyBytes(int)}.  This should only be
+ * turned on if the buffer's contents won't change, e.g. a read only memory mapped file.
+ * </p>
+ * <p>
+ * Objects of unwanted types can be skipped with {@link #decodeObject(RawlogSerializable, List)}.  The type is known
+ * once the class name has been read.  Fields of classes with standard decoding are then stepped over without
+ * being stored.  Classes with custom decoding can only be parsed by their own code, so they are decoded into an
+ * instance which is reused each time that class is skipped.
+ * </p>
  *
  * @author Peter Abeles
  */
@@ -40,8 +65,37 @@ public class RawlogDecoder {
 	// class path for where Rawlog data classes are stored
 	public static final String RAWLOG_OBJECT_PATH = "bubo.io.rawlog.data.";
 
+	// maximum number of characters in a class name
+	private static final int MAX_NAME_LENGTH = 120;
+
+	// rejects every type.  Used to skip objects referenced by skipped objects
+	private static final List<Class<?>> SKIP_ALL = Collections.emptyList();
+
 	// reference to input stream that is being parsed
 	private InputStream in;
+	// if not null then data is read directly from this buffer, which 'in' also reads from
+	private ByteBuffer buffer;
+
+	// classes which have already been looked up
+	private List<ClassEntry> classCache = new ArrayList<ClassEntry>();
+	// storage for the name of the class being decoded
+	private byte[] nameBuffer = new byte[MAX_NAME_LENGTH];
+
+	// if not null then new instances are taken from the pool when possible
+	private RawlogObjectPool pool;
+
+	// storage for bytes before they are converted into other types
+	private byte[] work = new byte[0];
+
+	// if true then large payloads reference the buffer instead of being copied
+	private boolean lazyPayloads;
+	// cache which lazy images store decoded images in.  Can be null
+	private DecodedImageCache imageCache;
+	// identifies the data in the buffer and the location of the buffer's start inside it.  Source can be null
+	private Object source;
+	private long sourceOffset;
+	// identifies the payload last returned by readLazyBytes()
+	private DecodedImageCache.Key lazyKey;
 
 	/**
 	 * Creates a new rawlog decoder
@@ -53,6 +107,46 @@ public class RawlogDecoder {
 		this.in = in;
 	}
 
+	/**
+	 * Creates a new rawlog decoder which reads directly from a buffer
+	 *
+	 * @param buffer Buffer that contains binary rawlog objects, starting at its position.  Its byte order is
+	 *               changed to little endian.
+	 */
+	public RawlogDecoder(ByteBuffer buffer) {
+		setInput(buffer);
+	}
+
+	/**
+	 * Changes the buffer which objects are decoded from.  Previously looked up classes are remembered.
+	 *
+	 * @param buffer Buffer that contains binary rawlog objects, starting at its position.  Its byte order is
+	 *               changed to little endian.
+	 */
+	public void setInput(ByteBuffer buffer) {
+		setInput(buffer, null, 0);
+	}
+
+	/**
+	 * Changes the buffer which objects are decoded from and specifies where the buffer's data came from.  This
+	 * allows lazy payloads read from the same location to be identified, see {@link #getLazyKey()}.
+	 *
+	 * @param buffer Buffer that contains binary rawlog objects, starting at its position.  Its byte order is
+	 *               changed to little endian.
+	 * @param source Identifies where the data came from, e.g. the file's name.  Can be null.
+	 * @param sourceOffset Location inside the source of index 0 in the buffer
+	 */
+	public void setInput(ByteBuffer buffer, Object source, long sourceOffset) {
+		buffer.order(ByteOrder.LITTLE_ENDIAN);
+		this.buffer = buffer;
+		this.source = source;
+		this.sourceOffset = sourceOffset;
+		if (in instanceof ByteBufferInputStream)
+			((ByteBufferInputStream) in).setBuffer(buffer);
+		else
+			in = new ByteBufferInputStream(buffer);
+	}
+
 	/**
 	 * Extracts the next object from the data stream.
 	 *
@@ -61,11 +155,47 @@ public class RawlogDecoder {
 	 */
 	public <T extends RawlogSerializable> T decode() throws IOException {
 		//noinspection unchecked
-		return (T) decodeObject();
+		return (T) decodeObject(null);
+	}
+
+	/**
+	 * Extracts the next object from the data stream and decodes it into the provided instance, if possible.
+	 *
+	 * @param target Instance which is reused if it's the same class as the next object.  Can be null.
+	 * @return The decoded object.  Either target or a new instance if the next object is a different type.
+	 * @throws IOException
+	 */
+	public <T extends RawlogSerializable> T decode(RawlogSerializable target) throws IOException {
+		//noinspection unchecked
+		return (T) decodeObject(target);
 	}
 
 	public RawlogSerializable decodeObject()
 			throws IOException {
+		return decodeObject(null);
+	}
+
+	/**
+	 * Decodes the next object.  Used by custom classes to decode the objects they reference.
+	 *
+	 * @param reuse Instance which is reused if it's the same class as the next object.  Can be null.
+	 * @return The decoded object
+	 */
+	public RawlogSerializable decodeObject(RawlogSerializable reuse)
+			throws IOException {
+		return decodeObject(reuse, null);
+	}
+
+	/**
+	 * Decodes the next object if it's an instance of one of the specified types.  Otherwise the object is skipped
+	 * over and null is returned.
+	 *
+	 * @param reuse Instance which is reused if it's the same class as the next object.  Can be null.
+	 * @param types Only objects which are instances of these types are decoded.  If null then all are decoded.
+	 * @return The decoded object or null if it was skipped
+	 */
+	public RawlogSerializable decodeObject(RawlogSerializable reuse, List<Class<?>> types)
+			throws IOException {
 
 		// read in the length of the serialized class
 		int nameLength = LittleEndianIO.readByte(in);
@@ -82,9 +212,7 @@ public class RawlogDecoder {
 			nameLength = nameLength & 0x7F;
 		}
 
-		String className = readClassName(nameLength);
-
-//        System.out.println("className "+className);
+		ClassEntry entry = lookupClass(nameLength);
 
 		// the version of the class
 		int version = LittleEndianIO.readByte(in);
@@ -96,10 +224,16 @@ public class RawlogDecoder {
 		}
 
 		if (VERBOSE) {
-			System.out.println(" decoded: class name = " + className + "  version " + version);
+			System.out.println(" decoded: class name = " + entry.className + "  version " + version);
 		}
 
-		RawlogSerializable ret = decode(className, version);
+		RawlogDecodePlan plan = lookupPlan(entry, version);
+
+		RawlogSerializable ret = null;
+		if (types == null || isInstance(types, plan.type))
+			ret = decode(plan, reuse);
+		else
+			skip(entry, plan);
 
 		if (!oldFileFormat) {
 			int a = LittleEndianIO.readByte(in);
@@ -111,125 +245,157 @@ public class RawlogDecoder {
 	}
 
 	public String readClassName(int nameLength) throws IOException {
-		if (nameLength > 120)
+		return lookupClass(nameLength).className;
+	}
+
+	/**
+	 * Reads the name of a class and returns its entry in the cache.  If it isn't in the cache then it is added.
+	 */
+	private ClassEntry lookupClass(int nameLength) throws IOException {
+		if (nameLength > MAX_NAME_LENGTH)
 			throw new RuntimeException("Name is more than 120 characters the stream is corrupt. length " + nameLength);
 
-		// read in the class' name
-		String className = "";
+		readBytes(nameBuffer, nameLength);
 
-		for (int i = 0; i < nameLength; i++) {
-			className += (char) LittleEndianIO.readByte(in);
+		for (int i = 0; i < classCache.size(); i++) {
+			ClassEntry e = classCache.get(i);
+			if (e.matches(nameBuffer, nameLength))
+				return e;
 		}
-		return className;
+
+		ClassEntry e = new ClassEntry(nameBuffer, nameLength);
+		classCache.add(e);
+		return e;
 	}
 
-	private RawlogSerializable decode(String name, int version) throws IOException {
-		Class targetClass;
+	/**
+	 * Returns the plan for decoding the specified version of the class.  The class is resolved the first time.
+	 */
+	private RawlogDecodePlan lookupPlan(ClassEntry entry, int version) {
+		RawlogDecodePlan plan = entry.plan;
+		if (plan == null || plan.version != version) {
+			if (entry.type == null) {
+				try {
+					entry.type = Class.forName(RAWLOG_OBJECT_PATH + entry.className);
+				} catch (ClassNotFoundException e) {
+					throw new RuntimeException("Can't find class " + entry.className);
+				}
+			}
+			entry.plan = plan = RawlogDecodePlan.lookup(entry.type, version);
+		}
+		return plan;
+	}
+
+	private static boolean isInstance(List<Class<?>> types, Class<?> type) {
+		for (int i = 0; i < types.size(); i++) {
+			if (types.get(i).isAssignableFrom(type))
+				return true;
+		}
+		return false;
+	}
 
-		try {
-			targetClass = Class.forName(RAWLOG_OBJECT_PATH + name);
-		} catch (ClassNotFoundException e) {
-			throw new RuntimeException("Can't find class " + name);
+	private RawlogSerializable decode(RawlogDecodePlan plan, RawlogSerializable reuse) throws IOException {
+		RawlogSerializable ret = reuse;
+		if (ret == null || ret.getClass() != plan.type) {
+			ret = pool == null ? null : (RawlogSerializable) pool.get(plan.type);
+			if (ret == null)
+				ret = (RawlogSerializable) plan.newInstance();
 		}
 
-		if (RawlogSerializableStandard.class.isAssignableFrom(targetClass))
-			return standardDecoding(version, targetClass);
-		else if (RawlogSerializableCustom.class.isAssignableFrom(targetClass))
-			return customDecoding(version, targetClass);
+		if (plan.standard)
+			standardDecoding(plan, (RawlogSerializableStandard) ret);
 		else
-			throw new RuntimeException("Not a serializable class! " + targetClass.getName());
+			((RawlogSerializableCustom) ret).customDecoding(plan.version, this);
 
+		return ret;
 	}
 
-	private RawlogSerializableStandard standardDecoding(int version, Class targetClass) throws IOException {
-		RawlogSerializableStandard ret;
-
-		try {
-			ret = (RawlogSerializableStandard) targetClass.newInstance();
-		} catch (InstantiationException e) {
-			throw new RuntimeException(e);
-		} catch (IllegalAccessException e) {
-			throw new RuntimeException(e);
+	/**
+	 * Reads past an object without creating it.  Custom classes are decoded into the entry's skip instance.
+	 */
+	private void skip(ClassEntry entry, RawlogDecodePlan plan) throws IOException {
+		if (!plan.standard) {
+			entry.skipped = decode(plan, entry.skipped);
+			return;
 		}
 
-		String[] rawlogVariables = ret.getVariableOrder(version);
-
-		for (String varName : rawlogVariables) {
-			if (VERBOSE)
-				System.out.println("  decoding variables: " + varName);
-			String methodName = "";
-			try {
-				Method mGet = UtilReflections.findGetter(targetClass, varName);
-				Method mSet = UtilReflections.findSetter(targetClass, varName);
-
-				if (mGet == null)
-					throw new RuntimeException("A getter could not be found for " + varName);
-				else if (mSet == null)
-					throw new RuntimeException("A setter could not be found for " + varName);
-
-				// get the variable type from the get return type
-				Class varType = mGet.getReturnType();
-
-				// pass in the parsed data to the class
-				mSet.invoke(ret, parseData(varType));
-
-			} catch (IllegalAccessException e) {
-				throw new RuntimeException("Failed to invoke " + methodName, e);
-			} catch (InvocationTargetException e) {
-				throw new RuntimeException("Failed to invoke " + methodName, e);
+		for (int i = 0; i < plan.varTypes.length; i++) {
+			switch (plan.varTypes[i]) {
+				case RawlogDecodePlan.TYPE_STRING:
+				case RawlogDecodePlan.TYPE_BYTE_ARRAY:
+				case RawlogDecodePlan.TYPE_BOOLEAN_ARRAY:
+					skipBytes(LittleEndianIO.readInt(in));
+					break;
+				case RawlogDecodePlan.TYPE_BYTE:
+				case RawlogDecodePlan.TYPE_BOOLEAN:
+					skipBytes(1);
+					break;
+				case RawlogDecodePlan.TYPE_INT:
+				case RawlogDecodePlan.TYPE_FLOAT:
+					skipBytes(4);
+					break;
+				case RawlogDecodePlan.TYPE_LONG:
+				case RawlogDecodePlan.TYPE_DOUBLE:
+					skipBytes(8);
+					break;
+				case RawlogDecodePlan.TYPE_FLOAT_ARRAY:
+					skipBytes(LittleEndianIO.readInt(in) * 4L);
+					break;
+				case RawlogDecodePlan.TYPE_DOUBLE_ARRAY:
+					skipBytes(LittleEndianIO.readInt(in) * 8L);
+					break;
+				default:
+					decodeObject(null, SKIP_ALL);
 			}
 		}
-
-		return ret;
 	}
 
-	private RawlogSerializableCustom customDecoding(int version, Class targetClass) throws IOException {
-		RawlogSerializableCustom ret;
-
-		try {
-			ret = (RawlogSerializableCustom) targetClass.newInstance();
-		} catch (InstantiationException e) {
-			throw new RuntimeException(e);
-		} catch (IllegalAccessException e) {
-			throw new RuntimeException(e);
-		}
+	private void standardDecoding(RawlogDecodePlan plan, RawlogSerializableStandard target) throws IOException {
+		for (int i = 0; i < plan.varTypes.length; i++) {
+			if (VERBOSE)
+				System.out.println("  decoding variables: " + plan.varNames[i]);
 
-		ret.customDecoding(version, this);
+			// arrays and objects the target already has can be reused
+			int type = plan.varTypes[i];
+			Object current = type >= RawlogDecodePlan.TYPE_BYTE_ARRAY ? plan.get(target, i) : null;
 
-		return ret;
+			// pass in the parsed data to the class
+			plan.set(target, i, parseData(type, plan.varClasses[i], current));
+		}
 	}
 
-	private Object parseData(Class<?> varType) throws IOException {
-		if (varType == String.class) {
-			return readString();
-		} else if (varType == byte.class) {
-			return (byte) LittleEndianIO.readByte(in);
-		} else if (varType == int.class) {
-			return LittleEndianIO.readInt(in);
-		} else if (varType == long.class) {
-			return LittleEndianIO.readLong(in);
-		} else if (varType == float.class) {
-			return LittleEndianIO.readFloat(in);
-		} else if (varType == double.class) {
-			return LittleEndianIO.readDouble(in);
-		} else if (varType == boolean.class) {
-			return LittleEndianIO.readBoolean(in);
-		} else if (varType == byte[].class) {
-			return readByteArray();
-		} else if (varType == boolean[].class) {
-			return readBooleanArray();
-		} else if (varType == float[].class) {
-			return readFloatArray();
-		} else if (varType == double[].class) {
-			return readDoubleArray();
-		} else {
-			// must be a more complex type
-			RawlogSerializable found = decodeObject();
-
-			if (found.getClass() != varType)
-				throw new RuntimeException("Decoded unexpected type");
-
-			return found;
+	private Object parseData(int type, Class<?> varType, Object current) throws IOException {
+		switch (type) {
+			case RawlogDecodePlan.TYPE_STRING:
+				return readString();
+			case RawlogDecodePlan.TYPE_BYTE:
+				return (byte) LittleEndianIO.readByte(in);
+			case RawlogDecodePlan.TYPE_INT:
+				return LittleEndianIO.readInt(in);
+			case RawlogDecodePlan.TYPE_LONG:
+				return LittleEndianIO.readLong(in);
+			case RawlogDecodePlan.TYPE_FLOAT:
+				return LittleEndianIO.readFloat(in);
+			case RawlogDecodePlan.TYPE_DOUBLE:
+				return LittleEndianIO.readDouble(in);
+			case RawlogDecodePlan.TYPE_BOOLEAN:
+				return LittleEndianIO.readBoolean(in);
+			case RawlogDecodePlan.TYPE_BYTE_ARRAY:
+				return readByteArray(LittleEndianIO.readInt(in), (byte[]) current);
+			case RawlogDecodePlan.TYPE_BOOLEAN_ARRAY:
+				return readBooleanArray(LittleEndianIO.readInt(in), (boolean[]) current);
+			case RawlogDecodePlan.TYPE_FLOAT_ARRAY:
+				return readFloatArray(LittleEndianIO.readInt(in), (float[]) current);
+			case RawlogDecodePlan.TYPE_DOUBLE_ARRAY:
+				return readDoubleArray(LittleEndianIO.readInt(in), (double[]) current);
+			default:
+				// must be a more complex type
+				RawlogSerializable found = decodeObject((RawlogSerializable) current);
+
+				if (found.getClass() != varType)
+					throw new RuntimeException("Decoded unexpected type");
+
+				return found;
 		}
 	}
 
@@ -241,11 +407,35 @@ public class RawlogDecoder {
 	}
 
 	public byte[] readByteArray(int length) throws IOException {
-		byte[] ret = new byte[length];
+		return readByteArray(length, null);
+	}
 
-		for (int i = 0; i < length; i++) {
-			ret[i] = (byte) LittleEndianIO.readByte(in);
-		}
+	/**
+	 * Reads an array of the specified length.
+	 *
+	 * @param storage Array which is reused if it has the same length.  Can be null.
+	 */
+	public byte[] readByteArray(int length, byte[] storage) throws IOException {
+		checkRemaining(length);
+		byte[] ret = storage != null && storage.length == length ? storage : new byte[length];
+
+		readBytes(ret, length);
+
+		return ret;
+	}
+
+	/**
+	 * Reads bytes into an array which can be larger than the number of bytes read.
+	 *
+	 * @param length  Number of bytes to read
+	 * @param storage Array which is reused if it's large enough.  Can be null.
+	 * @return Array containing the bytes starting at index 0
+	 */
+	public byte[] readBytes(int length, byte[] storage) throws IOException {
+		checkRemaining(length);
+		byte[] ret = storage != null && storage.length >= length ? storage : new byte[length];
+
+		readBytes(ret, length);
 
 		return ret;
 	}
@@ -258,10 +448,22 @@ public class RawlogDecoder {
 	}
 
 	public boolean[] readBooleanArray(int length) throws IOException {
-		boolean[] ret = new boolean[length];
+		return readBooleanArray(length, null);
+	}
+
+	/**
+	 * Reads an array of the specified length.
+	 *
+	 * @param storage Array which is reused if it has the same length.  Can be null.
+	 */
+	public boolean[] readBooleanArray(int length, boolean[] storage) throws IOException {
+		checkRemaining(length);
+		boolean[] ret = storage != null && storage.length == length ? storage : new boolean[length];
+
+		byte[] buff = readBytes(length);
 
 		for (int i = 0; i < length; i++) {
-			ret[i] = LittleEndianIO.readBoolean(in);
+			ret[i] = buff[i] != 0;
 		}
 
 		return ret;
@@ -275,7 +477,23 @@ public class RawlogDecoder {
 	}
 
 	public float[] readFloatArray(int length) throws IOException {
-		float[] ret = new float[length];
+		return readFloatArray(length, null);
+	}
+
+	/**
+	 * Reads an array of the specified length.
+	 *
+	 * @param storage Array which is reused if it has the same length.  Can be null.
+	 */
+	public float[] readFloatArray(int length, float[] storage) throws IOException {
+		checkRemaining(length * 4L);
+		float[] ret = storage != null && storage.length == length ? storage : new float[length];
+
+		if (buffer != null) {
+			buffer.asFloatBuffer().get(ret);
+			buffer.position(buffer.position() + length * 4);
+			return ret;
+		}
 
 		byte[] buff = readBytes(length * 4);
 
@@ -294,7 +512,23 @@ public class RawlogDecoder {
 	}
 
 	public double[] readDoubleArray(int length) throws IOException {
-		double[] ret = new double[length];
+		return readDoubleArray(length, null);
+	}
+
+	/**
+	 * Reads an array of the specified length.
+	 *
+	 * @param storage Array which is reused if it has the same length.  Can be null.
+	 */
+	public double[] readDoubleArray(int length, double[] storage) throws IOException {
+		checkRemaining(length * 8L);
+		double[] ret = storage != null && storage.length == length ? storage : new double[length];
+
+		if (buffer != null) {
+			buffer.asDoubleBuffer().get(ret);
+			buffer.position(buffer.position() + length * 8);
+			return ret;
+		}
 
 		byte[] buff = readBytes(length * 8);
 
@@ -319,21 +553,182 @@ public class RawlogDecoder {
 		return string.toString();
 	}
 
+	/**
+	 * Reads bytes into a work buffer which is only valid until the next read
+	 */
 	private byte[] readBytes(int length) throws IOException {
-		byte[] buff = new byte[length];
+		checkRemaining(length);
+		if (work.length < length)
+			work = new byte[length];
+
+		readBytes(work, length);
+
+		return work;
+	}
+
+	/**
+	 * Moves past the specified number of bytes without storing them
+	 */
+	private void skipBytes(long length) throws IOException {
+		if (length < 0)
+			throw new IOException("Negative length");
+		checkRemaining(length);
+		if (buffer != null) {
+			buffer.position(buffer.position() + (int) length);
+			return;
+		}
+
+		while (length > 0) {
+			int n = (int) Math.min(length, 64 * 1024);
+			readBytes(n);
+			length -= n;
+		}
+	}
+
+	/**
+	 * Skips over a payload and returns a view of it, if lazy payloads are enabled and a buffer is being decoded.
+	 * Otherwise nothing is read and null is returned, in which case the payload should be read normally.
+	 *
+	 * @param length Number of bytes in the payload
+	 * @return View of the payload, from position 0 to length, or null
+	 */
+	public ByteBuffer readLazyBytes(int length) throws IOException {
+		if (!lazyPayloads || buffer == null)
+			return null;
+		if (length < 0)
+			throw new IOException("Negative length");
+		checkRemaining(length);
+
+		int position = buffer.position();
+		lazyKey = source == null ? null : new DecodedImageCache.Key(source, sourceOffset + position, length);
+
+		ByteBuffer view = buffer.slice();
+		view.limit(length);
+		buffer.position(position + length);
+		return view;
+	}
+
+	/**
+	 * Identifies the payload most recently returned by {@link #readLazyBytes(int)} by its location in the source.
+	 * null if no source was specified with the buffer.
+	 */
+	public DecodedImageCache.Key getLazyKey() {
+		return lazyKey;
+	}
 
-		int ret = in.read(buff);
+	/**
+	 * Reads the specified number of bytes into the array
+	 */
+	private void readBytes(byte[] buff, int length) throws IOException {
+		if (buffer != null) {
+			checkRemaining(length);
+			buffer.get(buff, 0, length);
+			return;
+		}
+
+		int ret = 0;
 		while (ret < length) {
 			int a = in.read(buff, ret, length - ret);
 			if (a > 0)
 				ret += a;
+			else if (ret == 0)
+				throw new EOFException();
 			else
 				throw new RuntimeException("Expected EOF");
 		}
-		return buff;
+	}
+
+	/**
+	 * When decoding a buffer, makes sure there is enough data left before memory is declared for it.  This
+	 * prevents a corrupted length from declaring a huge array.
+	 */
+	private void checkRemaining(long length) throws EOFException {
+		if (buffer != null && buffer.remaining() < length)
+			throw new EOFException();
 	}
 
 	public InputStream getInput() {
 		return in;
 	}
+
+	/**
+	 * Specifies a pool which new instances are taken from.  Decoded objects are not added to the pool, that's
+	 * done by the user once they are done with an object.
+	 *
+	 * @param pool The pool or null to always create new instances
+	 */
+	public void setPool(RawlogObjectPool pool) {
+		this.pool = pool;
+	}
+
+	public RawlogObjectPool getPool() {
+		return pool;
+	}
+
+	/**
+	 * If true then large payloads reference the buffer being decoded instead of being copied.  Has no effect when
+	 * decoding a stream.
+	 */
+	public void setLazyPayloads(boolean lazyPayloads) {
+		this.lazyPayloads = lazyPayloads;
+	}
+
+	public boolean isLazyPayloads() {
+		return lazyPayloads;
+	}
+
+	/**
+	 * Cache which lazily decoded images store their decoded images in
+	 *
+	 * @param imageCache The cache or null for no caching
+	 */
+	public void setImageCache(DecodedImageCache imageCache) {
+		this.imageCache = imageCache;
+	}
+
+	public DecodedImageCache getImageCache() {
+		return imageCache;
+	}
+
+	/**
+	 * Buffer which is being decoded or null if decoding from a stream
+	 */
+	public ByteBuffer getBuffer() {
+		return buffer;
+	}
+
+	/**
+	 * Name of a class as it's encoded and the class it refers to
+	 */
+	private static class ClassEntry {
+		byte[] name;
+		String className;
+		// resolved when first decoded
+		Class type;
+		// plan for the most recently decoded version
+		RawlogDecodePlan plan;
+		// instance which skipped objects are decoded into, if the class has custom decoding
+		RawlogSerializable skipped;
+
+		ClassEntry(byte[] data, int length) {
+			name = new byte[length];
+			System.arraycopy(data, 0, name, 0, length);
+
+			char[] chars = new char[length];
+			for (int i = 0; i < length; i++) {
+				chars[i] = (char) (data[i] & 0xFF);
+			}
+			className = new String(chars);
+		}
+
+		boolean matches(byte[] data, int length) {
+			if (name.length != length)
+				return false;
+			for (int i = 0; i < length; i++) {
+				if (name[i] != data[i])
+					return false;
+			}
+			return true;
+		}
+	}
 }
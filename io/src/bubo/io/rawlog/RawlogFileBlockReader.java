@@ -0,0 +1,223 @@
+/*
+ * Copyright (c) 2013-2014, Peter Abeles. All Rights Reserved.
+ *
+ * This file is part of Project BUBO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package bubo.io.rawlog;
+
+import bubo.io.BlockCompressedFile;
+import bubo.io.logs.IndexedFileObjectRef;
+import bubo.io.logs.LogFileObjectRef;
+import bubo.io.logs.LogFileReader;
+import bubo.io.rawlog.data.CObservation;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+
+/**
+ * <p>
+ * Random access reader for rawlog files which have been saved using
+ * {@link bubo.io.BlockCompressedOutputStream}.  Locations in the index refer to the uncompressed data, so only the
+ * blocks containing a requested object are decompressed.  The index file has the same name as the log file with
+ * ".index" appended to it and can be created using {@link #createIndex(String)}.
+ * </p>
+ *
+ * <p>
+ * {@link #getObject} can be called by several threads at the same time.  Each thread has its own decoder.
+ * </p>
+ *
+ * @author Peter Abeles
+ */
+@SuppressWarnings({"unchecked"})
+public class RawlogFileBlockReader implements LogFileReader {
+
+	// number of decompressed blocks which are cached
+	private int cacheSize;
+
+	private BlockCompressedFile file;
+
+	// list of references that contain the object's location in the uncompressed log
+	private List<LogFileObjectRef> refs;
+
+	// stream and decoder used by each thread
+	private ThreadLocal<Reader> readers = new ThreadLocal<Reader>();
+
+	/**
+	 * @param cacheSize Number of decompressed blocks which are cached.
+	 */
+	public RawlogFileBlockReader(int cacheSize) {
+		this.cacheSize = cacheSize;
+	}
+
+	public RawlogFileBlockReader() {
+		this(8);
+	}
+
+	@Override
+	public boolean load(String fileName) {
+		close();
+
+		RawlogIndexFile reader = new RawlogIndexFile(fileName);
+
+		refs = reader.loadIndex();
+		if (refs == null)
+			return false;
+
+		// remove the .index from the end
+		String origFileName = fileName.substring(0, fileName.length() - 6);
+
+		try {
+			file = new BlockCompressedFile(origFileName, cacheSize);
+		} catch (IOException e) {
+			refs = null;
+		}
+
+		return refs != null;
+	}
+
+	@Override
+	public List<LogFileObjectRef> getReferences() {
+		return refs;
+	}
+
+	@Override
+	public <T> T getObject(LogFileObjectRef ref) {
+		IndexedFileObjectRef loc = (IndexedFileObjectRef) ref;
+
+		try {
+			if (loc.fileLocation < 0 || loc.fileLocation >= file.getUncompressedLength())
+				throw new EOFException("Object is outside of the file");
+
+			Reader r = readers.get();
+			if (r == null || r.stream.getFile() != file) {
+				r = new Reader(file);
+				readers.set(r);
+			}
+			r.stream.setLocation(loc.fileLocation);
+			return (T) r.decoder.decode();
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * Closes the file
+	 */
+	public void close() {
+		if (file != null) {
+			try {
+				file.close();
+			} catch (IOException e) {
+				throw new RuntimeException(e);
+			}
+		}
+		file = null;
+	}
+
+	/**
+	 * Finds the location of every object in a block compressed rawlog file
+	 *
+	 * @param file The block compressed rawlog file
+	 * @return List of object types and locations in the uncompressed data
+	 */
+	public static List<LogFileObjectRef> computeIndexes(BlockCompressedFile file) throws IOException {
+		List<LogFileObjectRef> ret = new ArrayList<LogFileObjectRef>();
+		computeIndexes(file, ret);
+		return ret;
+	}
+
+	/**
+	 * Finds the location of every object in a block compressed rawlog file.  If the last object is truncated
+	 * then it is skipped.
+	 *
+	 * @param file The block compressed rawlog file
+	 * @param output (Output) Object types and locations in the uncompressed data are added to this list
+	 * @return Location of the end of the last complete object in the uncompressed data
+	 */
+	public static long computeIndexes(BlockCompressedFile file, List<LogFileObjectRef> output) throws IOException {
+		BlockCompressedFile.BlockInputStream stream = file.openStream(0);
+		RawlogDecoder decoder = new RawlogDecoder(stream);
+
+		long end = 0;
+		try {
+			while (stream.getLocation() < file.getUncompressedLength()) {
+				long location = stream.getLocation();
+				RawlogSerializable o = decoder.decode();
+
+				String source = null;
+				if (o instanceof CObservation) {
+					source = ((CObservation) o).getSensorLabel();
+					if (source == null)
+						source = RawlogIndexFile.NO_SOURCE;
+				}
+				output.add(new IndexedFileObjectRef(o.getClass(), source, location));
+				end = stream.getLocation();
+			}
+		} catch (EOFException e) {
+			// the last object was truncated
+		} catch (RuntimeException e) {
+			// data classes wrap the exception if the stream ends in the middle of an object
+			if (!(e.getCause() instanceof EOFException))
+				throw e;
+		}
+
+		return end;
+	}
+
+	/**
+	 * Creates a binary index for a block compressed rawlog file.  The index is saved to a file with ".index"
+	 * appended to the log's name.
+	 *
+	 * @param fileName Name of the block compressed rawlog file
+	 * @return List of object types and locations in the uncompressed data
+	 */
+	public static List<LogFileObjectRef> createIndex(String fileName) throws IOException {
+		BlockCompressedFile file = new BlockCompressedFile(fileName);
+		try {
+			List<LogFileObjectRef> refs = new ArrayList<LogFileObjectRef>();
+			long indexedLength = computeIndexes(file, refs);
+			new RawlogIndexFile(fileName + ".index").saveIndexBinary(refs, indexedLength);
+			return refs;
+		} finally {
+			file.close();
+		}
+	}
+
+	@Override
+	public void cancelLoadRequest() {
+
+	}
+
+	@Override
+	public void setListener(Listener listener) {
+	}
+
+	/**
+	 * Stream and decoder for reading objects.  The decoder remembers classes it has looked up
+	 */
+	private static class Reader {
+		BlockCompressedFile.BlockInputStream stream;
+		RawlogDecoder decoder;
+
+		Reader(BlockCompressedFile file) throws IOException {
+			stream = file.openStream(0);
+			decoder = new RawlogDecoder(stream);
+		}
+	}
+}
@@ -0,0 +1,232 @@
+/*
+ * Copyright (c) 2013-2014, Peter Abeles. All Rights Reserved.
+ *
+ * This file is part of Project BUBO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package bubo.io.rawlog;
+
+import bubo.io.data.encoded.DecodedImageCache;
+import bubo.io.logs.IndexedFileObjectRef;
+import bubo.io.logs.LogFileObjectRef;
+import bubo.io.logs.LogFileReader;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.List;
+
+
+/**
+ * <p>
+ * Random access reader for uncompressed rawlog files which uses the same index file as
+ * {@link RawlogFileIndexedReader}.  Instead of seeking in the file, the log is memory mapped and objects are decoded
+ * directly from memory.  A buffer can't be larger than 2 GB so the file is mapped in windows.  Windows start
+ * every 'windowSize' bytes and overlap by 'overlap' bytes, which is the size of the largest object which can be read.
+ * Windows are only mapped when an object inside of them is first requested.
+ * </p>
+ *
+ * <p>
+ * {@link #getObject} can be called by several threads at the same time.  Each thread has its own decoder.
+ * </p>
+ *
+ * <p>
+ * By default JPEG images are not copied out of the file.  They reference the mapped data and are only decoded
+ * when requested, see {@link #setLazyImages(boolean)}.
+ * </p>
+ *
+ * @author Peter Abeles
+ */
+@SuppressWarnings({"unchecked"})
+public class RawlogFileMappedReader implements LogFileReader {
+
+	// distance between the start of each window
+	private int windowSize;
+	// number of bytes each window extends past the start of the next one
+	private int overlap;
+
+	private RandomAccessFile file;
+	// absolute path of the file.  Identifies images in the cache
+	private String filePath;
+	private FileChannel channel;
+	private long fileSize;
+
+	// memory mapped windows.  null if it hasn't been mapped yet
+	private MappedByteBuffer windows[];
+
+	// list of references that contain the object's location in the log file
+	private List<LogFileObjectRef> refs;
+
+	// decoder used by each thread.  Reused so that looked up classes are remembered
+	private ThreadLocal<RawlogDecoder> decoders = new ThreadLocal<RawlogDecoder>();
+
+	// if true images reference the mapped file instead of being copied
+	private boolean lazyImages = true;
+	// cache for decoded lazy images.  Can be null
+	private DecodedImageCache imageCache;
+
+	/**
+	 * Specifies how the file is mapped.
+	 *
+	 * @param windowSize Number of bytes between the start of each window.
+	 * @param overlap Number of bytes each window overlaps with the next.  No object can be larger than this.
+	 */
+	public RawlogFileMappedReader(int windowSize, int overlap) {
+		if (windowSize <= 0 || overlap < 0 || (long) windowSize + overlap > Integer.MAX_VALUE)
+			throw new IllegalArgumentException("Invalid window size or overlap");
+		this.windowSize = windowSize;
+		this.overlap = overlap;
+	}
+
+	/**
+	 * Windows of 1 GB with an overlap of 256 MB
+	 */
+	public RawlogFileMappedReader() {
+		this(1 << 30, 1 << 28);
+	}
+
+	@Override
+	public boolean load(String fileName) {
+		close();
+
+		RawlogIndexFile reader = new RawlogIndexFile(fileName);
+
+		refs = reader.loadIndex();
+		if (refs == null)
+			return false;
+
+		// remove the .index from the end
+		String origFileName = fileName.substring(0, fileName.length() - 6);
+
+		try {
+			file = new RandomAccessFile(origFileName, "r");
+			filePath = new File(origFileName).getAbsolutePath();
+			channel = file.getChannel();
+			fileSize = channel.size();
+			windows = new MappedByteBuffer[(int) ((fileSize + windowSize - 1) / windowSize)];
+		} catch (IOException e) {
+			close();
+			refs = null;
+		}
+
+		return refs != null;
+	}
+
+	@Override
+	public List<LogFileObjectRef> getReferences() {
+		return refs;
+	}
+
+	@Override
+	public <T> T getObject(LogFileObjectRef ref) {
+		IndexedFileObjectRef loc = (IndexedFileObjectRef) ref;
+
+		try {
+			if (loc.fileLocation < 0 || loc.fileLocation >= fileSize)
+				throw new EOFException("Object is outside of the file");
+
+			int index = (int) (loc.fileLocation / windowSize);
+			long windowStart = (long) index * windowSize;
+
+			// each thread gets its own view of the data so that they don't interfere with each other
+			ByteBuffer buffer = getWindow(index).duplicate();
+			buffer.position((int) (loc.fileLocation - windowStart));
+
+			RawlogDecoder decoder = decoders.get();
+			if (decoder == null) {
+				decoder = new RawlogDecoder(buffer);
+				decoders.set(decoder);
+			}
+			// images are identified by their location in the file, so reading one again finds it in the cache
+			decoder.setInput(buffer, filePath, windowStart);
+			decoder.setLazyPayloads(lazyImages);
+			decoder.setImageCache(imageCache);
+			return (T) decoder.decode();
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * Returns the specified window.  If it has not been mapped yet then it is mapped.
+	 */
+	private synchronized MappedByteBuffer getWindow(int index) throws IOException {
+		MappedByteBuffer w = windows[index];
+		if (w == null) {
+			long start = (long) index * windowSize;
+			long length = Math.min(fileSize - start, (long) windowSize + overlap);
+			windows[index] = w = channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+		}
+		return w;
+	}
+
+	/**
+	 * Closes the file.  Mapped windows are released once they are garbage collected.
+	 */
+	public synchronized void close() {
+		if (file != null) {
+			try {
+				file.close();
+			} catch (IOException e) {
+				throw new RuntimeException(e);
+			}
+		}
+		file = null;
+		channel = null;
+		windows = null;
+		filePath = null;
+		fileSize = 0;
+	}
+
+	/**
+	 * If true then JPEG images reference the mapped file and are decoded when first requested.  If false they
+	 * are copied when the object is read.  Default is true.
+	 */
+	public void setLazyImages(boolean lazyImages) {
+		this.lazyImages = lazyImages;
+	}
+
+	public boolean isLazyImages() {
+		return lazyImages;
+	}
+
+	/**
+	 * Cache which lazy images save their decoded images in, allowing images which are requested several times
+	 * to only be decoded once.
+	 *
+	 * @param imageCache The cache or null for no caching
+	 */
+	public void setImageCache(DecodedImageCache imageCache) {
+		this.imageCache = imageCache;
+	}
+
+	public DecodedImageCache getImageCache() {
+		return imageCache;
+	}
+
+	@Override
+	public void cancelLoadRequest() {
+
+	}
+
+	@Override
+	public void setListener(Listener listener) {
+	}
+}
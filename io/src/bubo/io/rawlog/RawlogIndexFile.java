@@ -18,6 +18,7 @@
 
 package bubo.io.rawlog;
 
+import bubo.io.LittleEndianIO;
 import bubo.io.UtilStrings;
 import bubo.io.logs.IndexedFileObjectRef;
 import bubo.io.logs.LogFileObjectRef;
@@ -30,7 +31,15 @@ import java.util.List;
 
 
 /**
- * Reads and writes rawlog index files.  Index files are saved in a CSV format.
+ * Reads and writes rawlog index files.  Index files are saved in either a CSV format or a compact binary format.
+ * When loading, the format is determined automatically.
+ * <p>
+ * The binary format is little endian and starts with {@link #BINARY_MAGIC}, the format version, and the number
+ * of bytes in the log file which have been indexed.  Next are dictionaries of data types and sources.  Each object
+ * is then encoded as variable length integers: the difference between its location and the previous object's
+ * location, the index of its type, and the index of its source.  Objects without a source are saved as
+ * {@link #NO_SOURCE}, the same as in the CSV format.
+ * </p>
  *
  * @author Peter Abeles
  */
@@ -38,6 +47,11 @@ public class RawlogIndexFile {
 	// string used to identify null in the index file
 	public static final String NO_SOURCE = "null";
 
+	// first four bytes of a binary index.  Spells "RIDX" when saved.
+	public static final int BINARY_MAGIC = 0x58444952;
+	// version of the binary format
+	public static final int BINARY_VERSION = 1;
+
 	// name of the file that is to be read or written to
 	private String fileName;
 
@@ -47,6 +61,9 @@ public class RawlogIndexFile {
 	// list of all the sources it found
 	private List<String> allSources = new ArrayList<String>();
 
+	// number of bytes in the log file which were indexed.  -1 if unknown
+	private long indexedLength = -1;
+
 	/**
 	 * @param fileName Name of the file that the index is to be read or written to.
 	 */
@@ -103,6 +120,67 @@ public class RawlogIndexFile {
 		saveIndex(index, out, indexedFileName);
 	}
 
+	/**
+	 * Saves the index in the binary format
+	 *
+	 * @param index         List of objects and their file locations
+	 * @param indexedLength Number of bytes at the start of the log file which were indexed.  The end of the last
+	 *                      object.
+	 * @param out           Output stream where the index is being written to.  Not closed.
+	 * @throws IOException
+	 */
+	public static void saveIndexBinary(List<LogFileObjectRef> index, long indexedLength, OutputStream out)
+			throws IOException {
+		List<Class<?>> types = new ArrayList<Class<?>>();
+		List<String> sources = new ArrayList<String>();
+		for (LogFileObjectRef o : index) {
+			if (!types.contains(o.dataType))
+				types.add(o.dataType);
+			UtilStrings.checkAddString(sources, o.source == null ? NO_SOURCE : o.source);
+		}
+
+		out = new BufferedOutputStream(out);
+		LittleEndianIO.writeInt(out, BINARY_MAGIC);
+		LittleEndianIO.writeInt(out, BINARY_VERSION);
+		LittleEndianIO.writeLong(out, indexedLength);
+
+		LittleEndianIO.writeInt(out, types.size());
+		for (Class<?> type : types) {
+			RawlogEncoder.writeString(out, type.getName());
+		}
+		LittleEndianIO.writeInt(out, sources.size());
+		for (String source : sources) {
+			RawlogEncoder.writeString(out, source);
+		}
+
+		LittleEndianIO.writeInt(out, index.size());
+		long previous = 0;
+		for (LogFileObjectRef o : index) {
+			long location = ((IndexedFileObjectRef) o).fileLocation;
+			writeVarLong(out, zigzag(location - previous));
+			writeVarLong(out, types.indexOf(o.dataType));
+			writeVarLong(out, sources.indexOf(o.source == null ? NO_SOURCE : o.source));
+			previous = location;
+		}
+		out.flush();
+	}
+
+	/**
+	 * Saves the index to a file using the binary format.
+	 *
+	 * @param index         Index information that is to be saved.
+	 * @param indexedLength Number of bytes at the start of the log file which were indexed.
+	 * @throws IOException
+	 */
+	public void saveIndexBinary(List<LogFileObjectRef> index, long indexedLength) throws IOException {
+		FileOutputStream out = new FileOutputStream(fileName);
+		try {
+			saveIndexBinary(index, indexedLength, out);
+		} finally {
+			out.close();
+		}
+	}
+
 	/**
 	 * Loads the index file for the rawlog data file
 	 *
@@ -132,6 +210,24 @@ public class RawlogIndexFile {
 
 		List<LogFileObjectRef> ret = new ArrayList<LogFileObjectRef>();
 
+		// see if it's a binary index
+		in = new BufferedInputStream(in);
+		in.mark(4);
+		byte[] header = new byte[4];
+		int length = 0;
+		while (length < 4) {
+			int found = in.read(header, length, 4 - length);
+			if (found < 0)
+				break;
+			length += found;
+		}
+		if (length == 4 && LittleEndianIO.readInt(header, 0) == BINARY_MAGIC) {
+			loadIndexBinary(in, ret);
+			in.close();
+			return ret;
+		}
+		in.reset();
+		indexedLength = -1;
 
 		ReadCsvObject reader = new ReadCsvObject(in, Helper.class, "dataType", "fileLocation", "source");
 		reader.setComment('#');
@@ -158,6 +254,86 @@ public class RawlogIndexFile {
 		return ret;
 	}
 
+	/**
+	 * Reads the remainder of a binary index, after the magic number
+	 */
+	private void loadIndexBinary(InputStream in, List<LogFileObjectRef> ret) throws IOException {
+		int version = LittleEndianIO.readInt(in);
+		if (version > BINARY_VERSION)
+			throw new IOException("Unsupported index version " + version);
+		indexedLength = LittleEndianIO.readLong(in);
+
+		RawlogDecoder decoder = new RawlogDecoder(in);
+
+		allDataTypes.clear();
+		int numTypes = LittleEndianIO.readInt(in);
+		for (int i = 0; i < numTypes; i++) {
+			String name = decoder.readString();
+			try {
+				allDataTypes.add(Class.forName(name));
+			} catch (ClassNotFoundException e) {
+				throw new RuntimeException(e);
+			}
+		}
+
+		allSources.clear();
+		List<String> sources = new ArrayList<String>();
+		int numSources = LittleEndianIO.readInt(in);
+		for (int i = 0; i < numSources; i++) {
+			String source = decoder.readString();
+			sources.add(source);
+			if (source.compareTo(NO_SOURCE) != 0)
+				allSources.add(source);
+		}
+
+		int N = LittleEndianIO.readInt(in);
+		long location = 0;
+		for (int i = 0; i < N; i++) {
+			location += unzigzag(readVarLong(in));
+			Class<?> type = allDataTypes.get((int) readVarLong(in));
+			String source = sources.get((int) readVarLong(in));
+			ret.add(new IndexedFileObjectRef(type, source, location));
+		}
+	}
+
+	private static void writeVarLong(OutputStream out, long value) throws IOException {
+		while ((value & ~0x7FL) != 0) {
+			out.write((int) ((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		out.write((int) value);
+	}
+
+	private static long readVarLong(InputStream in) throws IOException {
+		long value = 0;
+		for (int shift = 0; shift < 64; shift += 7) {
+			int b = LittleEndianIO.readByte(in);
+			value |= (long) (b & 0x7F) << shift;
+			if ((b & 0x80) == 0)
+				return value;
+		}
+		throw new IOException("Variable length integer is too long");
+	}
+
+	/**
+	 * Encodes a signed value so that numbers with a small magnitude have a small unsigned value
+	 */
+	private static long zigzag(long value) {
+		return (value << 1) ^ (value >> 63);
+	}
+
+	private static long unzigzag(long value) {
+		return (value >>> 1) ^ -(value & 1);
+	}
+
+	/**
+	 * Number of bytes in the log file which were indexed, as saved in a binary index.  -1 if the index didn't
+	 * specify it.
+	 */
+	public long getIndexedLength() {
+		return indexedLength;
+	}
+
 	public List<Class<?>> getAllDataTypes() {
 		return allDataTypes;
 	}
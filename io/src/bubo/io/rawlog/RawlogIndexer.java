@@ -33,6 +33,7 @@ import java.util.List;
 /**
  * Creates an index of a rawlog binary log file.  The index is the location of each object in the log file.
  * Only uncompressed files can be indexed because there is no good way to randomly access a compressed file.
+ * Gzipped logs can be converted into a seekable compressed format, see {@link RawlogFileBlockReader}.
  * Its process while parsing the file can be following by using a {@link Listener listener}.
  *
  * @author Peter Abeles
@@ -0,0 +1,103 @@
+/*
+ * Copyright (c) 2013-2014, Peter Abeles. All Rights Reserved.
+ *
+ * This file is part of Project BUBO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package bubo.io.rawlog;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Storage for rawlog objects which are no longer being used and can be decoded into, see
+ * {@link RawlogDecoder#setPool(RawlogObjectPool)}.  When an object is reused, the objects and arrays it references
+ * are also reused if possible, so an object must not be recycled while anything it references is still in use.
+ * All functions are thread safe.
+ *
+ * @author Peter Abeles
+ */
+public class RawlogObjectPool {
+
+	// unused objects of each type
+	private Map<Class<?>, List<RawlogSerializable>> unused = new HashMap<Class<?>, List<RawlogSerializable>>();
+
+	// maximum number of unused objects of each type
+	private int maxPerType;
+
+	/**
+	 * @param maxPerType Maximum number of unused objects of each type which are saved.  Extras are discarded.
+	 */
+	public RawlogObjectPool(int maxPerType) {
+		this.maxPerType = maxPerType;
+	}
+
+	public RawlogObjectPool() {
+		this(64);
+	}
+
+	/**
+	 * Removes an unused object of the specified type from the pool
+	 *
+	 * @param type Type of object
+	 * @return An unused object or null if there are none
+	 */
+	public synchronized <T> T get(Class<T> type) {
+		List<RawlogSerializable> list = unused.get(type);
+		if (list == null || list.isEmpty())
+			return null;
+		//noinspection unchecked
+		return (T) list.remove(list.size() - 1);
+	}
+
+	/**
+	 * Adds an object which is no longer used to the pool
+	 *
+	 * @param o The object.  If null then nothing happens.
+	 */
+	public synchronized void recycle(RawlogSerializable o) {
+		if (o == null)
+			return;
+
+		List<RawlogSerializable> list = unused.get(o.getClass());
+		if (list == null) {
+			list = new ArrayList<RawlogSerializable>();
+			unused.put(o.getClass(), list);
+		}
+		if (list.size() < maxPerType)
+			list.add(o);
+	}
+
+	/**
+	 * Number of unused objects of the specified type
+	 */
+	public synchronized int size(Class<?> type) {
+		List<RawlogSerializable> list = unused.get(type);
+		return list == null ? 0 : list.size();
+	}
+
+	/**
+	 * Discards all unused objects
+	 */
+	public synchronized void clear() {
+		unused.clear();
+	}
+
+	public int getMaxPerType() {
+		return maxPerType;
+	}
+}
@@ -0,0 +1,495 @@
+/*
+ * Copyright (c) 2013-2014, Peter Abeles. All Rights Reserved.
+ *
+ * This file is part of Project BUBO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package bubo.io.rawlog;
+
+import bubo.io.UtilStrings;
+import bubo.io.logs.IndexedFileObjectRef;
+import bubo.io.logs.LogFileObjectRef;
+import bubo.io.rawlog.data.CObservation;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Creates an index of a rawlog file, like {@link RawlogIndexer}, by splitting the file into chunks which are
+ * indexed in parallel.  Rawlog objects have no length field, so the start of the first object inside a chunk is
+ * found by searching for an end of object marker followed by a valid class name and then checking that the
+ * following objects can be decoded.  Since such a search can be fooled by the contents of an object, the chunks
+ * are merged in order and a chunk is only accepted if it passes through where the previous chunk ended, otherwise
+ * it is indexed again starting from that location.  The results are always the same as a sequential scan.
+ * <p>
+ * Indexing can also be resumed from a checkpoint, where only the part of the file after a previously indexed
+ * length is examined.  Typically this is used with a binary index, see {@link RawlogIndexFile#getIndexedLength()},
+ * after more data has been appended to a log.  Files in the old rawlog format are indexed sequentially.
+ * </p>
+ *
+ * @author Peter Abeles
+ */
+public class RawlogParallelIndexer {
+
+	// byte which marks the end of an object
+	private static final int END_MARKER = 0x88;
+	// maximum number of characters in a class name
+	private static final int MAX_NAME_LENGTH = 120;
+
+	// number of bytes each chunk is responsible for
+	private int chunkSize;
+	// number of bytes after the end of a chunk which the last object in the chunk can extend into
+	private int overlap;
+
+	// if not null then chunks are processed by the thread pool
+	private ExecutorService threadPool;
+
+	// listener for progress while indexing
+	private RawlogIndexer.Listener listener;
+
+	// list of all the data types it found
+	private List<Class<?>> allDataTypes = new ArrayList<Class<?>>();
+
+	// list of all the sources it found
+	private List<String> allSources = new ArrayList<String>();
+
+	// number of bytes in the file which have been indexed
+	private long indexedLength;
+
+	// file being indexed
+	private FileChannel channel;
+	private long fileSize;
+
+	/**
+	 * Specifies how the file is split up.
+	 *
+	 * @param chunkSize Number of bytes processed by each task.
+	 * @param overlap   Number of bytes past the end of a chunk which are also mapped.  Must be larger than any
+	 *                  object in the file.
+	 */
+	public RawlogParallelIndexer(int chunkSize, int overlap) {
+		if (chunkSize <= 0 || overlap < 0)
+			throw new IllegalArgumentException("chunkSize must be positive and overlap can't be negative");
+		if ((long) chunkSize + overlap + 1 > Integer.MAX_VALUE)
+			throw new IllegalArgumentException("chunkSize plus overlap is too large to be mapped");
+		this.chunkSize = chunkSize;
+		this.overlap = overlap;
+	}
+
+	/**
+	 * Chunks of 64 MB with a 16 MB overlap
+	 */
+	public RawlogParallelIndexer() {
+		this(64 * 1024 * 1024, 16 * 1024 * 1024);
+	}
+
+	/**
+	 * Indexes the entire file
+	 *
+	 * @param fileName Name of the rawlog file
+	 * @return List of object types and locations in the file.  null if canceled.
+	 * @throws IOException
+	 */
+	public List<LogFileObjectRef> computeIndexes(String fileName) throws IOException {
+		return computeIndexes(fileName, null, 0);
+	}
+
+	/**
+	 * Indexes the part of the file which comes after a previously indexed section.
+	 *
+	 * @param fileName    Name of the rawlog file
+	 * @param previous    Index of the file up to startOffset.  Copied into the output.  Can be null.
+	 * @param startOffset Location of the first object which has yet to be indexed.
+	 * @return List of object types and locations in the file.  null if canceled.
+	 * @throws IOException
+	 */
+	public List<LogFileObjectRef> computeIndexes(String fileName, List<LogFileObjectRef> previous, long startOffset)
+			throws IOException {
+		List<LogFileObjectRef> ret = new ArrayList<LogFileObjectRef>();
+		allDataTypes.clear();
+		allSources.clear();
+
+		if (previous != null) {
+			for (LogFileObjectRef o : previous) {
+				add(o, ret);
+			}
+		}
+
+		RandomAccessFile file = new RandomAccessFile(fileName, "r");
+		try {
+			channel = file.getChannel();
+			fileSize = channel.size();
+			indexedLength = startOffset;
+
+			if (startOffset >= fileSize)
+				return ret;
+
+			ByteBuffer first = ByteBuffer.allocate(1);
+			channel.read(first, startOffset);
+			if ((first.get(0) & 0x80) == 0) {
+				// old file format.  Doesn't have end of object markers so chunks can't be found
+				if (!indexSequential(startOffset, ret))
+					return null;
+			} else if (!indexChunks(startOffset, ret)) {
+				return null;
+			}
+		} finally {
+			channel = null;
+			file.close();
+		}
+
+		return ret;
+	}
+
+	/**
+	 * Splits the file into chunks, indexes them, and merges the results
+	 *
+	 * @return false if canceled
+	 */
+	private boolean indexChunks(long startOffset, List<LogFileObjectRef> ret) throws IOException {
+		List<Chunk> chunks = new ArrayList<Chunk>();
+		for (long start = startOffset; start < fileSize; start += chunkSize) {
+			chunks.add(new Chunk(start, Math.min(fileSize, start + chunkSize), start != startOffset));
+		}
+
+		List<Future<?>> futures = new ArrayList<Future<?>>();
+		if (threadPool != null) {
+			for (int i = 0; i < chunks.size(); i++) {
+				futures.add(threadPool.submit(chunks.get(i)));
+			}
+		}
+
+		try {
+			long expected = startOffset;
+			for (int i = 0; i < chunks.size(); i++) {
+				Chunk c = chunks.get(i);
+
+				// A chunk which searched for its start could have started inside of an object and then failed
+				// on garbage.  That's only an error if it started at a known object
+				boolean failed = false;
+				if (threadPool == null) {
+					try {
+						c.run();
+					} catch (RuntimeException e) {
+						if (!c.search)
+							throw e;
+						failed = true;
+					}
+				} else {
+					try {
+						futures.get(i).get();
+					} catch (InterruptedException e) {
+						throw new RuntimeException(e);
+					} catch (ExecutionException e) {
+						if (!c.search)
+							throw new RuntimeException(e.getCause());
+						failed = true;
+					}
+				}
+
+				// the previous chunk's last object extends past this chunk
+				if (expected >= c.end)
+					continue;
+
+				int first = failed ? -1 : c.locations.indexOf(expected);
+				if (first < 0) {
+					// the search found the wrong start or the previous chunk ended elsewhere.  Index it again
+					c.index(expected, false);
+					first = 0;
+				}
+
+				for (int j = first; j < c.types.size(); j++) {
+					add(new IndexedFileObjectRef(c.types.get(j), c.sources.get(j), c.locations.get(j)), ret);
+				}
+				expected = c.next;
+				indexedLength = expected;
+
+				if (c.truncated)
+					break;
+
+				if (listener != null) {
+					String name = c.types.isEmpty() ? "" : c.types.get(c.types.size() - 1).getSimpleName();
+					listener.update(name, (double) expected / (double) fileSize);
+					if (listener.cancelRequested())
+						return false;
+				}
+			}
+		} finally {
+			for (int i = 0; i < futures.size(); i++) {
+				futures.get(i).cancel(true);
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Decodes one object at a time, starting at the specified location
+	 *
+	 * @return false if canceled
+	 */
+	private boolean indexSequential(long startOffset, List<LogFileObjectRef> ret) throws IOException {
+		channel.position(startOffset);
+		InputStream in = Channels.newInputStream(channel);
+		RawlogDecoder decoder = new RawlogDecoder(in);
+
+		long location = startOffset;
+		try {
+			while (location < fileSize) {
+				RawlogSerializable o = decoder.decode();
+				add(new IndexedFileObjectRef(o.getClass(), sourceOf(o), location), ret);
+
+				location = channel.position();
+				indexedLength = location;
+
+				if (listener != null) {
+					listener.update(o.getClass().getSimpleName(), (double) location / (double) fileSize);
+					if (listener.cancelRequested())
+						return false;
+				}
+			}
+		} catch (EOFException e) {
+			// the last object was truncated
+		} catch (RuntimeException e) {
+			if (!(e.getCause() instanceof EOFException))
+				throw e;
+		}
+		return true;
+	}
+
+	/**
+	 * Adds the reference to the list and updates the list of types and sources
+	 */
+	private void add(LogFileObjectRef o, List<LogFileObjectRef> ret) {
+		if (!allDataTypes.contains(o.dataType))
+			allDataTypes.add(o.dataType);
+		if (o.source != null && o.source.compareTo(RawlogIndexFile.NO_SOURCE) != 0)
+			UtilStrings.checkAddString(allSources, o.source);
+		ret.add(o);
+	}
+
+	/**
+	 * The source of an object, using the same rules as {@link RawlogIndexer}
+	 */
+	private static String sourceOf(RawlogSerializable o) {
+		if (o instanceof CObservation) {
+			String source = ((CObservation) o).getSensorLabel();
+			return source == null ? RawlogIndexFile.NO_SOURCE : source;
+		}
+		return null;
+	}
+
+	/**
+	 * Checks to see if the byte could be part of a class name
+	 */
+	private static boolean isNameCharacter(int c) {
+		return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_';
+	}
+
+	public void setThreadPool(ExecutorService threadPool) {
+		this.threadPool = threadPool;
+	}
+
+	public ExecutorService getThreadPool() {
+		return threadPool;
+	}
+
+	/**
+	 * Add a listener that reports the indexing status and can cancel the indexing process.  Progress is
+	 * reported after each chunk has been merged.
+	 */
+	public void setListener(RawlogIndexer.Listener listener) {
+		this.listener = listener;
+	}
+
+	public List<Class<?>> getAllDataTypes() {
+		return allDataTypes;
+	}
+
+	public List<String> getAllSources() {
+		return allSources;
+	}
+
+	/**
+	 * Number of bytes at the start of the file which have been indexed.  This is the location of the end of the
+	 * last complete object and is where indexing should be resumed from if data is appended to the file.
+	 */
+	public long getIndexedLength() {
+		return indexedLength;
+	}
+
+	public int getChunkSize() {
+		return chunkSize;
+	}
+
+	public int getOverlap() {
+		return overlap;
+	}
+
+	/**
+	 * Indexes all the objects which start inside of a section of the file.
+	 */
+	private class Chunk implements Runnable {
+		// section of the file which this chunk is responsible for
+		long start;
+		long end;
+		// if true the first object needs to be searched for
+		boolean search;
+
+		// objects which start inside the chunk
+		List<Long> locations = new ArrayList<Long>();
+		List<Class<?>> types = new ArrayList<Class<?>>();
+		List<String> sources = new ArrayList<String>();
+		// location of the first object after the chunk
+		long next;
+		// true if the file ended in the middle of an object
+		boolean truncated;
+
+		RawlogDecoder decoder;
+
+		Chunk(long start, long end, boolean search) {
+			this.start = start;
+			this.end = end;
+			this.search = search;
+		}
+
+		@Override
+		public void run() {
+			try {
+				index(start, search);
+			} catch (IOException e) {
+				throw new RuntimeException(e);
+			}
+		}
+
+		/**
+		 * Indexes the chunk
+		 *
+		 * @param begin  Location that indexing starts at
+		 * @param search If true then the first object at or after begin is searched for
+		 */
+		void index(long begin, boolean search) throws IOException {
+			locations.clear();
+			types.clear();
+			sources.clear();
+			truncated = false;
+			next = end;
+
+			// include the byte before so that the previous object's end marker can be checked
+			long mapStart = search ? begin - 1 : begin;
+			long mapEnd = Math.min(fileSize, end + overlap);
+			ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, mapStart, mapEnd - mapStart);
+			int chunkEnd = (int) (end - mapStart);
+
+			if (decoder == null) {
+				decoder = new RawlogDecoder(buffer);
+				// only the type of each object is needed, don't copy images
+				decoder.setLazyPayloads(true);
+			} else {
+				decoder.setInput(buffer);
+			}
+
+			int pos = search ? findFirst(buffer, 1, chunkEnd, mapEnd == fileSize) : 0;
+			if (pos < 0)
+				return;
+
+			while (pos < chunkEnd) {
+				buffer.position(pos);
+				RawlogSerializable o;
+				try {
+					o = decoder.decode();
+				} catch (RuntimeException e) {
+					// data classes wrap the exception when they run out of data
+					if (!(e.getCause() instanceof EOFException))
+						throw e;
+					handleEndOfData(mapStart + pos, mapEnd);
+					return;
+				} catch (EOFException e) {
+					handleEndOfData(mapStart + pos, mapEnd);
+					return;
+				}
+				locations.add(mapStart + pos);
+				types.add(o.getClass());
+				sources.add(sourceOf(o));
+				pos = buffer.position();
+			}
+			next = mapStart + pos;
+		}
+
+		/**
+		 * Called when the end of the mapped data is reached while decoding an object
+		 */
+		private void handleEndOfData(long location, long mapEnd) {
+			if (mapEnd != fileSize)
+				throw new RuntimeException("Object at " + location + " is larger than the overlap");
+			next = location;
+			truncated = true;
+		}
+
+		/**
+		 * Searches for the first location which appears to be the start of an object
+		 *
+		 * @return Index in the buffer or -1 if none could be found before the end of the chunk
+		 */
+		int findFirst(ByteBuffer buffer, int pos, int chunkEnd, boolean atFileEnd) {
+			for (; pos < chunkEnd; pos++) {
+				if ((buffer.get(pos - 1) & 0xFF) != END_MARKER)
+					continue;
+				int length = buffer.get(pos) & 0xFF;
+				if ((length & 0x80) == 0)
+					continue;
+				length &= 0x7F;
+				if (length == 0 || length > MAX_NAME_LENGTH || pos + 1 + length > buffer.limit())
+					continue;
+				boolean valid = true;
+				for (int i = 0; i < length && valid; i++) {
+					valid = isNameCharacter(buffer.get(pos + 1 + i));
+				}
+				if (valid && canDecode(buffer, pos, atFileEnd))
+					return pos;
+			}
+			return -1;
+		}
+
+		/**
+		 * Checks to see if two objects can be decoded starting at the location, or one if it's the last object
+		 * in the file
+		 */
+		boolean canDecode(ByteBuffer buffer, int pos, boolean atFileEnd) {
+			buffer.position(pos);
+			try {
+				decoder.decode();
+				if (buffer.remaining() == 0)
+					return atFileEnd;
+				decoder.decode();
+				return true;
+			} catch (IOException e) {
+				return false;
+			} catch (RuntimeException e) {
+				return false;
+			}
+		}
+	}
+}
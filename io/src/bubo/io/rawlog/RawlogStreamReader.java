@@ -0,0 +1,395 @@
+/*
+ * Copyright (c) 2013-2014, Peter Abeles. All Rights Reserved.
+ *
+ * This file is part of Project BUBO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package bubo.io.rawlog;
+
+import bubo.io.rawlog.data.CObservation;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Reads a rawlog file as a stream without loading the whole file into memory, unlike
+ * {@link RawlogFileMemoryReader}.  Objects are decoded by a background thread and placed into a bounded ring,
+ * which lets decoding run ahead of the consumer without using an unbounded amount of memory.  When the ring is
+ * full the background thread waits until the consumer has removed an object.
+ * <p>
+ * Objects can be read one at a time with {@link #next()} or pushed to a {@link Handler} with
+ * {@link #process(Handler)}.  A filter on the object type and the sensor label of observations can be specified.
+ * Filtering is done by the background thread, so rejected objects never reach the ring or the consumer.
+ * </p>
+ * <p>
+ * The type filter is applied as soon as an object's class name has been read, see
+ * {@link RawlogDecoder#decodeObject(RawlogSerializable, List)}.  The rest of a rejected object must still be
+ * parsed since the format doesn't store its length.  Classes with standard decoding are skipped without being
+ * created.  Classes with custom decoding are decoded into a reused instance, which still copies their data.  The
+ * sensor label is part of the object, so observations are fully decoded before the label filter can reject them.
+ * </p>
+ * <p>
+ * If a {@link RawlogObjectPool} is specified then objects are decoded into instances from the pool.  Once the
+ * consumer is done with an object it can be returned with {@link #recycle}, allowing a log to be replayed without
+ * creating new objects.  Rejected objects are recycled automatically.
+ * </p>
+ *
+ * @author Peter Abeles
+ */
+public class RawlogStreamReader {
+
+	// first two bytes of a gzip file
+	private static final int GZIP_MAGIC = 0x8b1f;
+
+	// decoded objects waiting to be read
+	private final RawlogSerializable ring[];
+	// index of the first object in the ring and the number of objects in it
+	private int head;
+	private int size;
+
+	// used to synchronize access to the ring
+	private final Object lock = new Object();
+
+	// only objects which are instances of one of these types are read.  If empty then all types are read
+	private List<Class<?>> types = new ArrayList<Class<?>>();
+	// only observations with one of these sensor labels are read.  If empty then all labels are read
+	private List<String> sensorLabels = new ArrayList<String>();
+
+	// stream being read and the thread which decodes it
+	private InputStream in;
+	private Thread producer;
+
+	// set to true when the background thread should stop
+	private volatile boolean stopRequested;
+	// true when the background thread is done adding objects
+	private boolean finished;
+	// exception which caused decoding to stop
+	private Exception error;
+
+	// if not null then objects are decoded into instances from this pool
+	private RawlogObjectPool pool;
+
+	// number of objects decoded and the number rejected by the filter
+	private volatile long totalDecoded;
+	private volatile long totalSkipped;
+
+	/**
+	 * @param capacity Maximum number of decoded objects which can be waiting to be read.
+	 */
+	public RawlogStreamReader(int capacity) {
+		if (capacity <= 0)
+			throw new IllegalArgumentException("capacity must be more than zero");
+		ring = new RawlogSerializable[capacity];
+	}
+
+	public RawlogStreamReader() {
+		this(64);
+	}
+
+	/**
+	 * Only objects which are instances of the specified types will be read.  Must be called before the stream
+	 * is opened.
+	 *
+	 * @param types List of types.  If none then all types are read.
+	 */
+	public void setFilterTypes(Class<?>... types) {
+		this.types.clear();
+		for (Class<?> t : types) {
+			this.types.add(t);
+		}
+	}
+
+	/**
+	 * Only observations with one of the specified sensor labels will be read.  Objects which are not observations
+	 * are rejected.  Must be called before the stream is opened.
+	 *
+	 * @param labels List of sensor labels.  If none then all objects are read.
+	 */
+	public void setFilterSensorLabels(String... labels) {
+		this.sensorLabels.clear();
+		for (String l : labels) {
+			this.sensorLabels.add(l);
+		}
+	}
+
+	/**
+	 * Opens a rawlog file and starts decoding it.  Gzipped files are detected automatically.
+	 *
+	 * @param fileName Name of the rawlog file
+	 * @throws IOException
+	 */
+	public void open(String fileName) throws IOException {
+		InputStream in = new BufferedInputStream(new FileInputStream(fileName), 1024 * 1024);
+		in.mark(2);
+		int magic = in.read() | (in.read() << 8);
+		in.reset();
+		if (magic == GZIP_MAGIC)
+			in = new BufferedInputStream(new GZIPInputStream(in, 64 * 1024), 1024 * 1024);
+
+		open(in);
+	}
+
+	/**
+	 * Starts decoding objects from the stream.  The stream is closed when the reader is closed or the end of
+	 * the stream has been reached.
+	 *
+	 * @param in Stream containing rawlog objects.
+	 */
+	public void open(InputStream in) throws IOException {
+		close();
+
+		this.in = in;
+		final RawlogDecoder decoder = new RawlogDecoder(in);
+		decoder.setPool(pool);
+
+		head = size = 0;
+		finished = false;
+		error = null;
+		stopRequested = false;
+		totalDecoded = totalSkipped = 0;
+
+		producer = new Thread("RawlogStreamReader") {
+			@Override
+			public void run() {
+				decode(decoder);
+			}
+		};
+		producer.setDaemon(true);
+		producer.start();
+	}
+
+	/**
+	 * Returns the next object in the stream.  Blocks until an object has been decoded.
+	 *
+	 * @return The next object or null if there are no more objects.
+	 * @throws RuntimeException If decoding failed
+	 */
+	public <T extends RawlogSerializable> T next() {
+		synchronized (lock) {
+			while (size == 0 && !finished) {
+				try {
+					lock.wait();
+				} catch (InterruptedException e) {
+					throw new RuntimeException(e);
+				}
+			}
+
+			if (size == 0) {
+				if (error != null)
+					throw new RuntimeException(error);
+				return null;
+			}
+
+			RawlogSerializable o = ring[head];
+			ring[head] = null;
+			head = (head + 1) % ring.length;
+			size--;
+			lock.notifyAll();
+
+			//noinspection unchecked
+			return (T) o;
+		}
+	}
+
+	/**
+	 * Passes every object in the stream to the handler, until the end of the stream or the handler asks to stop.
+	 * The reader is closed before it returns.
+	 *
+	 * @param handler Processes each object
+	 */
+	public void process(Handler handler) {
+		try {
+			RawlogSerializable o;
+			while ((o = next()) != null) {
+				if (!handler.process(o))
+					break;
+			}
+		} finally {
+			close();
+		}
+	}
+
+	/**
+	 * Stops the background thread and closes the stream.  Objects which have not been read are discarded.
+	 */
+	public void close() {
+		if (producer == null)
+			return;
+
+		stopRequested = true;
+		synchronized (lock) {
+			lock.notifyAll();
+		}
+		try {
+			producer.join();
+		} catch (InterruptedException e) {
+			throw new RuntimeException(e);
+		}
+		producer = null;
+
+		synchronized (lock) {
+			for (int i = 0; i < ring.length; i++) {
+				recycle(ring[i]);
+				ring[i] = null;
+			}
+			size = 0;
+		}
+	}
+
+	/**
+	 * Returns an object which the consumer is done with to the pool.  Nothing happens if there is no pool.
+	 *
+	 * @param o An object which was read from this stream and is no longer being used.  Can be null.
+	 */
+	public void recycle(RawlogSerializable o) {
+		if (pool != null)
+			pool.recycle(o);
+	}
+
+	/**
+	 * Decodes objects until the end of the stream, an error, or a stop request.  Called by the background thread.
+	 */
+	private void decode(RawlogDecoder decoder) {
+		Exception error = null;
+		List<Class<?>> types = this.types.isEmpty() ? null : this.types;
+		try {
+			while (!stopRequested) {
+				RawlogSerializable o = decoder.decodeObject(null, types);
+				totalDecoded++;
+
+				if (o == null) {
+					totalSkipped++;
+					continue;
+				}
+
+				if (!accept(o)) {
+					totalSkipped++;
+					recycle(o);
+					continue;
+				}
+
+				if (!add(o)) {
+					recycle(o);
+					break;
+				}
+			}
+		} catch (EOFException e) {
+			// end of the stream
+		} catch (IOException e) {
+			error = e;
+		} catch (RuntimeException e) {
+			// data classes wrap the exception if the stream ends in the middle of an object
+			if (!(e.getCause() instanceof EOFException))
+				error = e;
+		}
+
+		try {
+			in.close();
+		} catch (IOException e) {
+		}
+
+		synchronized (lock) {
+			this.error = error;
+			finished = true;
+			lock.notifyAll();
+		}
+	}
+
+	/**
+	 * Adds an object to the ring, waiting if it is full.
+	 *
+	 * @return false if a stop was requested
+	 */
+	private boolean add(RawlogSerializable o) {
+		synchronized (lock) {
+			while (size == ring.length && !stopRequested) {
+				try {
+					lock.wait();
+				} catch (InterruptedException e) {
+					return false;
+				}
+			}
+			if (stopRequested)
+				return false;
+
+			ring[(head + size) % ring.length] = o;
+			size++;
+			lock.notifyAll();
+			return true;
+		}
+	}
+
+	/**
+	 * Checks to see if the object passes the sensor label filter.  The type filter is applied by the decoder.
+	 */
+	private boolean accept(RawlogSerializable o) {
+		if (sensorLabels.size() > 0) {
+			if (!(o instanceof CObservation))
+				return false;
+			String label = ((CObservation) o).getSensorLabel();
+			return label != null && sensorLabels.contains(label);
+		}
+
+		return true;
+	}
+
+	/**
+	 * Number of objects which have been read, including the ones rejected by the filter
+	 */
+	public long getTotalDecoded() {
+		return totalDecoded;
+	}
+
+	/**
+	 * Number of objects which were rejected by the filter
+	 */
+	public long getTotalSkipped() {
+		return totalSkipped;
+	}
+
+	/**
+	 * Specifies the pool which objects are decoded into.  Must be called before the stream is opened.
+	 *
+	 * @param pool The pool or null to always create new objects
+	 */
+	public void setPool(RawlogObjectPool pool) {
+		this.pool = pool;
+	}
+
+	public RawlogObjectPool getPool() {
+		return pool;
+	}
+
+	public int getCapacity() {
+		return ring.length;
+	}
+
+	/**
+	 * Receives objects from {@link #process(Handler)}.
+	 */
+	public static interface Handler {
+		/**
+		 * @param o The next object in the stream
+		 * @return true to keep on processing or false to stop
+		 */
+		public boolean process(RawlogSerializable o);
+	}
+}
@@ -40,9 +40,10 @@ public class CActionCollection implements RawlogSerializableCustom {
 
 		try {
 			int N = LittleEndianIO.readInt(decoder.getInput());
-			actions = new CAction[N];
+			if (actions == null || actions.length != N)
+				actions = new CAction[N];
 			for (int i = 0; i < N; i++) {
-				actions[i] = (CAction) decoder.decodeObject();
+				actions[i] = (CAction) decoder.decodeObject(actions[i]);
 			}
 		} catch (IOException e) {
 			throw new RuntimeException(e);
@@ -23,12 +23,14 @@ import bubo.io.LittleEndianIO;
 import bubo.io.data.ImageEncoded;
 import bubo.io.data.encoded.ImageFile;
 import bubo.io.data.encoded.ImageJpeg;
+import bubo.io.data.encoded.ImageJpegLazy;
 import bubo.io.data.encoded.ImageStandard;
 import bubo.io.rawlog.RawlogDecoder;
 import bubo.io.rawlog.RawlogSerializableCustom;
 
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
 
 /**
  * Rawlog class for storing images.
@@ -68,9 +70,20 @@ public class CImage implements RawlogSerializableCustom {
 
 					if (loadJPEG) {
 						int size = LittleEndianIO.readInt(decoder.getInput());
-						byte jpegData[] = decoder.readByteArray(size);
-
-						image = new ImageJpeg(jpegData, size);
+						// reference the data without copying it, if possible
+						ByteBuffer lazy = decoder.readLazyBytes(size);
+						if (lazy != null) {
+							image = new ImageJpegLazy(lazy, decoder.getLazyKey(), decoder.getImageCache());
+						} else {
+							// reuse the previous JPEG's array if it's large enough
+							ImageJpeg jpeg = image instanceof ImageJpeg ? (ImageJpeg) image : null;
+							byte jpegData[] = decoder.readBytes(size, jpeg == null ? null : jpeg.getData());
+
+							if (jpeg == null)
+								image = new ImageJpeg(jpegData, size);
+							else
+								jpeg.setData(jpegData, size);
+						}
 					}
 
 				} else {
@@ -54,10 +54,11 @@ public class CMatrix implements RawlogSerializableCustom {
 			numRows = LittleEndianIO.readInt(decoder.getInput());
 			numColumns = LittleEndianIO.readInt(decoder.getInput());
 
-			data = new float[numRows][];
+			if (data == null || data.length != numRows)
+				data = new float[numRows][];
 
 			for (int i = 0; i < numRows; i++) {
-				data[i] = decoder.readFloatArray(numColumns);
+				data[i] = decoder.readFloatArray(numColumns, data[i]);
 			}
 
 		} catch (IOException e) {
@@ -59,10 +59,11 @@ public class CMatrixD implements RawlogSerializableCustom {
 			numRows = LittleEndianIO.readInt(decoder.getInput());
 			numColumns = LittleEndianIO.readInt(decoder.getInput());
 
-			data = new double[numRows][];
+			if (data == null || data.length != numRows)
+				data = new double[numRows][];
 
 			for (int i = 0; i < numRows; i++) {
-				data[i] = decoder.readDoubleArray(numColumns);
+				data[i] = decoder.readDoubleArray(numColumns, data[i]);
 			}
 
 		} catch (IOException e) {
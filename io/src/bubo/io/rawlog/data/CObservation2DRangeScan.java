@@ -79,7 +79,7 @@ public class CObservation2DRangeScan extends CObservation implements RawlogSeria
 			aperture = LittleEndianIO.readFloat(decoder.getInput());
 			rightToLeft = LittleEndianIO.readBoolean(decoder.getInput());
 			maxRange = LittleEndianIO.readFloat(decoder.getInput());
-			sensorPose = (CPose3D) decoder.decodeObject();
+			sensorPose = (CPose3D) decoder.decodeObject(sensorPose);
 
 			if (version < 6) {
 				CMatrix cov = (CMatrix) decoder.decodeObject();
@@ -87,8 +87,11 @@ public class CObservation2DRangeScan extends CObservation implements RawlogSeria
 
 			int N = LittleEndianIO.readInt(decoder.getInput());
 			if (N > 0) {
-				scan = decoder.readFloatArray(N);
-				validRange = decoder.readByteArray(N);
+				scan = decoder.readFloatArray(N, scan);
+				validRange = decoder.readByteArray(N, validRange);
+			} else {
+				scan = null;
+				validRange = null;
 			}
 			stdError = LittleEndianIO.readFloat(decoder.getInput());
 			setTimestamp(LittleEndianIO.readLong(decoder.getInput()));
@@ -49,9 +49,9 @@ public class CObservationImage extends CObservation implements RawlogSerializabl
 	public void customDecoding(int version, RawlogDecoder decoder) {
 
 		try {
-			cameraPose = (CPose3D) decoder.decodeObject();
+			cameraPose = (CPose3D) decoder.decodeObject(cameraPose);
 			if (version >= 4) {
-				cameraParams = (TCamera) decoder.decodeObject();
+				cameraParams = (TCamera) decoder.decodeObject(cameraParams);
 			} else {
 				CMatrix distortion = (CMatrix) decoder.decodeObject();
 				CMatrix intrinsic = (CMatrix) decoder.decodeObject();
@@ -60,7 +60,7 @@ public class CObservationImage extends CObservation implements RawlogSerializabl
 				cameraParams.setDistortion(distortion);
 				cameraParams.setIntrinsic(intrinsic);
 			}
-			image = (CImage) decoder.decodeObject();
+			image = (CImage) decoder.decodeObject(image);
 			if (version >= 1)
 				setTimestamp(LittleEndianIO.readLong(decoder.getInput()));
 
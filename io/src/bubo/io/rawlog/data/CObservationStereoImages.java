@@ -81,9 +81,9 @@ public class CObservationStereoImages extends CObservation implements RawlogSeri
 			}
 
 			if (version >= 5) {
-				cameraPose = (CPose3DQuat) decoder.decodeObject();
-				leftCamera = (TCamera) decoder.decodeObject();
-				rightCamera = (TCamera) decoder.decodeObject();
+				cameraPose = (CPose3DQuat) decoder.decodeObject(cameraPose);
+				leftCamera = (TCamera) decoder.decodeObject(leftCamera);
+				rightCamera = (TCamera) decoder.decodeObject(rightCamera);
 			} else {
 				leftCamera = new TCamera();
 				rightCamera = new TCamera();
@@ -92,8 +92,8 @@ public class CObservationStereoImages extends CObservation implements RawlogSeri
 				rightCamera.setIntrinsicParams(new CMatrixD(intrinsicParam));
 			}
 
-			imageLeft = (CImage) decoder.decodeObject();
-			imageRight = (CImage) decoder.decodeObject();
+			imageLeft = (CImage) decoder.decodeObject(imageLeft);
+			imageRight = (CImage) decoder.decodeObject(imageRight);
 
 			if (version >= 1) {
 				timeStamp = LittleEndianIO.readLong(decoder.getInput());
@@ -106,7 +106,7 @@ public class CObservationStereoImages extends CObservation implements RawlogSeri
 					CPose3D tmp = (CPose3D) decoder.decodeObject();
 					rightCameraPose = new CPose3DQuat(tmp);
 				} else {
-					rightCameraPose = (CPose3DQuat) decoder.decodeObject();
+					rightCameraPose = (CPose3DQuat) decoder.decodeObject(rightCameraPose);
 				}
 			} else {
 				rightCameraPose = new CPose3DQuat(new Point3D_F64(0.1, 0, 0), new Quaternion_F64());
@@ -54,10 +54,11 @@ public class CSensorialFrame extends CObservation implements RawlogSerializableC
 			}
 
 			int N = LittleEndianIO.readInt(decoder.getInput());
-			obs = new CObservation[N];
+			if (obs == null || obs.length != N)
+				obs = new CObservation[N];
 
 			for (int i = 0; i < N; i++) {
-				obs[i] = (CObservation) decoder.decodeObject();
+				obs[i] = (CObservation) decoder.decodeObject(obs[i]);
 			}
 		} catch (IOException e) {
 			throw new RuntimeException(e);
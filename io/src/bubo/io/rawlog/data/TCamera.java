@@ -47,7 +47,7 @@ public class TCamera implements RawlogSerializableCustom {
 			focalLengthMeters = LittleEndianIO.readDouble(decoder.getInput());
 			for (int i = 0; i < 5; i++)
 				distortion[i] = LittleEndianIO.readDouble(decoder.getInput());
-			intrinsicParams = (CMatrixD) decoder.decodeObject();
+			intrinsicParams = (CMatrixD) decoder.decodeObject(intrinsicParams);
 			focalLengthMeters = LittleEndianIO.readDouble(decoder.getInput());
 
 		} catch (IOException e) {
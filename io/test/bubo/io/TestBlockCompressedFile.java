@@ -0,0 +1,210 @@
+/*
+ * Copyright (c) 2013-2014, Peter Abeles. All Rights Reserved.
+ *
+ * This file is part of Project BUBO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package bubo.io;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.Deflater;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * @author Peter Abeles
+ */
+public class TestBlockCompressedFile {
+
+	Random rand = new Random(234);
+	File file;
+	byte[] data;
+
+	@Before
+	public void before() throws IOException {
+		file = File.createTempFile("block", ".blkz");
+
+		// compressible data
+		data = new byte[10000];
+		for (int i = 0; i < data.length; i++) {
+			data[i] = (byte) (rand.nextInt(10) + i / 100);
+		}
+	}
+
+	@After
+	public void after() {
+		file.delete();
+	}
+
+	private void save(byte[] data, int blockSize, ExecutorService threadPool) throws IOException {
+		BlockCompressedOutputStream out = new BlockCompressedOutputStream(new FileOutputStream(file),
+				blockSize, Deflater.DEFAULT_COMPRESSION, threadPool);
+		// write in pieces which don't line up with the blocks
+		int location = 0;
+		while (location < data.length) {
+			int length = Math.min(data.length - location, rand.nextInt(500));
+			if (length == 1)
+				out.write(data[location]);
+			else
+				out.write(data, location, length);
+			location += length;
+		}
+		out.close();
+	}
+
+	@Test
+	public void read() throws IOException {
+		save(data, 333, null);
+
+		BlockCompressedFile alg = new BlockCompressedFile(file.getPath(), 2);
+		assertEquals(data.length, alg.getUncompressedLength());
+		assertEquals(31, alg.getNumberOfBlocks());
+		assertEquals(10000 - 30 * 333, alg.getBlockLength(30));
+		assertEquals(true, alg.getCompressedLength() < data.length);
+
+		for (int trial = 0; trial < 50; trial++) {
+			int location = rand.nextInt(data.length);
+			int length = rand.nextInt(1000);
+			byte[] found = new byte[length + 2];
+
+			int expected = Math.min(length, data.length - location);
+			assertEquals(expected, alg.read(location, found, 2, length));
+			for (int i = 0; i < expected; i++) {
+				assertEquals(data[location + i], found[i + 2]);
+			}
+		}
+		assertEquals(-1, alg.read(data.length, new byte[10], 0, 10));
+		alg.close();
+	}
+
+	@Test
+	public void read_threads() throws IOException {
+		ExecutorService pool = Executors.newFixedThreadPool(3);
+		try {
+			save(data, 100, pool);
+		} finally {
+			pool.shutdown();
+		}
+
+		BlockCompressedFile alg = new BlockCompressedFile(file.getPath());
+		byte[] found = new byte[data.length];
+		assertEquals(data.length, alg.read(0, found, 0, data.length));
+		assertArrayEquals(data, found);
+		alg.close();
+	}
+
+	@Test
+	public void openStream() throws IOException {
+		save(data, 256, null);
+
+		BlockCompressedFile alg = new BlockCompressedFile(file.getPath());
+		BlockCompressedFile.BlockInputStream in = alg.openStream(1000);
+
+		assertEquals(data[1000] & 0xFF, in.read());
+		byte[] found = new byte[600];
+		int total = 0;
+		while (total < found.length) {
+			total += in.read(found, total, found.length - total);
+		}
+		for (int i = 0; i < found.length; i++) {
+			assertEquals(data[1001 + i], found[i]);
+		}
+		assertEquals(1601, in.getLocation());
+
+		in.setLocation(data.length - 1);
+		assertEquals(data[data.length - 1] & 0xFF, in.read());
+		assertEquals(-1, in.read());
+		alg.close();
+	}
+
+	@Test
+	public void decompress() throws IOException {
+		save(data, 128, null);
+
+		BlockCompressedFile alg = new BlockCompressedFile(file.getPath());
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		alg.decompress(out, null);
+		assertArrayEquals(data, out.toByteArray());
+
+		ExecutorService pool = Executors.newFixedThreadPool(3);
+		try {
+			out.reset();
+			alg.decompress(out, pool);
+			assertArrayEquals(data, out.toByteArray());
+		} finally {
+			pool.shutdown();
+		}
+		alg.close();
+	}
+
+	@Test
+	public void empty() throws IOException {
+		save(new byte[0], 128, null);
+
+		BlockCompressedFile alg = new BlockCompressedFile(file.getPath());
+		assertEquals(0, alg.getUncompressedLength());
+		assertEquals(0, alg.getNumberOfBlocks());
+		InputStream in = alg.openStream(0);
+		assertEquals(-1, in.read());
+		alg.close();
+	}
+
+	/**
+	 * Modify the compressed data and see if the checksum catches it
+	 */
+	@Test(expected = IOException.class)
+	public void corrupted() throws IOException {
+		byte[] random = new byte[1000];
+		rand.nextBytes(random);
+		save(random, 1000, null);
+
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		raf.seek(BlockCompressedOutputStream.HEADER_SIZE + 500);
+		int value = raf.read();
+		raf.seek(BlockCompressedOutputStream.HEADER_SIZE + 500);
+		raf.write(value ^ 0xFF);
+		raf.close();
+
+		BlockCompressedFile alg = new BlockCompressedFile(file.getPath());
+		try {
+			alg.getBlock(0);
+		} finally {
+			alg.close();
+		}
+	}
+
+	@Test(expected = IOException.class)
+	public void notBlockFile() throws IOException {
+		FileOutputStream out = new FileOutputStream(file);
+		out.write(data);
+		out.close();
+
+		new BlockCompressedFile(file.getPath());
+	}
+}
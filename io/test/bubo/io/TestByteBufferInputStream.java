@@ -0,0 +1,75 @@
+/*
+ * Copyright (c) 2013-2014, Peter Abeles. All Rights Reserved.
+ *
+ * This file is part of Project BUBO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package bubo.io;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * @author Peter Abeles
+ */
+public class TestByteBufferInputStream {
+
+	@Test
+	public void read() {
+		ByteBuffer buffer = ByteBuffer.wrap(new byte[]{1, (byte) 200, 3});
+		ByteBufferInputStream in = new ByteBufferInputStream(buffer);
+
+		assertEquals(3, in.available());
+		assertEquals(1, in.read());
+		assertEquals(200, in.read());
+		assertEquals(3, in.read());
+		assertEquals(-1, in.read());
+		assertEquals(0, in.available());
+	}
+
+	@Test
+	public void read_array() {
+		ByteBuffer buffer = ByteBuffer.wrap(new byte[]{1, 2, 3, 4, 5});
+		ByteBufferInputStream in = new ByteBufferInputStream(buffer);
+
+		byte found[] = new byte[4];
+		assertEquals(3, in.read(found, 1, 3));
+		assertEquals(1, found[1]);
+		assertEquals(3, found[3]);
+
+		// only two bytes are left
+		assertEquals(2, in.read(found, 0, 4));
+		assertEquals(4, found[0]);
+		assertEquals(5, found[1]);
+
+		assertEquals(-1, in.read(found, 0, 4));
+		assertEquals(0, in.read(found, 0, 0));
+	}
+
+	@Test
+	public void skip() {
+		ByteBuffer buffer = ByteBuffer.wrap(new byte[]{1, 2, 3, 4, 5});
+		ByteBufferInputStream in = new ByteBufferInputStream(buffer);
+
+		assertEquals(2, in.skip(2));
+		assertEquals(3, in.read());
+		assertEquals(2, in.skip(10));
+		assertEquals(-1, in.read());
+	}
+}
@@ -22,8 +22,13 @@ import org.junit.Test;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
@@ -31,6 +36,40 @@ import static org.junit.Assert.assertTrue;
  * @author Peter Abeles
  */
 public class TestLittleEndianIO {
+	/**
+	 * Primitives read from a ByteBufferInputStream should be the same no matter the byte order of its buffer
+	 */
+	@Test
+	public void readFromBuffer() throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		LittleEndianIO.writeShort(out, (short) -1235);
+		LittleEndianIO.writeInt(out, -14552345);
+		LittleEndianIO.writeLong(out, -1455234523452345L);
+		LittleEndianIO.writeFloat(out, 1.5e-4f);
+		LittleEndianIO.writeDouble(out, -2.25e12);
+
+		for (ByteOrder order : new ByteOrder[]{ByteOrder.LITTLE_ENDIAN, ByteOrder.BIG_ENDIAN}) {
+			ByteBuffer buffer = ByteBuffer.wrap(out.toByteArray());
+			buffer.order(order);
+			InputStream in = new ByteBufferInputStream(buffer);
+
+			assertEquals(-1235, LittleEndianIO.readShort(in));
+			assertEquals(-14552345, LittleEndianIO.readInt(in));
+			assertEquals(-1455234523452345L, LittleEndianIO.readLong(in));
+			assertTrue(1.5e-4f == LittleEndianIO.readFloat(in));
+			assertTrue(-2.25e12 == LittleEndianIO.readDouble(in));
+			assertEquals(0, buffer.remaining());
+		}
+	}
+
+	@Test(expected = EOFException.class)
+	public void readFromBuffer_eof() throws IOException {
+		ByteBuffer buffer = ByteBuffer.wrap(new byte[3]);
+		buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+		LittleEndianIO.readInt(new ByteBufferInputStream(buffer));
+	}
+
 	@Test
 	public void readBoolean() throws IOException {
 		byte[] data = new byte[2];
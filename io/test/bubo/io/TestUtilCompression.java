@@ -20,7 +20,12 @@ package bubo.io;
 
 import org.junit.Test;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.GZIPOutputStream;
 
 import static org.junit.Assert.*;
 
@@ -52,4 +57,32 @@ public class TestUtilCompression {
 		assertFalse(negative);
 	}
 
+	@Test
+	public void gzipToBlockCompressed() throws IOException {
+		byte[] data = new byte[1000];
+		for (int i = 0; i < data.length; i++) {
+			data[i] = (byte) (i % 13 + i / 50);
+		}
+
+		File input = File.createTempFile("file", ".gz");
+		File output = File.createTempFile("file", ".blkz");
+		try {
+			OutputStream out = new GZIPOutputStream(new FileOutputStream(input));
+			out.write(data);
+			out.close();
+
+			UtilCompression.gzipToBlockCompressed(input.getPath(), output.getPath(), 70, null);
+
+			BlockCompressedFile found = new BlockCompressedFile(output.getPath());
+			assertEquals(15, found.getNumberOfBlocks());
+			ByteArrayOutputStream decompressed = new ByteArrayOutputStream();
+			found.decompress(decompressed, null);
+			found.close();
+
+			assertArrayEquals(data, decompressed.toByteArray());
+		} finally {
+			input.delete();
+			output.delete();
+		}
+	}
 }
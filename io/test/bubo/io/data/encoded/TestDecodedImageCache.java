@@ -0,0 +1,56 @@
+/*
+ * Copyright (c) 2013-2014, Peter Abeles. All Rights Reserved.
+ *
+ * This file is part of Project BUBO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package bubo.io.data.encoded;
+
+import org.junit.Test;
+
+import java.awt.image.BufferedImage;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Peter Abeles
+ */
+public class TestDecodedImageCache {
+
+	@Test
+	public void evictLeastRecentlyUsed() {
+		DecodedImageCache alg = new DecodedImageCache(2);
+
+		BufferedImage a = new BufferedImage(1, 1, BufferedImage.TYPE_BYTE_GRAY);
+		BufferedImage b = new BufferedImage(1, 1, BufferedImage.TYPE_BYTE_GRAY);
+		BufferedImage c = new BufferedImage(1, 1, BufferedImage.TYPE_BYTE_GRAY);
+
+		alg.put("a", a);
+		alg.put("b", b);
+		// 'a' is now the most recently used
+		assertTrue(a == alg.get("a"));
+
+		alg.put("c", c);
+		assertEquals(2, alg.size());
+		assertNull(alg.get("b"));
+		assertTrue(a == alg.get("a"));
+		assertTrue(c == alg.get("c"));
+
+		alg.clear();
+		assertEquals(0, alg.size());
+	}
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright (c) 2013-2014, Peter Abeles. All Rights Reserved.
+ *
+ * This file is part of Project BUBO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package bubo.io.data.encoded;
+
+import org.junit.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Peter Abeles
+ */
+public class TestImageJpegLazy {
+
+	@Test
+	public void getData() throws IOException {
+		byte[] jpeg = createJpeg(20, 15);
+		ByteBuffer buffer = surround(jpeg);
+
+		ImageJpegLazy alg = new ImageJpegLazy(buffer, null);
+
+		assertEquals(jpeg.length, alg.getDataSize());
+		assertEquals("JPEG", alg.getFormat());
+		assertFalse(alg.isMaterialized());
+
+		byte[] found = alg.getData();
+		assertTrue(alg.isMaterialized());
+		assertArrayEquals(jpeg, found);
+		// only copied once
+		assertTrue(found == alg.getData());
+		// the source buffer isn't modified
+		assertEquals(5, buffer.position());
+	}
+
+	@Test
+	public void convertToBuffered() throws IOException {
+		ImageJpegLazy alg = new ImageJpegLazy(surround(createJpeg(20, 15)), null);
+
+		BufferedImage found = alg.convertToBuffered();
+		assertEquals(20, found.getWidth());
+		assertEquals(15, found.getHeight());
+
+		// can be decoded more than once
+		assertEquals(20, alg.convertToBuffered().getWidth());
+		assertFalse(alg.isMaterialized());
+	}
+
+	@Test
+	public void convertToBuffered_cache() throws IOException {
+		DecodedImageCache cache = new DecodedImageCache(2);
+		ImageJpegLazy alg = new ImageJpegLazy(surround(createJpeg(20, 15)), cache);
+
+		BufferedImage found = alg.convertToBuffered();
+		assertEquals(1, cache.size());
+		assertTrue(found == alg.convertToBuffered());
+	}
+
+	/**
+	 * Creates a buffer with the data in the middle and its position at the start of the data
+	 */
+	private static ByteBuffer surround(byte[] data) {
+		ByteBuffer buffer = ByteBuffer.allocate(data.length + 10);
+		buffer.position(5);
+		buffer.put(data);
+		buffer.position(5);
+		buffer.limit(5 + data.length);
+		return buffer;
+	}
+
+	public static byte[] createJpeg(int width, int height) throws IOException {
+		BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				image.setRGB(x, y, (x * 10) << 16 | (y * 10));
+			}
+		}
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		ImageIO.write(image, "jpg", out);
+		return out.toByteArray();
+	}
+}
@@ -0,0 +1,200 @@
+/*
+ * Copyright (c) 2013-2014, Peter Abeles. All Rights Reserved.
+ *
+ * This file is part of Project BUBO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package bubo.io.maps;
+
+import bubo.maps.d2.grid.impl.ArrayGrid2D_F32;
+import bubo.maps.d3.grid.impl.OctreeGridMap_F64;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Peter Abeles
+ */
+public class TestMapBinaryIO {
+
+	Random rand = new Random(234);
+
+	@Test
+	public void grid2D_stream() throws IOException {
+		ArrayGrid2D_F32 map = createGrid2D(70, 45);
+
+		MapBinaryIO alg = new MapBinaryIO();
+		alg.setTileWidth(16);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		alg.save(map, out);
+
+		// should be smaller than the raw data since most of the tiles are constant
+		assertTrue(out.size() < 70 * 45 * 4);
+
+		ArrayGrid2D_F32 found = new MapBinaryIO().loadGrid2D(new ByteArrayInputStream(out.toByteArray()));
+		checkIdentical(map, found);
+	}
+
+	@Test
+	public void grid2D_file() throws IOException {
+		ArrayGrid2D_F32 map = createGrid2D(33, 64);
+
+		MapBinaryIO alg = new MapBinaryIO();
+		File file = File.createTempFile("map", "bin");
+		try {
+			FileOutputStream out = new FileOutputStream(file);
+			alg.save(map, out);
+			out.close();
+
+			checkIdentical(map, alg.loadGrid2D(file));
+		} finally {
+			file.delete();
+		}
+	}
+
+	@Test
+	public void octree_stream() throws IOException {
+		OctreeGridMap_F64 map = createOctree();
+		int numNodes = map.getConstruct().getAllNodes().size;
+
+		MapBinaryIO alg = new MapBinaryIO();
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		alg.save(map, out);
+
+		OctreeGridMap_F64 found = alg.loadOctree(new ByteArrayInputStream(out.toByteArray()));
+		checkIdentical(map, found);
+
+		// the collapsed leafs should have been preserved
+		assertEquals(numNodes, found.getConstruct().getAllNodes().size);
+	}
+
+	@Test
+	public void octree_file() throws IOException {
+		OctreeGridMap_F64 map = createOctree();
+
+		MapBinaryIO alg = new MapBinaryIO();
+		File file = File.createTempFile("map", "bin");
+		try {
+			FileOutputStream out = new FileOutputStream(file);
+			alg.save(map, out);
+			out.close();
+
+			checkIdentical(map, alg.loadOctree(file));
+		} finally {
+			file.delete();
+		}
+	}
+
+	@Test
+	public void octree_empty() throws IOException {
+		OctreeGridMap_F64 map = new OctreeGridMap_F64(10, 12, 14);
+		map.setDefaultValue(0.25);
+
+		MapBinaryIO alg = new MapBinaryIO();
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		alg.save(map, out);
+
+		OctreeGridMap_F64 found = alg.loadOctree(new ByteArrayInputStream(out.toByteArray()));
+		assertEquals(10, found.getSizeX());
+		assertEquals(12, found.getSizeY());
+		assertEquals(14, found.getSizeZ());
+		assertEquals(0.25, found.getDefaultValue(), 1e-8);
+		assertEquals(1, found.getConstruct().getAllNodes().size);
+	}
+
+	@Test(expected = IOException.class)
+	public void wrongType() throws IOException {
+		MapBinaryIO alg = new MapBinaryIO();
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		alg.save(createGrid2D(10, 10), out);
+
+		alg.loadOctree(new ByteArrayInputStream(out.toByteArray()));
+	}
+
+	@Test(expected = IOException.class)
+	public void truncated() throws IOException {
+		MapBinaryIO alg = new MapBinaryIO();
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		alg.save(createOctree(), out);
+
+		byte data[] = out.toByteArray();
+		alg.loadOctree(new ByteArrayInputStream(data, 0, data.length - 3));
+	}
+
+	/**
+	 * Creates a map with unknown, constant, and random tiles
+	 */
+	private ArrayGrid2D_F32 createGrid2D(int width, int height) {
+		ArrayGrid2D_F32 map = new ArrayGrid2D_F32(width, height);
+		map.clear();
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width / 2; x++) {
+				map.set(x, y, 0.1f);
+			}
+		}
+		for (int i = 0; i < 50; i++) {
+			map.set(rand.nextInt(width), rand.nextInt(height), rand.nextFloat());
+		}
+		return map;
+	}
+
+	private OctreeGridMap_F64 createOctree() {
+		OctreeGridMap_F64 map = new OctreeGridMap_F64(20, 25, 30);
+		for (int z = 0; z < 8; z++) {
+			for (int y = 0; y < 8; y++) {
+				for (int x = 0; x < 8; x++) {
+					map.set(x, y, z, 0.9);
+				}
+			}
+		}
+		map.prune();
+		for (int i = 0; i < 100; i++) {
+			map.set(rand.nextInt(20), rand.nextInt(25), rand.nextInt(30), rand.nextDouble());
+		}
+		return map;
+	}
+
+	private static void checkIdentical(ArrayGrid2D_F32 expected, ArrayGrid2D_F32 found) {
+		assertEquals(expected.getWidth(), found.getWidth());
+		assertEquals(expected.getHeight(), found.getHeight());
+		for (int y = 0; y < expected.getHeight(); y++) {
+			for (int x = 0; x < expected.getWidth(); x++) {
+				assertTrue(expected.get(x, y) == found.get(x, y));
+			}
+		}
+	}
+
+	private static void checkIdentical(OctreeGridMap_F64 expected, OctreeGridMap_F64 found) {
+		assertEquals(expected.getSizeX(), found.getSizeX());
+		assertEquals(expected.getSizeY(), found.getSizeY());
+		assertEquals(expected.getSizeZ(), found.getSizeZ());
+		for (int z = 0; z < expected.getSizeZ(); z++) {
+			for (int y = 0; y < expected.getSizeY(); y++) {
+				for (int x = 0; x < expected.getSizeX(); x++) {
+					assertTrue(expected.get(x, y, z) == found.get(x, y, z));
+				}
+			}
+		}
+	}
+}
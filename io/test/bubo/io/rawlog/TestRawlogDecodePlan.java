@@ -0,0 +1,73 @@
+/*
+ * Copyright (c) 2013-2014, Peter Abeles. All Rights Reserved.
+ *
+ * This file is part of Project BUBO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package bubo.io.rawlog;
+
+import bubo.io.rawlog.data.CObservation2DRangeScan;
+import bubo.io.rawlog.data.Trivialdata;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Peter Abeles
+ */
+public class TestRawlogDecodePlan {
+
+	@Test
+	public void lookup_cached() {
+		RawlogDecodePlan a = RawlogDecodePlan.lookup(Trivialdata.class, 0);
+		RawlogDecodePlan b = RawlogDecodePlan.lookup(Trivialdata.class, 0);
+		RawlogDecodePlan c = RawlogDecodePlan.lookup(Trivialdata.class, 1);
+
+		assertTrue(a == b);
+		assertTrue(a != c);
+		assertEquals(1, c.getVersion());
+	}
+
+	@Test
+	public void standard() {
+		RawlogDecodePlan plan = RawlogDecodePlan.lookup(Trivialdata.class, 0);
+
+		assertTrue(plan.isStandard());
+		assertTrue(plan.getType() == Trivialdata.class);
+		assertEquals(1, plan.getNumberOfVariables());
+		assertEquals(RawlogDecodePlan.TYPE_INT, plan.varTypes[0]);
+
+		Trivialdata data = (Trivialdata) plan.newInstance();
+		plan.set(data, 0, 45);
+		assertEquals(45, data.getData());
+	}
+
+	@Test
+	public void custom() {
+		RawlogDecodePlan plan = RawlogDecodePlan.lookup(CObservation2DRangeScan.class, 6);
+
+		assertFalse(plan.isStandard());
+		assertEquals(0, plan.getNumberOfVariables());
+		assertTrue(plan.newInstance() instanceof CObservation2DRangeScan);
+	}
+
+	@Test(expected = RuntimeException.class)
+	public void notSerializable() {
+		RawlogDecodePlan.lookup(String.class, 0);
+	}
+}
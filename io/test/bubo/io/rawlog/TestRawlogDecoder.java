@@ -19,14 +19,29 @@
 package bubo.io.rawlog;
 
 import bubo.io.LittleEndianIO;
+import bubo.io.data.encoded.DecodedImageCache;
+import bubo.io.data.encoded.ImageJpeg;
+import bubo.io.data.encoded.ImageJpegLazy;
+import bubo.io.data.encoded.TestImageJpegLazy;
+import bubo.io.rawlog.data.CImage;
+import bubo.io.rawlog.data.CObservation;
+import bubo.io.rawlog.data.CObservation2DRangeScan;
 import bubo.io.rawlog.data.Trivialdata;
 import org.junit.Test;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
 /**
  * @author Peter Abeles
@@ -58,10 +73,301 @@ public class TestRawlogDecoder {
 		assertEquals(found.getData(), 34);
 	}
 
+	/**
+	 * Decoding from a buffer should produce the same results as decoding from a stream
+	 */
+	@Test
+	public void decode_buffer() throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+		writeTrivialObject(out, 57);
+		writeRangeScan(out, "LASER", 1234, 5);
+		writeTrivialObject(out, 34);
+		writeRangeScan(out, "FRONT", 1240, 7);
+
+		RawlogDecoder decoder = new RawlogDecoder(ByteBuffer.wrap(out.toByteArray()));
+		assertTrue(decoder.getBuffer() != null);
+
+		Trivialdata trivial = decoder.decode();
+		assertEquals(57, trivial.getData());
+		checkRangeScan((CObservation2DRangeScan) decoder.decode(), "LASER", 1234, 5);
+		trivial = decoder.decode();
+		assertEquals(34, trivial.getData());
+		checkRangeScan((CObservation2DRangeScan) decoder.decode(), "FRONT", 1240, 7);
+	}
+
+	@Test
+	public void decode_stream_rangeScan() throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		writeRangeScan(out, "LASER", 1234, 5);
+		writeRangeScan(out, "LASER", 1235, 6);
+
+		RawlogDecoder decoder = new RawlogDecoder(new ByteArrayInputStream(out.toByteArray()));
+		checkRangeScan((CObservation2DRangeScan) decoder.decode(), "LASER", 1234, 5);
+		checkRangeScan((CObservation2DRangeScan) decoder.decode(), "LASER", 1235, 6);
+	}
+
+	/**
+	 * Changing the buffer should work and reuse previously looked up classes
+	 */
+	@Test
+	public void setInput() throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		writeTrivialObject(out, 57);
+		writeTrivialObject(out, 34);
+		byte data[] = out.toByteArray();
+
+		RawlogDecoder decoder = new RawlogDecoder(ByteBuffer.wrap(data));
+		Trivialdata found = decoder.decode();
+		assertEquals(57, found.getData());
+
+		ByteBuffer buffer = ByteBuffer.wrap(data);
+		buffer.position(data.length / 2);
+		decoder.setInput(buffer);
+		found = decoder.decode();
+		assertEquals(34, found.getData());
+	}
+
+	@Test(expected = EOFException.class)
+	public void decode_buffer_eof() throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		writeTrivialObject(out, 57);
+
+		RawlogDecoder decoder = new RawlogDecoder(ByteBuffer.wrap(out.toByteArray()));
+		decoder.decode();
+		decoder.decode();
+	}
+
+	/**
+	 * Decode into an existing instance and see if it and its arrays are reused
+	 */
+	@Test
+	public void decode_target() throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		writeRangeScan(out, "A", 1, 5);
+		writeRangeScan(out, "B", 2, 5);
+		writeRangeScan(out, "C", 3, 7);
+		writeTrivialObject(out, 9);
+
+		RawlogDecoder alg = new RawlogDecoder(ByteBuffer.wrap(out.toByteArray()));
+
+		CObservation2DRangeScan first = alg.decode();
+		float[] scan = first.getScan();
+		Object pose = first.getSensorPose();
+
+		CObservation2DRangeScan found = alg.decode(first);
+		assertTrue(found == first);
+		assertTrue(scan == found.getScan());
+		assertTrue(pose == found.getSensorPose());
+		checkRangeScan(found, "B", 2, 5);
+
+		// the number of beams changed so a new array is needed
+		found = alg.decode(first);
+		assertTrue(found == first);
+		assertTrue(scan != found.getScan());
+		checkRangeScan(found, "C", 3, 7);
+
+		// a different type can't be decoded into the scan
+		Trivialdata trivial = alg.decode(first);
+		assertEquals(9, trivial.getData());
+	}
+
+	@Test
+	public void decode_pool() throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		writeRangeScan(out, "A", 1, 5);
+		writeRangeScan(out, "B", 2, 5);
+
+		RawlogObjectPool pool = new RawlogObjectPool();
+		CObservation2DRangeScan unused = new CObservation2DRangeScan();
+		pool.recycle(unused);
+
+		RawlogDecoder alg = new RawlogDecoder(new ByteArrayInputStream(out.toByteArray()));
+		alg.setPool(pool);
+
+		CObservation2DRangeScan found = alg.decode();
+		assertTrue(found == unused);
+		checkRangeScan(found, "A", 1, 5);
+		assertEquals(0, pool.size(CObservation2DRangeScan.class));
+
+		// the pool is empty so a new instance is created
+		found = alg.decode();
+		assertTrue(found != unused);
+		checkRangeScan(found, "B", 2, 5);
+	}
+
+	/**
+	 * JPEG images should reference the buffer when lazy payloads are enabled and be copied otherwise
+	 */
+	@Test
+	public void decode_lazyImage() throws IOException {
+		byte[] jpeg = TestImageJpegLazy.createJpeg(20, 15);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		writeJpegImage(out, jpeg);
+		writeTrivialObject(out, 9);
+		byte[] data = out.toByteArray();
+
+		// lazy from a buffer
+		RawlogDecoder alg = new RawlogDecoder(ByteBuffer.wrap(data));
+		alg.setLazyPayloads(true);
+		CImage found = alg.decode();
+		assertTrue(found.getImage() instanceof ImageJpegLazy);
+		assertArrayEquals(jpeg, found.getImage().getData());
+		assertEquals(20, found.getImage().convertToBuffered().getWidth());
+		assertEquals(9, ((Trivialdata) alg.decode()).getData());
+
+		// the image is identified by its location in the source
+		alg.setInput(ByteBuffer.wrap(data), "file", 100);
+		found = alg.decode();
+		DecodedImageCache.Key key = alg.getLazyKey();
+		assertTrue(key == ((ImageJpegLazy) found.getImage()).getKey());
+		assertEquals("file", key.getSource());
+		assertEquals(100 + data.length - 18 - jpeg.length - 1, key.getOffset());
+		assertEquals(jpeg.length, key.getLength());
+
+		// lazy is ignored when reading a stream
+		alg = new RawlogDecoder(new ByteArrayInputStream(data));
+		alg.setLazyPayloads(true);
+		found = alg.decode();
+		assertTrue(found.getImage() instanceof ImageJpeg);
+		assertEquals(jpeg.length, found.getImage().getDataSize());
+		assertEquals(9, ((Trivialdata) alg.decode()).getData());
+
+		// not lazy by default
+		alg = new RawlogDecoder(ByteBuffer.wrap(data));
+		found = alg.decode();
+		assertTrue(found.getImage() instanceof ImageJpeg);
+		assertEquals(20, found.getImage().convertToBuffered().getWidth());
+	}
+
+	/**
+	 * Objects which aren't one of the requested types should be skipped over, from both a stream and a buffer
+	 */
+	@Test
+	public void decodeObject_types() throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		writeTrivialObject(out, 57);
+		writeRangeScan(out, "LASER", 1234, 5);
+		writeTrivialObject(out, 34);
+		writeRangeScan(out, "FRONT", 1240, 7);
+		byte data[] = out.toByteArray();
+
+		List<Class<?>> scans = new ArrayList<Class<?>>();
+		scans.add(CObservation.class);
+		List<Class<?>> trivial = new ArrayList<Class<?>>();
+		trivial.add(Trivialdata.class);
+
+		for (int trial = 0; trial < 2; trial++) {
+			boolean buffer = trial == 0;
+
+			// objects with standard decoding aren't created when skipped
+			RawlogDecoder alg = createDecoder(data, buffer);
+			RawlogObjectPool pool = new RawlogObjectPool();
+			pool.recycle(new Trivialdata());
+			alg.setPool(pool);
+
+			assertNull(alg.decodeObject(null, scans));
+			checkRangeScan((CObservation2DRangeScan) alg.decodeObject(null, scans), "LASER", 1234, 5);
+			assertNull(alg.decodeObject(null, scans));
+			checkRangeScan((CObservation2DRangeScan) alg.decodeObject(null, scans), "FRONT", 1240, 7);
+			assertEquals(1, pool.size(Trivialdata.class));
+
+			// skipped objects with custom decoding shouldn't change the objects which are decoded
+			alg = createDecoder(data, buffer);
+			assertEquals(57, ((Trivialdata) alg.decodeObject(null, trivial)).getData());
+			assertNull(alg.decodeObject(null, trivial));
+			assertEquals(34, ((Trivialdata) alg.decodeObject(null, trivial)).getData());
+			assertNull(alg.decodeObject(null, trivial));
+		}
+	}
+
+	private static RawlogDecoder createDecoder(byte data[], boolean buffer) throws IOException {
+		if (buffer)
+			return new RawlogDecoder(ByteBuffer.wrap(data));
+		else
+			return new RawlogDecoder(new ByteArrayInputStream(data));
+	}
+
+	@Test
+	public void readClassName() throws IOException {
+		byte data[] = "CPose3DCPose3D".getBytes();
+		RawlogDecoder decoder = new RawlogDecoder(new ByteArrayInputStream(data));
+		assertEquals("CPose3D", decoder.readClassName(7));
+		assertEquals("CPose3D", decoder.readClassName(7));
+	}
+
+	/**
+	 * Writes a version 6 CObservation2DRangeScan with the specified number of beams
+	 */
+	public static void writeRangeScan(OutputStream out, String label, long timestamp, int N) throws IOException {
+		RawlogEncoder.writeClassName(out, "CObservation2DRangeScan");
+		out.write(6);
+		LittleEndianIO.writeFloat(out, (float) Math.PI);
+		out.write(1);
+		LittleEndianIO.writeFloat(out, 80f);
+
+		// sensor pose
+		RawlogEncoder.writeClassName(out, "CPose3D");
+		out.write(1);
+		RawlogEncoder.writeClassName(out, "CMatrixD");
+		out.write(0);
+		LittleEndianIO.writeInt(out, 4);
+		LittleEndianIO.writeInt(out, 4);
+		for (int i = 0; i < 16; i++) {
+			LittleEndianIO.writeDouble(out, i % 5 == 0 ? 1 : 0);
+		}
+		out.write(0x88);
+		out.write(0x88);
+
+		LittleEndianIO.writeInt(out, N);
+		for (int i = 0; i < N; i++) {
+			LittleEndianIO.writeFloat(out, i + 0.5f);
+		}
+		for (int i = 0; i < N; i++) {
+			out.write(i % 2);
+		}
+		LittleEndianIO.writeFloat(out, 0.01f);
+		LittleEndianIO.writeLong(out, timestamp);
+		LittleEndianIO.writeFloat(out, 0.001f);
+		RawlogEncoder.writeString(out, label);
+		LittleEndianIO.writeDouble(out, 0.0);
+		out.write(0x88);
+	}
+
+	/**
+	 * Checks a scan written by {@link #writeRangeScan}
+	 */
+	public static void checkRangeScan(CObservation2DRangeScan scan, String label, long timestamp, int N) {
+		assertEquals(label, scan.getSensorLabel());
+		assertEquals(timestamp, scan.getTimestamp());
+		assertTrue(80f == scan.getMaxRange());
+		assertTrue(scan.getSensorPose() != null);
+		assertEquals(N, scan.getScan().length);
+		for (int i = 0; i < N; i++) {
+			assertTrue(i + 0.5f == scan.getScan()[i]);
+			assertEquals(i % 2, scan.getValidRange()[i]);
+		}
+	}
+
+	/**
+	 * Writes a version 6 CImage containing a JPEG
+	 */
+	public static void writeJpegImage(OutputStream out, byte[] jpeg) throws IOException {
+		RawlogEncoder.writeClassName(out, CImage.class.getSimpleName());
+		out.write(6);
+		// not stored externally
+		out.write(0);
+		// has color
+		out.write(1);
+		LittleEndianIO.writeInt(out, jpeg.length);
+		out.write(jpeg);
+		out.write(0x88);
+	}
+
 	/**
 	 * Writes a trivial object that just has an int to output using the rawlog format
 	 */
-	private void writeTrivialObject(ByteArrayOutputStream out, int value) throws IOException {
+	public static void writeTrivialObject(OutputStream out, int value) throws IOException {
 		// class name
 		RawlogEncoder.writeClassName(out, Trivialdata.class.getSimpleName());
 		// class version
@@ -0,0 +1,152 @@
+/*
+ * Copyright (c) 2013-2014, Peter Abeles. All Rights Reserved.
+ *
+ * This file is part of Project BUBO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package bubo.io.rawlog;
+
+import bubo.io.BlockCompressedOutputStream;
+import bubo.io.logs.IndexedFileObjectRef;
+import bubo.io.logs.LogFileObjectRef;
+import bubo.io.rawlog.data.CObservation2DRangeScan;
+import bubo.io.rawlog.data.Trivialdata;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.zip.Deflater;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Peter Abeles
+ */
+public class TestRawlogFileBlockReader {
+
+	int N = 100;
+	File logFile;
+	File rawFile;
+	File indexFile;
+
+	@Before
+	public void createLog() throws IOException {
+		logFile = File.createTempFile("block", ".rawlog");
+		rawFile = File.createTempFile("block", ".rawlog");
+		indexFile = new File(logFile.getPath() + ".index");
+
+		// small blocks so that objects cross block boundaries
+		OutputStream out = new BlockCompressedOutputStream(new FileOutputStream(logFile), 50,
+				Deflater.DEFAULT_COMPRESSION, null);
+		writeObjects(out);
+		out.close();
+
+		out = new FileOutputStream(rawFile);
+		writeObjects(out);
+		out.close();
+	}
+
+	private void writeObjects(OutputStream out) throws IOException {
+		for (int i = 0; i < N; i++) {
+			if (i % 4 == 0)
+				TestRawlogDecoder.writeRangeScan(out, "laser", i, 8);
+			else
+				TestRawlogDecoder.writeTrivialObject(out, i);
+		}
+	}
+
+	@After
+	public void deleteLog() {
+		logFile.delete();
+		rawFile.delete();
+		indexFile.delete();
+	}
+
+	/**
+	 * The index should refer to the same locations as the index of the uncompressed file
+	 */
+	@Test
+	public void createIndex() throws IOException {
+		List<LogFileObjectRef> found = RawlogFileBlockReader.createIndex(logFile.getPath());
+		List<LogFileObjectRef> expected = new RawlogIndexer(rawFile.getPath()).computeIndexes();
+
+		assertEquals(expected.size(), found.size());
+		for (int i = 0; i < expected.size(); i++) {
+			IndexedFileObjectRef e = (IndexedFileObjectRef) expected.get(i);
+			IndexedFileObjectRef f = (IndexedFileObjectRef) found.get(i);
+			assertEquals(e.fileLocation, f.fileLocation);
+			assertTrue(e.dataType == f.dataType);
+			assertEquals(e.source, f.source);
+		}
+		assertTrue(indexFile.exists());
+	}
+
+	/**
+	 * The last object is only partially written.  It should be skipped and the indexed length should be the end
+	 * of the last complete object
+	 */
+	@Test
+	public void createIndex_truncated() throws IOException {
+		ByteArrayOutputStream partial = new ByteArrayOutputStream();
+		TestRawlogDecoder.writeRangeScan(partial, "laser", 5, 20);
+
+		OutputStream out = new BlockCompressedOutputStream(new FileOutputStream(logFile), 50,
+				Deflater.DEFAULT_COMPRESSION, null);
+		writeObjects(out);
+		out.write(partial.toByteArray(), 0, 30);
+		out.close();
+
+		List<LogFileObjectRef> found = RawlogFileBlockReader.createIndex(logFile.getPath());
+		assertEquals(N, found.size());
+
+		RawlogIndexFile index = new RawlogIndexFile(indexFile.getPath());
+		assertEquals(N, index.loadIndex().size());
+		assertEquals(rawFile.length(), index.getIndexedLength());
+	}
+
+	@Test
+	public void getObject() throws IOException {
+		RawlogFileBlockReader.createIndex(logFile.getPath());
+
+		RawlogFileBlockReader alg = new RawlogFileBlockReader(2);
+		assertTrue(alg.load(indexFile.getPath()));
+
+		List<LogFileObjectRef> refs = alg.getReferences();
+		assertEquals(N, refs.size());
+
+		// read them out of order
+		for (int i = N - 1; i >= 0; i--) {
+			Object found = alg.getObject(refs.get(i));
+			if (i % 4 == 0)
+				TestRawlogDecoder.checkRangeScan((CObservation2DRangeScan) found, "laser", i, 8);
+			else
+				assertEquals(i, ((Trivialdata) found).getData());
+		}
+		alg.close();
+	}
+
+	@Test
+	public void load_missingIndex() {
+		RawlogFileBlockReader alg = new RawlogFileBlockReader();
+		assertTrue(!alg.load(indexFile.getPath()));
+	}
+}
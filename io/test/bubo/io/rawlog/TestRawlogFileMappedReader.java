@@ -0,0 +1,195 @@
+/*
+ * Copyright (c) 2013-2014, Peter Abeles. All Rights Reserved.
+ *
+ * This file is part of Project BUBO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package bubo.io.rawlog;
+
+import bubo.io.LittleEndianIO;
+import bubo.io.data.encoded.DecodedImageCache;
+import bubo.io.data.encoded.TestImageJpegLazy;
+import bubo.io.logs.IndexedFileObjectRef;
+import bubo.io.logs.LogFileObjectRef;
+import bubo.io.rawlog.data.CImage;
+import bubo.io.rawlog.data.Trivialdata;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Peter Abeles
+ */
+public class TestRawlogFileMappedReader {
+
+	int N = 200;
+	File logFile;
+	File indexFile;
+
+	@Before
+	public void createLog() throws IOException {
+		logFile = File.createTempFile("mapped", ".rawlog");
+		indexFile = new File(logFile.getPath() + ".index");
+
+		List<LogFileObjectRef> refs = new ArrayList<LogFileObjectRef>();
+		FileOutputStream out = new FileOutputStream(logFile);
+		long location = 0;
+		for (int i = 0; i < N; i++) {
+			refs.add(new IndexedFileObjectRef(Trivialdata.class, RawlogIndexFile.NO_SOURCE, location));
+			RawlogEncoder.writeClassName(out, Trivialdata.class.getSimpleName());
+			out.write(0);
+			LittleEndianIO.writeInt(out, i * 3);
+			out.write(0x88);
+			location = out.getChannel().position();
+		}
+		out.close();
+
+		new RawlogIndexFile(indexFile.getPath()).saveIndex(refs, logFile.getPath());
+	}
+
+	@After
+	public void deleteLog() {
+		logFile.delete();
+		indexFile.delete();
+	}
+
+	@Test
+	public void getObject() {
+		RawlogFileMappedReader alg = new RawlogFileMappedReader();
+		assertTrue(alg.load(indexFile.getPath()));
+
+		List<LogFileObjectRef> refs = alg.getReferences();
+		assertEquals(N, refs.size());
+
+		// read them out of order
+		for (int i = N - 1; i >= 0; i--) {
+			Trivialdata found = alg.getObject(refs.get(i));
+			assertEquals(i * 3, found.getData());
+		}
+		alg.close();
+	}
+
+	/**
+	 * Use tiny windows so that objects cross the boundary between windows
+	 */
+	@Test
+	public void getObject_windows() {
+		RawlogFileMappedReader alg = new RawlogFileMappedReader(40, 32);
+		assertTrue(alg.load(indexFile.getPath()));
+
+		List<LogFileObjectRef> refs = alg.getReferences();
+		for (int i = 0; i < N; i++) {
+			Trivialdata found = alg.getObject(refs.get(i));
+			assertEquals(i * 3, found.getData());
+		}
+		alg.close();
+	}
+
+	@Test
+	public void getObject_concurrent() throws Exception {
+		final RawlogFileMappedReader alg = new RawlogFileMappedReader(64, 32);
+		assertTrue(alg.load(indexFile.getPath()));
+		final List<LogFileObjectRef> refs = alg.getReferences();
+
+		ExecutorService pool = Executors.newFixedThreadPool(4);
+		try {
+			List<Future<Boolean>> futures = new ArrayList<Future<Boolean>>();
+			for (int thread = 0; thread < 4; thread++) {
+				final int offset = thread;
+				futures.add(pool.submit(new Callable<Boolean>() {
+					@Override
+					public Boolean call() throws Exception {
+						for (int trial = 0; trial < 20; trial++) {
+							for (int i = offset; i < N; i += 3) {
+								Trivialdata found = alg.getObject(refs.get(i));
+								if (found.getData() != i * 3)
+									return false;
+							}
+						}
+						return true;
+					}
+				}));
+			}
+			for (Future<Boolean> f : futures) {
+				assertTrue(f.get());
+			}
+		} finally {
+			pool.shutdown();
+		}
+		alg.close();
+	}
+
+	/**
+	 * Reading the same image twice creates two instances, but the second should be found in the cache
+	 */
+	@Test
+	public void getObject_imageCache() throws IOException {
+		File imageLog = File.createTempFile("mapped", ".rawlog");
+		File imageIndex = new File(imageLog.getPath() + ".index");
+		try {
+			List<LogFileObjectRef> refs = new ArrayList<LogFileObjectRef>();
+			FileOutputStream out = new FileOutputStream(imageLog);
+			for (int i = 0; i < 2; i++) {
+				refs.add(new IndexedFileObjectRef(CImage.class, RawlogIndexFile.NO_SOURCE, out.getChannel().position()));
+				TestRawlogDecoder.writeJpegImage(out, TestImageJpegLazy.createJpeg(20 + i, 15));
+			}
+			out.close();
+			new RawlogIndexFile(imageIndex.getPath()).saveIndex(refs, imageLog.getPath());
+
+			DecodedImageCache cache = new DecodedImageCache(5);
+			RawlogFileMappedReader alg = new RawlogFileMappedReader();
+			alg.setImageCache(cache);
+			assertTrue(alg.load(imageIndex.getPath()));
+
+			CImage first = alg.getObject(refs.get(0));
+			BufferedImage decoded = first.getImage().convertToBuffered();
+			assertEquals(20, decoded.getWidth());
+
+			CImage again = alg.getObject(refs.get(0));
+			assertTrue(first.getImage() != again.getImage());
+			assertTrue(decoded == again.getImage().convertToBuffered());
+			assertEquals(1, cache.size());
+
+			CImage other = alg.getObject(refs.get(1));
+			assertEquals(21, other.getImage().convertToBuffered().getWidth());
+			assertEquals(2, cache.size());
+			alg.close();
+		} finally {
+			imageLog.delete();
+			imageIndex.delete();
+		}
+	}
+
+	@Test
+	public void load_missing() {
+		RawlogFileMappedReader alg = new RawlogFileMappedReader();
+		assertTrue(!alg.load(logFile.getPath() + ".missing.index"));
+	}
+}
@@ -78,4 +78,37 @@ public class TestRawlogIndexFile {
 		assertEquals(3, indexFile.getAllDataTypes().size());
 		assertEquals(3, indexFile.getAllSources().size());
 	}
+
+	@Test
+	public void saveIndexBinary_loadIndex() throws IOException {
+		List<LogFileObjectRef> orig = new ArrayList<LogFileObjectRef>();
+
+		orig.add(new IndexedFileObjectRef(Long.class, "sourceA", 101));
+		orig.add(new IndexedFileObjectRef(Integer.class, "sourceB", 1010));
+		orig.add(new IndexedFileObjectRef(Byte.class, null, 1234));
+		orig.add(new IndexedFileObjectRef(Long.class, "sourceC", 1010));
+		orig.add(new IndexedFileObjectRef(Long.class, "sourceC", 5000000000L));
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+		RawlogIndexFile.saveIndexBinary(orig, 5000000123L, out);
+
+		RawlogIndexFile indexFile = new RawlogIndexFile();
+		List<LogFileObjectRef> found = indexFile.loadIndex(new ByteArrayInputStream(out.toByteArray()));
+
+		assertEquals(orig.size(), found.size());
+		for (int i = 0; i < orig.size(); i++) {
+			IndexedFileObjectRef o = (IndexedFileObjectRef) orig.get(i);
+			IndexedFileObjectRef f = (IndexedFileObjectRef) found.get(i);
+
+			String source = o.source == null ? RawlogIndexFile.NO_SOURCE : o.source;
+			assertTrue(source.compareTo(f.source) == 0);
+			assertTrue(o.dataType == f.dataType);
+			assertTrue(o.fileLocation == f.fileLocation);
+		}
+
+		assertEquals(5000000123L, indexFile.getIndexedLength());
+		assertEquals(3, indexFile.getAllDataTypes().size());
+		assertEquals(3, indexFile.getAllSources().size());
+	}
 }
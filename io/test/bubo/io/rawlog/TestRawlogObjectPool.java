@@ -0,0 +1,64 @@
+/*
+ * Copyright (c) 2013-2014, Peter Abeles. All Rights Reserved.
+ *
+ * This file is part of Project BUBO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package bubo.io.rawlog;
+
+import bubo.io.rawlog.data.CObservation2DRangeScan;
+import bubo.io.rawlog.data.Trivialdata;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Peter Abeles
+ */
+public class TestRawlogObjectPool {
+
+	@Test
+	public void get_recycle() {
+		RawlogObjectPool alg = new RawlogObjectPool();
+
+		assertTrue(alg.get(Trivialdata.class) == null);
+
+		Trivialdata a = new Trivialdata();
+		CObservation2DRangeScan b = new CObservation2DRangeScan();
+		alg.recycle(a);
+		alg.recycle(b);
+		alg.recycle(null);
+
+		assertEquals(1, alg.size(Trivialdata.class));
+		assertTrue(alg.get(CObservation2DRangeScan.class) == b);
+		assertTrue(alg.get(CObservation2DRangeScan.class) == null);
+		assertTrue(alg.get(Trivialdata.class) == a);
+		assertEquals(0, alg.size(Trivialdata.class));
+	}
+
+	@Test
+	public void maxPerType() {
+		RawlogObjectPool alg = new RawlogObjectPool(2);
+
+		for (int i = 0; i < 5; i++) {
+			alg.recycle(new Trivialdata());
+		}
+		assertEquals(2, alg.size(Trivialdata.class));
+
+		alg.clear();
+		assertEquals(0, alg.size(Trivialdata.class));
+	}
+}
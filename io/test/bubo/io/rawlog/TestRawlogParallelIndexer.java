@@ -0,0 +1,204 @@
+/*
+ * Copyright (c) 2013-2014, Peter Abeles. All Rights Reserved.
+ *
+ * This file is part of Project BUBO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package bubo.io.rawlog;
+
+import bubo.io.logs.IndexedFileObjectRef;
+import bubo.io.logs.LogFileObjectRef;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Peter Abeles
+ */
+public class TestRawlogParallelIndexer {
+
+	File logFile;
+
+	@Before
+	public void createLog() throws IOException {
+		logFile = File.createTempFile("parallel", ".rawlog");
+		FileOutputStream out = new FileOutputStream(logFile);
+		writeObjects(out, 0, 150);
+		out.close();
+	}
+
+	@After
+	public void deleteLog() {
+		logFile.delete();
+	}
+
+	/**
+	 * Writes a mix of small objects and range scans of different sizes
+	 */
+	private void writeObjects(FileOutputStream out, int first, int N) throws IOException {
+		for (int i = first; i < first + N; i++) {
+			if (i % 3 == 0)
+				TestRawlogDecoder.writeRangeScan(out, i % 2 == 0 ? "laser" : "sonar", i * 10, 5 + i % 17);
+			else
+				TestRawlogDecoder.writeTrivialObject(out, 0x88888888);
+		}
+	}
+
+	@Test
+	public void computeIndexes_sequential() throws IOException {
+		RawlogParallelIndexer alg = new RawlogParallelIndexer(97, 500);
+
+		List<LogFileObjectRef> found = alg.computeIndexes(logFile.getPath());
+		compareToSequential(found);
+		assertEquals(logFile.length(), alg.getIndexedLength());
+		assertEquals(2, alg.getAllDataTypes().size());
+		assertEquals(2, alg.getAllSources().size());
+	}
+
+	@Test
+	public void computeIndexes_threads() throws IOException {
+		ExecutorService pool = Executors.newFixedThreadPool(3);
+		try {
+			RawlogParallelIndexer alg = new RawlogParallelIndexer(61, 500);
+			alg.setThreadPool(pool);
+
+			compareToSequential(alg.computeIndexes(logFile.getPath()));
+			assertEquals(logFile.length(), alg.getIndexedLength());
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	/**
+	 * Index part of the file, append more data, then resume
+	 */
+	@Test
+	public void computeIndexes_resume() throws IOException {
+		RawlogParallelIndexer alg = new RawlogParallelIndexer(128, 500);
+		List<LogFileObjectRef> previous = alg.computeIndexes(logFile.getPath());
+		long length = alg.getIndexedLength();
+
+		FileOutputStream out = new FileOutputStream(logFile, true);
+		writeObjects(out, 150, 40);
+		out.close();
+
+		List<LogFileObjectRef> found = alg.computeIndexes(logFile.getPath(), previous, length);
+		assertEquals(190, found.size());
+		compareToSequential(found);
+		assertEquals(logFile.length(), alg.getIndexedLength());
+	}
+
+	/**
+	 * The last object is only partially written
+	 */
+	@Test
+	public void computeIndexes_truncated() throws IOException {
+		long length = logFile.length();
+		FileOutputStream out = new FileOutputStream(logFile, true);
+		TestRawlogDecoder.writeRangeScan(out, "laser", 5, 20);
+		out.getChannel().truncate(length + 30);
+		out.close();
+
+		RawlogParallelIndexer alg = new RawlogParallelIndexer(97, 500);
+		List<LogFileObjectRef> found = alg.computeIndexes(logFile.getPath());
+		assertEquals(150, found.size());
+		assertEquals(length, alg.getIndexedLength());
+	}
+
+	/**
+	 * A chunk's search finds a fake start inside of an image.  Two objects can be decoded from there, which
+	 * passes the search's check, and then it fails.  That chunk should be indexed again instead of failing.
+	 */
+	@Test
+	public void computeIndexes_fakeStart() throws IOException {
+		ByteArrayOutputStream fake = new ByteArrayOutputStream();
+		fake.write(new byte[40]);
+		fake.write(0x88);
+		TestRawlogDecoder.writeTrivialObject(fake, 1);
+		TestRawlogDecoder.writeTrivialObject(fake, 2);
+		// a class which doesn't exist
+		RawlogEncoder.writeClassName(fake, "Zzz");
+		fake.write(new byte[20]);
+
+		FileOutputStream out = new FileOutputStream(logFile);
+		TestRawlogDecoder.writeJpegImage(out, fake.toByteArray());
+		writeObjects(out, 0, 20);
+		out.close();
+
+		ExecutorService pool = Executors.newFixedThreadPool(2);
+		try {
+			for (int i = 0; i < 2; i++) {
+				RawlogParallelIndexer alg = new RawlogParallelIndexer(50, 500);
+				alg.setThreadPool(i == 0 ? null : pool);
+
+				List<LogFileObjectRef> found = alg.computeIndexes(logFile.getPath());
+				assertEquals(21, found.size());
+				compareToSequential(found);
+				assertEquals(logFile.length(), alg.getIndexedLength());
+			}
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	/**
+	 * An object is larger than the overlap
+	 */
+	@Test(expected = RuntimeException.class)
+	public void computeIndexes_overlapTooSmall() throws IOException {
+		new RawlogParallelIndexer(20, 4).computeIndexes(logFile.getPath());
+	}
+
+	@Test
+	public void cancel() throws IOException {
+		RawlogParallelIndexer alg = new RawlogParallelIndexer(97, 500);
+		alg.setListener(new RawlogIndexer.Listener() {
+			@Override
+			public void update(String name, double fraction) {}
+
+			@Override
+			public boolean cancelRequested() {
+				return true;
+			}
+		});
+
+		assertTrue(alg.computeIndexes(logFile.getPath()) == null);
+	}
+
+	private void compareToSequential(List<LogFileObjectRef> found) throws IOException {
+		List<LogFileObjectRef> expected = new RawlogIndexer(logFile.getPath()).computeIndexes();
+
+		assertEquals(expected.size(), found.size());
+		for (int i = 0; i < expected.size(); i++) {
+			IndexedFileObjectRef e = (IndexedFileObjectRef) expected.get(i);
+			IndexedFileObjectRef f = (IndexedFileObjectRef) found.get(i);
+
+			assertEquals(e.fileLocation, f.fileLocation);
+			assertTrue(e.dataType == f.dataType);
+			assertEquals(e.source, f.source);
+		}
+	}
+}
@@ -0,0 +1,213 @@
+/*
+ * Copyright (c) 2013-2014, Peter Abeles. All Rights Reserved.
+ *
+ * This file is part of Project BUBO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package bubo.io.rawlog;
+
+import bubo.io.rawlog.data.CObservation;
+import bubo.io.rawlog.data.CObservation2DRangeScan;
+import bubo.io.rawlog.data.Trivialdata;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Peter Abeles
+ */
+public class TestRawlogStreamReader {
+
+	int N = 300;
+	File logFile;
+
+	@Before
+	public void createLog() throws IOException {
+		logFile = File.createTempFile("stream", ".rawlog");
+		FileOutputStream out = new FileOutputStream(logFile);
+		writeObjects(out);
+		out.close();
+	}
+
+	@After
+	public void deleteLog() {
+		logFile.delete();
+	}
+
+	/**
+	 * Every third object is a scan and the scans alternate between two sensors
+	 */
+	private void writeObjects(OutputStream out) throws IOException {
+		for (int i = 0; i < N; i++) {
+			if (i % 3 == 0)
+				TestRawlogDecoder.writeRangeScan(out, label(i), i, 10);
+			else
+				TestRawlogDecoder.writeTrivialObject(out, i);
+		}
+	}
+
+	private static String label(int i) {
+		return i % 2 == 0 ? "front" : "back";
+	}
+
+	/**
+	 * Read the entire file with a ring that is much smaller than the number of objects
+	 */
+	@Test
+	public void next() throws IOException {
+		RawlogStreamReader alg = new RawlogStreamReader(2);
+		alg.open(logFile.getPath());
+
+		for (int i = 0; i < N; i++) {
+			RawlogSerializable o = alg.next();
+			if (i % 3 == 0)
+				TestRawlogDecoder.checkRangeScan((CObservation2DRangeScan) o, label(i), i, 10);
+			else
+				assertEquals(i, ((Trivialdata) o).getData());
+		}
+		assertTrue(alg.next() == null);
+		assertTrue(alg.next() == null);
+		assertEquals(N, alg.getTotalDecoded());
+		alg.close();
+	}
+
+	@Test
+	public void gzip() throws IOException {
+		GZIPOutputStream out = new GZIPOutputStream(new FileOutputStream(logFile));
+		writeObjects(out);
+		out.close();
+
+		RawlogStreamReader alg = new RawlogStreamReader(4);
+		alg.open(logFile.getPath());
+
+		int total = 0;
+		while (alg.next() != null)
+			total++;
+		assertEquals(N, total);
+	}
+
+	@Test
+	public void filterTypes() throws IOException {
+		RawlogStreamReader alg = new RawlogStreamReader(3);
+		alg.setFilterTypes(CObservation.class);
+		alg.open(logFile.getPath());
+
+		for (int i = 0; i < N; i += 3) {
+			CObservation2DRangeScan o = alg.next();
+			assertEquals(i, o.getTimestamp());
+		}
+		assertTrue(alg.next() == null);
+		assertEquals(N, alg.getTotalDecoded());
+		assertEquals(N - N / 3, alg.getTotalSkipped());
+	}
+
+	@Test
+	public void filterSensorLabels() throws IOException {
+		RawlogStreamReader alg = new RawlogStreamReader(3);
+		alg.setFilterSensorLabels("back");
+		alg.open(logFile.getPath());
+
+		for (int i = 3; i < N; i += 6) {
+			CObservation2DRangeScan o = alg.next();
+			assertEquals("back", o.getSensorLabel());
+			assertEquals(i, o.getTimestamp());
+		}
+		assertTrue(alg.next() == null);
+	}
+
+	/**
+	 * Recycle objects and see if they are reused
+	 */
+	@Test
+	public void pool() throws IOException {
+		RawlogObjectPool pool = new RawlogObjectPool();
+		RawlogStreamReader alg = new RawlogStreamReader(2);
+		alg.setPool(pool);
+		alg.setFilterTypes(CObservation2DRangeScan.class);
+		alg.open(logFile.getPath());
+
+		List<Object> instances = new ArrayList<Object>();
+		for (int i = 0; i < N; i += 3) {
+			CObservation2DRangeScan o = alg.next();
+			TestRawlogDecoder.checkRangeScan(o, label(i), i, 10);
+			if (!instances.contains(o))
+				instances.add(o);
+			alg.recycle(o);
+		}
+		assertTrue(alg.next() == null);
+
+		// the ring and the object being processed.  One extra for the object the producer is decoding
+		assertTrue(instances.size() <= 4);
+		// rejected objects with standard decoding are skipped without being created
+		assertEquals(0, pool.size(Trivialdata.class));
+	}
+
+	/**
+	 * The handler stops processing early.  Make sure the background thread doesn't get stuck on the full ring
+	 */
+	@Test
+	public void process_stop() throws IOException {
+		RawlogStreamReader alg = new RawlogStreamReader(2);
+		alg.open(logFile.getPath());
+
+		final int count[] = new int[1];
+		alg.process(new RawlogStreamReader.Handler() {
+			@Override
+			public boolean process(RawlogSerializable o) {
+				return ++count[0] < 10;
+			}
+		});
+		assertEquals(10, count[0]);
+		assertTrue(alg.getTotalDecoded() < N);
+	}
+
+	/**
+	 * An error while decoding should be passed on to the consumer after the good objects have been read
+	 */
+	@Test
+	public void corruptStream() throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		TestRawlogDecoder.writeTrivialObject(out, 1);
+		TestRawlogDecoder.writeTrivialObject(out, 2);
+		byte[] data = out.toByteArray();
+		// remove the end of object marker
+		data[data.length - 1] = 0;
+
+		RawlogStreamReader alg = new RawlogStreamReader(2);
+		alg.open(new ByteArrayInputStream(data));
+
+		assertEquals(1, ((Trivialdata) alg.next()).getData());
+		try {
+			alg.next();
+			assertTrue(false);
+		} catch (RuntimeException e) {
+			// expected
+		}
+		alg.close();
+	}
+}